@@ -0,0 +1,94 @@
+package com.evroute.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files and exits non-zero when any benchmark
+ * present in both got slower, or allocates more per operation, by more than
+ * the threshold:
+ *
+ *   java -cp target/benchmarks.jar com.evroute.benchmarks.CompareResults baseline.json jmh-result.json [percent]
+ *
+ * The default threshold is 10%. Time is compared by score in the direction of
+ * its mode (lower is better except for throughput); allocation only where both
+ * runs had the GC profiler on.
+ */
+public final class CompareResults {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+    // Allocation noise below this many bytes per operation is ignored
+    private static final double MIN_ALLOCATION_BYTES = 64.0;
+
+    private CompareResults() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <current.json> [threshold-percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> current = read(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("  new  %s%n", entry.getKey());
+                continue;
+            }
+            JsonNode after = entry.getValue();
+            double oldScore = before.path("primaryMetric").path("score").asDouble();
+            double newScore = after.path("primaryMetric").path("score").asDouble();
+            double change = percent(oldScore, newScore);
+            boolean slower = "thrpt".equals(after.path("mode").asText()) ? change < -threshold : change > threshold;
+            String unit = after.path("primaryMetric").path("scoreUnit").asText();
+            regressions += report(entry.getKey(), slower, String.format(Locale.ROOT,
+                    "%.3f -> %.3f %s (%+.1f%%)", oldScore, newScore, unit, change));
+
+            JsonNode oldAlloc = before.path("secondaryMetrics").path(ALLOCATION).path("score");
+            JsonNode newAlloc = after.path("secondaryMetrics").path(ALLOCATION).path("score");
+            if (oldAlloc.isNumber() && newAlloc.isNumber()) {
+                double allocChange = percent(oldAlloc.asDouble(), newAlloc.asDouble());
+                boolean grew = allocChange > threshold
+                        && newAlloc.asDouble() - oldAlloc.asDouble() > MIN_ALLOCATION_BYTES;
+                regressions += report(entry.getKey() + " [alloc]", grew, String.format(Locale.ROOT,
+                        "%.0f -> %.0f B/op (%+.1f%%)", oldAlloc.asDouble(), newAlloc.asDouble(), allocChange));
+            }
+        }
+        if (regressions > 0) {
+            System.out.printf("%d regression(s) beyond %.1f%%%n", regressions, threshold);
+            System.exit(1);
+        }
+        System.out.printf("No regressions beyond %.1f%%%n", threshold);
+    }
+
+    // Benchmark name with its parameters, to its result
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            result.path("params").fields().forEachRemaining(param ->
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText()));
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double percent(double before, double after) {
+        return before != 0 ? (after - before) / before * 100.0 : 0;
+    }
+
+    private static int report(String name, boolean regressed, String detail) {
+        System.out.printf("%s %s: %s%n", regressed ? "  FAIL" : "  ok  ", name, detail);
+        return regressed ? 1 : 0;
+    }
+}
@@ -0,0 +1,59 @@
+package com.evroute.benchmarks;
+
+import com.evroute.client.OrsClient;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.service.DirectionsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning an ORS directions response into a route: decoding the GeoJSON
+ * body, mapping it with {@code DirectionsService.mapOrsResponse}, and both
+ * together as the client does for each call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DirectionsParsingBenchmark {
+
+    @Param({"CITY", "REGIONAL", "INTERSTATE", "CROSS_COUNTRY"})
+    public SyntheticData.Scale scale;
+
+    private byte[] body;
+    private ObjectReader reader;
+    private OrsClient.DirectionsResponse response;
+
+    @Setup
+    public void setup() throws IOException {
+        PackedPolyline route = SyntheticData.route(scale, 3);
+        double km = SyntheticData.routeKm(route);
+        body = SyntheticData.orsDirectionsJson(route, km, km / 100.0 * 60.0);
+        // Configured as Boot configures the mapper behind WebClient's decoder
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        reader = mapper.readerFor(OrsClient.DirectionsResponse.class);
+        response = reader.readValue(body);
+    }
+
+    @Benchmark
+    public OrsClient.DirectionsResponse decode() throws IOException {
+        return reader.readValue(body);
+    }
+
+    @Benchmark
+    public DirectionsService.DirectionsResult map() {
+        return DirectionsService.mapOrsResponse(response);
+    }
+
+    @Benchmark
+    public DirectionsService.DirectionsResult decodeAndMap() throws IOException {
+        return DirectionsService.mapOrsResponse(reader.readValue(body));
+    }
+}
@@ -0,0 +1,63 @@
+package com.evroute.benchmarks;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.geo.PackedPolyline;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The distance primitives every corridor and graph query runs per vertex:
+ * the Haversine great-circle distance and the projected point-to-segment
+ * distance, each measured per call over consecutive route vertices.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeoBenchmark {
+
+    // A 100 km stretch; its 1,000 vertices are reused per invocation
+    private static final int VERTICES = 1000;
+
+    private double[] lat;
+    private double[] lng;
+    private double pLat;
+    private double pLng;
+
+    @Setup
+    public void setup() {
+        PackedPolyline route = SyntheticData.route(SyntheticData.Scale.REGIONAL, 11);
+        lat = new double[VERTICES];
+        lng = new double[VERTICES];
+        for (int i = 0; i < VERTICES; i++) {
+            lat[i] = route.lat(i);
+            lng[i] = route.lng(i);
+        }
+        // A station 5 km off the middle of the stretch
+        pLat = lat[VERTICES / 2] + GeoUtils.kmToLatDegrees(5.0);
+        pLng = lng[VERTICES / 2];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VERTICES - 1)
+    public double haversineKm() {
+        double km = 0;
+        for (int i = 1; i < VERTICES; i++) {
+            km += GeoUtils.haversineKm(lat[i - 1], lng[i - 1], lat[i], lng[i]);
+        }
+        return km;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VERTICES - 1)
+    public double pointToSegmentKm() {
+        double nearest = Double.MAX_VALUE;
+        for (int i = 1; i < VERTICES; i++) {
+            nearest = Math.min(nearest, GeoUtils.pointToSegmentKm(pLat, pLng, lat[i - 1], lng[i - 1], lat[i], lng[i]));
+        }
+        return nearest;
+    }
+}
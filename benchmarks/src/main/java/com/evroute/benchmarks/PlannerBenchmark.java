@@ -0,0 +1,95 @@
+package com.evroute.benchmarks;
+
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.RouteCorridor;
+import com.evroute.geo.RouteProfile;
+import com.evroute.metrics.MetricRegistry;
+import com.evroute.model.*;
+import com.evroute.planning.ChargingStopOptimizer;
+import com.evroute.service.DirectionsService;
+import com.evroute.service.PlanningService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planning a single route, from a city hop to a cross-country trip: the
+ * charging stop search alone, the corridor station filter, and the whole
+ * {@code planRouteWithAlgorithm} path over raw stations.
+ * Target: under 50 ms per plan on one core at every scale.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlannerBenchmark {
+
+    // Average speed of the synthetic trips
+    private static final double TRIP_KMH = 100.0;
+
+    @Param({"CITY", "REGIONAL", "INTERSTATE", "CROSS_COUNTRY"})
+    public SyntheticData.Scale scale;
+
+    private double tripKm;
+    private double[] chainageKm;
+    private double[] stationKw;
+    private RouteRequest request;
+    private DirectionsService.DirectionsResult directions;
+    private RouteProfile profile;
+    private List<ChargingStation> stations;
+    private ChargingStopOptimizer optimizer;
+    private PlanningService planningService;
+
+    @Setup
+    public void setup() {
+        PackedPolyline route = SyntheticData.route(scale, 7);
+        tripKm = SyntheticData.routeKm(route);
+        int stationCount = SyntheticData.corridorStationCount(scale);
+        stations = SyntheticData.corridorStations(route, stationCount, 7);
+        profile = new RouteProfile(route);
+
+        // Optimizer-only fixture: stations at seeded chainages
+        Random random = new Random(7);
+        chainageKm = new double[stationCount];
+        stationKw = new double[stationCount];
+        for (int i = 0; i < stationCount; i++) {
+            chainageKm[i] = random.nextDouble() * tripKm;
+            stationKw[i] = stations.get(i).getMaxKw();
+        }
+        Arrays.sort(chainageKm);
+
+        int minutes = (int) Math.round(tripKm / TRIP_KMH * 60.0);
+        directions = new DirectionsService.DirectionsResult(new LegSummary(route, tripKm, minutes), tripKm, minutes);
+
+        EVSpec ev = new EVSpec(75.0, 0.9, 170.0, 250.0, 0.9, 0.1);
+        request = new RouteRequest("Seattle, WA", "Boston, MA", ev, new RoutePrefs());
+        optimizer = new ChargingStopOptimizer();
+        // Only the algorithmic core is exercised, so no upstream services are wired
+        planningService = new PlanningService(null, null, null, null, null,
+                new ReactiveCacheManager(new StandardEnvironment(), "maximumSize=0"), new MetricRegistry(),
+                Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ofSeconds(2), 0.001);
+    }
+
+    @Benchmark
+    public List<ChargingStopOptimizer.Stop> optimize() {
+        return optimizer.optimize(chainageKm, stationKw, tripKm, request.getEv(), request.getPrefs(), 0.6);
+    }
+
+    @Benchmark
+    public RouteCorridor corridor() {
+        return RouteCorridor.build(profile, stations, SyntheticData.SEARCH_RADIUS_KM);
+    }
+
+    @Benchmark
+    public RoutePlan planRouteWithAlgorithm() {
+        return planningService.planRouteWithAlgorithm(request, directions, stations);
+    }
+}
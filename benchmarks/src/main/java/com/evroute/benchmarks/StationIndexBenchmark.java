@@ -0,0 +1,66 @@
+package com.evroute.benchmarks;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.StationIndex;
+import com.evroute.model.ChargingStation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Corridor filtering: the grid index against the original
+ * station-by-vertex Haversine scan from PlanningService.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StationIndexBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int stationCount;
+
+    @Param({"REGIONAL", "CROSS_COUNTRY"})
+    public SyntheticData.Scale scale;
+
+    private PackedPolyline route;
+    private List<ChargingStation> stations;
+    private StationIndex index;
+
+    @Setup
+    public void setup() {
+        route = SyntheticData.route(scale, 42);
+        stations = SyntheticData.scatteredStations(stationCount, 42);
+        index = StationIndex.build(stations);
+    }
+
+    @Benchmark
+    public List<ChargingStation> linearScan() {
+        List<ChargingStation> result = new ArrayList<>();
+        for (ChargingStation station : stations) {
+            for (int v = 0; v < route.size(); v++) {
+                if (GeoUtils.haversineKm(station.getLat(), station.getLng(), route.lat(v), route.lng(v))
+                        <= SyntheticData.SEARCH_RADIUS_KM) {
+                    result.add(station);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<ChargingStation> indexQuery() {
+        return index.findNearPolyline(route, SyntheticData.SEARCH_RADIUS_KM);
+    }
+
+    @Benchmark
+    public List<ChargingStation> indexBuildAndQuery() {
+        return StationIndex.build(stations).findNearPolyline(route, SyntheticData.SEARCH_RADIUS_KM);
+    }
+}
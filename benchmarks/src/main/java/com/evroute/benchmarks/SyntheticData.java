@@ -0,0 +1,130 @@
+package com.evroute.benchmarks;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.model.ChargingStation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Seeded synthetic routes, stations and ORS responses, so every benchmark
+ * run sees the same inputs at the same realistic scales.
+ *
+ * Routes leave Seattle south-east at ORS's highway geometry density (a vertex
+ * every ~100 m) and wander like a real road. Corridor stations sit beside
+ * random route points, some beyond the search radius, at a US fast-charger
+ * density; scattered stations cover the contiguous US.
+ */
+public final class SyntheticData {
+
+    /** Trip lengths from a city hop, which needs no charging, to cross-country. */
+    public enum Scale {
+        CITY(30),
+        REGIONAL(400),
+        INTERSTATE(1200),
+        CROSS_COUNTRY(4500);
+
+        final double km;
+
+        Scale(double km) {
+            this.km = km;
+        }
+    }
+
+    static final double VERTEX_SPACING_KM = 0.1;
+    static final double SEARCH_RADIUS_KM = 15.0;
+    // Fast chargers per 100 km of corridor, and the fewest a corridor gets
+    static final int STATIONS_PER_100_KM = 12;
+    static final int MIN_CORRIDOR_STATIONS = 40;
+
+    private static final double[] STATION_KW = {50.0, 62.5, 100.0, 150.0, 250.0, 350.0};
+    private static final double START_LAT = 47.61;
+    private static final double START_LNG = -122.33;
+    // Heading south-east, towards Denver and on to the east coast
+    private static final double BEARING_DEGREES = 110.0;
+
+    private SyntheticData() {}
+
+    static PackedPolyline route(Scale scale, long seed) {
+        Random random = new Random(seed);
+        int vertices = (int) Math.round(scale.km / VERTEX_SPACING_KM) + 1;
+        PackedPolyline.Builder builder = new PackedPolyline.Builder(vertices);
+        double lat = START_LAT, lng = START_LNG;
+        double bearing = Math.toRadians(BEARING_DEGREES);
+        for (int i = 0; i < vertices; i++) {
+            builder.add(lat, lng);
+            // The road drifts either side of the overall heading and is pulled back towards it
+            bearing += (random.nextDouble() - 0.5) * 0.2 + (Math.toRadians(BEARING_DEGREES) - bearing) * 0.05;
+            lat += GeoUtils.kmToLatDegrees(VERTEX_SPACING_KM * Math.cos(bearing));
+            lng += GeoUtils.kmToLngDegrees(VERTEX_SPACING_KM * Math.sin(bearing), lat);
+        }
+        return builder.build();
+    }
+
+    static double routeKm(PackedPolyline route) {
+        double km = 0;
+        for (int i = 1; i < route.size(); i++) {
+            km += GeoUtils.haversineKm(route.lat(i - 1), route.lng(i - 1), route.lat(i), route.lng(i));
+        }
+        return km;
+    }
+
+    static int corridorStationCount(Scale scale) {
+        return Math.max(MIN_CORRIDOR_STATIONS, (int) (scale.km / 100.0 * STATIONS_PER_100_KM));
+    }
+
+    /** Stations beside random route points, up to twice the search radius off the route. */
+    static List<ChargingStation> corridorStations(PackedPolyline route, int count, long seed) {
+        Random random = new Random(seed);
+        List<ChargingStation> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int at = random.nextInt(route.size());
+            double offsetKm = random.nextDouble() * 2 * SEARCH_RADIUS_KM;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double lat = route.lat(at) + GeoUtils.kmToLatDegrees(offsetKm * Math.cos(angle));
+            double lng = route.lng(at) + GeoUtils.kmToLngDegrees(offsetKm * Math.sin(angle), lat);
+            stations.add(station(i, lat, lng, random));
+        }
+        return stations;
+    }
+
+    static List<ChargingStation> scatteredStations(int count, long seed) {
+        Random random = new Random(seed);
+        List<ChargingStation> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            stations.add(station(i, 25.0 + random.nextDouble() * 24.0, -124.0 + random.nextDouble() * 57.0, random));
+        }
+        return stations;
+    }
+
+    /** An ORS directions GeoJSON body for the route, with the fields ORS sends besides the geometry. */
+    static byte[] orsDirectionsJson(PackedPolyline route, double km, double minutes) {
+        StringBuilder json = new StringBuilder(route.size() * 26 + 512);
+        json.append("{\"type\":\"FeatureCollection\",\"bbox\":[-122.33,39.7,-104.99,47.61],\"features\":[{")
+                .append("\"bbox\":[-122.33,39.7,-104.99,47.61],\"type\":\"Feature\",\"properties\":{")
+                .append("\"segments\":[{\"distance\":").append(km * 1000).append(",\"duration\":").append(minutes * 60)
+                .append("}],\"summary\":{\"distance\":").append(km * 1000).append(",\"duration\":").append(minutes * 60)
+                .append("},\"way_points\":[0,").append(route.size() - 1).append("]},")
+                .append("\"geometry\":{\"coordinates\":[");
+        for (int i = 0; i < route.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            // ORS sends five decimals, longitude first
+            json.append(String.format(Locale.ROOT, "[%.5f,%.5f]", route.lng(i), route.lat(i)));
+        }
+        json.append("],\"type\":\"LineString\"}}],\"metadata\":{\"attribution\":\"openrouteservice.org | OpenStreetMap contributors\",")
+                .append("\"service\":\"routing\",\"timestamp\":1700000000000,\"query\":{\"profile\":\"driving-car\",\"format\":\"geojson\"},")
+                .append("\"engine\":{\"version\":\"7.1.1\",\"build_date\":\"2024-01-29T14:41:12Z\"}}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ChargingStation station(int i, double lat, double lng, Random random) {
+        return new ChargingStation("S-" + i, "Station " + i, lat, lng,
+                List.of("CCS"), STATION_KW[random.nextInt(STATION_KW.length)], random.nextDouble() < 0.97);
+    }
+}
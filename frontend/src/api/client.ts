@@ -1,14 +1,67 @@
 import axios from 'axios';
-import { RouteRequest, RoutePlan, ChargingStation, EVPreset } from '../types/route';
+import {
+  RouteRequest, RoutePlan, ChargingStation, EVPreset, PlanEvent, CompareRequest, RouteComparison
+} from '../types/route';
 
 export const api = axios.create({
   baseURL: '/api',
   timeout: 15000,
 });
 
+// Route geometry detail requested from the server; finer zooms are simplified away
+const ROUTE_DETAIL_ZOOM = 13;
+
 export const routeApi = {
-  planRoute: async (request: RouteRequest): Promise<RoutePlan> => {
-    const response = await api.post<RoutePlan>('/route/plan', request);
+  planRoute: async (request: RouteRequest, zoom: number = ROUTE_DETAIL_ZOOM): Promise<RoutePlan> => {
+    const response = await api.post<RoutePlan>('/route/plan', request, {
+      params: { zoom }
+    });
+    return response.data;
+  },
+
+  // Server-sent plan events: route, stations..., stop..., summary (or error)
+  planRouteStream: async (
+    request: RouteRequest,
+    onEvent: (event: PlanEvent) => void,
+    zoom: number = ROUTE_DETAIL_ZOOM
+  ): Promise<void> => {
+    const response = await fetch(`/api/route/plan/stream?zoom=${zoom}`, {
+      method: 'POST',
+      headers: { 'Content-Type': 'application/json', Accept: 'text/event-stream' },
+      body: JSON.stringify(request),
+    });
+    if (!response.ok || !response.body) {
+      throw new Error(`Plan stream failed with status ${response.status}`);
+    }
+
+    const reader = response.body.pipeThrough(new TextDecoderStream()).getReader();
+    let buffered = '';
+    for (;;) {
+      const { value, done } = await reader.read();
+      if (done) break;
+      buffered += value;
+      let end;
+      while ((end = buffered.indexOf('\n\n')) >= 0) {
+        const block = buffered.slice(0, end);
+        buffered = buffered.slice(end + 2);
+        let type = 'message';
+        const data: string[] = [];
+        for (const line of block.split('\n')) {
+          if (line.startsWith('event:')) type = line.slice(6).trim();
+          else if (line.startsWith('data:')) data.push(line.slice(5));
+        }
+        if (data.length > 0) {
+          onEvent({ type, data: JSON.parse(data.join('\n')) } as PlanEvent);
+        }
+      }
+    }
+  },
+
+  // Same origin/destination for several vehicles; the route is fetched once
+  compareVehicles: async (request: CompareRequest, zoom: number = ROUTE_DETAIL_ZOOM): Promise<RouteComparison> => {
+    const response = await api.post<RouteComparison>('/route/compare', request, {
+      params: { zoom }
+    });
     return response.data;
   },
 
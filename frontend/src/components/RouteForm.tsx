@@ -67,10 +67,16 @@ export const RouteForm: React.FC<RouteFormProps> = ({ onRoutePlanned, onLoadingC
         ev: customEV
       };
 
-      const plan = await routeApi.planRoute(request);
-      onRoutePlanned(plan);
+      // The route is drawn as soon as directions resolve; stops follow with the summary
+      await routeApi.planRouteStream(request, (event) => {
+        if (event.type === 'route' || event.type === 'summary') {
+          onRoutePlanned(event.data);
+        } else if (event.type === 'error') {
+          throw new Error(event.data.message);
+        }
+      });
     } catch (err: any) {
-      setError(err.response?.data?.message || 'Failed to plan route. Please try again.');
+      setError(err.response?.data?.message || err.message || 'Failed to plan route. Please try again.');
     } finally {
       onLoadingChange(false);
     }
@@ -5,6 +5,7 @@ export interface EVSpec {
   maxChargeKw: number;
   startSoC: number;
   reserveSoC: number;
+  chargingCurve?: [number, number][]; // [soc, kw] pairs
 }
 
 export interface RouteRequest {
@@ -38,7 +39,8 @@ export interface PlannedStop {
 }
 
 export interface LegSummary {
-  polyline: [number, number][];
+  polyline?: [number, number][];
+  encodedPolyline?: string; // present instead of polyline with ?polyline=encoded
   distanceKm: number;
   driveMinutes: number;
 }
@@ -52,6 +54,37 @@ export interface RoutePlan {
   totalChargeMinutes: number;
 }
 
+export type PlanEvent =
+  | { type: 'route'; data: RoutePlan }
+  | { type: 'stations'; data: ChargingStation[] }
+  | { type: 'stop'; data: PlannedStop }
+  | { type: 'summary'; data: RoutePlan }
+  | { type: 'error'; data: { message: string } };
+
+export interface CompareRequest {
+  origin: string;
+  destination: string;
+  vehicles: EVSpec[];
+  prefs?: RoutePrefs;
+}
+
+// One row per vehicle in request order; error replaces the totals when its plan failed
+export interface VehicleResult {
+  index: number;
+  totalMinutes?: number;
+  driveMinutes?: number;
+  chargeMinutes?: number;
+  energyKwh?: number;
+  stopCount?: number;
+  stops?: PlannedStop[];
+  error?: string;
+}
+
+export interface RouteComparison {
+  route: LegSummary;
+  vehicles: VehicleResult[];
+}
+
 export interface EVPreset {
   name: string;
   batteryKwh: number;
@@ -0,0 +1,88 @@
+package com.evroute.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Caffeine-backed cache for reactive lookups.
+ *
+ * Stores the resolved value rather than the cold {@link Mono}, so a hit never
+ * touches the upstream. Concurrent lookups of the same key while a load is in
+ * flight share that one load. Failed or empty loads are not cached.
+ */
+public class ReactiveCache<K, V> {
+
+    private final String name;
+    private final AsyncCache<K, V> cache;
+
+    public ReactiveCache(String name, Caffeine<Object, Object> builder) {
+        this.name = name;
+        this.cache = builder.recordStats().buildAsync();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Mono<V> get(K key, Function<K, Mono<V>> loader) {
+        // suppressCancel: one subscriber going away must not cancel the load others are waiting on
+        return Mono.fromFuture(() -> cache.get(key, (k, executor) -> loader.apply(k).toFuture()), true);
+    }
+
+    public V getIfPresent(K key) {
+        return cache.synchronous().getIfPresent(key);
+    }
+
+    public void put(K key, V value) {
+        cache.synchronous().put(key, value);
+    }
+
+    public void invalidate(K key) {
+        cache.synchronous().invalidate(key);
+    }
+
+    public AsyncCache<K, V> getNativeCache() {
+        return cache;
+    }
+
+    public Statistics stats() {
+        return new Statistics(cache.synchronous().stats(), cache.synchronous().estimatedSize());
+    }
+
+    public static class Statistics {
+        private final long hitCount;
+        private final long missCount;
+        private final double hitRate;
+        private final long loadSuccessCount;
+        private final long loadFailureCount;
+        private final double averageLoadMillis;
+        private final long evictionCount;
+        private final long estimatedSize;
+
+        public Statistics(CacheStats stats, long estimatedSize) {
+            this.hitCount = stats.hitCount();
+            this.missCount = stats.missCount();
+            this.hitRate = stats.hitRate();
+            this.loadSuccessCount = stats.loadSuccessCount();
+            this.loadFailureCount = stats.loadFailureCount();
+            this.averageLoadMillis = stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1);
+            this.evictionCount = stats.evictionCount();
+            this.estimatedSize = estimatedSize;
+        }
+
+        // Getters
+        public long getHitCount() { return hitCount; }
+        public long getMissCount() { return missCount; }
+        public double getHitRate() { return hitRate; }
+        public long getLoadSuccessCount() { return loadSuccessCount; }
+        public long getLoadFailureCount() { return loadFailureCount; }
+        public double getAverageLoadMillis() { return averageLoadMillis; }
+        public long getEvictionCount() { return evictionCount; }
+        public long getEstimatedSize() { return estimatedSize; }
+    }
+}
@@ -0,0 +1,55 @@
+package com.evroute.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Named {@link ReactiveCache}s configured from Caffeine spec strings:
+ * {@code app.cache.<name>.spec}, falling back to {@code app.cache.default-spec}.
+ * A cache created with a weigher can be bounded by {@code maximumWeight}.
+ */
+@Component
+public class ReactiveCacheManager {
+
+    private final Environment environment;
+    private final String defaultSpec;
+    private final ConcurrentMap<String, ReactiveCache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    public ReactiveCacheManager(Environment environment,
+                                @Value("${app.cache.default-spec:maximumSize=2000,expireAfterWrite=6h}") String defaultSpec) {
+        this.environment = environment;
+        this.defaultSpec = defaultSpec;
+    }
+
+    public <K, V> ReactiveCache<K, V> getCache(String name) {
+        return getCache(name, null);
+    }
+
+    /** As {@link #getCache(String)}, weighing entries with {@code weigher} when the spec sets a maximumWeight. */
+    @SuppressWarnings("unchecked")
+    public <K, V> ReactiveCache<K, V> getCache(String name, Weigher<? super K, ? super V> weigher) {
+        return (ReactiveCache<K, V>) caches.computeIfAbsent(name, n -> {
+            String spec = environment.getProperty("app.cache." + n + ".spec", defaultSpec);
+            Caffeine<Object, Object> builder = Caffeine.from(spec);
+            // Caffeine rejects a weigher without maximumWeight, and maximumWeight without a weigher
+            if (weigher != null && spec.contains("maximumWeight")) {
+                builder.weigher((Object key, Object value) -> weigher.weigh((K) key, (V) value));
+            }
+            return new ReactiveCache<>(n, builder);
+        });
+    }
+
+    public Map<String, ReactiveCache.Statistics> stats() {
+        Map<String, ReactiveCache.Statistics> stats = new TreeMap<>();
+        caches.forEach((name, cache) -> stats.put(name, cache.stats()));
+        return stats;
+    }
+}
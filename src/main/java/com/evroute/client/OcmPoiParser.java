@@ -0,0 +1,199 @@
+package com.evroute.client;
+
+import com.evroute.model.ChargingStation;
+import com.evroute.snapshot.ConnectorMask;
+import com.evroute.snapshot.StationSnapshot;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Push parser for OpenChargeMap POI JSON.
+ *
+ * Bytes are fed in whatever chunks arrive and each POI is handed to the sink
+ * as soon as its closing brace is read, so neither the response body nor a
+ * JSON tree is ever held in memory. Input is an array of POIs (the /poi
+ * endpoint, compact or verbose) or a single POI object (one file of the OCM
+ * data export). Connections are collapsed into max kW and a connector set.
+ *
+ * Not thread-safe; use one parser per response.
+ */
+public final class OcmPoiParser {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int MAX_DEPTH = 64;
+
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private final ObjIntConsumer<ChargingStation> sink;
+
+    // Field name last seen at each nesting depth
+    private final String[] fields = new String[MAX_DEPTH];
+    private int depth;
+    private int poiDepth;
+
+    // Current POI
+    private int id;
+    private String title;
+    private double lat;
+    private double lng;
+    private boolean located;
+    private double maxKw;
+    private int connectors;
+    private Integer statusTypeId;
+    private Boolean isOperational;
+
+    public OcmPoiParser(ObjIntConsumer<ChargingStation> sink) {
+        try {
+            this.parser = JSON.createNonBlockingByteBufferParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        this.sink = sink;
+    }
+
+    /** Parses a whole channel in fixed-size chunks; used by offline imports. */
+    public static void parse(ReadableByteChannel channel, ObjIntConsumer<ChargingStation> sink) throws IOException {
+        OcmPoiParser parser = new OcmPoiParser(sink);
+        ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+        while (channel.read(chunk) >= 0) {
+            chunk.flip();
+            parser.feed(chunk);
+            chunk.clear();
+        }
+        parser.endOfInput();
+    }
+
+    /** Consumes every byte of {@code chunk}. */
+    public void feed(ByteBuffer chunk) throws IOException {
+        if (!chunk.hasRemaining()) {
+            return;
+        }
+        feeder.feedInput(chunk);
+        drain();
+        chunk.position(chunk.limit());
+    }
+
+    public void endOfInput() throws IOException {
+        feeder.endOfInput();
+        drain();
+        if (depth != 0) {
+            throw new IOException("Truncated OCM response");
+        }
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            switch (token) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    if (depth == 0) {
+                        // An array of POIs, or a single POI at the root
+                        poiDepth = token == JsonToken.START_ARRAY ? 2 : 1;
+                    }
+                    if (++depth >= MAX_DEPTH) {
+                        throw new IOException("OCM response nested too deeply");
+                    }
+                    fields[depth] = null;
+                    if (depth == poiDepth && token == JsonToken.START_OBJECT) {
+                        startPoi();
+                    }
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    if (depth == poiDepth && token == JsonToken.END_OBJECT) {
+                        endPoi();
+                    }
+                    depth--;
+                    break;
+                case FIELD_NAME:
+                    fields[depth] = parser.currentName();
+                    break;
+                default:
+                    value(token);
+            }
+        }
+    }
+
+    private void value(JsonToken token) throws IOException {
+        if (poiDepth == 0 || depth < poiDepth) {
+            return;
+        }
+        String field = fields[depth];
+        String section = depth > poiDepth ? fields[poiDepth] : null;
+
+        if (depth == poiDepth) {
+            if ("ID".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                id = parser.getIntValue();
+            } else if ("StatusTypeID".equals(field)) {
+                statusTypeId = token == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null;
+            }
+        } else if (depth == poiDepth + 1 && "AddressInfo".equals(section)) {
+            if ("Title".equals(field) && token == JsonToken.VALUE_STRING) {
+                title = parser.getText();
+            } else if ("Latitude".equals(field) && token.isNumeric()) {
+                lat = parser.getDoubleValue();
+                located = true;
+            } else if ("Longitude".equals(field) && token.isNumeric()) {
+                lng = parser.getDoubleValue();
+            }
+        } else if (depth == poiDepth + 1 && "StatusType".equals(section)) {
+            if ("IsOperational".equals(field) && token.isBoolean()) {
+                isOperational = token == JsonToken.VALUE_TRUE;
+            }
+        } else if (depth == poiDepth + 2 && "Connections".equals(section)) {
+            if ("PowerKW".equals(field) && token.isNumeric()) {
+                maxKw = Math.max(maxKw, parser.getDoubleValue());
+            } else if ("ConnectionTypeID".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                connectors |= ConnectorMask.bit(connectorName(parser.getIntValue()));
+            }
+        }
+    }
+
+    private void startPoi() {
+        id = 0;
+        title = null;
+        lat = 0;
+        lng = 0;
+        located = false;
+        maxKw = 0;
+        connectors = 0;
+        statusTypeId = null;
+        isOperational = null;
+    }
+
+    private void endPoi() {
+        if (!located) {
+            return;
+        }
+        boolean operational = isOperational != null ? isOperational : isOperationalStatus(statusTypeId);
+        sink.accept(new ChargingStation(StationSnapshot.ID_PREFIX + id, title, lat, lng,
+                ConnectorMask.decode(connectors), maxKw, operational), id);
+    }
+
+    // OCM reference data: ConnectionTypeID
+    static String connectorName(int connectionTypeId) {
+        switch (connectionTypeId) {
+            case 1: return "J1772";
+            case 2: return "CHAdeMO";
+            case 25: case 1036: return "Type 2";
+            case 32: case 33: return "CCS";
+            case 8: case 27: case 30: return "Tesla";
+            default: return ConnectorMask.OTHER;
+        }
+    }
+
+    // OCM reference data: StatusTypeID 100 (not operational), 150 (planned), 200 (removed)
+    static boolean isOperationalStatus(Integer statusTypeId) {
+        return statusTypeId == null || (statusTypeId != 100 && statusTypeId != 150 && statusTypeId != 200);
+    }
+}
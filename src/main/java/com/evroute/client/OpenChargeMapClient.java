@@ -1,29 +1,48 @@
 package com.evroute.client;
 
+import com.evroute.cache.ReactiveCache;
+import com.evroute.cache.ReactiveCacheManager;
 import com.evroute.model.ChargingStation;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 @Component
 public class OpenChargeMapClient {
 
     private final WebClient webClient;
+    private final ReactiveCache<Object, List<ChargingStation>> stationsCache;
+    private final int bboxMaxResults;
+    private final UpstreamGuard guard;
 
-    public OpenChargeMapClient() {
-        this.webClient = WebClient.builder()
+    public OpenChargeMapClient(ReactiveCacheManager cacheManager,
+                               UpstreamGuards guards,
+                               UpstreamConnections connections,
+                               @Value("${app.stations.ocm.bbox-max-results:500}") int bboxMaxResults) {
+        this.stationsCache = cacheManager.getCache("stations");
+        this.guard = guards.get("ocm");
+        this.bboxMaxResults = bboxMaxResults;
+        this.webClient = connections.builder("ocm")
                 .baseUrl("https://api.openchargemap.io/v3")
                 .defaultHeader("Accept", "application/json")
                 .defaultHeader("X-API-Key", "your-api-key-here") // Optional for OCM
                 .build();
     }
 
-    @Cacheable("stations")
     public Mono<List<ChargingStation>> findStationsNear(double lat, double lng, double radiusKm) {
-        return webClient.get()
+        return stationsCache.get(new NearKey(lat, lng, radiusKm), key -> fetchStationsNear(lat, lng, radiusKm));
+    }
+
+    private Mono<List<ChargingStation>> fetchStationsNear(double lat, double lng, double radiusKm) {
+        return guard.call(() -> webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/poi")
                         .queryParam("latitude", lat)
@@ -35,66 +54,58 @@ public class OpenChargeMapClient {
                         .queryParam("verbose", false)
                         .build())
                 .retrieve()
-                .bodyToMono(String.class)
-                .map(this::parseStationsResponse);
+                .bodyToFlux(DataBuffer.class)
+                .as(OpenChargeMapClient::parseStations));
     }
 
-    @Cacheable("stations")
     public Mono<List<ChargingStation>> findStationsInBbox(double minLat, double minLng, 
                                                           double maxLat, double maxLng) {
-        return webClient.get()
+        return stationsCache.get(new BboxKey(minLat, minLng, maxLat, maxLng),
+                key -> fetchStationsInBbox(minLat, minLng, maxLat, maxLng));
+    }
+
+    private Mono<List<ChargingStation>> fetchStationsInBbox(double minLat, double minLng, 
+                                                          double maxLat, double maxLng) {
+        return guard.call(() -> webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/poi")
-                        .queryParam("boundingbox", String.format("%f,%f,%f,%f", minLat, minLng, maxLat, maxLng))
-                        .queryParam("maxresults", 200)
+                        .queryParam("boundingbox", String.format("(%f,%f),(%f,%f)", minLat, minLng, maxLat, maxLng))
+                        .queryParam("maxresults", bboxMaxResults)
                         .queryParam("compact", true)
                         .queryParam("verbose", false)
                         .build())
                 .retrieve()
-                .bodyToMono(String.class)
-                .map(this::parseStationsResponse);
-    }
-
-    private List<ChargingStation> parseStationsResponse(String response) {
-        // This is a simplified parser - in production you'd use proper JSON parsing
-        // For MVP, we'll return mock data
-        return List.of(
-            new ChargingStation("OCM-001", "Shell Recharge Ellensburg", 46.99, -120.55, 
-                               List.of("CCS"), 350.0, true),
-            new ChargingStation("OCM-002", "Tesla Supercharger - Yakima", 46.60, -120.51, 
-                               List.of("Tesla"), 250.0, true),
-            new ChargingStation("OCM-003", "Electrify America - Kennewick", 46.21, -119.14, 
-                               List.of("CCS", "CHAdeMO"), 150.0, true)
-        );
+                .bodyToFlux(DataBuffer.class)
+                .as(OpenChargeMapClient::parseStations));
     }
 
-    // Response classes for OCM API (simplified for MVP)
-    public static class OcmResponse {
-        public List<OcmStation> data;
+    /**
+     * Parses POIs as the body streams in; each chunk is released as soon as it
+     * has been fed, so large bbox responses are never buffered whole.
+     */
+    static Mono<List<ChargingStation>> parseStations(Flux<DataBuffer> body) {
+        return Mono.defer(() -> {
+            List<ChargingStation> stations = new ArrayList<>();
+            OcmPoiParser parser = new OcmPoiParser((station, id) -> stations.add(station));
+            return body.doOnNext(buffer -> {
+                        try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                            while (chunks.hasNext()) {
+                                parser.feed(chunks.next());
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException("Failed to parse OpenChargeMap response", e);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .then(Mono.fromCallable(() -> {
+                        parser.endOfInput();
+                        return stations;
+                    }));
+        });
     }
 
-    public static class OcmStation {
-        public String ID;
-        public String Title;
-        public AddressInfo AddressInfo;
-        public List<Connection> Connections;
-        public StatusType StatusType;
-    }
-
-    public static class AddressInfo {
-        public double Latitude;
-        public double Longitude;
-    }
+    private record NearKey(double lat, double lng, double radiusKm) {}
 
-    public static class Connection {
-        public String ConnectionType;
-        public double PowerKW;
-        public StatusType StatusType;
-    }
-
-    public static class StatusType {
-        public String Title;
-        public boolean IsOperational;
-    }
+    private record BboxKey(double minLat, double minLng, double maxLat, double maxLng) {}
 }
-
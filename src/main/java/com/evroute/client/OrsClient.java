@@ -1,8 +1,9 @@
 package com.evroute.client;
 
-import com.evroute.model.LegSummary;
+import com.evroute.geo.PackedPolyline;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
@@ -13,45 +14,79 @@ import java.util.Map;
 @Component
 public class OrsClient {
 
+    // Most waypoints ORS accepts in one directions request
+    public static final int MAX_WAYPOINTS = 50;
+
     private final WebClient webClient;
     private final String apiKey;
+    // ORS quotas are per endpoint, so each has its own guard
+    private final UpstreamGuard geocodeGuard;
+    private final UpstreamGuard directionsGuard;
+    private final UpstreamGuard matrixGuard;
 
-    public OrsClient(@Value("${ors.api.key}") String apiKey) {
+    public OrsClient(@Value("${ors.api.key}") String apiKey, UpstreamGuards guards, UpstreamConnections connections) {
         this.apiKey = apiKey;
-        this.webClient = WebClient.builder()
+        this.geocodeGuard = guards.get("ors.geocode");
+        this.directionsGuard = guards.get("ors.directions");
+        this.matrixGuard = guards.get("ors.matrix");
+        this.webClient = connections.builder("ors")
                 .baseUrl("https://api.openrouteservice.org")
                 .defaultHeader("Authorization", apiKey)
                 .defaultHeader("Accept", "application/json")
                 .build();
     }
 
-    @Cacheable("geocode")
+    // Uncached; GeocodeService normalizes and caches queries
     public Mono<GeocodeResponse> geocode(String query) {
-        return webClient.get()
+        return geocodeGuard.call(() -> webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/geocode/search")
                         .queryParam("text", query)
                         .queryParam("size", "1")
                         .build())
                 .retrieve()
-                .bodyToMono(GeocodeResponse.class);
+                .bodyToMono(GeocodeResponse.class));
     }
 
-    @Cacheable("directions")
+    // Uncached; DirectionsService caches routes
     public Mono<DirectionsResponse> getDirections(double startLat, double startLng, 
                                                 double endLat, double endLng) {
-        String coordinates = String.format("%f,%f|%f,%f", startLng, startLat, endLng, endLat);
-        
-        return webClient.post()
-                .uri("/v2/directions/driving-car")
+        return getDirections(List.of(List.of(startLng, startLat), List.of(endLng, endLat)));
+    }
+
+    /**
+     * One route through every waypoint, given as [lng, lat] pairs, in order;
+     * at most {@link #MAX_WAYPOINTS}. The response has a segment per leg and
+     * the geometry index of each waypoint.
+     */
+    public Mono<DirectionsResponse> getDirections(List<List<Double>> coordinates) {
+        return directionsGuard.call(() -> webClient.post()
+                .uri("/v2/directions/driving-car/geojson")
                 .bodyValue(Map.of(
                         "coordinates", coordinates,
                         "instructions", false,
-                        "geometry", "geojson",
                         "elevation", false
                 ))
                 .retrieve()
-                .bodyToMono(DirectionsResponse.class);
+                .bodyToMono(DirectionsResponse.class));
+    }
+
+    /**
+     * Drive distances (metres) and durations (seconds) from each source to
+     * each destination; both are indexes into {@code locations}, given as
+     * [lng, lat] pairs.
+     */
+    public Mono<MatrixResponse> getMatrix(List<List<Double>> locations, List<Integer> sources, List<Integer> destinations) {
+        return matrixGuard.call(() -> webClient.post()
+                .uri("/v2/matrix/driving-car")
+                .bodyValue(Map.of(
+                        "locations", locations,
+                        "sources", sources,
+                        "destinations", destinations,
+                        "metrics", List.of("distance", "duration")
+                ))
+                .retrieve()
+                .bodyToMono(MatrixResponse.class));
     }
 
     // Response classes for ORS API
@@ -85,6 +120,8 @@ public class OrsClient {
         public static class Properties {
             public Summary summary;
             public List<Segment> segments;
+            @JsonProperty("way_points")
+            public List<Integer> wayPoints; // geometry index of each waypoint
         }
         
         public static class Summary {
@@ -105,8 +142,14 @@ public class OrsClient {
         }
         
         public static class Geometry {
-            public List<List<Double>> coordinates; // [[lng, lat], [lng, lat], ...]
+            // [[lng, lat], [lng, lat], ...] on the wire, packed as lat,lng
+            @JsonDeserialize(using = PackedPolyline.GeoJsonDeserializer.class)
+            public PackedPolyline coordinates;
         }
     }
-}
 
+    public static class MatrixResponse {
+        public List<List<Double>> distances; // meters, [source][destination]; null where unroutable
+        public List<List<Double>> durations; // seconds
+    }
+}
@@ -0,0 +1,138 @@
+package com.evroute.client;
+
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One connection pool per upstream provider, configured from
+ * {@code app.upstream.<provider>.pool.*} (see {@link UpstreamSettings}), and
+ * WebClient builders that use it.
+ *
+ * Pools are bounded in connections and in callers queued for one, so a slow
+ * provider holds a fixed number of sockets rather than one per request; idle
+ * connections are evicted in the background before the provider's load
+ * balancer drops them. HTTP/2 is offered where the server negotiates it, and
+ * responses are requested gzipped. The decoded-body limit is raised to fit
+ * long route geometries. Each pool reports its live occupancy, see
+ * {@link #stats()}.
+ */
+@Component
+public class UpstreamConnections {
+
+    private final UpstreamSettings settings;
+    private final WebClient.Builder webClientBuilder;
+    private final ConcurrentMap<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+    // Per pool, the metrics of each remote address it has connected to
+    private final ConcurrentMap<String, ConcurrentMap<String, ConnectionPoolMetrics>> metrics = new ConcurrentHashMap<>();
+
+    public UpstreamConnections(Environment environment, WebClient.Builder webClientBuilder) {
+        this.settings = new UpstreamSettings(environment);
+        this.webClientBuilder = webClientBuilder;
+    }
+
+    /** A copy of the shared builder, connected through the provider's pool. */
+    public WebClient.Builder builder(String provider) {
+        ConnectionProvider pool = providers.computeIfAbsent(provider, this::pool);
+        HttpClient client = HttpClient.create(pool)
+                .compress(settings.getBoolean(provider, "pool.compress", true))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                        (int) settings.getDuration(provider, "pool.connect-timeout", "5s").toMillis());
+        if (settings.getBoolean(provider, "pool.http2", true)) {
+            // Negotiated over TLS; servers without HTTP/2 stay on HTTP/1.1
+            client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        int maxInMemorySize = (int) settings.getDataSize(provider, "max-in-memory-size", "16MB").toBytes();
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(client))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxInMemorySize));
+    }
+
+    public Map<String, PoolStatistics> stats() {
+        Map<String, PoolStatistics> stats = new TreeMap<>();
+        providers.keySet().forEach(name -> stats.put(name, new PoolStatistics(
+                metrics.getOrDefault(name, new ConcurrentHashMap<>()).values(),
+                settings.getInt(name, "pool.max-connections", 50),
+                settings.getInt(name, "pool.pending-acquire-max", 200))));
+        return stats;
+    }
+
+    @PreDestroy
+    void close() {
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+
+    private ConnectionProvider pool(String provider) {
+        return ConnectionProvider.builder(provider)
+                // Both limits apply per remote address
+                .maxConnections(settings.getInt(provider, "pool.max-connections", 50))
+                .pendingAcquireMaxCount(settings.getInt(provider, "pool.pending-acquire-max", 200))
+                .pendingAcquireTimeout(settings.getDuration(provider, "pool.pending-acquire-timeout", "5s"))
+                .maxIdleTime(settings.getDuration(provider, "pool.max-idle-time", "30s"))
+                .maxLifeTime(settings.getDuration(provider, "pool.max-life-time", "10m"))
+                .evictInBackground(settings.getDuration(provider, "pool.evict-interval", "15s"))
+                .metrics(true, () -> new Registrar())
+                .build();
+    }
+
+    // Keeps the pool's live metrics instead of publishing them to a meter registry
+    private final class Registrar implements ConnectionProvider.MeterRegistrar {
+        @Override
+        public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics poolMetrics) {
+            metrics.computeIfAbsent(poolName, n -> new ConcurrentHashMap<>()).put(id, poolMetrics);
+        }
+
+        @Override
+        public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+            ConcurrentMap<String, ConnectionPoolMetrics> pools = metrics.get(poolName);
+            if (pools != null) {
+                pools.remove(id);
+            }
+        }
+    }
+
+    /** Occupancy of a provider's pool, summed over the addresses it has connected to, with its limits. */
+    public static class PoolStatistics {
+        private int acquired;
+        private int idle;
+        private int allocated;
+        private int maxConnections;
+        private int pending;
+        private int maxPending;
+
+        PoolStatistics(Collection<ConnectionPoolMetrics> pools, int maxConnections, int maxPending) {
+            for (ConnectionPoolMetrics pool : pools) {
+                acquired += pool.acquiredSize();
+                idle += pool.idleSize();
+                allocated += pool.allocatedSize();
+                pending += pool.pendingAcquireSize();
+            }
+            int addresses = Math.max(1, pools.size());
+            this.maxConnections = maxConnections * addresses;
+            this.maxPending = maxPending * addresses;
+        }
+
+        // Getters
+        public int getAcquired() { return acquired; }
+        public int getIdle() { return idle; }
+        public int getAllocated() { return allocated; }
+        public int getMaxConnections() { return maxConnections; }
+        public int getPending() { return pending; }
+        public int getMaxPending() { return maxPending; }
+        public double getSaturation() { return maxConnections > 0 ? (double) acquired / maxConnections : 0; }
+    }
+}
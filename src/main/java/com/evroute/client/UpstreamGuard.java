@@ -0,0 +1,262 @@
+package com.evroute.client;
+
+import com.evroute.metrics.Counter;
+import com.evroute.metrics.MetricRegistry;
+import com.evroute.metrics.Timer;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BandwidthBuilder;
+import io.github.bucket4j.Bucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Protects one upstream endpoint: a token bucket at the provider's quota, a
+ * timeout per attempt, retries with jittered exponential backoff, and a
+ * circuit breaker.
+ *
+ * A call waits at most {@code maxWait} for a token and is shed otherwise, so
+ * a burst queues briefly instead of piling up behind a slow provider. Only
+ * upstream trouble is retried (timeouts, connection errors, 429 and 5xx), and
+ * each retry also needs a token from the {@link RetryBudget} shared by all
+ * endpoints, so retries cannot multiply load during an outage. After
+ * {@code breakerFailures} failed attempts in a row the breaker opens and calls
+ * fail at once for {@code breakerOpenFor}; then a single probe decides whether
+ * it closes again.
+ *
+ * Calls that are shed, rejected by the open breaker or still failing after
+ * their retries end in {@link UpstreamUnavailableException}, which callers
+ * answer from cached or local data where they have it. Other errors, such as
+ * a 4xx for a bad request, pass through unchanged.
+ */
+public class UpstreamGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamGuard.class);
+
+    private final String name;
+    private final Bucket bucket;
+    private final Duration maxWait;
+    private final Duration timeout;
+    private final int retries;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+    private final double jitter;
+    private final RetryBudget retryBudget;
+    private final CircuitBreaker breaker;
+    private final ScheduledExecutorService scheduler;
+    private final Timer attempts;
+    private final Counter failures;
+    private final Counter retried;
+    private final Counter shed;
+    private final Counter circuitOpen;
+
+    /**
+     * @param requestsPerMinute sustained rate, 0 for no limit
+     * @param burst             tokens available at once
+     */
+    public UpstreamGuard(String name, int requestsPerMinute, int burst, Duration maxWait, Duration timeout,
+                         int retries, Duration backoff, Duration maxBackoff, double jitter,
+                         int breakerFailures, Duration breakerOpenFor,
+                         RetryBudget retryBudget, ScheduledExecutorService scheduler, MetricRegistry metrics) {
+        this.name = name;
+        this.bucket = requestsPerMinute > 0
+                ? Bucket.builder()
+                        .addLimit(Bandwidth.builder()
+                                .capacity(Math.max(1, burst))
+                                .refillGreedy(requestsPerMinute, Duration.ofMinutes(1))
+                                .build())
+                        .build()
+                : null;
+        this.maxWait = maxWait;
+        this.timeout = timeout;
+        this.retries = retries;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.jitter = jitter;
+        this.retryBudget = retryBudget;
+        this.breaker = new CircuitBreaker(breakerFailures, breakerOpenFor);
+        this.scheduler = scheduler;
+        this.attempts = metrics.timer("evroute_upstream_seconds", "Time per upstream attempt, including any wait for a rate-limit slot",
+                "upstream", name);
+        this.failures = metrics.counter("evroute_upstream_failures_total", "Upstream attempts that timed out, could not connect or got a 429 or 5xx",
+                "upstream", name);
+        this.retried = metrics.counter("evroute_upstream_retries_total", "Upstream attempts retried within the retry budget",
+                "upstream", name);
+        String rejectedHelp = "Upstream calls failed fast, by reason";
+        this.shed = metrics.counter("evroute_upstream_rejected_total", rejectedHelp, "upstream", name, "reason", "rate-limit");
+        this.circuitOpen = metrics.counter("evroute_upstream_rejected_total", rejectedHelp, "upstream", name, "reason", "circuit-open");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Subscribes to {@code request} once per attempt, under the limiter, timeout, retry and breaker. */
+    public <T> Mono<T> call(Supplier<Mono<T>> request) {
+        return Mono.defer(() -> {
+                    retryBudget.deposit();
+                    return attempt(request)
+                            .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                                long retry = signal.totalRetries();
+                                Throwable failure = signal.failure();
+                                // Shed and open-circuit failures are not retried; they would only queue again
+                                if (retry >= retries || failure instanceof UpstreamUnavailableException
+                                        || !isUpstreamFailure(failure) || !retryBudget.tryWithdraw()) {
+                                    return Mono.error(failure);
+                                }
+                                retried.increment();
+                                return Mono.delay(delay(retry));
+                            })));
+                })
+                .onErrorMap(UpstreamGuard::isUpstreamFailure,
+                        e -> new UpstreamUnavailableException(name + " failed: " + e.getMessage(), e));
+    }
+
+    private <T> Mono<T> attempt(Supplier<Mono<T>> request) {
+        return Mono.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                circuitOpen.increment();
+                return Mono.error(UpstreamUnavailableException.circuitOpen(name));
+            }
+            return attempts.time(acquire()
+                            .then(Mono.defer(request).timeout(timeout)))
+                    .doOnSuccess(value -> breaker.onSuccess())
+                    .doOnError(e -> {
+                        if (e instanceof UpstreamUnavailableException) {
+                            breaker.onCancel();
+                        } else if (isUpstreamFailure(e)) {
+                            failures.increment();
+                            breaker.onFailure();
+                        } else {
+                            breaker.onSuccess();
+                        }
+                    })
+                    .doOnCancel(breaker::onCancel);
+        });
+    }
+
+    // A token now, one reserved within maxWait, or shed
+    private Mono<Void> acquire() {
+        if (bucket == null) {
+            return Mono.empty();
+        }
+        if (bucket.tryConsume(1)) {
+            return Mono.empty();
+        }
+        return Mono.fromFuture(() -> bucket.asScheduler().tryConsume(1, maxWait, scheduler))
+                .flatMap(granted -> {
+                    if (granted) {
+                        return Mono.<Void>empty();
+                    }
+                    shed.increment();
+                    return Mono.error(new UpstreamUnavailableException(
+                            name + " rate limit: no request slot within " + maxWait.toMillis() + " ms"));
+                });
+    }
+
+    // Exponential from backoff, capped at maxBackoff, then cut by up to the jitter fraction
+    private Duration delay(long retry) {
+        long nanos = Math.min(maxBackoff.toNanos(), backoff.toNanos() << Math.min(retry, 20));
+        return Duration.ofNanos((long) (nanos * (1 - jitter * ThreadLocalRandom.current().nextDouble())));
+    }
+
+    static boolean isUpstreamFailure(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+        }
+        return e instanceof TimeoutException || e instanceof WebClientRequestException || e instanceof IOException;
+    }
+
+    /**
+     * Retries allowed across all upstreams: each call deposits {@code ratio}
+     * of a retry, up to {@code capacity} retries, and a floor of
+     * {@code minPerSecond} accrues with time so a quiet service can still retry.
+     */
+    public static final class RetryBudget {
+        // Bucket tokens per retry, so fractional deposits can be counted in whole tokens
+        private static final long SCALE = 1000;
+
+        private final Bucket bucket;
+        private final long deposit;
+
+        public RetryBudget(double ratio, int minPerSecond, int capacity) {
+            long tokens = Math.max(1, capacity) * SCALE;
+            // A bandwidth must refill; without a floor it refills a single token a day
+            BandwidthBuilder.BandwidthBuilderBuildStage limit = minPerSecond > 0
+                    ? Bandwidth.builder().capacity(tokens).refillGreedy(minPerSecond * SCALE, Duration.ofSeconds(1))
+                    : Bandwidth.builder().capacity(tokens).refillGreedy(1, Duration.ofDays(1));
+            this.bucket = Bucket.builder().addLimit(limit.build()).build();
+            this.deposit = Math.round(ratio * SCALE);
+        }
+
+        void deposit() {
+            if (deposit > 0) {
+                bucket.addTokens(deposit);
+            }
+        }
+
+        boolean tryWithdraw() {
+            return bucket.tryConsume(SCALE);
+        }
+    }
+
+    // Closed until enough consecutive failures, then open; after the open period one probe is let through
+    private final class CircuitBreaker {
+        private final int failureThreshold;
+        private final long openNanos;
+        private int failures;
+        private boolean open;
+        private long openUntil;
+        private boolean probing;
+
+        CircuitBreaker(int failureThreshold, Duration openFor) {
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openFor.toNanos();
+        }
+
+        synchronized boolean tryAcquire() {
+            if (!open || failureThreshold <= 0) {
+                return true;
+            }
+            if (probing || System.nanoTime() - openUntil < 0) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+
+        synchronized void onSuccess() {
+            if (open) {
+                log.info("{} recovered, closing its circuit", name);
+            }
+            failures = 0;
+            open = false;
+            probing = false;
+        }
+
+        synchronized void onFailure() {
+            failures++;
+            if (failureThreshold > 0 && (probing || (!open && failures >= failureThreshold))) {
+                log.warn("{} failed {} times in a row, opening its circuit for {} ms",
+                        name, failures, openNanos / 1_000_000);
+                open = true;
+                openUntil = System.nanoTime() + openNanos;
+                probing = false;
+            }
+        }
+
+        synchronized void onCancel() {
+            probing = false;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.evroute.client;
+
+import com.evroute.metrics.MetricRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Named {@link UpstreamGuard}s configured from {@code app.upstream.<name>.*}
+ * (see {@link UpstreamSettings}). All guards share one retry budget.
+ */
+@Component
+public class UpstreamGuards {
+
+    private final UpstreamSettings settings;
+    private final UpstreamGuard.RetryBudget retryBudget;
+    private final MetricRegistry metrics;
+    private final ConcurrentMap<String, UpstreamGuard> guards = new ConcurrentHashMap<>();
+    // Only completes token reservations once their wait is over
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "upstream-limiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public UpstreamGuards(Environment environment,
+                          MetricRegistry metrics,
+                          @Value("${app.upstream.retry-budget.ratio:0.1}") double retryRatio,
+                          @Value("${app.upstream.retry-budget.min-per-second:1}") int minRetriesPerSecond,
+                          @Value("${app.upstream.retry-budget.capacity:20}") int retryCapacity) {
+        this.settings = new UpstreamSettings(environment);
+        this.metrics = metrics;
+        this.retryBudget = new UpstreamGuard.RetryBudget(retryRatio, minRetriesPerSecond, retryCapacity);
+    }
+
+    public UpstreamGuard get(String name) {
+        return guards.computeIfAbsent(name, n -> new UpstreamGuard(n,
+                settings.getInt(n, "requests-per-minute", 0),
+                settings.getInt(n, "burst", 1),
+                settings.getDuration(n, "max-wait", "1s"),
+                settings.getDuration(n, "timeout", "10s"),
+                settings.getInt(n, "retries", 2),
+                settings.getDuration(n, "backoff", "200ms"),
+                settings.getDuration(n, "max-backoff", "2s"),
+                settings.getDouble(n, "jitter", 0.5),
+                settings.getInt(n, "breaker.failures", 5),
+                settings.getDuration(n, "breaker.open-for", "30s"),
+                retryBudget, scheduler, metrics));
+    }
+
+    @PreDestroy
+    void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,54 @@
+package com.evroute.client;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Reads {@code app.upstream.<name>.<key>}. Names are dotted, provider first
+ * ({@code ors.directions}); a key missing for a name is looked up on its
+ * parents and then under {@code app.upstream.default}.
+ */
+final class UpstreamSettings {
+
+    private final Environment environment;
+
+    UpstreamSettings(Environment environment) {
+        this.environment = environment;
+    }
+
+    String get(String name, String key, String fallback) {
+        for (String n = name; ; n = n.substring(0, n.lastIndexOf('.'))) {
+            String value = environment.getProperty("app.upstream." + n + "." + key);
+            if (value != null) {
+                return value.trim();
+            }
+            if (n.indexOf('.') < 0) {
+                break;
+            }
+        }
+        return environment.getProperty("app.upstream.default." + key, fallback).trim();
+    }
+
+    int getInt(String name, String key, int fallback) {
+        return Integer.parseInt(get(name, key, Integer.toString(fallback)));
+    }
+
+    double getDouble(String name, String key, double fallback) {
+        return Double.parseDouble(get(name, key, Double.toString(fallback)));
+    }
+
+    boolean getBoolean(String name, String key, boolean fallback) {
+        return Boolean.parseBoolean(get(name, key, Boolean.toString(fallback)));
+    }
+
+    Duration getDuration(String name, String key, String fallback) {
+        return DurationStyle.detectAndParse(get(name, key, fallback));
+    }
+
+    DataSize getDataSize(String name, String key, String fallback) {
+        return DataSize.parse(get(name, key, fallback));
+    }
+}
@@ -0,0 +1,35 @@
+package com.evroute.client;
+
+/**
+ * An upstream call was shed by its rate limiter, rejected by an open circuit
+ * breaker, or kept failing through its retries. Callers with cached or local
+ * data should answer from it.
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean circuitOpen;
+
+    public UpstreamUnavailableException(String message) {
+        this(message, null, false);
+    }
+
+    public UpstreamUnavailableException(String message, Throwable cause) {
+        this(message, cause, false);
+    }
+
+    private UpstreamUnavailableException(String message, Throwable cause, boolean circuitOpen) {
+        super(message, cause);
+        this.circuitOpen = circuitOpen;
+    }
+
+    /** The upstream's breaker is open, so its other calls will fail at once too. */
+    public static UpstreamUnavailableException circuitOpen(String upstream) {
+        return new UpstreamUnavailableException(upstream + " circuit is open", null, true);
+    }
+
+    public boolean isCircuitOpen() {
+        return circuitOpen;
+    }
+}
@@ -0,0 +1,49 @@
+package com.evroute.config;
+
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.client.UpstreamConnections;
+import com.evroute.metrics.MetricRegistry;
+import com.evroute.service.DirectionsCache;
+import com.evroute.service.DirectionsService;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Publishes statistics kept elsewhere through the {@link MetricRegistry}:
+ * cache hits and misses, directions cache reuse and connection pool
+ * occupancy, read on every scrape.
+ */
+@Configuration
+public class MetricsConfig {
+
+    public MetricsConfig(MetricRegistry metrics, ReactiveCacheManager cacheManager,
+                         DirectionsService directionsService, UpstreamConnections upstreamConnections) {
+        metrics.collector(out -> cacheManager.stats().forEach((name, stats) -> {
+            String requests = "Cache lookups by result";
+            out.counter("evroute_cache_requests_total", requests, stats.getHitCount(), "cache", name, "result", "hit");
+            out.counter("evroute_cache_requests_total", requests, stats.getMissCount(), "cache", name, "result", "miss");
+            out.counter("evroute_cache_evictions_total", "Entries evicted by size or expiry", stats.getEvictionCount(),
+                    "cache", name);
+            out.gauge("evroute_cache_size", "Approximate number of entries", stats.getEstimatedSize(), "cache", name);
+        }));
+
+        metrics.collector(out -> {
+            DirectionsCache.Statistics stats = directionsService.cacheStats();
+            String lookups = "Directions served by how they were found";
+            out.counter("evroute_directions_lookups_total", lookups, stats.getExactHits(), "source", "exact");
+            out.counter("evroute_directions_lookups_total", lookups, stats.getSubRouteHits(), "source", "sub-route");
+            out.counter("evroute_directions_lookups_total", lookups, stats.getUpstreamLoads(), "source", "upstream");
+        });
+
+        metrics.collector(out -> upstreamConnections.stats().forEach((provider, pool) -> {
+            String connections = "Pooled upstream connections by state";
+            out.gauge("evroute_upstream_pool_connections", connections, pool.getAcquired(), "provider", provider, "state", "acquired");
+            out.gauge("evroute_upstream_pool_connections", connections, pool.getIdle(), "provider", provider, "state", "idle");
+            out.gauge("evroute_upstream_pool_pending", "Callers waiting for a pooled connection", pool.getPending(),
+                    "provider", provider);
+            out.gauge("evroute_upstream_pool_max_connections", "Connection limit of the pool", pool.getMaxConnections(),
+                    "provider", provider);
+            out.gauge("evroute_upstream_pool_saturation", "Share of the connection limit in use", pool.getSaturation(),
+                    "provider", provider);
+        }));
+    }
+}
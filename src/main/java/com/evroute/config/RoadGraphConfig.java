@@ -0,0 +1,22 @@
+package com.evroute.config;
+
+import com.evroute.routing.RoadGraph;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class RoadGraphConfig {
+
+    @Bean
+    // Also loaded to route locally while ORS is unavailable
+    @ConditionalOnExpression("'${app.directions.provider}' == 'LOCAL' or '${app.directions.fallback:}' == 'LOCAL'")
+    public RoadGraph roadGraph(@Value("${app.routing.graph.path}") String path,
+                               @Value("${app.routing.snap-radius-km:5}") double snapRadiusKm) throws IOException {
+        return RoadGraph.open(Path.of(path), snapRadiusKm);
+    }
+}
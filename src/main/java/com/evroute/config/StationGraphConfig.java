@@ -0,0 +1,20 @@
+package com.evroute.config;
+
+import com.evroute.routing.StationGraph;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class StationGraphConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.routing.station-graph.path")
+    public StationGraph stationGraph(@Value("${app.routing.station-graph.path}") String path) throws IOException {
+        return StationGraph.open(Path.of(path));
+    }
+}
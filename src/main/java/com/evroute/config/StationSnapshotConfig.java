@@ -0,0 +1,21 @@
+package com.evroute.config;
+
+import com.evroute.snapshot.StationSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class StationSnapshotConfig {
+
+    @Bean
+    // Also loaded to answer from the snapshot while OCM is unavailable
+    @ConditionalOnExpression("'${app.stations.provider}' == 'LOCAL' or '${app.stations.fallback:}' == 'LOCAL'")
+    public StationSnapshot stationSnapshot(@Value("${app.stations.snapshot.path}") String path) throws IOException {
+        return StationSnapshot.open(Path.of(path));
+    }
+}
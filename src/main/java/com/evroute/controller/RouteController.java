@@ -1,13 +1,27 @@
 package com.evroute.controller;
 
+import com.evroute.cache.ReactiveCache;
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.client.UpstreamConnections;
+import com.evroute.client.UpstreamUnavailableException;
+import com.evroute.metrics.MetricRegistry;
 import com.evroute.model.*;
+import com.evroute.service.BatchPlanningService;
+import com.evroute.service.DirectionsCache;
+import com.evroute.service.DirectionsService;
 import com.evroute.service.PlanningService;
 import com.evroute.service.StationsService;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
@@ -15,36 +29,115 @@ import java.util.List;
 public class RouteController {
 
     private final PlanningService planningService;
+    private final BatchPlanningService batchPlanningService;
     private final StationsService stationsService;
-
-    public RouteController(PlanningService planningService, StationsService stationsService) {
+    private final DirectionsService directionsService;
+    private final ReactiveCacheManager cacheManager;
+    private final UpstreamConnections upstreamConnections;
+    private final MetricRegistry metrics;
+
+    public RouteController(PlanningService planningService, BatchPlanningService batchPlanningService,
+                           StationsService stationsService, DirectionsService directionsService,
+                           ReactiveCacheManager cacheManager, UpstreamConnections upstreamConnections,
+                           MetricRegistry metrics) {
         this.planningService = planningService;
+        this.batchPlanningService = batchPlanningService;
         this.stationsService = stationsService;
+        this.directionsService = directionsService;
+        this.cacheManager = cacheManager;
+        this.upstreamConnections = upstreamConnections;
+        this.metrics = metrics;
     }
 
     @PostMapping("/route/plan")
-    public ResponseEntity<RoutePlan> planRoute(@Valid @RequestBody RouteRequest request) {
-        try {
-            RoutePlan plan = planningService.planRoute(request).block();
-            return ResponseEntity.ok(plan);
-        } catch (Exception e) {
-            // In production, you'd have proper error handling
-            throw new RuntimeException("Failed to plan route: " + e.getMessage(), e);
-        }
+    public Mono<ResponseEntity<RoutePlan>> planRoute(
+            @Valid @RequestBody RouteRequest request,
+            @RequestParam(name = "polyline", defaultValue = "coordinates") String polylineFormat,
+            @RequestParam(required = false) Integer zoom,
+            @RequestParam(required = false) Double toleranceM) {
+        return planningService.planRoute(request)
+                .map(plan -> forDisplay(plan, polylineFormat, zoom, toleranceM))
+                .map(ResponseEntity::ok)
+                // In production, you'd have proper error handling
+                .onErrorMap(e -> !(e instanceof UpstreamUnavailableException),
+                        e -> new RuntimeException("Failed to plan route: " + e.getMessage(), e));
+    }
+
+    @PostMapping(value = "/route/plan/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> planRouteStream(
+            @Valid @RequestBody RouteRequest request,
+            @RequestParam(name = "polyline", defaultValue = "coordinates") String polylineFormat,
+            @RequestParam(required = false) Integer zoom,
+            @RequestParam(required = false) Double toleranceM) {
+        return planningService.planRouteStream(request)
+                // Failures end the stream with an error event rather than a dropped connection
+                .onErrorResume(e -> Flux.just(PlanEvent.error("Failed to plan route: " + e.getMessage())))
+                .map(event -> ServerSentEvent.builder(event.getData() instanceof RoutePlan plan
+                                ? forDisplay(plan, polylineFormat, zoom, toleranceM)
+                                : event.getData())
+                        .event(event.getType())
+                        .build());
+    }
+
+    /**
+     * Plans many requests at once, streaming one JSON line per request as it
+     * completes. Failed requests carry an error instead of a plan.
+     */
+    @PostMapping(value = "/route/plan/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchRouteResult> planRouteBatch(
+            @Valid @RequestBody BatchRouteRequest batch,
+            @RequestParam(name = "polyline", defaultValue = "coordinates") String polylineFormat,
+            @RequestParam(required = false) Integer zoom,
+            @RequestParam(required = false) Double toleranceM) {
+        return batchPlanningService.planBatch(batch.getRequests())
+                .map(result -> result.getPlan() == null ? result
+                        : result.withPlan(forDisplay(result.getPlan(), polylineFormat, zoom, toleranceM)));
+    }
+
+    /**
+     * Plans one origin/destination for several vehicles and returns their
+     * total time, energy and stops side by side.
+     */
+    @PostMapping("/route/compare")
+    public Mono<ResponseEntity<RouteComparison>> compareVehicles(
+            @Valid @RequestBody CompareRequest request,
+            @RequestParam(name = "polyline", defaultValue = "coordinates") String polylineFormat,
+            @RequestParam(required = false) Integer zoom,
+            @RequestParam(required = false) Double toleranceM) {
+        return planningService.compareVehicles(request)
+                .map(comparison -> {
+                    RoutePlan route = new RoutePlan(comparison.getRoute(), List.of(), null, 0, 0, 0);
+                    route.setPyramid(comparison.getPyramid());
+                    return comparison.withRoute(forDisplay(route, polylineFormat, zoom, toleranceM).getOverall());
+                })
+                .map(ResponseEntity::ok)
+                .onErrorMap(e -> !(e instanceof UpstreamUnavailableException),
+                        e -> new RuntimeException("Failed to compare vehicles: " + e.getMessage(), e));
+    }
+
+    // ?zoom= / ?toleranceM= simplify the geometry; ?polyline=encoded returns Google encoded
+    // polylines, roughly a tenth of the JSON size
+    private RoutePlan forDisplay(RoutePlan plan, String polylineFormat, Integer zoom, Double toleranceM) {
+        RoutePlan display = plan.withSimplifiedPolylines(zoom, toleranceM);
+        return "encoded".equalsIgnoreCase(polylineFormat) ? display.withEncodedPolylines() : display;
     }
 
     @GetMapping("/stations/near")
-    public ResponseEntity<List<ChargingStation>> findStationsNear(
+    public Mono<ResponseEntity<List<ChargingStation>>> findStationsNear(
             @RequestParam double lat,
             @RequestParam double lng,
             @RequestParam(defaultValue = "10") double radiusKm) {
         
-        try {
-            List<ChargingStation> stations = stationsService.findStationsNear(lat, lng, radiusKm).block();
-            return ResponseEntity.ok(stations);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to find stations: " + e.getMessage(), e);
-        }
+        return stationsService.findStationsNear(lat, lng, radiusKm)
+                .map(ResponseEntity::ok)
+                .onErrorMap(e -> !(e instanceof UpstreamUnavailableException),
+                        e -> new RuntimeException("Failed to find stations: " + e.getMessage(), e));
+    }
+
+    // An upstream is down and there was nothing local to answer from; the client can retry later
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<Map<String, String>> upstreamUnavailable(UpstreamUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
     }
 
     @GetMapping("/health")
@@ -52,6 +145,27 @@ public class RouteController {
         return ResponseEntity.ok(new HealthResponse("OK", "EV Route Optimizer is running"));
     }
 
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, ReactiveCache.Statistics>> cacheStats() {
+        return ResponseEntity.ok(cacheManager.stats());
+    }
+
+    @GetMapping("/cache/directions")
+    public ResponseEntity<DirectionsCache.Statistics> directionsCacheStats() {
+        return ResponseEntity.ok(directionsService.cacheStats());
+    }
+
+    @GetMapping("/upstream/pools")
+    public ResponseEntity<Map<String, UpstreamConnections.PoolStatistics>> upstreamPools() {
+        return ResponseEntity.ok(upstreamConnections.stats());
+    }
+
+    // Prometheus text exposition format
+    @GetMapping(value = "/metrics", produces = "text/plain;version=0.0.4;charset=utf-8")
+    public ResponseEntity<String> metrics() {
+        return ResponseEntity.ok(metrics.scrape());
+    }
+
     @GetMapping("/ev/presets")
     public ResponseEntity<List<EVPreset>> getEVPresets() {
         List<EVPreset> presets = List.of(
@@ -0,0 +1,116 @@
+package com.evroute.geo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decomposes a route corridor into tiles of a fixed lat/lng grid.
+ *
+ * Tiles are aligned to the grid rather than to the route, so two routes that
+ * share a stretch of road produce identical tiles there and can share cached
+ * per-tile results. Tiles are returned in the order the route first touches
+ * them.
+ */
+public final class CorridorTiles {
+
+    private CorridorTiles() {}
+
+    public static List<Tile> cover(PackedPolyline polyline, double radiusKm, double tileDegrees) {
+        Set<Tile> tiles = new LinkedHashSet<>();
+        if (polyline == null || polyline.isEmpty()) {
+            return new ArrayList<>(tiles);
+        }
+
+        // Sample long segments every quarter tile; padding each sample by half that spacing
+        // covers the corridor between samples too
+        double sampleDegrees = tileDegrees / 4.0;
+        double latPad = GeoUtils.kmToLatDegrees(radiusKm) + sampleDegrees / 2.0;
+        // Dense polylines revisit the same tiles vertex after vertex; skip repeats cheaply
+        int lastRowLo = Integer.MIN_VALUE, lastRowHi = 0, lastColLo = 0, lastColHi = 0;
+
+        for (int s = 0; s < polyline.size(); s++) {
+            int e = Math.min(s + 1, polyline.size() - 1);
+            double aLat = polyline.lat(s), aLng = polyline.lng(s);
+            double bLat = polyline.lat(e), bLng = polyline.lng(e);
+            double span = Math.max(Math.abs(bLat - aLat), Math.abs(bLng - aLng));
+            int samples = Math.max(1, (int) Math.ceil(span / sampleDegrees));
+            for (int k = 0; k <= samples; k++) {
+                double t = (double) k / samples;
+                double lat = aLat + t * (bLat - aLat);
+                double lng = aLng + t * (bLng - aLng);
+                double lngPad = GeoUtils.kmToLngDegrees(radiusKm, lat) + sampleDegrees / 2.0;
+
+                int rowLo = row(lat - latPad, tileDegrees);
+                int rowHi = row(lat + latPad, tileDegrees);
+                int colLo = col(lng - lngPad, tileDegrees);
+                int colHi = col(lng + lngPad, tileDegrees);
+                if (rowLo == lastRowLo && rowHi == lastRowHi && colLo == lastColLo && colHi == lastColHi) {
+                    continue;
+                }
+                lastRowLo = rowLo;
+                lastRowHi = rowHi;
+                lastColLo = colLo;
+                lastColHi = colHi;
+                for (int r = rowLo; r <= rowHi; r++) {
+                    for (int c = colLo; c <= colHi; c++) {
+                        tiles.add(new Tile(r, c, tileDegrees));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(tiles);
+    }
+
+    private static int row(double lat, double tileDegrees) {
+        return (int) Math.floor((Math.max(-90.0, Math.min(90.0, lat)) + 90.0) / tileDegrees);
+    }
+
+    private static int col(double lng, double tileDegrees) {
+        return (int) Math.floor((Math.max(-180.0, Math.min(180.0, lng)) + 180.0) / tileDegrees);
+    }
+
+    public static final class Tile {
+        private final int row;
+        private final int col;
+        private final double sizeDegrees;
+
+        public Tile(int row, int col, double sizeDegrees) {
+            this.row = row;
+            this.col = col;
+            this.sizeDegrees = sizeDegrees;
+        }
+
+        public int getRow() { return row; }
+        public int getCol() { return col; }
+
+        public double getMinLat() { return row * sizeDegrees - 90.0; }
+        public double getMaxLat() { return (row + 1) * sizeDegrees - 90.0; }
+        public double getMinLng() { return col * sizeDegrees - 180.0; }
+        public double getMaxLng() { return (col + 1) * sizeDegrees - 180.0; }
+
+        /** Stable identifier within one grid size. */
+        public long key() {
+            return ((long) row << 32) | (col & 0xffffffffL);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Tile)) return false;
+            Tile other = (Tile) o;
+            return row == other.row && col == other.col && sizeDegrees == other.sizeDegrees;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * row + col) + Double.hashCode(sizeDegrees);
+        }
+
+        @Override
+        public String toString() {
+            return "Tile{" + row + "," + col + " @" + sizeDegrees + "°}";
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.evroute.geo;
+
+public final class GeoUtils {
+
+    public static final double EARTH_RADIUS_KM = 6371.0;
+    public static final double KM_PER_DEGREE_LAT = 111.0;
+
+    private GeoUtils() {}
+
+    public static double haversineKm(double lat1, double lng1, double lat2, double lng2) {
+        // Haversine formula for great circle distance
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
+                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                   Math.sin(dLng/2) * Math.sin(dLng/2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
+        return EARTH_RADIUS_KM * c;
+    }
+
+    public static double kmToLatDegrees(double km) {
+        return km / KM_PER_DEGREE_LAT;
+    }
+
+    public static double kmToLngDegrees(double km, double atLat) {
+        // Clamp the cosine so the expansion stays finite near the poles
+        double cos = Math.max(Math.cos(Math.toRadians(atLat)), 0.01);
+        return km / (KM_PER_DEGREE_LAT * cos);
+    }
+
+    /**
+     * Distance in km from point P to segment AB using a local equirectangular
+     * projection centred on A. Accurate to well under 1% for segments of a few
+     * hundred km, which is all a route polyline ever contains.
+     */
+    public static double pointToSegmentKm(double pLat, double pLng,
+                                          double aLat, double aLng,
+                                          double bLat, double bLng) {
+        return Math.sqrt(pointToSegmentKmSquared(pLat, pLng, aLat, aLng, bLat, bLng));
+    }
+
+    public static double pointToSegmentKmSquared(double pLat, double pLng,
+                                                 double aLat, double aLng,
+                                                 double bLat, double bLng) {
+        double kx = Math.cos(Math.toRadians(aLat)) * KM_PER_DEGREE_LAT;
+        double ky = KM_PER_DEGREE_LAT;
+        double bx = (bLng - aLng) * kx;
+        double by = (bLat - aLat) * ky;
+        double px = (pLng - aLng) * kx;
+        double py = (pLat - aLat) * ky;
+        double t = segmentFraction(px, py, bx, by);
+        double dx = px - t * bx;
+        double dy = py - t * by;
+        return dx * dx + dy * dy;
+    }
+
+    static double segmentFraction(double px, double py, double bx, double by) {
+        double len2 = bx * bx + by * by;
+        if (len2 == 0) {
+            return 0;
+        }
+        double t = (px * bx + py * by) / len2;
+        return t < 0 ? 0 : (t > 1 ? 1 : t);
+    }
+}
@@ -0,0 +1,252 @@
+package com.evroute.geo;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable route polyline stored as one interleaved {@code double[]} of
+ * lat,lng pairs.
+ *
+ * A vertex costs 16 bytes instead of a {@code double[2]} object plus a list
+ * slot, and sub-polylines are views over the same array, so slicing a route
+ * into legs copies nothing. JSON keeps the existing {@code [[lat, lng], ...]}
+ * shape; {@link #encode()} gives the Google encoded-polyline form.
+ */
+@JsonSerialize(using = PackedPolyline.Serializer.class)
+@JsonDeserialize(using = PackedPolyline.Deserializer.class)
+public final class PackedPolyline {
+
+    public static final PackedPolyline EMPTY = new PackedPolyline(new double[0], 0, 0);
+
+    private static final double ENCODING_SCALE = 1e5;
+
+    private final double[] coords;
+    private final int offset;
+    private final int size;
+
+    private PackedPolyline(double[] coords, int offset, int size) {
+        this.coords = coords;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /** Wraps interleaved lat,lng pairs without copying; the array must not be modified afterwards. */
+    public static PackedPolyline wrap(double[] latLng) {
+        if (latLng.length % 2 != 0) {
+            throw new IllegalArgumentException("Odd coordinate count: " + latLng.length);
+        }
+        return new PackedPolyline(latLng, 0, latLng.length / 2);
+    }
+
+    public static PackedPolyline of(List<double[]> points) {
+        double[] latLng = new double[points.size() * 2];
+        for (int i = 0; i < points.size(); i++) {
+            latLng[2 * i] = points.get(i)[0];
+            latLng[2 * i + 1] = points.get(i)[1];
+        }
+        return new PackedPolyline(latLng, 0, points.size());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double lat(int i) {
+        return coords[2 * (offset + i)];
+    }
+
+    public double lng(int i) {
+        return coords[2 * (offset + i) + 1];
+    }
+
+    /** Zero-copy view of vertices [from, to). */
+    public PackedPolyline subPolyline(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + size);
+        }
+        return new PackedPolyline(coords, offset + from, to - from);
+    }
+
+    /**
+     * Vertex offset of this polyline inside {@code base} when it is a view
+     * over the same storage, otherwise -1.
+     */
+    public int offsetWithin(PackedPolyline base) {
+        if (coords != base.coords || offset < base.offset || offset + size > base.offset + base.size) {
+            return -1;
+        }
+        return offset - base.offset;
+    }
+
+    /** Interleaved lat,lng copy of this polyline. */
+    public double[] toArray() {
+        return Arrays.copyOfRange(coords, 2 * offset, 2 * (offset + size));
+    }
+
+    /** Google encoded-polyline string (precision 5, lat before lng). */
+    public String encode() {
+        StringBuilder out = new StringBuilder(size * 8);
+        long prevLat = 0, prevLng = 0;
+        for (int i = 0; i < size; i++) {
+            long lat = Math.round(lat(i) * ENCODING_SCALE);
+            long lng = Math.round(lng(i) * ENCODING_SCALE);
+            encodeValue(lat - prevLat, out);
+            encodeValue(lng - prevLng, out);
+            prevLat = lat;
+            prevLng = lng;
+        }
+        return out.toString();
+    }
+
+    public static PackedPolyline decode(String encoded) {
+        Builder builder = new Builder(encoded.length() / 4);
+        int[] index = {0};
+        long lat = 0, lng = 0;
+        while (index[0] < encoded.length()) {
+            lat += decodeValue(encoded, index);
+            lng += decodeValue(encoded, index);
+            builder.add(lat / ENCODING_SCALE, lng / ENCODING_SCALE);
+        }
+        return builder.build();
+    }
+
+    private static void encodeValue(long delta, StringBuilder out) {
+        long value = delta < 0 ? ~(delta << 1) : delta << 1;
+        while (value >= 0x20) {
+            out.append((char) ((0x20 | (value & 0x1f)) + 63));
+            value >>= 5;
+        }
+        out.append((char) (value + 63));
+    }
+
+    private static long decodeValue(String encoded, int[] index) {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (index[0] >= encoded.length()) {
+                throw new IllegalArgumentException("Truncated encoded polyline");
+            }
+            b = encoded.charAt(index[0]++) - 63;
+            result |= (long) (b & 0x1f) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        return (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+    }
+
+    @Override
+    public String toString() {
+        return "PackedPolyline{" + size + " vertices}";
+    }
+
+    /** Growable builder; {@link #build()} hands over the array without copying it again. */
+    public static final class Builder {
+        private double[] coords;
+        private int size;
+
+        public Builder() {
+            this(64);
+        }
+
+        public Builder(int expectedSize) {
+            this.coords = new double[Math.max(expectedSize, 1) * 2];
+        }
+
+        public Builder add(double lat, double lng) {
+            if (2 * size + 2 > coords.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            }
+            coords[2 * size] = lat;
+            coords[2 * size + 1] = lng;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public PackedPolyline build() {
+            double[] exact = coords.length == 2 * size ? coords : Arrays.copyOf(coords, 2 * size);
+            return new PackedPolyline(exact, 0, size);
+        }
+    }
+
+    /** Writes {@code [[lat, lng], ...]} straight from the primitive array. */
+    public static class Serializer extends JsonSerializer<PackedPolyline> {
+        @Override
+        public void serialize(PackedPolyline polyline, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartArray(polyline, polyline.size);
+            for (int i = 0; i < polyline.size; i++) {
+                gen.writeStartArray();
+                gen.writeNumber(polyline.lat(i));
+                gen.writeNumber(polyline.lng(i));
+                gen.writeEndArray();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    /** Reads {@code [[lat, lng], ...]}. */
+    public static class Deserializer extends JsonDeserializer<PackedPolyline> {
+        @Override
+        public PackedPolyline deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return read(p, ctxt, false);
+        }
+    }
+
+    /** Reads GeoJSON LineString coordinates, {@code [[lng, lat(, elevation)], ...]}. */
+    public static class GeoJsonDeserializer extends JsonDeserializer<PackedPolyline> {
+        @Override
+        public PackedPolyline deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return read(p, ctxt, true);
+        }
+    }
+
+    private static PackedPolyline read(JsonParser p, DeserializationContext ctxt, boolean lngFirst) throws IOException {
+        if (!p.isExpectedStartArrayToken()) {
+            return (PackedPolyline) ctxt.handleUnexpectedToken(PackedPolyline.class, p);
+        }
+        Builder builder = new Builder();
+        while (p.nextToken() == JsonToken.START_ARRAY) {
+            double first = nextCoordinate(p, ctxt);
+            double second = nextCoordinate(p, ctxt);
+            // Anything past the pair (GeoJSON elevation) is ignored
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                p.skipChildren();
+            }
+            if (lngFirst) {
+                builder.add(second, first);
+            } else {
+                builder.add(first, second);
+            }
+        }
+        if (p.currentToken() != JsonToken.END_ARRAY) {
+            return (PackedPolyline) ctxt.handleUnexpectedToken(PackedPolyline.class, p);
+        }
+        return builder.build();
+    }
+
+    private static double nextCoordinate(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.nextToken();
+        if (token == null || !token.isNumeric()) {
+            return (Double) ctxt.handleUnexpectedToken(Double.class, p);
+        }
+        return p.getDoubleValue();
+    }
+}
@@ -0,0 +1,174 @@
+package com.evroute.geo;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Multi-resolution view of a route polyline for display.
+ *
+ * Douglas-Peucker is run once to full depth, recording for every vertex the
+ * tolerance (metres) at which it would be dropped. A child's value is capped
+ * at its parent's, so the kept set shrinks monotonically as the tolerance
+ * grows and any level is a single O(n) filter over the precomputed values.
+ * The endpoints of the route, and of any leg simplified through it, are
+ * always kept. Whole-route levels for map zooms are memoized until they hold
+ * as many vertices as the route itself; later levels are filtered per call,
+ * so {@link #retainedBytes()} is a bound that holds from construction on.
+ * Legs and arbitrary tolerances are always filtered per call: they are O(n)
+ * over views of the route and not worth their memory.
+ */
+public final class PolylinePyramid {
+
+    public static final int MAX_ZOOM = 22;
+
+    // Web Mercator ground resolution at zoom 0 on the equator, metres per 256 px tile pixel
+    private static final double METRES_PER_PIXEL_Z0 = 156_543.03392;
+
+    private final PackedPolyline polyline;
+    private final float[] significanceM;
+    private final double maxAbsLat;
+    private final AtomicReferenceArray<PackedPolyline> zoomLevels = new AtomicReferenceArray<>(MAX_ZOOM + 1);
+    private final AtomicInteger memoizedVertices = new AtomicInteger();
+
+    private PolylinePyramid(PackedPolyline polyline, float[] significanceM, double maxAbsLat) {
+        this.polyline = polyline;
+        this.significanceM = significanceM;
+        this.maxAbsLat = maxAbsLat;
+    }
+
+    public static PolylinePyramid of(PackedPolyline polyline) {
+        int n = polyline.size();
+        float[] significance = new float[n];
+        double maxAbsLat = 0;
+        for (int i = 0; i < n; i++) {
+            maxAbsLat = Math.max(maxAbsLat, Math.abs(polyline.lat(i)));
+        }
+        if (n > 0) {
+            significance[0] = Float.POSITIVE_INFINITY;
+            significance[n - 1] = Float.POSITIVE_INFINITY;
+        }
+
+        // Iterative Douglas-Peucker: each frame is (first, last, parent significance)
+        int[] ranges = new int[64];
+        float[] caps = new float[32];
+        int top = 0;
+        if (n > 2) {
+            ranges[0] = 0;
+            ranges[1] = n - 1;
+            caps[0] = Float.POSITIVE_INFINITY;
+            top = 1;
+        }
+        while (top > 0) {
+            top--;
+            int first = ranges[2 * top];
+            int last = ranges[2 * top + 1];
+            float cap = caps[top];
+
+            // Local equirectangular frame centred on the first vertex
+            double aLat = polyline.lat(first), aLng = polyline.lng(first);
+            double kx = Math.cos(Math.toRadians(aLat)) * GeoUtils.KM_PER_DEGREE_LAT;
+            double ky = GeoUtils.KM_PER_DEGREE_LAT;
+            double bx = (polyline.lng(last) - aLng) * kx;
+            double by = (polyline.lat(last) - aLat) * ky;
+            int split = -1;
+            double worstSq = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = (polyline.lng(i) - aLng) * kx;
+                double py = (polyline.lat(i) - aLat) * ky;
+                double t = GeoUtils.segmentFraction(px, py, bx, by);
+                double dx = px - t * bx;
+                double dy = py - t * by;
+                double d2 = dx * dx + dy * dy;
+                if (d2 > worstSq) {
+                    worstSq = d2;
+                    split = i;
+                }
+            }
+            if (split < 0) {
+                continue;
+            }
+            float value = Math.min(cap, (float) (Math.sqrt(worstSq) * 1000.0));
+            significance[split] = value;
+
+            if (2 * (top + 2) > ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                caps = Arrays.copyOf(caps, caps.length * 2);
+            }
+            if (split - first > 1) {
+                ranges[2 * top] = first;
+                ranges[2 * top + 1] = split;
+                caps[top++] = value;
+            }
+            if (last - split > 1) {
+                ranges[2 * top] = split;
+                ranges[2 * top + 1] = last;
+                caps[top++] = value;
+            }
+        }
+        return new PolylinePyramid(polyline, significance, maxAbsLat);
+    }
+
+    public PackedPolyline getPolyline() {
+        return polyline;
+    }
+
+    /**
+     * Most bytes this pyramid holds beyond its polyline: 4 per vertex of
+     * significance, and memoized zoom levels of at most the route's own 16
+     * per vertex.
+     */
+    public long retainedBytes() {
+        return polyline.size() * (4L + 16L);
+    }
+
+    /** Tolerance that keeps the route within about one screen pixel at this zoom. */
+    public double toleranceForZoom(int zoom) {
+        int z = Math.max(0, Math.min(MAX_ZOOM, zoom));
+        return METRES_PER_PIXEL_Z0 * Math.cos(Math.toRadians(maxAbsLat)) / (1L << z);
+    }
+
+    public PackedPolyline atZoom(int zoom) {
+        int z = Math.max(0, Math.min(MAX_ZOOM, zoom));
+        PackedPolyline level = zoomLevels.get(z);
+        if (level == null) {
+            level = simplify(toleranceForZoom(z));
+            if (memoizedVertices.addAndGet(level.size()) > polyline.size() || !zoomLevels.compareAndSet(z, null, level)) {
+                memoizedVertices.addAndGet(-level.size());
+            }
+        }
+        return level;
+    }
+
+    public PackedPolyline simplify(double toleranceM) {
+        return filter(0, polyline.size(), toleranceM);
+    }
+
+    /**
+     * Simplifies a leg of this route. Legs produced by {@link RouteProfile#slice}
+     * are views over the same vertices and reuse the precomputed values; any
+     * other polyline gets a pyramid of its own.
+     */
+    public PackedPolyline simplify(PackedPolyline leg, double toleranceM) {
+        int from = leg.offsetWithin(polyline);
+        if (from < 0) {
+            return of(leg).simplify(toleranceM);
+        }
+        return filter(from, from + leg.size(), toleranceM);
+    }
+
+    private PackedPolyline filter(int from, int to, double toleranceM) {
+        if (to - from <= 2 || toleranceM <= 0) {
+            return polyline.subPolyline(from, to);
+        }
+        PackedPolyline.Builder kept = new PackedPolyline.Builder();
+        kept.add(polyline.lat(from), polyline.lng(from));
+        for (int i = from + 1; i < to - 1; i++) {
+            if (significanceM[i] > toleranceM) {
+                kept.add(polyline.lat(i), polyline.lng(i));
+            }
+        }
+        kept.add(polyline.lat(to - 1), polyline.lng(to - 1));
+        return kept.build();
+    }
+}
@@ -0,0 +1,67 @@
+package com.evroute.geo;
+
+import com.evroute.model.ChargingStation;
+import com.evroute.planning.StationDetours;
+
+import java.util.List;
+
+/**
+ * A route together with the usable stations near it, projected to their
+ * chainage. Nothing here depends on the vehicle, so one corridor is built per
+ * route and shared, read-only, by every plan made along it.
+ *
+ * Detours start as a straight-line estimate from each station's offset and
+ * can be replaced with measured drive costs via {@link #withDetours}.
+ */
+public final class RouteCorridor {
+    private final RouteProfile profile;
+    private final List<RouteStation> stations;
+    private final double[] chainageKm;
+    private final double[] stationKw;
+    private final StationDetours detours;
+
+    private RouteCorridor(RouteProfile profile, List<RouteStation> stations) {
+        this.profile = profile;
+        this.stations = stations;
+        this.chainageKm = new double[stations.size()];
+        this.stationKw = new double[stations.size()];
+        double[] offsetKm = new double[stations.size()];
+        for (int i = 0; i < chainageKm.length; i++) {
+            chainageKm[i] = stations.get(i).getChainageKm();
+            stationKw[i] = stations.get(i).getStation().getMaxKw();
+            offsetKm[i] = stations.get(i).getOffsetKm();
+        }
+        this.detours = StationDetours.straightLine(offsetKm);
+    }
+
+    private RouteCorridor(RouteCorridor corridor, StationDetours detours) {
+        this.profile = corridor.profile;
+        this.stations = corridor.stations;
+        this.chainageKm = corridor.chainageKm;
+        this.stationKw = corridor.stationKw;
+        this.detours = detours;
+    }
+
+    /** Keeps operational stations with a known power rating within {@code radiusKm} of the route. */
+    public static RouteCorridor build(RouteProfile profile, List<ChargingStation> stations, double radiusKm) {
+        List<ChargingStation> usable = stations.stream()
+                .filter(station -> station.isOperational() && station.getMaxKw() > 0)
+                .toList();
+        return new RouteCorridor(profile, StationIndex.build(usable).findNearRoute(profile, radiusKm));
+    }
+
+    /** Same corridor with the given detours, which must be parallel to the stations. */
+    public RouteCorridor withDetours(StationDetours detours) {
+        if (detours.size() != stations.size()) {
+            throw new IllegalArgumentException("Expected detours for " + stations.size() + " stations, got " + detours.size());
+        }
+        return new RouteCorridor(this, detours);
+    }
+
+    // Getters; the arrays are shared and must not be modified
+    public RouteProfile getProfile() { return profile; }
+    public List<RouteStation> getStations() { return stations; }
+    public double[] getChainageKm() { return chainageKm; }
+    public double[] getStationKw() { return stationKw; }
+    public StationDetours getDetours() { return detours; }
+}
@@ -0,0 +1,137 @@
+package com.evroute.geo;
+
+/**
+ * Cumulative-distance ("chainage") profile of a route polyline.
+ *
+ * Built once per route in O(n); afterwards km-to-segment lookups are a binary
+ * search over a primitive array and leg slices are views over the original
+ * polyline, so no coordinates are copied.
+ */
+public class RouteProfile {
+
+    private final PackedPolyline polyline;
+    private final double[] cumulativeKm;
+
+    public RouteProfile(PackedPolyline polyline) {
+        this.polyline = polyline;
+        this.cumulativeKm = new double[polyline.size()];
+        for (int i = 1; i < cumulativeKm.length; i++) {
+            cumulativeKm[i] = cumulativeKm[i - 1] + GeoUtils.haversineKm(
+                    polyline.lat(i - 1), polyline.lng(i - 1), polyline.lat(i), polyline.lng(i));
+        }
+    }
+
+    public PackedPolyline getPolyline() {
+        return polyline;
+    }
+
+    public int size() {
+        return cumulativeKm.length;
+    }
+
+    public double getTotalKm() {
+        return cumulativeKm.length == 0 ? 0 : cumulativeKm[cumulativeKm.length - 1];
+    }
+
+    public double cumulativeKmAt(int vertex) {
+        return cumulativeKm[vertex];
+    }
+
+    public double segmentLengthKm(int segment) {
+        return segment + 1 < cumulativeKm.length ? cumulativeKm[segment + 1] - cumulativeKm[segment] : 0;
+    }
+
+    public double chainageKm(int segment, double fraction) {
+        return cumulativeKm[segment] + fraction * segmentLengthKm(segment);
+    }
+
+    /**
+     * Index of the segment containing {@code km}: the last vertex whose
+     * chainage is at or before it, clamped to a valid segment start.
+     */
+    public int segmentAt(double km) {
+        int last = Math.max(cumulativeKm.length - 2, 0);
+        if (km <= 0) {
+            return 0;
+        }
+        int lo = 0, hi = cumulativeKm.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (cumulativeKm[mid] <= km) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return Math.min(lo, last);
+    }
+
+    /**
+     * Zero-copy view of the vertices covering [startKm, endKm]. The view is
+     * widened to whole segments, so it starts at or before startKm and ends at
+     * or after endKm.
+     */
+    public PackedPolyline slice(double startKm, double endKm) {
+        if (cumulativeKm.length < 2) {
+            return polyline;
+        }
+        int from = segmentAt(startKm);
+        int to = Math.max(from + 1, Math.min(segmentAt(endKm) + 1, cumulativeKm.length - 1));
+        if (endKm <= cumulativeKm[to - 1] && to - 1 > from) {
+            to--;
+        }
+        return polyline.subPolyline(from, to + 1);
+    }
+
+    /** Point at {@code km} along the route, as {lat, lng}; clamped to the route's ends. */
+    public double[] pointAt(double km) {
+        if (cumulativeKm.length < 2) {
+            return cumulativeKm.length == 0 ? new double[] {Double.NaN, Double.NaN}
+                    : new double[] {polyline.lat(0), polyline.lng(0)};
+        }
+        int s = segmentAt(km);
+        double length = segmentLengthKm(s);
+        double f = length > 0 ? Math.max(0, Math.min(1, (km - cumulativeKm[s]) / length)) : 0;
+        return new double[] {
+                polyline.lat(s) + f * (polyline.lat(s + 1) - polyline.lat(s)),
+                polyline.lng(s) + f * (polyline.lng(s + 1) - polyline.lng(s))};
+    }
+
+    /**
+     * Chainage of the point on the route nearest to (lat, lng), or NaN when
+     * the route never comes within {@code maxOffsetKm} of it.
+     */
+    public double project(double lat, double lng, double maxOffsetKm) {
+        if (cumulativeKm.length < 2) {
+            return Double.NaN;
+        }
+        double latPad = GeoUtils.kmToLatDegrees(maxOffsetKm);
+        double lngPad = GeoUtils.kmToLngDegrees(maxOffsetKm, lat);
+        double bestD2 = maxOffsetKm * maxOffsetKm;
+        double best = Double.NaN;
+        for (int s = 0; s + 1 < cumulativeKm.length; s++) {
+            double aLat = polyline.lat(s), aLng = polyline.lng(s);
+            double bLat = polyline.lat(s + 1), bLng = polyline.lng(s + 1);
+            if (lat < Math.min(aLat, bLat) - latPad || lat > Math.max(aLat, bLat) + latPad
+                    || lng < Math.min(aLng, bLng) - lngPad || lng > Math.max(aLng, bLng) + lngPad) {
+                continue;
+            }
+            // Local equirectangular frame centred on A
+            double kx = Math.cos(Math.toRadians(aLat)) * GeoUtils.KM_PER_DEGREE_LAT;
+            double ky = GeoUtils.KM_PER_DEGREE_LAT;
+            double bx = (bLng - aLng) * kx;
+            double by = (bLat - aLat) * ky;
+            double px = (lng - aLng) * kx;
+            double py = (lat - aLat) * ky;
+            double t = GeoUtils.segmentFraction(px, py, bx, by);
+            double dx = px - t * bx;
+            double dy = py - t * by;
+            double d2 = dx * dx + dy * dy;
+            if (d2 <= bestD2) {
+                bestD2 = d2;
+                best = chainageKm(s, t);
+            }
+        }
+        return best;
+    }
+}
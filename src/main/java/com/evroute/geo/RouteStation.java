@@ -0,0 +1,33 @@
+package com.evroute.geo;
+
+import com.evroute.model.ChargingStation;
+
+/**
+ * A charging station projected onto a route: where along the route it sits
+ * and how far off the route it is.
+ */
+public class RouteStation {
+    private final ChargingStation station;
+    private final double chainageKm;
+    private final double offsetKm;
+
+    public RouteStation(ChargingStation station, double chainageKm, double offsetKm) {
+        this.station = station;
+        this.chainageKm = chainageKm;
+        this.offsetKm = offsetKm;
+    }
+
+    // Getters
+    public ChargingStation getStation() { return station; }
+    public double getChainageKm() { return chainageKm; }
+    public double getOffsetKm() { return offsetKm; }
+
+    @Override
+    public String toString() {
+        return "RouteStation{" +
+                "station=" + station.getId() +
+                ", chainageKm=" + chainageKm +
+                ", offsetKm=" + offsetKm +
+                '}';
+    }
+}
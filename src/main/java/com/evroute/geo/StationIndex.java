@@ -0,0 +1,206 @@
+package com.evroute.geo;
+
+import com.evroute.model.ChargingStation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable uniform-grid index over charging stations.
+ *
+ * Stations are bucketed into fixed lat/lng cells and stored in CSR form: a
+ * sorted array of occupied cell keys, the start offset of each cell, and the
+ * station ordinals grouped by cell. Corridor queries walk each polyline
+ * segment's radius-expanded bounding box, so only stations in nearby cells are
+ * ever measured, and they are measured against the segment rather than its
+ * vertices.
+ */
+public class StationIndex {
+
+    public static final double DEFAULT_CELL_DEGREES = 0.25;
+
+    private final List<ChargingStation> stations;
+    private final double[] lats;
+    private final double[] lngs;
+    private final double cellDegrees;
+    private final long columns;
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final int[] cellStations;
+
+    private StationIndex(List<ChargingStation> stations, double cellDegrees) {
+        if (cellDegrees < 0.01) {
+            throw new IllegalArgumentException("Cell size too small: " + cellDegrees);
+        }
+        this.stations = List.copyOf(stations);
+        this.cellDegrees = cellDegrees;
+        this.columns = (long) Math.ceil(360.0 / cellDegrees) + 1;
+
+        int n = this.stations.size();
+        if (n >= (1 << 20)) {
+            throw new IllegalArgumentException("Too many stations for index: " + n);
+        }
+        this.lats = new double[n];
+        this.lngs = new double[n];
+        long[] keyed = new long[n];
+        for (int i = 0; i < n; i++) {
+            ChargingStation station = this.stations.get(i);
+            lats[i] = station.getLat();
+            lngs[i] = station.getLng();
+            // Pack (cell key, ordinal) so one primitive sort groups stations by cell
+            keyed[i] = (cellKey(row(lats[i]), col(lngs[i])) << 20) | i;
+        }
+        Arrays.sort(keyed);
+
+        long[] keys = new long[n];
+        int[] starts = new int[n + 1];
+        int[] ordinals = new int[n];
+        int cells = 0;
+        for (int i = 0; i < n; i++) {
+            long key = keyed[i] >>> 20;
+            ordinals[i] = (int) (keyed[i] & ((1 << 20) - 1));
+            if (cells == 0 || keys[cells - 1] != key) {
+                keys[cells] = key;
+                starts[cells] = i;
+                cells++;
+            }
+        }
+        starts[cells] = n;
+        this.cellKeys = Arrays.copyOf(keys, cells);
+        this.cellStart = Arrays.copyOf(starts, cells + 1);
+        this.cellStations = ordinals;
+    }
+
+    public static StationIndex build(List<ChargingStation> stations) {
+        return new StationIndex(stations, DEFAULT_CELL_DEGREES);
+    }
+
+    public static StationIndex build(List<ChargingStation> stations, double cellDegrees) {
+        return new StationIndex(stations, cellDegrees);
+    }
+
+    public int size() {
+        return stations.size();
+    }
+
+    public List<ChargingStation> getStations() {
+        return stations;
+    }
+
+    /**
+     * Stations whose distance to any segment of the polyline is at most
+     * {@code radiusKm}, in index order.
+     */
+    public List<ChargingStation> findNearPolyline(PackedPolyline polyline, double radiusKm) {
+        List<ChargingStation> result = new ArrayList<>();
+        if (polyline == null || polyline.isEmpty() || stations.isEmpty()) {
+            return result;
+        }
+
+        double[] bestD2 = scan(polyline, radiusKm, null, null);
+        for (int i = 0; i < bestD2.length; i++) {
+            if (bestD2[i] <= radiusKm * radiusKm) {
+                result.add(stations.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stations within {@code radiusKm} of the route, each projected onto its
+     * nearest segment, sorted by chainage.
+     */
+    public List<RouteStation> findNearRoute(RouteProfile route, double radiusKm) {
+        PackedPolyline polyline = route.getPolyline();
+        List<RouteStation> result = new ArrayList<>();
+        if (polyline == null || polyline.isEmpty() || stations.isEmpty()) {
+            return result;
+        }
+
+        int[] bestSegment = new int[stations.size()];
+        double[] bestFraction = new double[stations.size()];
+        double[] bestD2 = scan(polyline, radiusKm, bestSegment, bestFraction);
+        for (int i = 0; i < bestD2.length; i++) {
+            if (bestD2[i] <= radiusKm * radiusKm) {
+                result.add(new RouteStation(stations.get(i),
+                        route.chainageKm(bestSegment[i], bestFraction[i]),
+                        Math.sqrt(bestD2[i])));
+            }
+        }
+        result.sort(Comparator.comparingDouble(RouteStation::getChainageKm));
+        return result;
+    }
+
+    /**
+     * Squared distance from every station to its nearest segment, or +Inf for
+     * stations never inside a segment's search box. When the optional arrays
+     * are supplied they receive the nearest segment and the fraction along it.
+     */
+    private double[] scan(PackedPolyline polyline, double radiusKm, int[] bestSegment, double[] bestFraction) {
+        double[] bestD2 = new double[stations.size()];
+        Arrays.fill(bestD2, Double.POSITIVE_INFINITY);
+        double radiusSq = radiusKm * radiusKm;
+        double latPad = GeoUtils.kmToLatDegrees(radiusKm);
+
+        int segments = Math.max(polyline.size() - 1, 1);
+        for (int s = 0; s < segments; s++) {
+            int e = Math.min(s + 1, polyline.size() - 1);
+            double aLat = polyline.lat(s), aLng = polyline.lng(s);
+            double bLat = polyline.lat(e), bLng = polyline.lng(e);
+            double lngPad = GeoUtils.kmToLngDegrees(radiusKm, Math.max(Math.abs(aLat), Math.abs(bLat)));
+
+            // Local equirectangular frame centred on A
+            double kx = Math.cos(Math.toRadians(aLat)) * GeoUtils.KM_PER_DEGREE_LAT;
+            double ky = GeoUtils.KM_PER_DEGREE_LAT;
+            double bx = (bLng - aLng) * kx;
+            double by = (bLat - aLat) * ky;
+
+            long rowLo = row(Math.min(aLat, bLat) - latPad);
+            long rowHi = row(Math.max(aLat, bLat) + latPad);
+            long colLo = col(Math.min(aLng, bLng) - lngPad);
+            long colHi = col(Math.max(aLng, bLng) + lngPad);
+
+            for (long r = rowLo; r <= rowHi; r++) {
+                for (long c = colLo; c <= colHi; c++) {
+                    int cell = Arrays.binarySearch(cellKeys, cellKey(r, c));
+                    if (cell < 0) {
+                        continue;
+                    }
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int i = cellStations[k];
+                        double px = (lngs[i] - aLng) * kx;
+                        double py = (lats[i] - aLat) * ky;
+                        double t = GeoUtils.segmentFraction(px, py, bx, by);
+                        double dx = px - t * bx;
+                        double dy = py - t * by;
+                        double d2 = dx * dx + dy * dy;
+                        if (d2 <= radiusSq && d2 < bestD2[i]) {
+                            bestD2[i] = d2;
+                            if (bestSegment != null) {
+                                bestSegment[i] = s;
+                                bestFraction[i] = t;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return bestD2;
+    }
+
+    private long row(double lat) {
+        double clamped = Math.max(-90.0, Math.min(90.0, lat));
+        return (long) Math.floor((clamped + 90.0) / cellDegrees);
+    }
+
+    private long col(double lng) {
+        double clamped = Math.max(-180.0, Math.min(180.0, lng));
+        return (long) Math.floor((clamped + 180.0) / cellDegrees);
+    }
+
+    private long cellKey(long row, long col) {
+        return row * columns + col;
+    }
+}
@@ -0,0 +1,34 @@
+package com.evroute.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A monotonically increasing count; increments never allocate. */
+public class Counter {
+
+    private final String name;
+    private final String help;
+    private final String[] tags;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name, String help, String[] tags) {
+        this.name = name;
+        this.help = help;
+        this.tags = tags;
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void increment(long amount) {
+        count.add(amount);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    void collect(Samples out) {
+        out.counter(name, help, count.sum(), tags);
+    }
+}
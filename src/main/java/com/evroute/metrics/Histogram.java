@@ -0,0 +1,61 @@
+package com.evroute.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of recorded values over fixed bucket bounds, exported as a
+ * Prometheus histogram. Recording is a binary search over the bounds and two
+ * striped additions, so it never allocates or contends and is safe on the
+ * planner's hot path.
+ */
+public class Histogram {
+
+    private final String name;
+    private final String help;
+    private final String[] tags;
+    // Inclusive upper bounds in recorded units; values above the last fall in the +Inf bucket
+    private final long[] bounds;
+    private final double scale;
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+    /** @param scale multiplies recorded values and bounds on export, e.g. 1e-9 for nanoseconds as seconds */
+    Histogram(String name, String help, String[] tags, long[] bounds, double scale) {
+        this.name = name;
+        this.help = help;
+        this.tags = tags;
+        this.bounds = bounds.clone();
+        this.scale = scale;
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        int i = Arrays.binarySearch(bounds, value);
+        buckets[i >= 0 ? i : -i - 1].increment();
+        sum.add(value);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    void collect(Samples out) {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        double[] upper = new double[bounds.length];
+        for (int i = 0; i < upper.length; i++) {
+            upper[i] = bounds[i] * scale;
+        }
+        out.histogram(name, help, upper, counts, sum.sum() * scale, tags);
+    }
+}
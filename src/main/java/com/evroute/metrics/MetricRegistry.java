@@ -0,0 +1,82 @@
+package com.evroute.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Application metrics, scraped in the Prometheus text format.
+ *
+ * Meters are created once, when their owner is constructed, and recorded
+ * into directly, so hot paths only ever touch striped counters. Values that
+ * already live elsewhere, such as cache statistics and connection pool
+ * occupancy, are read by collectors at scrape time instead. Asking twice for
+ * the same name and tags returns the same meter.
+ */
+@Component
+public class MetricRegistry {
+
+    // 0.5 ms to 10 s, roughly three buckets per decade
+    private static final double[] TIMER_BOUNDS_SECONDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    // Sorted, so a scrape lists metrics in a stable order
+    private final Map<String, Object> meters = new ConcurrentSkipListMap<>();
+    private final List<Consumer<Samples>> collectors = new CopyOnWriteArrayList<>();
+
+    /** @param tags alternating label names and values */
+    public Timer timer(String name, String help, String... tags) {
+        long[] bounds = new long[TIMER_BOUNDS_SECONDS.length];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = Math.round(TIMER_BOUNDS_SECONDS[i] * 1e9);
+        }
+        return register(name, tags, Timer.class, () -> new Timer(name, help, tags, bounds));
+    }
+
+    /** Time spent in one stage of planning a route, e.g. {@code geocode} or {@code optimize}. */
+    public Timer stage(String stage) {
+        return timer("evroute_stage_seconds", "Time spent in each planning stage", "stage", stage);
+    }
+
+    public Histogram histogram(String name, String help, long[] bounds, String... tags) {
+        return register(name, tags, Histogram.class, () -> new Histogram(name, help, tags, bounds, 1));
+    }
+
+    public Counter counter(String name, String help, String... tags) {
+        return register(name, tags, Counter.class, () -> new Counter(name, help, tags));
+    }
+
+    /** Adds samples read from elsewhere on every scrape. */
+    public void collector(Consumer<Samples> collector) {
+        collectors.add(collector);
+    }
+
+    public String scrape() {
+        Samples out = new Samples();
+        for (Object meter : meters.values()) {
+            if (meter instanceof Histogram histogram) {
+                histogram.collect(out);
+            } else {
+                ((Counter) meter).collect(out);
+            }
+        }
+        collectors.forEach(collector -> collector.accept(out));
+        return out.toString();
+    }
+
+    private <M> M register(String name, String[] tags, Class<M> type, Supplier<M> create) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags must be name/value pairs: " + String.join(",", tags));
+        }
+        Object meter = meters.computeIfAbsent(name + "\u0000" + String.join("\u0000", tags), k -> create.get());
+        if (!type.isInstance(meter)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + meter.getClass().getSimpleName());
+        }
+        return type.cast(meter);
+    }
+}
@@ -0,0 +1,79 @@
+package com.evroute.metrics;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Samples gathered for one scrape, written in the Prometheus text exposition
+ * format. Samples of one metric are grouped under a single HELP and TYPE
+ * header whatever order they arrive in.
+ */
+public final class Samples {
+
+    private final Map<String, StringBuilder> families = new LinkedHashMap<>();
+
+    public void counter(String name, String help, double value, String... tags) {
+        family(name, help, "counter").append(name).append(labels(tags, null)).append(' ')
+                .append(format(value)).append('\n');
+    }
+
+    public void gauge(String name, String help, double value, String... tags) {
+        family(name, help, "gauge").append(name).append(labels(tags, null)).append(' ')
+                .append(format(value)).append('\n');
+    }
+
+    void histogram(String name, String help, double[] upper, long[] counts, double sum, String[] tags) {
+        StringBuilder out = family(name, help, "histogram");
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < upper.length ? BigDecimal.valueOf(upper[i]).stripTrailingZeros().toPlainString() : "+Inf";
+            out.append(name).append("_bucket").append(labels(tags, le)).append(' ').append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum").append(labels(tags, null)).append(' ').append(format(sum)).append('\n');
+        out.append(name).append("_count").append(labels(tags, null)).append(' ').append(cumulative).append('\n');
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        families.values().forEach(out::append);
+        return out.toString();
+    }
+
+    private StringBuilder family(String name, String help, String type) {
+        return families.computeIfAbsent(name, n -> new StringBuilder()
+                .append("# HELP ").append(n).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(n).append(' ').append(type).append('\n'));
+    }
+
+    // Tags alternate key, value
+    private static String labels(String[] tags, String le) {
+        if (tags.length == 0 && le == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i + 1 < tags.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(tags[i]).append("=\"").append(escape(tags[i + 1])).append('"');
+        }
+        if (le != null) {
+            out.append(tags.length > 0 ? "," : "").append("le=\"").append(le).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,32 @@
+package com.evroute.metrics;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** A {@link Histogram} of durations, recorded in nanoseconds and exported in seconds. */
+public class Timer extends Histogram {
+
+    Timer(String name, String help, String[] tags, long[] boundsNanos) {
+        super(name, help, tags, boundsNanos, 1e-9);
+    }
+
+    /** Records the time from subscription until the mono completes, fails or is cancelled. */
+    public <T> Mono<T> time(Mono<T> mono) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doFinally(signal -> record(System.nanoTime() - start));
+        });
+    }
+
+    /** Records the time from subscription until the flux completes, fails or is cancelled. */
+    public <T> Flux<T> time(Flux<T> flux) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return flux.doFinally(signal -> record(System.nanoTime() - start));
+        });
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+}
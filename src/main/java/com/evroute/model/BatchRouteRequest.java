@@ -0,0 +1,24 @@
+package com.evroute.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class BatchRouteRequest {
+    @NotEmpty(message = "At least one request is required")
+    @Size(max = 1000, message = "At most 1000 requests per batch")
+    private List<@Valid RouteRequest> requests;
+
+    // Default constructor
+    public BatchRouteRequest() {}
+
+    public BatchRouteRequest(List<RouteRequest> requests) {
+        this.requests = requests;
+    }
+
+    // Getters and Setters
+    public List<RouteRequest> getRequests() { return requests; }
+    public void setRequests(List<RouteRequest> requests) { this.requests = requests; }
+}
@@ -0,0 +1,37 @@
+package com.evroute.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one request in a batch. {@code index} is its position in the
+ * submitted list; exactly one of {@code plan} and {@code error} is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchRouteResult {
+    private final int index;
+    private final RoutePlan plan;
+    private final String error;
+
+    private BatchRouteResult(int index, RoutePlan plan, String error) {
+        this.index = index;
+        this.plan = plan;
+        this.error = error;
+    }
+
+    public static BatchRouteResult success(int index, RoutePlan plan) {
+        return new BatchRouteResult(index, plan, null);
+    }
+
+    public static BatchRouteResult failure(int index, String error) {
+        return new BatchRouteResult(index, null, error);
+    }
+
+    public BatchRouteResult withPlan(RoutePlan plan) {
+        return new BatchRouteResult(index, plan, error);
+    }
+
+    // Getters
+    public int getIndex() { return index; }
+    public RoutePlan getPlan() { return plan; }
+    public String getError() { return error; }
+}
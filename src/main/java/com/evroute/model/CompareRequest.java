@@ -0,0 +1,51 @@
+package com.evroute.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class CompareRequest {
+    @NotBlank(message = "Origin is required")
+    private String origin;
+
+    @NotBlank(message = "Destination is required")
+    private String destination;
+
+    @NotEmpty(message = "At least one EV specification is required")
+    @Size(max = 50, message = "At most 50 vehicles per comparison")
+    private List<@Valid EVSpec> vehicles;
+
+    private RoutePrefs prefs;
+
+    // Default constructor
+    public CompareRequest() {}
+
+    // Constructor with all fields
+    public CompareRequest(String origin, String destination, List<EVSpec> vehicles, RoutePrefs prefs) {
+        this.origin = origin;
+        this.destination = destination;
+        this.vehicles = vehicles;
+        this.prefs = prefs;
+    }
+
+    /** The single-vehicle request for one of the compared specs. */
+    public RouteRequest forVehicle(int index) {
+        return new RouteRequest(origin, destination, vehicles.get(index), prefs);
+    }
+
+    // Getters and Setters
+    public String getOrigin() { return origin; }
+    public void setOrigin(String origin) { this.origin = origin; }
+
+    public String getDestination() { return destination; }
+    public void setDestination(String destination) { this.destination = destination; }
+
+    public List<EVSpec> getVehicles() { return vehicles; }
+    public void setVehicles(List<EVSpec> vehicles) { this.vehicles = vehicles; }
+
+    public RoutePrefs getPrefs() { return prefs; }
+    public void setPrefs(RoutePrefs prefs) { this.prefs = prefs; }
+}
@@ -1,5 +1,12 @@
 package com.evroute.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
 public class EVSpec {
     private double batteryKwh;
     private double usableSoCFraction;
@@ -7,6 +14,8 @@ public class EVSpec {
     private double maxChargeKw;
     private double startSoC;
     private double reserveSoC;
+    // [soc, kW] pairs with SoC as a 0-1 fraction (not percent), sorted by SoC when set; optional
+    private List<double[]> chargingCurve;
 
     // Default constructor
     public EVSpec() {}
@@ -41,6 +50,32 @@ public class EVSpec {
     public double getReserveSoC() { return reserveSoC; }
     public void setReserveSoC(double reserveSoC) { this.reserveSoC = reserveSoC; }
 
+    public List<double[]> getChargingCurve() { return chargingCurve; }
+    public void setChargingCurve(List<double[]> chargingCurve) {
+        // Interpolation walks the points in SoC order; malformed points are left for validation to reject
+        if (chargingCurve != null && chargingCurve.stream().allMatch(point -> point != null && point.length >= 1)) {
+            List<double[]> sorted = new ArrayList<>(chargingCurve);
+            sorted.sort(Comparator.comparingDouble(point -> point[0]));
+            chargingCurve = sorted;
+        }
+        this.chargingCurve = chargingCurve;
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "chargingCurve must be [soc, kW] pairs with soc a fraction from 0 to 1 and kW above 0")
+    public boolean isChargingCurveValid() {
+        if (chargingCurve == null) {
+            return true;
+        }
+        for (double[] point : chargingCurve) {
+            if (point == null || point.length != 2 || !(point[0] >= 0 && point[0] <= 1)
+                    || !(point[1] > 0) || Double.isInfinite(point[1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // Helper methods
     public double getUsableKwh() {
         return batteryKwh * usableSoCFraction;
@@ -63,6 +98,7 @@ public class EVSpec {
                 ", maxChargeKw=" + maxChargeKw +
                 ", startSoC=" + startSoC +
                 ", reserveSoC=" + reserveSoC +
+                ", chargingCurve=" + (chargingCurve == null ? "default" : chargingCurve.size() + " points") +
                 '}';
     }
 }
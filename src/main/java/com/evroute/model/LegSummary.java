@@ -1,9 +1,12 @@
 package com.evroute.model;
 
-import java.util.List;
+import com.evroute.geo.PackedPolyline;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class LegSummary {
-    private List<double[]> polyline; // lat,lng pairs
+    private PackedPolyline polyline; // lat,lng pairs
+    private String encodedPolyline; // Google encoded polyline, in place of polyline when requested
     private double distanceKm;
     private int driveMinutes;
 
@@ -11,15 +14,18 @@ public class LegSummary {
     public LegSummary() {}
 
     // Constructor with all fields
-    public LegSummary(List<double[]> polyline, double distanceKm, int driveMinutes) {
+    public LegSummary(PackedPolyline polyline, double distanceKm, int driveMinutes) {
         this.polyline = polyline;
         this.distanceKm = distanceKm;
         this.driveMinutes = driveMinutes;
     }
 
     // Getters and Setters
-    public List<double[]> getPolyline() { return polyline; }
-    public void setPolyline(List<double[]> polyline) { this.polyline = polyline; }
+    public PackedPolyline getPolyline() { return polyline; }
+    public void setPolyline(PackedPolyline polyline) { this.polyline = polyline; }
+
+    public String getEncodedPolyline() { return encodedPolyline; }
+    public void setEncodedPolyline(String encodedPolyline) { this.encodedPolyline = encodedPolyline; }
 
     public double getDistanceKm() { return distanceKm; }
     public void setDistanceKm(double distanceKm) { this.distanceKm = distanceKm; }
@@ -27,6 +33,13 @@ public class LegSummary {
     public int getDriveMinutes() { return driveMinutes; }
     public void setDriveMinutes(int driveMinutes) { this.driveMinutes = driveMinutes; }
 
+    /** Copy carrying the polyline in Google encoded form instead of coordinate pairs. */
+    public LegSummary withEncodedPolyline() {
+        LegSummary encoded = new LegSummary(null, distanceKm, driveMinutes);
+        encoded.setEncodedPolyline(polyline != null ? polyline.encode() : encodedPolyline);
+        return encoded;
+    }
+
     @Override
     public String toString() {
         return "LegSummary{" +
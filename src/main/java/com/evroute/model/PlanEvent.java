@@ -0,0 +1,57 @@
+package com.evroute.model;
+
+import java.util.List;
+
+/**
+ * One step of a streamed plan; {@code type} names the event and {@code data}
+ * is its payload.
+ */
+public class PlanEvent {
+    public static final String ROUTE = "route";         // RoutePlan with geometry and totals, no stops yet
+    public static final String STATIONS = "stations";   // List<ChargingStation> newly found along the corridor
+    public static final String STOP = "stop";           // PlannedStop, in route order
+    public static final String SUMMARY = "summary";     // the complete RoutePlan
+    public static final String ERROR = "error";         // ErrorDetail; always the last event
+
+    private final String type;
+    private final Object data;
+
+    public PlanEvent(String type, Object data) {
+        this.type = type;
+        this.data = data;
+    }
+
+    public static PlanEvent route(RoutePlan preview) {
+        return new PlanEvent(ROUTE, preview);
+    }
+
+    public static PlanEvent stations(List<ChargingStation> stations) {
+        return new PlanEvent(STATIONS, stations);
+    }
+
+    public static PlanEvent stop(PlannedStop stop) {
+        return new PlanEvent(STOP, stop);
+    }
+
+    public static PlanEvent summary(RoutePlan plan) {
+        return new PlanEvent(SUMMARY, plan);
+    }
+
+    public static PlanEvent error(String message) {
+        return new PlanEvent(ERROR, new ErrorDetail(message));
+    }
+
+    // Getters
+    public String getType() { return type; }
+    public Object getData() { return data; }
+
+    public static class ErrorDetail {
+        private final String message;
+
+        public ErrorDetail(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() { return message; }
+    }
+}
@@ -0,0 +1,83 @@
+package com.evroute.model;
+
+import com.evroute.geo.PolylinePyramid;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * One route planned for several vehicles: the shared geometry once, then a
+ * row per vehicle in request order.
+ */
+public class RouteComparison {
+    private final LegSummary route;
+    private final List<VehicleResult> vehicles;
+    @JsonIgnore
+    private final PolylinePyramid pyramid;
+
+    public RouteComparison(LegSummary route, List<VehicleResult> vehicles, PolylinePyramid pyramid) {
+        this.route = route;
+        this.vehicles = vehicles;
+        this.pyramid = pyramid;
+    }
+
+    public RouteComparison withRoute(LegSummary route) {
+        return new RouteComparison(route, vehicles, pyramid);
+    }
+
+    // Getters
+    public LegSummary getRoute() { return route; }
+    public List<VehicleResult> getVehicles() { return vehicles; }
+    public PolylinePyramid getPyramid() { return pyramid; }
+
+    /** Totals for one vehicle; {@code error} is set instead when its plan failed. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class VehicleResult {
+        private final int index;
+        private final Integer totalMinutes;
+        private final Integer driveMinutes;
+        private final Integer chargeMinutes;
+        private final Double energyKwh;
+        private final Integer stopCount;
+        private final List<PlannedStop> stops;
+        private final String error;
+
+        private VehicleResult(int index, Integer totalMinutes, Integer driveMinutes, Integer chargeMinutes,
+                              Double energyKwh, Integer stopCount, List<PlannedStop> stops, String error) {
+            this.index = index;
+            this.totalMinutes = totalMinutes;
+            this.driveMinutes = driveMinutes;
+            this.chargeMinutes = chargeMinutes;
+            this.energyKwh = energyKwh;
+            this.stopCount = stopCount;
+            this.stops = stops;
+            this.error = error;
+        }
+
+        public static VehicleResult of(int index, RoutePlan plan) {
+            return new VehicleResult(index,
+                    plan.getTotalDriveMinutes() + plan.getTotalChargeMinutes(),
+                    plan.getTotalDriveMinutes(),
+                    plan.getTotalChargeMinutes(),
+                    plan.getTotalEnergyKwh(),
+                    plan.getStops().size(),
+                    plan.getStops(),
+                    null);
+        }
+
+        public static VehicleResult failure(int index, String error) {
+            return new VehicleResult(index, null, null, null, null, null, null, error);
+        }
+
+        // Getters
+        public int getIndex() { return index; }
+        public Integer getTotalMinutes() { return totalMinutes; }
+        public Integer getDriveMinutes() { return driveMinutes; }
+        public Integer getChargeMinutes() { return chargeMinutes; }
+        public Double getEnergyKwh() { return energyKwh; }
+        public Integer getStopCount() { return stopCount; }
+        public List<PlannedStop> getStops() { return stops; }
+        public String getError() { return error; }
+    }
+}
@@ -1,5 +1,9 @@
 package com.evroute.model;
 
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.PolylinePyramid;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.List;
 
 public class RoutePlan {
@@ -9,6 +13,8 @@ public class RoutePlan {
     private double totalEnergyKwh;
     private int totalDriveMinutes;
     private int totalChargeMinutes;
+    @JsonIgnore
+    private PolylinePyramid pyramid; // display levels of overall's polyline, built once per plan
 
     // Default constructor
     public RoutePlan() {}
@@ -43,6 +49,49 @@ public class RoutePlan {
     public int getTotalChargeMinutes() { return totalChargeMinutes; }
     public void setTotalChargeMinutes(int totalChargeMinutes) { this.totalChargeMinutes = totalChargeMinutes; }
 
+    public PolylinePyramid getPyramid() { return pyramid; }
+    public void setPyramid(PolylinePyramid pyramid) { this.pyramid = pyramid; }
+
+    /** Copy whose leg polylines are Google encoded strings; this plan is left untouched. */
+    public RoutePlan withEncodedPolylines() {
+        RoutePlan encoded = new RoutePlan(
+                overall != null ? overall.withEncodedPolyline() : null,
+                stops,
+                legs != null ? legs.stream().map(LegSummary::withEncodedPolyline).toList() : null,
+                totalEnergyKwh,
+                totalDriveMinutes,
+                totalChargeMinutes);
+        encoded.setPyramid(pyramid);
+        return encoded;
+    }
+
+    /**
+     * Copy with the overall route and every leg simplified for display, either
+     * to a map zoom level or to a tolerance in metres (zoom wins when both are
+     * given). This plan keeps full precision.
+     */
+    public RoutePlan withSimplifiedPolylines(Integer zoom, Double toleranceM) {
+        if (overall == null || overall.getPolyline() == null || (zoom == null && toleranceM == null)) {
+            return this;
+        }
+        PolylinePyramid levels = pyramid != null ? pyramid : PolylinePyramid.of(overall.getPolyline());
+        double tolerance = zoom != null ? levels.toleranceForZoom(zoom) : toleranceM;
+        PackedPolyline route = zoom != null ? levels.atZoom(zoom) : levels.simplify(tolerance);
+
+        RoutePlan simplified = new RoutePlan(
+                new LegSummary(route, overall.getDistanceKm(), overall.getDriveMinutes()),
+                stops,
+                legs != null ? legs.stream()
+                        .map(leg -> leg.getPolyline() == null ? leg : new LegSummary(
+                                levels.simplify(leg.getPolyline(), tolerance), leg.getDistanceKm(), leg.getDriveMinutes()))
+                        .toList() : null,
+                totalEnergyKwh,
+                totalDriveMinutes,
+                totalChargeMinutes);
+        simplified.setPyramid(levels);
+        return simplified;
+    }
+
     // Helper methods
     public int getTotalMinutes() {
         return totalDriveMinutes + totalChargeMinutes;
@@ -1,5 +1,6 @@
 package com.evroute.model;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 
@@ -10,6 +11,7 @@ public class RouteRequest {
     @NotBlank(message = "Destination is required")
     private String destination;
     
+    @Valid
     @NotNull(message = "EV specification is required")
     private EVSpec ev;
     
@@ -0,0 +1,111 @@
+package com.evroute.planning;
+
+import com.evroute.model.EVSpec;
+
+import java.util.List;
+
+/**
+ * A vehicle's charging curve (kW accepted vs SoC as a 0-1 fraction), compiled for
+ * fast lookup.
+ *
+ * The curve is sampled once onto a fixed SoC grid. For a given station power
+ * a {@link Table} integrates that grid into cumulative minutes-from-empty, so
+ * the time to charge between any two SoCs is a difference of two
+ * interpolated table reads: no integration and no allocation on the hot path.
+ */
+public class ChargeCurve {
+
+    public static final int RESOLUTION = 1000;
+
+    private static final double CHARGE_EFFICIENCY = 0.9;
+
+    // Generic DC fast-charge taper as a fraction of peak power, used when the EV spec has no curve
+    private static final double[][] DEFAULT_SHAPE = {
+        {0.00, 0.75}, {0.10, 1.00}, {0.30, 1.00}, {0.50, 0.70},
+        {0.70, 0.45}, {0.80, 0.35}, {0.90, 0.20}, {1.00, 0.10}
+    };
+
+    private final double usableKwh;
+    private final double[] carKw;
+
+    private ChargeCurve(double usableKwh, double[] carKw) {
+        this.usableKwh = usableKwh;
+        this.carKw = carKw;
+    }
+
+    public static ChargeCurve of(EVSpec ev) {
+        double[] samples = new double[RESOLUTION + 1];
+        List<double[]> curve = ev.getChargingCurve();
+        if (curve != null && !curve.isEmpty()) {
+            double cap = ev.getMaxChargeKw() > 0 ? ev.getMaxChargeKw() : Double.MAX_VALUE;
+            for (int i = 0; i <= RESOLUTION; i++) {
+                samples[i] = Math.min(interpolate(curve, (double) i / RESOLUTION, 1.0), cap);
+            }
+        } else {
+            List<double[]> shape = List.of(DEFAULT_SHAPE);
+            for (int i = 0; i <= RESOLUTION; i++) {
+                samples[i] = interpolate(shape, (double) i / RESOLUTION, ev.getMaxChargeKw());
+            }
+        }
+        return new ChargeCurve(ev.getUsableKwh(), samples);
+    }
+
+    /** Peak power the car accepts at this SoC. */
+    public double carKwAt(double soc) {
+        double x = clamp(soc) * RESOLUTION;
+        int i = Math.min((int) x, RESOLUTION - 1);
+        return carKw[i] + (x - i) * (carKw[i + 1] - carKw[i]);
+    }
+
+    /** Cumulative charge-time table for a station of the given power. */
+    public Table table(double stationKw) {
+        double[] minutes = new double[RESOLUTION + 1];
+        double kwhPerStep = usableKwh / RESOLUTION;
+        for (int i = 0; i < RESOLUTION; i++) {
+            double mid = (carKw[i] + carKw[i + 1]) / 2.0;
+            double kw = Math.max(Math.min(mid, stationKw) * CHARGE_EFFICIENCY, 0.1);
+            minutes[i + 1] = minutes[i] + kwhPerStep / kw * 60.0;
+        }
+        return new Table(minutes);
+    }
+
+    private static double interpolate(List<double[]> points, double soc, double scale) {
+        double[] first = points.get(0);
+        if (soc <= first[0]) {
+            return first[1] * scale;
+        }
+        for (int k = 1; k < points.size(); k++) {
+            double[] a = points.get(k - 1);
+            double[] b = points.get(k);
+            if (soc <= b[0]) {
+                double t = b[0] > a[0] ? (soc - a[0]) / (b[0] - a[0]) : 1.0;
+                return (a[1] + t * (b[1] - a[1])) * scale;
+            }
+        }
+        return points.get(points.size() - 1)[1] * scale;
+    }
+
+    private static double clamp(double soc) {
+        return soc < 0 ? 0 : (soc > 1 ? 1 : soc);
+    }
+
+    public static final class Table {
+        private final double[] minutes;
+
+        private Table(double[] minutes) {
+            this.minutes = minutes;
+        }
+
+        /** Minutes to charge from empty to {@code soc}. */
+        public double minutesTo(double soc) {
+            double x = clamp(soc) * RESOLUTION;
+            int i = Math.min((int) x, RESOLUTION - 1);
+            return minutes[i] + (x - i) * (minutes[i + 1] - minutes[i]);
+        }
+
+        /** Minutes to charge from {@code fromSoc} to {@code toSoc}. */
+        public double minutes(double fromSoc, double toSoc) {
+            return toSoc > fromSoc ? minutesTo(toSoc) - minutesTo(fromSoc) : 0;
+        }
+    }
+}
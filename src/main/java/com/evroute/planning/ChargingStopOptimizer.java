@@ -0,0 +1,360 @@
+package com.evroute.planning;
+
+import com.evroute.model.EVSpec;
+import com.evroute.model.RoutePrefs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Minimum-trip-time charging stop search.
+ *
+ * Nodes are the origin, the corridor stations in chainage order and the
+ * destination, so the search graph is a DAG and labels can be corrected in
+ * topological order instead of through a priority queue. Each station has two
+ * label layers over discretized SoC:
+ *
+ *   arrive[b]  earliest arrival with at least b SoC steps left
+ *   depart[d]  earliest departure after charging up to exactly d steps
+ *
+ * Charge time is a difference of a cumulative time-to-SoC table (see
+ * {@link ChargeCurve}), so depart[d] = T(d) + min over b < d of
+ * (arrive[b] - T(b)) is a single prefix minimum per station. Departure labels that are Pareto-dominated (a higher
+ * SoC is available no later) are never expanded. Each expanded departure
+ * relaxes every downstream node it can reach above reserve; edges skip
+ * intermediate nodes, so SoC is rounded (down) once per stop rather than once
+ * per station passed.
+ *
+ * Stopping at a station also costs its {@link StationDetours detour}: the
+ * access drive is charged on arrival and the egress drive on departure, in
+ * both time and charge. Stations the detour makes unreachable are skipped.
+ *
+ * The state space is nodes x SoC steps; the step is coarsened when that would
+ * exceed the state budget. Past the coarsest step the corridor is thinned by
+ * chainage instead, keeping the most powerful station (then the shortest
+ * detour) in each stretch, so a dense corridor still gets a plan.
+ *
+ * Labels are not the whole cost: every expanded departure relaxes each
+ * station within a full battery's range, so drive edges grow with nodes x
+ * in-range stations x SoC steps. That count is estimated up front and the
+ * corridor is thinned further when it would exceed the relaxation budget.
+ */
+public class ChargingStopOptimizer {
+
+    public static final int DEFAULT_STATE_BUDGET = 200_000;
+    public static final long DEFAULT_RELAXATION_BUDGET = 20_000_000L;
+
+    private static final double MAX_CHARGE_SOC = 1.0;
+    private static final int MAX_SOC_STEPS = 100;
+    private static final int MIN_SOC_STEPS = 10;
+    private static final double EPSILON = 1e-9;
+    // Parking and plugging in; only steers the search away from needless stops
+    private static final double STOP_OVERHEAD_MINUTES = 5.0;
+
+    private final int stateBudget;
+    private final long relaxationBudget;
+    private final LongAdder relaxations = new LongAdder();
+
+    public ChargingStopOptimizer() {
+        this(DEFAULT_STATE_BUDGET);
+    }
+
+    public ChargingStopOptimizer(int stateBudget) {
+        this(stateBudget, DEFAULT_RELAXATION_BUDGET);
+    }
+
+    public ChargingStopOptimizer(int stateBudget, long relaxationBudget) {
+        this.stateBudget = stateBudget;
+        this.relaxationBudget = relaxationBudget;
+    }
+
+    /** Drive edges relaxed by this optimizer so far, across all calls. */
+    public long relaxations() {
+        return relaxations.sum();
+    }
+
+    /**
+     * @param chainageKm   station positions along the route, ascending
+     * @param stationKw    station max power, parallel to chainageKm
+     * @param totalKm      route length
+     * @param minutesPerKm average drive pace along the route
+     * @return the stops to make, in route order (empty if none are needed)
+     */
+    public List<Stop> optimize(double[] chainageKm, double[] stationKw, double totalKm,
+                               EVSpec ev, RoutePrefs prefs, double minutesPerKm) {
+        return optimize(chainageKm, stationKw, StationDetours.none(chainageKm.length), totalKm, ev, prefs, minutesPerKm);
+    }
+
+    /**
+     * @param detours per-station detour off the route, parallel to chainageKm
+     * @see #optimize(double[], double[], double, EVSpec, RoutePrefs, double)
+     */
+    public List<Stop> optimize(double[] chainageKm, double[] stationKw, StationDetours detours, double totalKm,
+                               EVSpec ev, RoutePrefs prefs, double minutesPerKm) {
+        int n = chainageKm.length;
+        int maxStations = Math.max(1, stateBudget / (MIN_SOC_STEPS + 1));
+        if (n > maxStations) {
+            return optimizeThinned(chainageKm, stationKw, detours, totalKm, ev, prefs, minutesPerKm, maxStations);
+        }
+        int steps = Math.max(MIN_SOC_STEPS, Math.min(MAX_SOC_STEPS, stateBudget / Math.max(n, 1) - 1));
+        int width = steps + 1;
+        double step = 1.0 / steps;
+        int maxLevel = (int) Math.floor(MAX_CHARGE_SOC * steps + EPSILON);
+
+        double socPerKm = ev.getConsumptionWhPerKm() / 1000.0 / ev.getUsableKwh();
+        double reserve = ev.getReserveSoC();
+        double rangeKm = Math.max(0, maxLevel * step - reserve) / socPerKm;
+        if (n > 1 && (double) maxLevel * inRangePairs(chainageKm, rangeKm) > relaxationBudget) {
+            int edgeStations = Math.min(n - 1, stationsWithinEdgeBudget(totalKm, rangeKm));
+            return optimizeThinned(chainageKm, stationKw, detours, totalKm, ev, prefs, minutesPerKm, edgeStations);
+        }
+        double arrivalFloor = Math.max(reserve, prefs.getTargetArrivalSoC());
+        double start = ev.getStartSoC();
+        ChargeCurve.Table[] tables = chargeTables(ev, stationKw);
+        double[] accessKm = detours.getAccessKm();
+        double[] accessMinutes = detours.getAccessMinutes();
+        double[] egressKm = detours.getEgressKm();
+        double[] egressMinutes = detours.getEgressMinutes();
+
+        // Label layers, flattened [station * width + level]
+        double[] arrive = new double[n * width];
+        double[] depart = new double[n * width];
+        int[] arriveFrom = new int[n * width];   // encoded departure label, or -1 for the origin
+        int[] departFrom = new int[n * width];   // arrival level charged from
+        Arrays.fill(arrive, Double.POSITIVE_INFINITY);
+
+        double bestTime = Double.POSITIVE_INFINITY;
+        int bestFrom = -2;
+        long relaxed = 0;
+
+        // Origin: leave with the exact starting charge
+        for (int j = 0; j < n; j++) {
+            double onRoute = start - chainageKm[j] * socPerKm;
+            if (onRoute < reserve - EPSILON) {
+                break;
+            }
+            double left = onRoute - accessKm[j] * socPerKm;
+            if (left < reserve - EPSILON) {
+                continue;
+            }
+            int level = Math.min(steps, (int) Math.floor(left * steps + EPSILON));
+            int cell = j * width + level;
+            double time = chainageKm[j] * minutesPerKm + accessMinutes[j];
+            if (time < arrive[cell]) {
+                arrive[cell] = time;
+                arriveFrom[cell] = -1;
+            }
+        }
+        if (start - totalKm * socPerKm >= arrivalFloor - EPSILON) {
+            bestTime = totalKm * minutesPerKm;
+            bestFrom = -1;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int base = i * width;
+
+            // Charge: depart[d] = T(d) + min_{b<d} (arrive[b] - T(b))
+            double bestOffset = Double.POSITIVE_INFINITY;
+            int bestLevel = -1;
+            for (int d = 0; d <= steps; d++) {
+                depart[base + d] = Double.POSITIVE_INFINITY;
+                if (d > 0 && bestLevel >= 0 && d <= maxLevel) {
+                    depart[base + d] = tables[i].minutesTo(d * step) + bestOffset + STOP_OVERHEAD_MINUTES;
+                    departFrom[base + d] = bestLevel;
+                }
+                double a = arrive[base + d];
+                if (a < Double.POSITIVE_INFINITY) {
+                    double offset = a - tables[i].minutesTo(d * step);
+                    if (offset < bestOffset) {
+                        bestOffset = offset;
+                        bestLevel = d;
+                    }
+                }
+            }
+
+            // Drive: relax every non-dominated departure into reachable downstream nodes
+            double dominatedBelow = Double.POSITIVE_INFINITY;
+            for (int d = maxLevel; d > 0; d--) {
+                double t = depart[base + d];
+                if (t >= dominatedBelow) {
+                    continue;
+                }
+                dominatedBelow = t;
+                // Back on the route after the egress drive; lower levels cannot make it either
+                double soc = d * step - egressKm[i] * socPerKm;
+                if (soc < reserve - EPSILON) {
+                    break;
+                }
+                t += egressMinutes[i];
+
+                for (int j = i + 1; j < n; j++) {
+                    double onRoute = soc - (chainageKm[j] - chainageKm[i]) * socPerKm;
+                    if (onRoute < reserve - EPSILON) {
+                        break;
+                    }
+                    relaxed++;
+                    double left = onRoute - accessKm[j] * socPerKm;
+                    if (left < reserve - EPSILON) {
+                        continue;
+                    }
+                    int level = Math.min(steps, (int) Math.floor(left * steps + EPSILON));
+                    int cell = j * width + level;
+                    double time = t + (chainageKm[j] - chainageKm[i]) * minutesPerKm + accessMinutes[j];
+                    if (time < arrive[cell]) {
+                        arrive[cell] = time;
+                        arriveFrom[cell] = base + d;
+                    }
+                }
+
+                double left = soc - (totalKm - chainageKm[i]) * socPerKm;
+                if (left >= arrivalFloor - EPSILON) {
+                    double time = t + (totalKm - chainageKm[i]) * minutesPerKm;
+                    if (time < bestTime) {
+                        bestTime = time;
+                        bestFrom = base + d;
+                    }
+                }
+            }
+        }
+        relaxations.add(relaxed);
+
+        if (bestFrom == -2) {
+            throw new IllegalStateException("No charging stations available within range. Consider increasing start SOC or choosing a different route.");
+        }
+        return reconstruct(bestFrom, width, step, chainageKm, detours, tables, arriveFrom, departFrom, ev, socPerKm);
+    }
+
+    // Station pairs (i < j) no more than a full battery's range apart: the drive edges per SoC level
+    private static long inRangePairs(double[] chainageKm, double rangeKm) {
+        long pairs = 0;
+        int j = 0;
+        for (int i = 0; i < chainageKm.length; i++) {
+            j = Math.max(j, i + 1);
+            while (j < chainageKm.length && chainageKm[j] - chainageKm[i] <= rangeKm + EPSILON) {
+                j++;
+            }
+            pairs += j - i - 1;
+        }
+        return pairs;
+    }
+
+    // Most stations whose drive edges fit the budget once thinned to one per stretch, at the finest SoC step:
+    // m stations leave at most m * rangeKm / totalKm + 1 others in range of each
+    private int stationsWithinEdgeBudget(double totalKm, double rangeKm) {
+        double perStation = Math.max(rangeKm, EPSILON) / Math.max(totalKm, EPSILON);
+        double edgesPerLevel = (double) relaxationBudget / MAX_SOC_STEPS;
+        int m = (int) Math.floor((Math.sqrt(1 + 4 * perStation * edgesPerLevel) - 1) / (2 * perStation));
+        return Math.max(1, m);
+    }
+
+    // Searches the kept stations only and maps the stops back to the caller's indices
+    private List<Stop> optimizeThinned(double[] chainageKm, double[] stationKw, StationDetours detours, double totalKm,
+                                       EVSpec ev, RoutePrefs prefs, double minutesPerKm, int maxStations) {
+        int[] kept = thin(chainageKm, stationKw, detours, totalKm, maxStations);
+        double[] keptChainage = new double[kept.length];
+        double[] keptKw = new double[kept.length];
+        for (int k = 0; k < kept.length; k++) {
+            keptChainage[k] = chainageKm[kept[k]];
+            keptKw[k] = stationKw[kept[k]];
+        }
+        List<Stop> stops = optimize(keptChainage, keptKw, detours.subset(kept), totalKm, ev, prefs, minutesPerKm);
+        List<Stop> mapped = new ArrayList<>(stops.size());
+        for (Stop stop : stops) {
+            mapped.add(new Stop(kept[stop.getStationIndex()], stop.getArriveSoC(), stop.getDepartSoC(),
+                    stop.getChargeMinutes()));
+        }
+        return mapped;
+    }
+
+    /**
+     * Indices of at most {@code maxStations} stations, ascending: the route is
+     * cut into that many equal stretches and each keeps its most powerful
+     * station, the one with the shortest detour among equals.
+     */
+    public static int[] thin(double[] chainageKm, double[] stationKw, StationDetours detours, double totalKm, int maxStations) {
+        double stretchKm = Math.max(totalKm, EPSILON) / maxStations;
+        int[] kept = new int[maxStations];
+        int count = 0;
+        int stretch = -1;
+        for (int i = 0; i < chainageKm.length; i++) {
+            int at = Math.min(maxStations - 1, Math.max(0, (int) (chainageKm[i] / stretchKm)));
+            if (at != stretch) {
+                stretch = at;
+                kept[count++] = i;
+                continue;
+            }
+            int best = kept[count - 1];
+            if (stationKw[i] > stationKw[best]
+                    || (stationKw[i] == stationKw[best] && detours.totalKm(i) < detours.totalKm(best))) {
+                kept[count - 1] = i;
+            }
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    private List<Stop> reconstruct(int departLabel, int width, double step, double[] chainageKm, StationDetours detours,
+                                   ChargeCurve.Table[] tables, int[] arriveFrom, int[] departFrom, EVSpec ev, double socPerKm) {
+        // Walk back to recover the stations and target levels
+        List<int[]> chain = new ArrayList<>();
+        for (int label = departLabel; label >= 0; ) {
+            int station = label / width;
+            int level = label % width;
+            chain.add(new int[]{station, level});
+            label = arriveFrom[station * width + departFrom[label]];
+        }
+        Collections.reverse(chain);
+
+        // Replay forward with exact SoC so reported values are not bucket floors
+        List<Stop> stops = new ArrayList<>(chain.size());
+        double soc = ev.getStartSoC();
+        double km = 0;
+        double egressKm = 0;
+        for (int[] hop : chain) {
+            int station = hop[0];
+            double driveKm = egressKm + chainageKm[station] - km + detours.getAccessKm()[station];
+            double arriveSoC = soc - driveKm * socPerKm;
+            double departSoC = Math.max(arriveSoC, hop[1] * step);
+            stops.add(new Stop(station, arriveSoC, departSoC, tables[station].minutes(arriveSoC, departSoC)));
+            soc = departSoC;
+            km = chainageKm[station];
+            egressKm = detours.getEgressKm()[station];
+        }
+        return stops;
+    }
+
+    // One table per distinct station power; stations of equal power share it
+    private static ChargeCurve.Table[] chargeTables(EVSpec ev, double[] stationKw) {
+        ChargeCurve curve = ChargeCurve.of(ev);
+        Map<Double, ChargeCurve.Table> byKw = new HashMap<>();
+        ChargeCurve.Table[] tables = new ChargeCurve.Table[stationKw.length];
+        for (int i = 0; i < stationKw.length; i++) {
+            tables[i] = byKw.computeIfAbsent(stationKw[i], curve::table);
+        }
+        return tables;
+    }
+
+    public static class Stop {
+        private final int stationIndex;
+        private final double arriveSoC;
+        private final double departSoC;
+        private final double chargeMinutes;
+
+        public Stop(int stationIndex, double arriveSoC, double departSoC, double chargeMinutes) {
+            this.stationIndex = stationIndex;
+            this.arriveSoC = arriveSoC;
+            this.departSoC = departSoC;
+            this.chargeMinutes = chargeMinutes;
+        }
+
+        // Getters
+        public int getStationIndex() { return stationIndex; }
+        public double getArriveSoC() { return arriveSoC; }
+        public double getDepartSoC() { return departSoC; }
+        public double getChargeMinutes() { return chargeMinutes; }
+    }
+}
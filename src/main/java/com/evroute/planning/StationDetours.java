@@ -0,0 +1,75 @@
+package com.evroute.planning;
+
+/**
+ * What stopping at each corridor station costs on top of the route: the drive
+ * from the route to the station (access) and back onto it (egress), parallel
+ * to the corridor's station arrays.
+ */
+public final class StationDetours {
+
+    // Straight-line fallback: roads wind, and the way to a station is mostly local streets
+    static final double ROAD_FACTOR = 1.3;
+    static final double LOCAL_KMH = 40.0;
+
+    private final double[] accessKm;
+    private final double[] accessMinutes;
+    private final double[] egressKm;
+    private final double[] egressMinutes;
+
+    public StationDetours(double[] accessKm, double[] accessMinutes, double[] egressKm, double[] egressMinutes) {
+        this.accessKm = accessKm;
+        this.accessMinutes = accessMinutes;
+        this.egressKm = egressKm;
+        this.egressMinutes = egressMinutes;
+    }
+
+    /** Stations treated as lying on the route. */
+    public static StationDetours none(int count) {
+        double[] zero = new double[count];
+        return new StationDetours(zero, zero, zero, zero);
+    }
+
+    /** Estimate from each station's straight-line distance off the route, the same both ways. */
+    public static StationDetours straightLine(double[] offsetKm) {
+        double[] km = new double[offsetKm.length];
+        double[] minutes = new double[offsetKm.length];
+        for (int i = 0; i < km.length; i++) {
+            km[i] = offsetKm[i] * ROAD_FACTOR;
+            minutes[i] = km[i] / LOCAL_KMH * 60.0;
+        }
+        return new StationDetours(km, minutes, km, minutes);
+    }
+
+    /** The detours of the given stations, in the order given. */
+    public StationDetours subset(int[] stations) {
+        double[] aKm = new double[stations.length];
+        double[] aMinutes = new double[stations.length];
+        double[] eKm = new double[stations.length];
+        double[] eMinutes = new double[stations.length];
+        for (int k = 0; k < stations.length; k++) {
+            aKm[k] = accessKm[stations[k]];
+            aMinutes[k] = accessMinutes[stations[k]];
+            eKm[k] = egressKm[stations[k]];
+            eMinutes[k] = egressMinutes[stations[k]];
+        }
+        return new StationDetours(aKm, aMinutes, eKm, eMinutes);
+    }
+
+    public int size() {
+        return accessKm.length;
+    }
+
+    public double totalKm(int station) {
+        return accessKm[station] + egressKm[station];
+    }
+
+    public double totalMinutes(int station) {
+        return accessMinutes[station] + egressMinutes[station];
+    }
+
+    // Getters; the arrays are shared and must not be modified
+    public double[] getAccessKm() { return accessKm; }
+    public double[] getAccessMinutes() { return accessMinutes; }
+    public double[] getEgressKm() { return egressKm; }
+    public double[] getEgressMinutes() { return egressMinutes; }
+}
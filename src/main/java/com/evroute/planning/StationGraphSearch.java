@@ -0,0 +1,467 @@
+package com.evroute.planning;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.model.EVSpec;
+import com.evroute.model.RoutePrefs;
+import com.evroute.routing.StationGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimum-trip-time charging stop search over a precomputed
+ * {@link StationGraph}, for trips too long to plan along a single route.
+ *
+ * The trip enters the graph at stations near the origin and leaves it at
+ * stations near the destination; those first and last miles are the only
+ * road measurements the caller supplies. Between them the car drives graph
+ * legs and may pass through a station without stopping, so a leg chain can
+ * stand in for a longer drive. Each station has two label layers over
+ * discretized SoC:
+ *
+ *   arrive[b]  earliest arrival with SoC in step b, not charging
+ *   charge[d]  earliest moment charged up to exactly d steps
+ *
+ * Labels carry their exact SoC, so passing through stations does not round
+ * charge down at every hop; the steps only decide which labels compete.
+ * Charging climbs one step at a time, each step costing its slice of the
+ * {@link ChargeCurve} table, so every expansion relaxes at most the station's
+ * legs plus one edge. The search is A* on elapsed time, with the straight-line
+ * distance to the destination at {@link #MAX_KMH} as the bound, and stops once
+ * no open label can beat the best arrival. Labels at a station settle in time
+ * order, so one with no more charge than an already settled label there is
+ * dominated and never expanded; an arrival also loses to a charge label, which
+ * has paid its stop overhead.
+ *
+ * Labels and per-station state live in open-addressing tables holding only
+ * what the search reaches, so memory follows the search rather than the
+ * graph's size times its SoC steps. The state budget caps the labels stored.
+ */
+public class StationGraphSearch {
+
+    public static final int DEFAULT_STATE_BUDGET = 2_000_000;
+
+    // No leg is faster than this on average, which keeps the A* bound admissible
+    static final double MAX_KMH = 130.0;
+
+    private static final double MAX_CHARGE_SOC = 1.0;
+    private static final int MAX_SOC_STEPS = 50;
+    private static final int MIN_SOC_STEPS = 10;
+    private static final double EPSILON = 1e-9;
+    // Parking and plugging in; only steers the search away from needless stops
+    private static final double STOP_OVERHEAD_MINUTES = 5.0;
+
+    private final int stateBudget;
+
+    public StationGraphSearch() {
+        this(DEFAULT_STATE_BUDGET);
+    }
+
+    public StationGraphSearch(int stateBudget) {
+        this.stateBudget = stateBudget;
+    }
+
+    /**
+     * @param first stations reachable from the origin, with the drive to each
+     * @param last  stations the destination is reachable from, with the drive from each
+     * @return the stops to make, in trip order, with graph station indices
+     * @throws IllegalStateException if no stop sequence reaches the destination
+     */
+    public List<ChargingStopOptimizer.Stop> search(StationGraph graph, Access first, Access last,
+                                                   double destinationLat, double destinationLng,
+                                                   EVSpec ev, RoutePrefs prefs) {
+        int n = graph.size();
+        int steps = Math.max(MIN_SOC_STEPS, Math.min(MAX_SOC_STEPS, stateBudget / Math.max(2 * n, 1) - 1));
+        int width = steps + 1;
+        int chargeBase = n * width;
+        double step = 1.0 / steps;
+        int maxLevel = (int) Math.floor(MAX_CHARGE_SOC * steps + EPSILON);
+
+        double socPerKm = ev.getConsumptionWhPerKm() / 1000.0 / ev.getUsableKwh();
+        double reserve = ev.getReserveSoC();
+        double arrivalFloor = Math.max(reserve, prefs.getTargetArrivalSoC());
+        ChargeCurve curve = ChargeCurve.of(ev);
+        Map<Double, ChargeCurve.Table> tablesByKw = new HashMap<>();
+
+        // Only reached stations and labels are stored, so a search costs what it touches, not the graph's size
+        Stations stations = new Stations();
+        for (int k = 0; k < last.size(); k++) {
+            int slot = stations.insert(last.nodes[k]);
+            stations.exitKm[slot] = last.km[k];
+            stations.exitMinutes[slot] = last.minutes[k];
+        }
+        Labels labels = new Labels();
+        Heap open = new Heap();
+
+        double bestTime = Double.POSITIVE_INFINITY;
+        int bestFrom = -1;
+
+        for (int k = 0; k < first.size(); k++) {
+            double left = ev.getStartSoC() - first.km[k] * socPerKm;
+            if (left >= reserve - EPSILON) {
+                int node = first.nodes[k];
+                relax(node * width + level(left, steps), -1, first.minutes[k], left, labels, open,
+                        bound(graph, node, destinationLat, destinationLng, stations));
+            }
+        }
+
+        while (!open.isEmpty() && open.peekKey() < bestTime) {
+            int label = open.pop();
+            int slot = labels.find(label);
+            if (labels.settled[slot]) {
+                continue;
+            }
+            labels.settled[slot] = true;
+            boolean charging = label >= chargeBase;
+            int node = (label % chargeBase) / width;
+            int b = label % width;
+            double t = labels.time[slot];
+            double s = labels.soc[slot];
+            int at = stations.insert(node);
+            if (s <= stations.settledCharge[at] || (!charging && s <= stations.settledArrive[at])) {
+                continue;
+            }
+            if (charging) {
+                stations.settledCharge[at] = s;
+            } else {
+                stations.settledArrive[at] = s;
+            }
+
+            // Finish from here
+            double exitKm = stations.exitKm[at];
+            if (exitKm >= 0 && s - exitKm * socPerKm >= arrivalFloor - EPSILON
+                    && t + stations.exitMinutes[at] < bestTime) {
+                bestTime = t + stations.exitMinutes[at];
+                bestFrom = label;
+            }
+
+            // Charge one more step
+            int next = b + 1;
+            if (next <= maxLevel) {
+                if (stations.table[at] == null) {
+                    stations.table[at] = tablesByKw.computeIfAbsent(graph.maxKw(node), curve::table);
+                }
+                double targetSoc = next * step;
+                double cost = stations.table[at].minutes(s, targetSoc) + (charging ? 0 : STOP_OVERHEAD_MINUTES);
+                relax(chargeBase + node * width + next, label, t + cost, targetSoc, labels, open,
+                        bound(graph, node, destinationLat, destinationLng, stations));
+            }
+
+            // Drive on, stopping or passing through at the next station
+            for (int e = graph.firstLeg(node), end = graph.firstLeg(node + 1); e < end; e++) {
+                double left = s - graph.legKm(e) * socPerKm;
+                if (left < reserve - EPSILON) {
+                    continue;
+                }
+                int to = graph.legTo(e);
+                relax(to * width + level(left, steps), label, t + graph.legMinutes(e), left, labels, open,
+                        bound(graph, to, destinationLat, destinationLng, stations));
+            }
+            if (labels.size() > stateBudget) {
+                throw new IllegalStateException("Charging stop search exceeded its state budget of " + stateBudget);
+            }
+        }
+
+        if (bestFrom < 0) {
+            throw new IllegalStateException("No charging stop sequence over the station graph reaches the destination");
+        }
+        return reconstruct(bestFrom, chargeBase, width, labels, stations);
+    }
+
+    private static void relax(int label, int from, double t, double s, Labels labels, Heap open, double bound) {
+        int slot = labels.insert(label);
+        if (labels.settled[slot]) {
+            return;
+        }
+        if (t < labels.time[slot] || (t == labels.time[slot] && s > labels.soc[slot])) {
+            labels.time[slot] = t;
+            labels.soc[slot] = s;
+            labels.parent[slot] = from;
+            open.push(t + bound, label);
+        }
+    }
+
+    private static int level(double soc, int steps) {
+        return Math.max(0, Math.min(steps, (int) Math.floor(soc * steps + EPSILON)));
+    }
+
+    private static double bound(StationGraph graph, int node, double lat, double lng, Stations stations) {
+        int slot = stations.insert(node);
+        if (stations.bound[slot] < 0) {
+            stations.bound[slot] = GeoUtils.haversineKm(graph.lat(node), graph.lng(node), lat, lng) / MAX_KMH * 60.0;
+        }
+        return stations.bound[slot];
+    }
+
+    // Walks back from the best finishing label; each run of charge labels at a station is one stop
+    private List<ChargingStopOptimizer.Stop> reconstruct(int label, int chargeBase, int width,
+                                                         Labels labels, Stations stations) {
+        List<ChargingStopOptimizer.Stop> stops = new ArrayList<>();
+        while (label >= 0) {
+            if (label < chargeBase) {
+                label = labels.parent[labels.find(label)];
+                continue;
+            }
+            int node = (label - chargeBase) / width;
+            double departSoC = labels.soc[labels.find(label)];
+            int arrival = label;
+            while (arrival >= chargeBase) {
+                arrival = labels.parent[labels.find(arrival)];
+            }
+            double arriveSoC = labels.soc[labels.find(arrival)];
+            ChargeCurve.Table table = stations.table[stations.find(node)];
+            stops.add(new ChargingStopOptimizer.Stop(node, arriveSoC, departSoC, table.minutes(arriveSoC, departSoC)));
+            label = labels.parent[labels.find(arrival)];
+        }
+        Collections.reverse(stops);
+        return stops;
+    }
+
+    /** Stations where the trip enters or leaves the graph, with the drive between them and the endpoint. */
+    public static final class Access {
+        private final int[] nodes;
+        private final double[] km;
+        private final double[] minutes;
+
+        public Access(int[] nodes, double[] km, double[] minutes) {
+            this.nodes = nodes;
+            this.km = km;
+            this.minutes = minutes;
+        }
+
+        public int size() {
+            return nodes.length;
+        }
+    }
+
+    /**
+     * Open-addressing table of int keys (labels or stations) to slots in the
+     * subclass's value arrays, which are grown alongside the keys.
+     */
+    private abstract static class SlotTable {
+        private int[] keys;
+        private int size;
+
+        SlotTable(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, -1);
+        }
+
+        int size() {
+            return size;
+        }
+
+        // Slot holding key, which must be present
+        int find(int key) {
+            return probe(key);
+        }
+
+        // Slot holding key, added with initial values if absent
+        int insert(int key) {
+            int slot = probe(key);
+            if (keys[slot] != key) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    slot = probe(key);
+                }
+                keys[slot] = key;
+                size++;
+                init(slot);
+            }
+            return slot;
+        }
+
+        abstract void init(int slot);
+
+        // Value arrays resized to capacity, the value at old slot i moving to moved[i] where that is not -1
+        abstract void resize(int capacity, int[] moved);
+
+        private int probe(int key) {
+            int mask = keys.length - 1;
+            int h = key * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (keys[slot] != key && keys[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            int[] old = keys;
+            keys = new int[old.length * 2];
+            Arrays.fill(keys, -1);
+            int[] moved = new int[old.length];
+            for (int i = 0; i < old.length; i++) {
+                moved[i] = old[i] == -1 ? -1 : probe(old[i]);
+                if (moved[i] >= 0) {
+                    keys[moved[i]] = old[i];
+                }
+            }
+            resize(keys.length, moved);
+        }
+    }
+
+    // Time, exact SoC, parent label and settled flag per reached label
+    private static final class Labels extends SlotTable {
+        double[] time;
+        double[] soc;
+        int[] parent;
+        boolean[] settled;
+
+        Labels() {
+            super(1 << 12);
+            time = new double[1 << 12];
+            soc = new double[1 << 12];
+            parent = new int[1 << 12];
+            settled = new boolean[1 << 12];
+        }
+
+        @Override
+        void init(int slot) {
+            time[slot] = Double.POSITIVE_INFINITY;
+            soc[slot] = 0;
+            parent[slot] = -1;
+            settled[slot] = false;
+        }
+
+        @Override
+        void resize(int capacity, int[] moved) {
+            double[] newTime = new double[capacity];
+            double[] newSoc = new double[capacity];
+            int[] newParent = new int[capacity];
+            boolean[] newSettled = new boolean[capacity];
+            for (int i = 0; i < moved.length; i++) {
+                if (moved[i] >= 0) {
+                    newTime[moved[i]] = time[i];
+                    newSoc[moved[i]] = soc[i];
+                    newParent[moved[i]] = parent[i];
+                    newSettled[moved[i]] = settled[i];
+                }
+            }
+            time = newTime;
+            soc = newSoc;
+            parent = newParent;
+            settled = newSettled;
+        }
+    }
+
+    // Per reached station: the drive out to the destination (-1 km where there is none), the A* bound
+    // (-1 until computed), the most charge settled per layer and the charge table
+    private static final class Stations extends SlotTable {
+        double[] exitKm;
+        double[] exitMinutes;
+        double[] bound;
+        double[] settledArrive;
+        double[] settledCharge;
+        ChargeCurve.Table[] table;
+
+        Stations() {
+            super(1 << 10);
+            exitKm = new double[1 << 10];
+            exitMinutes = new double[1 << 10];
+            bound = new double[1 << 10];
+            settledArrive = new double[1 << 10];
+            settledCharge = new double[1 << 10];
+            table = new ChargeCurve.Table[1 << 10];
+        }
+
+        @Override
+        void init(int slot) {
+            exitKm[slot] = -1;
+            exitMinutes[slot] = 0;
+            bound[slot] = -1;
+            settledArrive[slot] = -1;
+            settledCharge[slot] = -1;
+            table[slot] = null;
+        }
+
+        @Override
+        void resize(int capacity, int[] moved) {
+            double[] newExitKm = new double[capacity];
+            double[] newExitMinutes = new double[capacity];
+            double[] newBound = new double[capacity];
+            double[] newSettledArrive = new double[capacity];
+            double[] newSettledCharge = new double[capacity];
+            ChargeCurve.Table[] newTable = new ChargeCurve.Table[capacity];
+            for (int i = 0; i < moved.length; i++) {
+                if (moved[i] >= 0) {
+                    newExitKm[moved[i]] = exitKm[i];
+                    newExitMinutes[moved[i]] = exitMinutes[i];
+                    newBound[moved[i]] = bound[i];
+                    newSettledArrive[moved[i]] = settledArrive[i];
+                    newSettledCharge[moved[i]] = settledCharge[i];
+                    newTable[moved[i]] = table[i];
+                }
+            }
+            exitKm = newExitKm;
+            exitMinutes = newExitMinutes;
+            bound = newBound;
+            settledArrive = newSettledArrive;
+            settledCharge = newSettledCharge;
+            table = newTable;
+        }
+    }
+
+    // Binary min-heap of labels keyed by their A* estimate; stale entries are skipped on pop
+    private static final class Heap {
+        private double[] keys = new double[256];
+        private int[] labels = new int[256];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        void push(double key, int label) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                labels = Arrays.copyOf(labels, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int up = (i - 1) >>> 1;
+                if (keys[up] <= key) {
+                    break;
+                }
+                keys[i] = keys[up];
+                labels[i] = labels[up];
+                i = up;
+            }
+            keys[i] = key;
+            labels[i] = label;
+        }
+
+        int pop() {
+            int top = labels[0];
+            double key = keys[--size];
+            int label = labels[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                labels[i] = labels[child];
+                i = child;
+            }
+            keys[i] = key;
+            labels[i] = label;
+            return top;
+        }
+    }
+}
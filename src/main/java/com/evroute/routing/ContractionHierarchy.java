@@ -0,0 +1,383 @@
+package com.evroute.routing;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Contraction hierarchy over a {@link RoadNetwork}.
+ *
+ * Nodes are contracted least-important first, importance being the edge
+ * difference (shortcuts added minus edges removed) plus the number of
+ * already contracted neighbours, updated lazily. A shortcut u-&gt;w replaces
+ * u-&gt;v-&gt;w only when a bounded witness search finds no path at least as
+ * short that avoids v. Every road edge is kept as a hierarchy edge, and each
+ * shortcut records the two edges it stands for so a path can be unpacked.
+ */
+final class ContractionHierarchy {
+
+    // Witness searches give up after settling this many nodes. A missed witness costs a redundant
+    // shortcut, and redundant shortcuts make later searches dearer, so tight limits do not pay off.
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    final int[] rank;
+    final int edgeCount;
+    final int[] from;
+    final int[] to;
+    final int[] weight;
+    final int[] first;   // shortcut: first half; road edge: -1 - road edge id
+    final int[] second;  // shortcut: second half; road edge: -1
+
+    private ContractionHierarchy(int[] rank, IntList from, IntList to, IntList weight, IntList first, IntList second) {
+        this.rank = rank;
+        this.edgeCount = from.size();
+        this.from = from.toArray();
+        this.to = to.toArray();
+        this.weight = weight.toArray();
+        this.first = first.toArray();
+        this.second = second.toArray();
+    }
+
+    static ContractionHierarchy build(RoadNetwork network) {
+        return new Builder(network).contract();
+    }
+
+    private static final class Builder {
+        private final int n;
+        private final IntList from = new IntList();
+        private final IntList to = new IntList();
+        private final IntList weight = new IntList();
+        private final IntList first = new IntList();
+        private final IntList second = new IntList();
+        private final IntList[] out;
+        private final IntList[] in;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbours;
+        private final int[] rank;
+        private final int[] seenBy;
+        private final int[] target;
+
+        // Witness search state, reset through the touched list
+        private final int[] dist;
+        private final IntList touched = new IntList();
+        private final LongHeap heap = new LongHeap();
+        private final IntList pendingFrom = new IntList();
+        private final IntList pendingTo = new IntList();
+        private final IntList pendingWeight = new IntList();
+        private final IntList pendingFirst = new IntList();
+        private final IntList pendingSecond = new IntList();
+
+        Builder(RoadNetwork network) {
+            n = network.nodeCount;
+            out = new IntList[n];
+            in = new IntList[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new IntList(4);
+                in[v] = new IntList(4);
+            }
+            for (int e = 0; e < network.edgeCount; e++) {
+                addEdge(network.edgeFrom[e], network.edgeTo[e], network.edgeWeight[e], -1 - e, -1);
+            }
+            contracted = new boolean[n];
+            contractedNeighbours = new int[n];
+            rank = new int[n];
+            seenBy = new int[n];
+            Arrays.fill(seenBy, -1);
+            target = new int[n];
+            Arrays.fill(target, -1);
+            dist = new int[n];
+            Arrays.fill(dist, Integer.MAX_VALUE);
+        }
+
+        ContractionHierarchy contract() {
+            LongHeap queue = new LongHeap();
+            for (int v = 0; v < n; v++) {
+                queue.push(entry(priority(v), v));
+            }
+            int next = 0;
+            while (!queue.isEmpty()) {
+                int v = (int) queue.pop();
+                // Lazy update: re-queue when no longer the cheapest
+                int priority = priority(v);
+                if (!queue.isEmpty() && priority > priorityOf(queue.peek())) {
+                    queue.push(entry(priority, v));
+                    continue;
+                }
+                shortcuts(v, true);
+                contracted[v] = true;
+                rank[v] = next++;
+                forEachNeighbour(v, u -> {
+                    if (seenBy[u] != v) {
+                        seenBy[u] = v;
+                        contractedNeighbours[u]++;
+                    }
+                });
+                detach(v);
+            }
+            return new ContractionHierarchy(rank, from, to, weight, first, second);
+        }
+
+        private static int priorityOf(long entry) {
+            return (int) (entry >>> 32) - Integer.MAX_VALUE / 2;
+        }
+
+        private static long entry(int priority, int v) {
+            // Offset keeps negative priorities ordered as unsigned high bits
+            return ((long) (priority + Integer.MAX_VALUE / 2) << 32) | v;
+        }
+
+        private int priority(int v) {
+            int added = shortcuts(v, false);
+            int removed = 0;
+            for (int k = 0; k < in[v].size(); k++) {
+                if (!contracted[from.get(in[v].get(k))]) {
+                    removed++;
+                }
+            }
+            for (int k = 0; k < out[v].size(); k++) {
+                if (!contracted[to.get(out[v].get(k))]) {
+                    removed++;
+                }
+            }
+            return 2 * (added - removed) + contractedNeighbours[v];
+        }
+
+        /** Shortcuts needed to contract v; added to the graph when {@code apply}. */
+        private int shortcuts(int v, boolean apply) {
+            pendingFrom.clear();
+            pendingTo.clear();
+            pendingWeight.clear();
+            pendingFirst.clear();
+            pendingSecond.clear();
+            IntList ins = in[v];
+            IntList outs = out[v];
+            for (int i = 0; i < ins.size(); i++) {
+                int inEdge = ins.get(i);
+                int u = from.get(inEdge);
+                if (contracted[u]) {
+                    continue;
+                }
+                int maxVia = 0;
+                int targets = 0;
+                for (int j = 0; j < outs.size(); j++) {
+                    int w = to.get(outs.get(j));
+                    if (!contracted[w] && w != u) {
+                        maxVia = Math.max(maxVia, weight.get(inEdge) + weight.get(outs.get(j)));
+                        if (target[w] != v) {
+                            target[w] = v;
+                            targets++;
+                        }
+                    }
+                }
+                if (maxVia == 0) {
+                    continue;
+                }
+                witnessSearch(u, v, maxVia, targets);
+                for (int j = 0; j < outs.size(); j++) {
+                    target[to.get(outs.get(j))] = -1;
+                }
+                for (int j = 0; j < outs.size(); j++) {
+                    int outEdge = outs.get(j);
+                    int w = to.get(outEdge);
+                    if (contracted[w] || w == u) {
+                        continue;
+                    }
+                    int via = weight.get(inEdge) + weight.get(outEdge);
+                    if (dist[w] > via) {
+                        pendingFrom.add(u);
+                        pendingTo.add(w);
+                        pendingWeight.add(via);
+                        pendingFirst.add(inEdge);
+                        pendingSecond.add(outEdge);
+                    }
+                }
+                resetSearch();
+            }
+            int count = pendingFrom.size();
+            if (apply) {
+                for (int k = 0; k < count; k++) {
+                    addShortcut(pendingFrom.get(k), pendingTo.get(k), pendingWeight.get(k),
+                            pendingFirst.get(k), pendingSecond.get(k));
+                }
+            }
+            return count;
+        }
+
+        // Dijkstra from u over uncontracted nodes other than v, up to maxDist or until every target is settled
+        private void witnessSearch(int u, int v, int maxDist, int targets) {
+            dist[u] = 0;
+            touched.add(u);
+            heap.push((long) u);
+            int settled = 0;
+            while (!heap.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+                long top = heap.pop();
+                int x = (int) top;
+                int d = (int) (top >>> 32);
+                if (d > dist[x]) {
+                    continue;
+                }
+                if (d > maxDist) {
+                    break;
+                }
+                settled++;
+                if (target[x] == v && --targets == 0) {
+                    break;
+                }
+                IntList edges = out[x];
+                for (int k = 0; k < edges.size(); k++) {
+                    int e = edges.get(k);
+                    int y = to.get(e);
+                    if (y == v || contracted[y]) {
+                        continue;
+                    }
+                    int nd = d + weight.get(e);
+                    if (nd <= maxDist && nd < dist[y]) {
+                        if (dist[y] == Integer.MAX_VALUE) {
+                            touched.add(y);
+                        }
+                        dist[y] = nd;
+                        heap.push(((long) nd << 32) | y);
+                    }
+                }
+            }
+        }
+
+        private void resetSearch() {
+            for (int k = 0; k < touched.size(); k++) {
+                dist[touched.get(k)] = Integer.MAX_VALUE;
+            }
+            touched.clear();
+            heap.clear();
+        }
+
+        private void forEachNeighbour(int v, IntConsumer action) {
+            for (int k = 0; k < in[v].size(); k++) {
+                int u = from.get(in[v].get(k));
+                if (!contracted[u]) {
+                    action.accept(u);
+                }
+            }
+            for (int k = 0; k < out[v].size(); k++) {
+                int w = to.get(out[v].get(k));
+                if (!contracted[w]) {
+                    action.accept(w);
+                }
+            }
+        }
+
+        // Drops v's edges from its neighbours' lists so later searches do not rescan them
+        private void detach(int v) {
+            for (int k = 0; k < in[v].size(); k++) {
+                removeEdges(out[from.get(in[v].get(k))], v, to);
+            }
+            for (int k = 0; k < out[v].size(); k++) {
+                removeEdges(in[to.get(out[v].get(k))], v, from);
+            }
+        }
+
+        private static void removeEdges(IntList edges, int node, IntList endpoint) {
+            int kept = 0;
+            for (int k = 0; k < edges.size(); k++) {
+                int e = edges.get(k);
+                if (endpoint.get(e) != node) {
+                    edges.set(kept++, e);
+                }
+            }
+            edges.truncate(kept);
+        }
+
+        // Keeps at most one edge per node pair in the adjacency lists, the cheaper one
+        private void addShortcut(int u, int w, int cost, int firstHalf, int secondHalf) {
+            IntList edges = out[u];
+            for (int k = 0; k < edges.size(); k++) {
+                int e = edges.get(k);
+                if (to.get(e) == w) {
+                    if (weight.get(e) <= cost) {
+                        return;
+                    }
+                    edges.set(k, edges.get(edges.size() - 1));
+                    edges.truncate(edges.size() - 1);
+                    removeEdge(in[w], e);
+                    break;
+                }
+            }
+            addEdge(u, w, cost, firstHalf, secondHalf);
+        }
+
+        private static void removeEdge(IntList edges, int e) {
+            for (int k = 0; k < edges.size(); k++) {
+                if (edges.get(k) == e) {
+                    edges.set(k, edges.get(edges.size() - 1));
+                    edges.truncate(edges.size() - 1);
+                    return;
+                }
+            }
+        }
+
+        private void addEdge(int u, int w, int cost, int firstHalf, int secondHalf) {
+            int e = from.size();
+            from.add(u);
+            to.add(w);
+            weight.add(cost);
+            first.add(firstHalf);
+            second.add(secondHalf);
+            out[u].add(e);
+            in[w].add(e);
+        }
+    }
+
+    /** Binary min-heap of longs; callers pack (key &lt;&lt; 32 | node). */
+    static final class LongHeap {
+        private long[] items = new long[64];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        long peek() {
+            return items[0];
+        }
+
+        void push(long item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (items[parent] <= item) {
+                    break;
+                }
+                items[i] = items[parent];
+                i = parent;
+            }
+            items[i] = item;
+        }
+
+        long pop() {
+            long top = items[0];
+            long last = items[--size];
+            int i = 0;
+            for (;;) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && items[child + 1] < items[child]) {
+                    child++;
+                }
+                if (items[child] >= last) {
+                    break;
+                }
+                items[i] = items[child];
+                i = child;
+            }
+            items[i] = last;
+            return top;
+        }
+    }
+}
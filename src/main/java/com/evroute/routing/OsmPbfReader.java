@@ -0,0 +1,292 @@
+package com.evroute.routing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming reader for OpenStreetMap PBF extracts, decoding the fileformat
+ * and osmformat protobuf messages directly. Blocks are inflated one at a time
+ * and their nodes (plain and dense) and ways handed to a {@link Handler};
+ * relations, metadata and node tags are skipped.
+ */
+public final class OsmPbfReader {
+
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    private static final int MAX_BLOB_BYTES = 32 * 1024 * 1024;
+    private static final Set<String> SUPPORTED_FEATURES = Set.of("OsmSchema-V0.6", "DenseNodes");
+
+    public interface Handler {
+        default void node(long id, double lat, double lng) {}
+
+        default void way(long id, long[] refs, Map<String, String> tags) {}
+    }
+
+    private final Handler handler;
+    private final boolean nodes;
+    private final boolean ways;
+    private final Inflater inflater = new Inflater();
+    private byte[] block = new byte[0];
+
+    private OsmPbfReader(Handler handler, boolean nodes, boolean ways) {
+        this.handler = handler;
+        this.nodes = nodes;
+        this.ways = ways;
+    }
+
+    /** Reads the whole file; skipping nodes or ways avoids decoding them at all. */
+    public static void read(Path file, Handler handler, boolean nodes, boolean ways) throws IOException {
+        OsmPbfReader reader = new OsmPbfReader(handler, nodes, ways);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            reader.readBlobs(new DataInputStream(in));
+        } finally {
+            reader.inflater.end();
+        }
+    }
+
+    private void readBlobs(DataInputStream in) throws IOException {
+        for (;;) {
+            int headerLength;
+            try {
+                headerLength = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if (headerLength < 0 || headerLength > MAX_HEADER_BYTES) {
+                throw new IOException("Bad blob header length " + headerLength);
+            }
+            String type = null;
+            int dataSize = -1;
+            ProtoReader header = new ProtoReader(in.readNBytes(headerLength), 0, headerLength);
+            while (header.next()) {
+                switch (header.field()) {
+                    case 1 -> type = header.readString();
+                    case 3 -> dataSize = (int) header.readVarint();
+                    default -> header.skip();
+                }
+            }
+            if (dataSize < 0 || dataSize > MAX_BLOB_BYTES) {
+                throw new IOException("Bad blob size " + dataSize);
+            }
+            byte[] blob = in.readNBytes(dataSize);
+            if (blob.length != dataSize) {
+                throw new IOException("Truncated blob");
+            }
+            if ("OSMHeader".equals(type)) {
+                checkHeader(inflate(blob));
+            } else if ("OSMData".equals(type)) {
+                readBlock(inflate(blob));
+            }
+        }
+    }
+
+    // Returns the decoded length; the bytes are in 'block'
+    private int inflate(byte[] blob) throws IOException {
+        ProtoReader reader = new ProtoReader(blob, 0, blob.length);
+        byte[] raw = null;
+        byte[] zlib = null;
+        int rawSize = -1;
+        while (reader.next()) {
+            switch (reader.field()) {
+                case 1 -> raw = reader.readBytes();
+                case 2 -> rawSize = (int) reader.readVarint();
+                case 3 -> zlib = reader.readBytes();
+                default -> throw new IOException("Unsupported blob compression (field " + reader.field() + ")");
+            }
+        }
+        if (raw != null) {
+            block = raw;
+            return raw.length;
+        }
+        if (zlib == null || rawSize < 0 || rawSize > MAX_BLOB_BYTES) {
+            throw new IOException("Blob has no data");
+        }
+        if (block.length < rawSize) {
+            block = new byte[rawSize];
+        }
+        inflater.reset();
+        inflater.setInput(zlib);
+        try {
+            int n = inflater.inflate(block, 0, rawSize);
+            if (n != rawSize) {
+                throw new IOException("Blob inflated to " + n + " bytes, expected " + rawSize);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt blob", e);
+        }
+        return rawSize;
+    }
+
+    private void checkHeader(int length) throws IOException {
+        ProtoReader header = new ProtoReader(block, 0, length);
+        while (header.next()) {
+            if (header.field() == 4) {
+                String feature = header.readString();
+                if (!SUPPORTED_FEATURES.contains(feature)) {
+                    throw new IOException("Unsupported PBF feature " + feature);
+                }
+            } else {
+                header.skip();
+            }
+        }
+    }
+
+    private void readBlock(int length) throws IOException {
+        ProtoReader reader = new ProtoReader(block, 0, length);
+        List<String> strings = new ArrayList<>();
+        List<ProtoReader> groups = new ArrayList<>();
+        long granularity = 100;
+        long latOffset = 0;
+        long lngOffset = 0;
+        // Group contents need the granularity fields, which are serialized after them
+        while (reader.next()) {
+            switch (reader.field()) {
+                case 1 -> {
+                    if (ways) {
+                        ProtoReader table = reader.readMessage();
+                        while (table.next()) {
+                            if (table.field() == 1) {
+                                strings.add(table.readString());
+                            } else {
+                                table.skip();
+                            }
+                        }
+                    } else {
+                        reader.skip();
+                    }
+                }
+                case 2 -> groups.add(reader.readMessage());
+                case 17 -> granularity = reader.readVarint();
+                case 19 -> latOffset = reader.readVarint();
+                case 20 -> lngOffset = reader.readVarint();
+                default -> reader.skip();
+            }
+        }
+        Coordinates coordinates = new Coordinates(granularity, latOffset, lngOffset);
+        for (ProtoReader group : groups) {
+            while (group.next()) {
+                switch (group.field()) {
+                    case 1 -> {
+                        if (nodes) {
+                            readNode(group.readMessage(), coordinates);
+                        } else {
+                            group.skip();
+                        }
+                    }
+                    case 2 -> {
+                        if (nodes) {
+                            readDenseNodes(group.readMessage(), coordinates);
+                        } else {
+                            group.skip();
+                        }
+                    }
+                    case 3 -> {
+                        if (ways) {
+                            readWay(group.readMessage(), strings);
+                        } else {
+                            group.skip();
+                        }
+                    }
+                    default -> group.skip();
+                }
+            }
+        }
+    }
+
+    private void readNode(ProtoReader node, Coordinates coordinates) throws IOException {
+        long id = 0, lat = 0, lng = 0;
+        while (node.next()) {
+            switch (node.field()) {
+                case 1 -> id = node.readSInt64();
+                case 8 -> lat = node.readSInt64();
+                case 9 -> lng = node.readSInt64();
+                default -> node.skip();
+            }
+        }
+        handler.node(id, coordinates.lat(lat), coordinates.lng(lng));
+    }
+
+    private void readDenseNodes(ProtoReader dense, Coordinates coordinates) throws IOException {
+        ProtoReader ids = null, lats = null, lngs = null;
+        while (dense.next()) {
+            switch (dense.field()) {
+                case 1 -> ids = dense.readMessage();
+                case 8 -> lats = dense.readMessage();
+                case 9 -> lngs = dense.readMessage();
+                default -> dense.skip();
+            }
+        }
+        if (ids == null || lats == null || lngs == null) {
+            return;
+        }
+        // Delta-coded columns read in lockstep
+        long id = 0, lat = 0, lng = 0;
+        while (ids.hasRemaining()) {
+            id += ids.readSInt64();
+            lat += lats.readSInt64();
+            lng += lngs.readSInt64();
+            handler.node(id, coordinates.lat(lat), coordinates.lng(lng));
+        }
+    }
+
+    private void readWay(ProtoReader way, List<String> strings) throws IOException {
+        long id = 0;
+        ProtoReader keys = null, values = null, refs = null;
+        while (way.next()) {
+            switch (way.field()) {
+                case 1 -> id = way.readVarint();
+                case 2 -> keys = way.readMessage();
+                case 3 -> values = way.readMessage();
+                case 8 -> refs = way.readMessage();
+                default -> way.skip();
+            }
+        }
+        Map<String, String> tags = new HashMap<>();
+        if (keys != null && values != null) {
+            while (keys.hasRemaining() && values.hasRemaining()) {
+                tags.put(string(strings, keys.readVarint()), string(strings, values.readVarint()));
+            }
+        }
+        long[] nodeIds = new long[8];
+        int count = 0;
+        long ref = 0;
+        while (refs != null && refs.hasRemaining()) {
+            ref += refs.readSInt64();
+            if (count == nodeIds.length) {
+                nodeIds = Arrays.copyOf(nodeIds, count * 2);
+            }
+            nodeIds[count++] = ref;
+        }
+        handler.way(id, Arrays.copyOf(nodeIds, count), tags);
+    }
+
+    private static String string(List<String> strings, long index) throws IOException {
+        if (index < 0 || index >= strings.size()) {
+            throw new IOException("String table index " + index + " out of range");
+        }
+        return strings.get((int) index);
+    }
+
+    // Block-level fixed point: degrees = 1e-9 * (offset + granularity * value)
+    private record Coordinates(long granularity, long latOffset, long lngOffset) {
+        double lat(long value) {
+            return 1e-9 * (latOffset + granularity * value);
+        }
+
+        double lng(long value) {
+            return 1e-9 * (lngOffset + granularity * value);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.evroute.routing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal protobuf wire-format reader over a byte array: just what the OSM
+ * PBF messages need (varints, zigzag, length-delimited and packed fields).
+ */
+final class ProtoReader {
+
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private final byte[] buf;
+    private int pos;
+    private final int limit;
+    private int tag;
+
+    ProtoReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    /** Advances to the next field; false at the end of the message. */
+    boolean next() throws IOException {
+        if (pos >= limit) {
+            return false;
+        }
+        tag = (int) readVarint();
+        return true;
+    }
+
+    int field() {
+        return tag >>> 3;
+    }
+
+    int wireType() {
+        return tag & 7;
+    }
+
+    boolean hasRemaining() {
+        return pos < limit;
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= limit) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = buf[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    long readSInt64() throws IOException {
+        long raw = readVarint();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /** The current length-delimited field as a reader of its own. */
+    ProtoReader readMessage() throws IOException {
+        int length = readLength();
+        ProtoReader message = new ProtoReader(buf, pos, length);
+        pos += length;
+        return message;
+    }
+
+    byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] bytes = new byte[length];
+        System.arraycopy(buf, pos, bytes, 0, length);
+        pos += length;
+        return bytes;
+    }
+
+    String readString() throws IOException {
+        int length = readLength();
+        String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return value;
+    }
+
+    void skip() throws IOException {
+        switch (wireType()) {
+            case VARINT -> readVarint();
+            case FIXED64 -> pos += 8;
+            case LENGTH_DELIMITED -> {
+                // Not pos += readLength(): pos would be read before the length varint is consumed
+                int length = readLength();
+                pos += length;
+            }
+            case FIXED32 -> pos += 4;
+            default -> throw new IOException("Unsupported wire type " + wireType());
+        }
+        if (pos > limit) {
+            throw new IOException("Truncated field");
+        }
+    }
+
+    private int readLength() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > limit - pos) {
+            throw new IOException("Field length " + length + " overruns message");
+        }
+        return (int) length;
+    }
+}
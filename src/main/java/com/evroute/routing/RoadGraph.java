@@ -0,0 +1,494 @@
+package com.evroute.routing;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.geo.PackedPolyline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only, memory-mapped road graph written by {@link RoadGraphImporter},
+ * answering car routes in-process.
+ *
+ * The graph is a contraction hierarchy: a route query runs two Dijkstra
+ * searches, forward from the origin and backward from the destination, that
+ * only ever climb to more important nodes, so each settles a few hundred
+ * nodes even on a country-sized network. Shortcut edges on the resulting path
+ * are then unpacked into road edges, whose shape points give the polyline.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header       magic, version, node count, cell count, cell degrees,
+ *                edge count, forward edge count, road edge count, segments, shape points
+ *   cellKeys     long[cells]     row &lt;&lt; 32 | col, ascending
+ *   cellStart    int[cells + 1]  first node of each cell
+ *   lat, lng     int[n] each     degrees * 1e6
+ *   fwdStart     int[n + 1]      upward edges leaving each node
+ *   bwdStart     int[n + 1]      upward edges entering each node, after the forward ones
+ *   upEdges      int[edges]      edge ids
+ *   from, to     int[edges] each
+ *   weight       int[edges]      tenths of a second
+ *   first        int[edges]      shortcut: first half; road edge: -1 - road edge id
+ *   second       int[edges]      shortcut: second half
+ *   roadMeters   float[road edges]
+ *   roadShape    int[road edges] segment &lt;&lt; 1 | 1 when travelled against the shape order
+ *   shapeStart   int[segments + 1]
+ *   shapeLat, shapeLng  int[points] each, degrees * 1e6
+ * </pre>
+ */
+public final class RoadGraph {
+
+    static final int MAGIC = 0x47525645; // "EVRG"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 48;
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final ByteBuffer buffer;
+    private final double snapRadiusKm;
+    private final int nodeCount;
+    private final int cellCount;
+    private final double cellDegrees;
+    private final int edgeCount;
+    private final int forwardEdgeCount;
+
+    private final int cellKeysAt;
+    private final int cellStartAt;
+    private final int latAt;
+    private final int lngAt;
+    private final int fwdStartAt;
+    private final int bwdStartAt;
+    private final int upEdgesAt;
+    private final int fromAt;
+    private final int toAt;
+    private final int weightAt;
+    private final int firstAt;
+    private final int secondAt;
+    private final int roadMetersAt;
+    private final int roadShapeAt;
+    private final int shapeStartAt;
+    private final int shapeLatAt;
+    private final int shapeLngAt;
+    private final int endAt;
+
+    private RoadGraph(ByteBuffer buffer, double snapRadiusKm) {
+        this.buffer = buffer;
+        this.snapRadiusKm = snapRadiusKm;
+        this.nodeCount = buffer.getInt(8);
+        this.cellCount = buffer.getInt(12);
+        this.cellDegrees = buffer.getDouble(16);
+        this.edgeCount = buffer.getInt(24);
+        this.forwardEdgeCount = buffer.getInt(28);
+        int roadEdgeCount = buffer.getInt(32);
+        int segmentCount = buffer.getInt(36);
+        int shapePointCount = buffer.getInt(40);
+
+        this.cellKeysAt = HEADER_BYTES;
+        this.cellStartAt = cellKeysAt + cellCount * Long.BYTES;
+        this.latAt = cellStartAt + (cellCount + 1) * Integer.BYTES;
+        this.lngAt = latAt + nodeCount * Integer.BYTES;
+        this.fwdStartAt = lngAt + nodeCount * Integer.BYTES;
+        this.bwdStartAt = fwdStartAt + (nodeCount + 1) * Integer.BYTES;
+        this.upEdgesAt = bwdStartAt + (nodeCount + 1) * Integer.BYTES;
+        this.fromAt = upEdgesAt + edgeCount * Integer.BYTES;
+        this.toAt = fromAt + edgeCount * Integer.BYTES;
+        this.weightAt = toAt + edgeCount * Integer.BYTES;
+        this.firstAt = weightAt + edgeCount * Integer.BYTES;
+        this.secondAt = firstAt + edgeCount * Integer.BYTES;
+        this.roadMetersAt = secondAt + edgeCount * Integer.BYTES;
+        this.roadShapeAt = roadMetersAt + roadEdgeCount * Float.BYTES;
+        this.shapeStartAt = roadShapeAt + roadEdgeCount * Integer.BYTES;
+        this.shapeLatAt = shapeStartAt + (segmentCount + 1) * Integer.BYTES;
+        this.shapeLngAt = shapeLatAt + shapePointCount * Integer.BYTES;
+        this.endAt = shapeLngAt + shapePointCount * Integer.BYTES;
+    }
+
+    /**
+     * Maps a graph file. Route endpoints further than {@code snapRadiusKm}
+     * from any graph node are treated as unroutable.
+     */
+    public static RoadGraph open(Path path, double snapRadiusKm) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a road graph: " + path);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported road graph version " + buffer.getInt(4) + ": " + path);
+            }
+            RoadGraph graph = new RoadGraph(buffer, snapRadiusKm);
+            if (graph.endAt != buffer.limit()) {
+                throw new IOException("Truncated road graph: " + path);
+            }
+            return graph;
+        }
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Fastest car route between the graph nodes nearest to the two points,
+     * or null when either point is off the network or no route exists.
+     */
+    public Route route(double fromLat, double fromLng, double toLat, double toLng) {
+        return route(fromLat, fromLng, toLat, toLng, true);
+    }
+
+    /**
+     * Distance and duration of {@link #route}, skipping the geometry; the
+     * returned polyline is empty.
+     */
+    public Route routeCost(double fromLat, double fromLng, double toLat, double toLng) {
+        return route(fromLat, fromLng, toLat, toLng, false);
+    }
+
+    private Route route(double fromLat, double fromLng, double toLat, double toLng, boolean withGeometry) {
+        int source = nearestNode(fromLat, fromLng);
+        int target = nearestNode(toLat, toLng);
+        if (source < 0 || target < 0) {
+            return null;
+        }
+        if (source == target) {
+            PackedPolyline point = withGeometry
+                    ? new PackedPolyline.Builder(1).add(lat(source), lng(source)).build()
+                    : PackedPolyline.EMPTY;
+            return new Route(point, 0, 0);
+        }
+
+        SearchSpace forward = new SearchSpace();
+        SearchSpace backward = new SearchSpace();
+        forward.reach(source, 0, -1);
+        backward.reach(target, 0, -1);
+        int best = INFINITY;
+        int meeting = -1;
+        while (true) {
+            int forwardMin = forward.minKey();
+            int backwardMin = backward.minKey();
+            if (Math.min(forwardMin, backwardMin) >= best) {
+                break;
+            }
+            boolean isForward = forwardMin <= backwardMin;
+            SearchSpace space = isForward ? forward : backward;
+            SearchSpace other = isForward ? backward : forward;
+            long top = space.heap.pop();
+            int v = (int) top;
+            int d = (int) (top >>> 32);
+            int slot = space.slot(v);
+            if (d > space.dist[slot]) {
+                continue;
+            }
+            int opposite = other.distance(v);
+            if (opposite != INFINITY && d + opposite < best) {
+                best = d + opposite;
+                meeting = v;
+            }
+            if (stalled(space, v, d, isForward)) {
+                continue;
+            }
+            int start = isForward ? fwdStart(v) : forwardEdgeCount + bwdStart(v);
+            int end = isForward ? fwdStart(v + 1) : forwardEdgeCount + bwdStart(v + 1);
+            for (int k = start; k < end; k++) {
+                int e = upEdge(k);
+                int w = isForward ? to(e) : from(e);
+                space.reach(w, d + weight(e), e);
+            }
+        }
+        return meeting < 0 ? null : unpack(forward, backward, meeting, source, withGeometry);
+    }
+
+    // Stall-on-demand: v is reached more cheaply through a higher node, so its edges cannot help
+    private boolean stalled(SearchSpace space, int v, int d, boolean isForward) {
+        int start = isForward ? forwardEdgeCount + bwdStart(v) : fwdStart(v);
+        int end = isForward ? forwardEdgeCount + bwdStart(v + 1) : fwdStart(v + 1);
+        for (int k = start; k < end; k++) {
+            int e = upEdge(k);
+            int u = isForward ? from(e) : to(e);
+            int du = space.distance(u);
+            if (du != INFINITY && du + weight(e) < d) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Route unpack(SearchSpace forward, SearchSpace backward, int meeting, int source, boolean withGeometry) {
+        // Hierarchy edges source -> meeting, then meeting -> target
+        IntList path = new IntList();
+        for (int v = meeting, e; (e = forward.parent(v)) >= 0; v = from(e)) {
+            path.add(e);
+        }
+        for (int i = 0, j = path.size() - 1; i < j; i++, j--) {
+            int t = path.get(i);
+            path.set(i, path.get(j));
+            path.set(j, t);
+        }
+        for (int v = meeting, e; (e = backward.parent(v)) >= 0; v = to(e)) {
+            path.add(e);
+        }
+
+        PackedPolyline.Builder polyline = withGeometry ? new PackedPolyline.Builder(path.size() * 8) : null;
+        if (withGeometry) {
+            polyline.add(lat(source), lng(source));
+        }
+        double meters = 0;
+        long deciseconds = 0;
+        IntList stack = new IntList();
+        for (int i = 0; i < path.size(); i++) {
+            stack.add(path.get(i));
+            while (stack.size() > 0) {
+                int e = stack.get(stack.size() - 1);
+                stack.truncate(stack.size() - 1);
+                int first = first(e);
+                if (first >= 0) {
+                    stack.add(second(e));
+                    stack.add(first);
+                    continue;
+                }
+                int road = -1 - first;
+                meters += buffer.getFloat(roadMetersAt + road * Float.BYTES);
+                deciseconds += weight(e);
+                if (withGeometry) {
+                    appendShape(polyline, buffer.getInt(roadShapeAt + road * Integer.BYTES));
+                    polyline.add(lat(to(e)), lng(to(e)));
+                }
+            }
+        }
+        return new Route(withGeometry ? polyline.build() : PackedPolyline.EMPTY, meters / 1000.0, deciseconds / 600.0);
+    }
+
+    private void appendShape(PackedPolyline.Builder polyline, int shape) {
+        int segment = shape >>> 1;
+        int start = buffer.getInt(shapeStartAt + segment * Integer.BYTES);
+        int end = buffer.getInt(shapeStartAt + (segment + 1) * Integer.BYTES);
+        boolean reversed = (shape & 1) != 0;
+        for (int k = 0; k < end - start; k++) {
+            int p = reversed ? end - 1 - k : start + k;
+            polyline.add(buffer.getInt(shapeLatAt + p * Integer.BYTES) / RoadNetwork.FIXED_POINT,
+                    buffer.getInt(shapeLngAt + p * Integer.BYTES) / RoadNetwork.FIXED_POINT);
+        }
+    }
+
+    /**
+     * Nearest node within the snap radius, or -1. Cells are scanned in rings
+     * around the point's cell, stopping once no unscanned cell can be closer.
+     */
+    int nearestNode(double lat, double lng) {
+        int row = RoadNetwork.row(lat, cellDegrees);
+        int col = RoadNetwork.col(lng, cellDegrees);
+        double cellKm = Math.min(GeoUtils.KM_PER_DEGREE_LAT * cellDegrees,
+                GeoUtils.KM_PER_DEGREE_LAT * cellDegrees * Math.cos(Math.toRadians(lat)));
+        int maxRing = (int) Math.ceil(snapRadiusKm / Math.max(cellKm, 1e-6)) + 1;
+        Nearest nearest = new Nearest(lat, lng, snapRadiusKm);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            scanCells(nearest, row - ring, col - ring, col + ring);
+            if (ring > 0) {
+                scanCells(nearest, row + ring, col - ring, col + ring);
+                for (int r = row - ring + 1; r < row + ring; r++) {
+                    scanCells(nearest, r, col - ring, col - ring);
+                    scanCells(nearest, r, col + ring, col + ring);
+                }
+            }
+            // Anything beyond this ring is at least ring cells away
+            if (nearest.node >= 0 && nearest.km <= ring * cellKm) {
+                break;
+            }
+        }
+        return nearest.node;
+    }
+
+    private void scanCells(Nearest nearest, int row, int colLo, int colHi) {
+        long lastKey = key(row, colHi);
+        for (int c = firstCellAtOrAfter(key(row, colLo)); c < cellCount && cellKey(c) <= lastKey; c++) {
+            for (int v = cellStart(c), end = cellStart(c + 1); v < end; v++) {
+                double km = GeoUtils.haversineKm(nearest.lat, nearest.lng, lat(v), lng(v));
+                if (km <= nearest.km) {
+                    nearest.km = km;
+                    nearest.node = v;
+                }
+            }
+        }
+    }
+
+    private static final class Nearest {
+        final double lat;
+        final double lng;
+        double km;
+        int node = -1;
+
+        Nearest(double lat, double lng, double maxKm) {
+            this.lat = lat;
+            this.lng = lng;
+            this.km = maxKm;
+        }
+    }
+
+    private double lat(int v) {
+        return buffer.getInt(latAt + v * Integer.BYTES) / RoadNetwork.FIXED_POINT;
+    }
+
+    private double lng(int v) {
+        return buffer.getInt(lngAt + v * Integer.BYTES) / RoadNetwork.FIXED_POINT;
+    }
+
+    private int fwdStart(int v) {
+        return buffer.getInt(fwdStartAt + v * Integer.BYTES);
+    }
+
+    private int bwdStart(int v) {
+        return buffer.getInt(bwdStartAt + v * Integer.BYTES);
+    }
+
+    private int upEdge(int k) {
+        return buffer.getInt(upEdgesAt + k * Integer.BYTES);
+    }
+
+    private int from(int e) {
+        return buffer.getInt(fromAt + e * Integer.BYTES);
+    }
+
+    private int to(int e) {
+        return buffer.getInt(toAt + e * Integer.BYTES);
+    }
+
+    private int weight(int e) {
+        return buffer.getInt(weightAt + e * Integer.BYTES);
+    }
+
+    private int first(int e) {
+        return buffer.getInt(firstAt + e * Integer.BYTES);
+    }
+
+    private int second(int e) {
+        return buffer.getInt(secondAt + e * Integer.BYTES);
+    }
+
+    private long cellKey(int c) {
+        return buffer.getLong(cellKeysAt + c * Long.BYTES);
+    }
+
+    private int cellStart(int c) {
+        return buffer.getInt(cellStartAt + c * Integer.BYTES);
+    }
+
+    private int firstCellAtOrAfter(long key) {
+        int lo = 0, hi = cellCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cellKey(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    /**
+     * One direction's search: tentative distances and parent edges for the
+     * nodes it has reached, in an open-addressing table sized to the search
+     * rather than to the graph.
+     */
+    private static final class SearchSpace {
+        private int[] nodes = new int[256];
+        private int[] dist = new int[256];
+        private int[] parents = new int[256];
+        private int size;
+        private final ContractionHierarchy.LongHeap heap = new ContractionHierarchy.LongHeap();
+
+        SearchSpace() {
+            Arrays.fill(nodes, -1);
+        }
+
+        int minKey() {
+            return heap.isEmpty() ? INFINITY : (int) (heap.peek() >>> 32);
+        }
+
+        int distance(int v) {
+            int slot = slot(v);
+            return nodes[slot] == v ? dist[slot] : INFINITY;
+        }
+
+        int parent(int v) {
+            return parents[slot(v)];
+        }
+
+        void reach(int v, int d, int edge) {
+            int slot = slot(v);
+            if (nodes[slot] != v) {
+                nodes[slot] = v;
+                dist[slot] = INFINITY;
+                if (++size * 2 > nodes.length) {
+                    grow();
+                    slot = slot(v);
+                }
+            }
+            if (d < dist[slot]) {
+                dist[slot] = d;
+                parents[slot] = edge;
+                heap.push(((long) d << 32) | v);
+            }
+        }
+
+        // Slot holding v, or the empty slot where it would go
+        int slot(int v) {
+            int mask = nodes.length - 1;
+            int h = v * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (nodes[slot] != v && nodes[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            int[] oldNodes = nodes;
+            int[] oldDist = dist;
+            int[] oldParents = parents;
+            nodes = new int[oldNodes.length * 2];
+            dist = new int[nodes.length];
+            parents = new int[nodes.length];
+            Arrays.fill(nodes, -1);
+            for (int i = 0; i < oldNodes.length; i++) {
+                if (oldNodes[i] != -1) {
+                    int slot = slot(oldNodes[i]);
+                    nodes[slot] = oldNodes[i];
+                    dist[slot] = oldDist[i];
+                    parents[slot] = oldParents[i];
+                }
+            }
+        }
+    }
+
+    public static final class Route {
+        private final PackedPolyline polyline;
+        private final double distanceKm;
+        private final double durationMinutes;
+
+        Route(PackedPolyline polyline, double distanceKm, double durationMinutes) {
+            this.polyline = polyline;
+            this.distanceKm = distanceKm;
+            this.durationMinutes = durationMinutes;
+        }
+
+        // Getters
+        public PackedPolyline getPolyline() { return polyline; }
+        public double getDistanceKm() { return distanceKm; }
+        public double getDurationMinutes() { return durationMinutes; }
+    }
+}
@@ -0,0 +1,134 @@
+package com.evroute.routing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes a contracted {@link RoadNetwork} as a {@link RoadGraph} file. The
+ * file is written next to the target and moved into place, as with station
+ * snapshots.
+ */
+final class RoadGraphWriter {
+
+    private RoadGraphWriter() {}
+
+    static void write(RoadNetwork network, ContractionHierarchy ch, Path path) throws IOException {
+        int n = network.nodeCount;
+        int[] rank = ch.rank;
+
+        // Upward edges: forward at their tail, backward at their head
+        int[] fwdStart = new int[n + 1];
+        int[] bwdStart = new int[n + 1];
+        for (int e = 0; e < ch.edgeCount; e++) {
+            if (rank[ch.from[e]] < rank[ch.to[e]]) {
+                fwdStart[ch.from[e] + 1]++;
+            } else {
+                bwdStart[ch.to[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            fwdStart[v + 1] += fwdStart[v];
+            bwdStart[v + 1] += bwdStart[v];
+        }
+        int[] upEdges = new int[ch.edgeCount];
+        int[] fwdNext = Arrays.copyOf(fwdStart, n);
+        int[] bwdNext = Arrays.copyOf(bwdStart, n);
+        for (int e = 0; e < ch.edgeCount; e++) {
+            if (rank[ch.from[e]] < rank[ch.to[e]]) {
+                upEdges[fwdNext[ch.from[e]]++] = e;
+            } else {
+                upEdges[fwdStart[n] + bwdNext[ch.to[e]]++] = e;
+            }
+        }
+
+        // Cell directory over the node order, which is already by cell
+        long[] cellKeys = new long[n];
+        int[] cellStart = new int[n + 1];
+        int cellCount = 0;
+        long previous = Long.MIN_VALUE;
+        for (int v = 0; v < n; v++) {
+            long key = RoadNetwork.cellKey(network.latE6[v] / RoadNetwork.FIXED_POINT,
+                    network.lngE6[v] / RoadNetwork.FIXED_POINT, network.cellDegrees);
+            if (v == 0 || key != previous) {
+                cellKeys[cellCount] = key;
+                cellStart[cellCount++] = v;
+                previous = key;
+            }
+        }
+        cellStart[cellCount] = n;
+
+        int roadEdges = network.edgeCount;
+        int segments = network.shapeStart.length - 1;
+        int shapePoints = network.shapeLatE6.length;
+        long size = RoadGraph.HEADER_BYTES
+                + (long) cellCount * Long.BYTES + (cellCount + 1L) * Integer.BYTES
+                + 2L * n * Integer.BYTES
+                + 2L * (n + 1) * Integer.BYTES + (long) ch.edgeCount * Integer.BYTES
+                + 5L * ch.edgeCount * Integer.BYTES
+                + (long) roadEdges * (Float.BYTES + Integer.BYTES)
+                + (segments + 1L) * Integer.BYTES + 2L * shapePoints * Integer.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Road graph would exceed 2 GB (" + n + " nodes, " + ch.edgeCount + " edges)");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(RoadGraph.MAGIC)
+                .putInt(RoadGraph.VERSION)
+                .putInt(n)
+                .putInt(cellCount)
+                .putDouble(network.cellDegrees)
+                .putInt(ch.edgeCount)
+                .putInt(fwdStart[n])
+                .putInt(roadEdges)
+                .putInt(segments)
+                .putInt(shapePoints)
+                .putInt(0);
+
+        for (int c = 0; c < cellCount; c++) out.putLong(cellKeys[c]);
+        for (int c = 0; c <= cellCount; c++) out.putInt(cellStart[c]);
+        for (int v = 0; v < n; v++) out.putInt(network.latE6[v]);
+        for (int v = 0; v < n; v++) out.putInt(network.lngE6[v]);
+        for (int v = 0; v <= n; v++) out.putInt(fwdStart[v]);
+        for (int v = 0; v <= n; v++) out.putInt(bwdStart[v]);
+        for (int e : upEdges) out.putInt(e);
+        for (int e = 0; e < ch.edgeCount; e++) out.putInt(ch.from[e]);
+        for (int e = 0; e < ch.edgeCount; e++) out.putInt(ch.to[e]);
+        for (int e = 0; e < ch.edgeCount; e++) out.putInt(ch.weight[e]);
+        for (int e = 0; e < ch.edgeCount; e++) out.putInt(ch.first[e]);
+        for (int e = 0; e < ch.edgeCount; e++) out.putInt(ch.second[e]);
+        for (int e = 0; e < roadEdges; e++) out.putFloat(network.edgeMeters[e]);
+        for (int e = 0; e < roadEdges; e++) out.putInt(network.edgeShape[e]);
+        for (int s = 0; s <= segments; s++) out.putInt(network.shapeStart[s]);
+        for (int p = 0; p < shapePoints; p++) out.putInt(network.shapeLatE6[p]);
+        for (int p = 0; p < shapePoints; p++) out.putInt(network.shapeLngE6[p]);
+        out.flip();
+
+        Path target = path.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
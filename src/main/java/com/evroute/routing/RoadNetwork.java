@@ -0,0 +1,325 @@
+package com.evroute.routing;
+
+import com.evroute.geo.GeoUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Car road network as imported from OSM, before contraction.
+ *
+ * Nodes are junctions (way ends and nodes shared by several ways); the shape
+ * points between two junctions are kept once per road segment and referenced
+ * by both directions of travel. Edge weights are travel times in tenths of a
+ * second. Only the largest connected component is kept, so every snapped
+ * endpoint can reach every other, and nodes are numbered in grid-cell order
+ * so that nearby nodes are close in memory.
+ */
+final class RoadNetwork {
+
+    static final double FIXED_POINT = 1_000_000.0;
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    final double cellDegrees;
+    final int nodeCount;
+    final int[] latE6;
+    final int[] lngE6;
+
+    final int edgeCount;
+    final int[] edgeFrom;
+    final int[] edgeTo;
+    final int[] edgeWeight;   // deciseconds
+    final float[] edgeMeters;
+    final int[] edgeShape;    // segment << 1 | 1 when travelled against the shape order
+
+    final int[] shapeStart;   // per segment, into shapeLatE6/shapeLngE6
+    final int[] shapeLatE6;
+    final int[] shapeLngE6;
+
+    private RoadNetwork(double cellDegrees, int[] latE6, int[] lngE6,
+                        int[] edgeFrom, int[] edgeTo, int[] edgeWeight, float[] edgeMeters, int[] edgeShape,
+                        int[] shapeStart, int[] shapeLatE6, int[] shapeLngE6) {
+        this.cellDegrees = cellDegrees;
+        this.nodeCount = latE6.length;
+        this.latE6 = latE6;
+        this.lngE6 = lngE6;
+        this.edgeCount = edgeFrom.length;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeWeight = edgeWeight;
+        this.edgeMeters = edgeMeters;
+        this.edgeShape = edgeShape;
+        this.shapeStart = shapeStart;
+        this.shapeLatE6 = shapeLatE6;
+        this.shapeLngE6 = shapeLngE6;
+    }
+
+    /** Two passes over the extract: routable ways first, then the coordinates of their nodes. */
+    static RoadNetwork fromPbf(Path pbf, double cellDegrees) throws IOException {
+        LongIntHashMap ids = new LongIntHashMap(1 << 20);
+        IntList uses = new IntList(1 << 20);
+        IntList wayNodes = new IntList(1 << 20);
+        IntList wayStart = new IntList();
+        IntList waySpeed = new IntList();       // km/h * 10
+        IntList wayDirections = new IntList();
+        wayStart.add(0);
+
+        OsmPbfReader.read(pbf, new OsmPbfReader.Handler() {
+            @Override
+            public void way(long id, long[] refs, Map<String, String> tags) {
+                double speed = RoadTags.speedKmh(tags);
+                if (speed <= 0 || refs.length < 2) {
+                    return;
+                }
+                for (int k = 0; k < refs.length; k++) {
+                    int node = ids.getOrAssign(refs[k]);
+                    if (node == uses.size()) {
+                        uses.add(0);
+                    }
+                    // Way ends always count as junctions
+                    uses.set(node, uses.get(node) + (k == 0 || k == refs.length - 1 ? 2 : 1));
+                    wayNodes.add(node);
+                }
+                wayStart.add(wayNodes.size());
+                waySpeed.add((int) Math.round(speed * 10));
+                wayDirections.add(RoadTags.directions(tags));
+            }
+        }, false, true);
+
+        int[] lat = new int[ids.size()];
+        int[] lng = new int[ids.size()];
+        Arrays.fill(lat, MISSING);
+        OsmPbfReader.read(pbf, new OsmPbfReader.Handler() {
+            @Override
+            public void node(long id, double nodeLat, double nodeLng) {
+                int node = ids.get(id);
+                if (node >= 0) {
+                    lat[node] = (int) Math.round(nodeLat * FIXED_POINT);
+                    lng[node] = (int) Math.round(nodeLng * FIXED_POINT);
+                }
+            }
+        }, true, false);
+
+        return new Splitter(lat, lng, uses).split(wayNodes, wayStart, waySpeed, wayDirections).compact(cellDegrees);
+    }
+
+    // Cuts ways at junctions into edges between graph nodes
+    private static final class Splitter {
+        private final int[] lat;
+        private final int[] lng;
+        private final IntList uses;
+        private final int[] graphNode;
+        private final IntList nodeLat = new IntList();
+        private final IntList nodeLng = new IntList();
+        private final IntList from = new IntList();
+        private final IntList to = new IntList();
+        private final IntList weight = new IntList();
+        private final IntList centimetres = new IntList();
+        private final IntList shape = new IntList();
+        private final IntList shapeStart = new IntList();
+        private final IntList shapeLat = new IntList();
+        private final IntList shapeLng = new IntList();
+
+        Splitter(int[] lat, int[] lng, IntList uses) {
+            this.lat = lat;
+            this.lng = lng;
+            this.uses = uses;
+            this.graphNode = new int[lat.length];
+            Arrays.fill(graphNode, -1);
+            shapeStart.add(0);
+        }
+
+        RoadNetwork split(IntList wayNodes, IntList wayStart, IntList waySpeed, IntList wayDirections) {
+            for (int w = 0; w + 1 < wayStart.size(); w++) {
+                double metresPerDecisecond = waySpeed.get(w) / 10.0 / 36.0;
+                int start = -1;
+                int previous = -1;
+                double metres = 0;
+                int pendingShape = shapeLat.size();
+                for (int k = wayStart.get(w); k < wayStart.get(w + 1); k++) {
+                    int node = wayNodes.get(k);
+                    if (lat[node] == MISSING) {
+                        // Node outside the extract: the way breaks here
+                        start = -1;
+                        previous = -1;
+                        shapeLat.truncate(pendingShape);
+                        shapeLng.truncate(pendingShape);
+                        continue;
+                    }
+                    if (previous >= 0) {
+                        metres += 1000.0 * GeoUtils.haversineKm(lat[previous] / FIXED_POINT, lng[previous] / FIXED_POINT,
+                                lat[node] / FIXED_POINT, lng[node] / FIXED_POINT);
+                    }
+                    previous = node;
+                    if (uses.get(node) >= 2) {
+                        if (start >= 0 && start != node) {
+                            emit(start, node, metres, metresPerDecisecond, wayDirections.get(w));
+                        } else {
+                            shapeLat.truncate(pendingShape);
+                            shapeLng.truncate(pendingShape);
+                        }
+                        start = node;
+                        metres = 0;
+                        pendingShape = shapeLat.size();
+                    } else if (start >= 0) {
+                        shapeLat.add(lat[node]);
+                        shapeLng.add(lng[node]);
+                    }
+                }
+                shapeLat.truncate(pendingShape);
+                shapeLng.truncate(pendingShape);
+            }
+            float[] metres = new float[centimetres.size()];
+            for (int e = 0; e < metres.length; e++) {
+                metres[e] = centimetres.get(e) / 100f;
+            }
+            return new RoadNetwork(0, nodeLat.toArray(), nodeLng.toArray(),
+                    from.toArray(), to.toArray(), weight.toArray(), metres, shape.toArray(),
+                    shapeStart.toArray(), shapeLat.toArray(), shapeLng.toArray());
+        }
+
+        private void emit(int a, int b, double metres, double metresPerDecisecond, int directions) {
+            int segment = shapeStart.size() - 1;
+            shapeStart.add(shapeLat.size());
+            int ga = graphNode(a);
+            int gb = graphNode(b);
+            int time = (int) Math.max(1, Math.round(metres / metresPerDecisecond));
+            if ((directions & RoadTags.FORWARD) != 0) {
+                edge(ga, gb, time, metres, segment << 1);
+            }
+            if ((directions & RoadTags.BACKWARD) != 0) {
+                edge(gb, ga, time, metres, segment << 1 | 1);
+            }
+        }
+
+        private void edge(int a, int b, int time, double metres, int shapeRef) {
+            from.add(a);
+            to.add(b);
+            weight.add(time);
+            centimetres.add((int) Math.round(metres * 100));
+            shape.add(shapeRef);
+        }
+
+        private int graphNode(int node) {
+            if (graphNode[node] < 0) {
+                graphNode[node] = nodeLat.size();
+                nodeLat.add(lat[node]);
+                nodeLng.add(lng[node]);
+            }
+            return graphNode[node];
+        }
+    }
+
+    /** Largest weakly connected component only, renumbered in grid-cell order. */
+    private RoadNetwork compact(double cellDegrees) {
+        int[] parent = new int[nodeCount];
+        int[] size = new int[nodeCount];
+        for (int v = 0; v < nodeCount; v++) {
+            parent[v] = v;
+            size[v] = 1;
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            int a = find(parent, edgeFrom[e]);
+            int b = find(parent, edgeTo[e]);
+            if (a != b) {
+                if (size[a] < size[b]) {
+                    int t = a;
+                    a = b;
+                    b = t;
+                }
+                parent[b] = a;
+                size[a] += size[b];
+            }
+        }
+        int largest = -1;
+        for (int v = 0; v < nodeCount; v++) {
+            if (parent[v] == v && (largest < 0 || size[v] > size[largest])) {
+                largest = v;
+            }
+        }
+
+        // Kept nodes sorted by cell, then by old id for a stable order
+        long[] order = new long[largest < 0 ? 0 : size[largest]];
+        long[] cellOf = new long[nodeCount];
+        int kept = 0;
+        for (int v = 0; v < nodeCount; v++) {
+            if (find(parent, v) == largest) {
+                cellOf[v] = cellKey(latE6[v] / FIXED_POINT, lngE6[v] / FIXED_POINT, cellDegrees);
+                order[kept++] = v;
+            }
+        }
+        Long[] boxed = new Long[kept];
+        for (int i = 0; i < kept; i++) {
+            boxed[i] = order[i];
+        }
+        Arrays.sort(boxed, (x, y) -> {
+            int c = Long.compare(cellOf[x.intValue()], cellOf[y.intValue()]);
+            return c != 0 ? c : Long.compare(x, y);
+        });
+        int[] newId = new int[nodeCount];
+        Arrays.fill(newId, -1);
+        int[] lat = new int[kept];
+        int[] lng = new int[kept];
+        for (int i = 0; i < kept; i++) {
+            int v = boxed[i].intValue();
+            newId[v] = i;
+            lat[i] = latE6[v];
+            lng[i] = lngE6[v];
+        }
+
+        int[] newSegment = new int[shapeStart.length - 1];
+        Arrays.fill(newSegment, -1);
+        IntList from = new IntList(edgeCount), to = new IntList(edgeCount), weight = new IntList(edgeCount),
+                shape = new IntList(edgeCount), metreBits = new IntList(edgeCount);
+        IntList segStart = new IntList(), segLat = new IntList(), segLng = new IntList();
+        segStart.add(0);
+        for (int e = 0; e < edgeCount; e++) {
+            if (newId[edgeFrom[e]] < 0) {
+                continue;
+            }
+            int segment = edgeShape[e] >>> 1;
+            if (newSegment[segment] < 0) {
+                newSegment[segment] = segStart.size() - 1;
+                for (int p = shapeStart[segment]; p < shapeStart[segment + 1]; p++) {
+                    segLat.add(shapeLatE6[p]);
+                    segLng.add(shapeLngE6[p]);
+                }
+                segStart.add(segLat.size());
+            }
+            from.add(newId[edgeFrom[e]]);
+            to.add(newId[edgeTo[e]]);
+            weight.add(edgeWeight[e]);
+            shape.add(newSegment[segment] << 1 | (edgeShape[e] & 1));
+            metreBits.add(Float.floatToRawIntBits(edgeMeters[e]));
+        }
+        float[] metres = new float[metreBits.size()];
+        for (int e = 0; e < metres.length; e++) {
+            metres[e] = Float.intBitsToFloat(metreBits.get(e));
+        }
+        return new RoadNetwork(cellDegrees, lat, lng, from.toArray(), to.toArray(), weight.toArray(), metres,
+                shape.toArray(), segStart.toArray(), segLat.toArray(), segLng.toArray());
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    // Same grid keying as the station snapshot: rows and columns offset to be non-negative
+    static long cellKey(double lat, double lng, double cellDegrees) {
+        return ((long) row(lat, cellDegrees) << 32) | (col(lng, cellDegrees) & 0xffffffffL);
+    }
+
+    static int row(double lat, double cellDegrees) {
+        return (int) Math.floor((Math.max(-90.0, Math.min(90.0, lat)) + 90.0) / cellDegrees);
+    }
+
+    static int col(double lng, double cellDegrees) {
+        return (int) Math.floor((Math.max(-180.0, Math.min(180.0, lng)) + 180.0) / cellDegrees);
+    }
+}
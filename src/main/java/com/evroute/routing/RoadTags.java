@@ -0,0 +1,90 @@
+package com.evroute.routing;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Car access and speed from OSM way tags. Speeds are typical free-flow
+ * values per highway class; a tagged maxspeed caps them.
+ */
+final class RoadTags {
+
+    static final int FORWARD = 1;
+    static final int BACKWARD = 2;
+
+    private static final Map<String, Double> SPEED_KMH = Map.ofEntries(
+            Map.entry("motorway", 110.0),
+            Map.entry("motorway_link", 60.0),
+            Map.entry("trunk", 90.0),
+            Map.entry("trunk_link", 50.0),
+            Map.entry("primary", 75.0),
+            Map.entry("primary_link", 45.0),
+            Map.entry("secondary", 65.0),
+            Map.entry("secondary_link", 40.0),
+            Map.entry("tertiary", 55.0),
+            Map.entry("tertiary_link", 35.0),
+            Map.entry("unclassified", 45.0),
+            Map.entry("residential", 35.0),
+            Map.entry("living_street", 10.0),
+            Map.entry("service", 20.0),
+            Map.entry("road", 35.0));
+
+    private static final Set<String> NO_ACCESS = Set.of("no", "private", "agricultural", "forestry", "delivery");
+    private static final double KMH_PER_MPH = 1.609344;
+
+    private RoadTags() {}
+
+    /** Free-flow speed in km/h, or 0 when cars cannot use the way. */
+    static double speedKmh(Map<String, String> tags) {
+        Double base = SPEED_KMH.get(tags.get("highway"));
+        if (base == null || "yes".equals(tags.get("area"))) {
+            return 0;
+        }
+        for (String key : new String[] {"access", "vehicle", "motor_vehicle", "motorcar"}) {
+            String value = tags.get(key);
+            if (value != null && NO_ACCESS.contains(value)) {
+                return 0;
+            }
+        }
+        double maxSpeed = parseMaxSpeed(tags.get("maxspeed"));
+        // Signed limits are rarely sustained; drive at 90% of them
+        return maxSpeed > 0 ? Math.min(base * 1.2, maxSpeed * 0.9) : base;
+    }
+
+    /** {@link #FORWARD} and/or {@link #BACKWARD} relative to the way's node order. */
+    static int directions(Map<String, String> tags) {
+        String oneway = tags.get("oneway");
+        if ("-1".equals(oneway) || "reverse".equals(oneway)) {
+            return BACKWARD;
+        }
+        if ("yes".equals(oneway) || "true".equals(oneway) || "1".equals(oneway)) {
+            return FORWARD;
+        }
+        if ("no".equals(oneway)) {
+            return FORWARD | BACKWARD;
+        }
+        String highway = tags.get("highway");
+        if ("motorway".equals(highway) || "roundabout".equals(tags.get("junction"))) {
+            return FORWARD;
+        }
+        return FORWARD | BACKWARD;
+    }
+
+    private static double parseMaxSpeed(String value) {
+        if (value == null) {
+            return 0;
+        }
+        String v = value.trim().toLowerCase();
+        boolean mph = v.endsWith("mph");
+        if (mph) {
+            v = v.substring(0, v.length() - 3).trim();
+        }
+        try {
+            double speed = Double.parseDouble(v);
+            return mph ? speed * KMH_PER_MPH : speed;
+        } catch (NumberFormatException e) {
+            // "none", "signals", "walk", country zone codes...
+            return 0;
+        }
+    }
+}
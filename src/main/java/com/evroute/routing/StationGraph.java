@@ -0,0 +1,223 @@
+package com.evroute.routing;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.model.ChargingStation;
+import com.evroute.snapshot.ConnectorMask;
+import com.evroute.snapshot.StationSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Read-only, memory-mapped station-to-station graph written by
+ * {@link StationGraphImporter}: the fast chargers of a region and measured
+ * road legs between nearby ones, so long-trip planning can search stations
+ * directly instead of routing every candidate leg.
+ *
+ * Legs are directed and stored as adjacency lists (CSR). Stations are sorted
+ * by grid cell with a cell directory, as in the station snapshot, so the
+ * stations near a trip's endpoints are found without a scan.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header      magic, version, station count, cell count, cell degrees, leg count, name bytes
+ *   cellKeys    long[cells]     row &lt;&lt; 32 | col, ascending
+ *   cellStart   int[cells + 1]  first station of each cell
+ *   id          int[n]          OCM POI id
+ *   lat, lng    int[n] each     degrees * 1e6
+ *   maxKw       float[n]
+ *   connectors  int[n]          {@link ConnectorMask} bits
+ *   legStart    int[n + 1]      legs leaving each station
+ *   legTo       int[legs]
+ *   legMeters   int[legs]
+ *   legSeconds  int[legs]
+ *   nameStart   int[n + 1]      offsets into the name blob
+ *   names       UTF-8
+ * </pre>
+ */
+public final class StationGraph {
+
+    static final int MAGIC = 0x47535645; // "EVSG"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final double FIXED_POINT = 1_000_000.0;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int cellCount;
+    private final double cellDegrees;
+    private final int legCount;
+
+    private final int cellKeysAt;
+    private final int cellStartAt;
+    private final int idAt;
+    private final int latAt;
+    private final int lngAt;
+    private final int maxKwAt;
+    private final int connectorsAt;
+    private final int legStartAt;
+    private final int legToAt;
+    private final int legMetersAt;
+    private final int legSecondsAt;
+    private final int nameStartAt;
+    private final int namesAt;
+
+    private StationGraph(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.cellCount = buffer.getInt(12);
+        this.cellDegrees = buffer.getDouble(16);
+        this.legCount = buffer.getInt(24);
+
+        this.cellKeysAt = HEADER_BYTES;
+        this.cellStartAt = cellKeysAt + cellCount * Long.BYTES;
+        this.idAt = cellStartAt + (cellCount + 1) * Integer.BYTES;
+        this.latAt = idAt + count * Integer.BYTES;
+        this.lngAt = latAt + count * Integer.BYTES;
+        this.maxKwAt = lngAt + count * Integer.BYTES;
+        this.connectorsAt = maxKwAt + count * Float.BYTES;
+        this.legStartAt = connectorsAt + count * Integer.BYTES;
+        this.legToAt = legStartAt + (count + 1) * Integer.BYTES;
+        this.legMetersAt = legToAt + legCount * Integer.BYTES;
+        this.legSecondsAt = legMetersAt + legCount * Integer.BYTES;
+        this.nameStartAt = legSecondsAt + legCount * Integer.BYTES;
+        this.namesAt = nameStartAt + (count + 1) * Integer.BYTES;
+    }
+
+    public static StationGraph open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a station graph: " + path);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported station graph version " + buffer.getInt(4) + ": " + path);
+            }
+            StationGraph graph = new StationGraph(buffer);
+            if (graph.namesAt + buffer.getInt(28) != buffer.limit()) {
+                throw new IOException("Truncated station graph: " + path);
+            }
+            return graph;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int legCount() {
+        return legCount;
+    }
+
+    public double lat(int station) {
+        return buffer.getInt(latAt + station * Integer.BYTES) / FIXED_POINT;
+    }
+
+    public double lng(int station) {
+        return buffer.getInt(lngAt + station * Integer.BYTES) / FIXED_POINT;
+    }
+
+    public double maxKw(int station) {
+        return buffer.getFloat(maxKwAt + station * Float.BYTES);
+    }
+
+    /** First leg leaving the station; its legs run up to {@code firstLeg(station + 1)}. */
+    public int firstLeg(int station) {
+        return buffer.getInt(legStartAt + station * Integer.BYTES);
+    }
+
+    public int legTo(int leg) {
+        return buffer.getInt(legToAt + leg * Integer.BYTES);
+    }
+
+    public double legKm(int leg) {
+        return buffer.getInt(legMetersAt + leg * Integer.BYTES) / 1000.0;
+    }
+
+    public double legMinutes(int leg) {
+        return buffer.getInt(legSecondsAt + leg * Integer.BYTES) / 60.0;
+    }
+
+    public ChargingStation station(int i) {
+        int nameStart = buffer.getInt(nameStartAt + i * Integer.BYTES);
+        int nameEnd = buffer.getInt(nameStartAt + (i + 1) * Integer.BYTES);
+        byte[] name = new byte[nameEnd - nameStart];
+        buffer.get(namesAt + nameStart, name);
+
+        return new ChargingStation(
+                StationSnapshot.ID_PREFIX + buffer.getInt(idAt + i * Integer.BYTES),
+                new String(name, StandardCharsets.UTF_8),
+                lat(i),
+                lng(i),
+                ConnectorMask.decode(buffer.getInt(connectorsAt + i * Integer.BYTES)),
+                maxKw(i),
+                true);
+    }
+
+    /** Up to {@code limit} stations within {@code radiusKm} of the point, nearest first. */
+    public int[] nearest(double lat, double lng, double radiusKm, int limit) {
+        double latPad = GeoUtils.kmToLatDegrees(radiusKm);
+        double lngPad = GeoUtils.kmToLngDegrees(radiusKm, lat);
+        List<double[]> found = new ArrayList<>();
+        int colLo = col(lng - lngPad, cellDegrees);
+        int colHi = col(lng + lngPad, cellDegrees);
+        for (int r = row(lat - latPad, cellDegrees), rowHi = row(lat + latPad, cellDegrees); r <= rowHi; r++) {
+            long lastKey = key(r, colHi);
+            for (int c = firstCellAtOrAfter(key(r, colLo)); c < cellCount && cellKey(c) <= lastKey; c++) {
+                for (int i = cellStart(c), end = cellStart(c + 1); i < end; i++) {
+                    double km = GeoUtils.haversineKm(lat, lng, lat(i), lng(i));
+                    if (km <= radiusKm) {
+                        found.add(new double[]{km, i});
+                    }
+                }
+            }
+        }
+        return found.stream()
+                .sorted(Comparator.comparingDouble(f -> f[0]))
+                .limit(limit)
+                .mapToInt(f -> (int) f[1])
+                .toArray();
+    }
+
+    private long cellKey(int c) {
+        return buffer.getLong(cellKeysAt + c * Long.BYTES);
+    }
+
+    private int cellStart(int c) {
+        return buffer.getInt(cellStartAt + c * Integer.BYTES);
+    }
+
+    private int firstCellAtOrAfter(long key) {
+        int lo = 0, hi = cellCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cellKey(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    static int row(double lat, double cellDegrees) {
+        return (int) Math.floor((Math.max(-90.0, Math.min(90.0, lat)) + 90.0) / cellDegrees);
+    }
+
+    static int col(double lng, double cellDegrees) {
+        return (int) Math.floor((Math.max(-180.0, Math.min(180.0, lng)) + 180.0) / cellDegrees);
+    }
+
+    static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+}
@@ -0,0 +1,188 @@
+package com.evroute.routing;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.model.ChargingStation;
+import com.evroute.snapshot.StationSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a {@link StationGraph} for a region from a station snapshot and the
+ * region's road graph.
+ *
+ * Only operational fast chargers are kept. Around each one the plane is cut
+ * into eight compass sectors and a few distance bands out to the longest
+ * plausible leg, and the nearest charger in each sector and band becomes a
+ * neighbour: every direction is covered at short and long range without
+ * linking every pair, so a dense metro area adds a few dozen legs per station
+ * rather than thousands. Legs are made symmetric and then measured on the road
+ * graph; pairs with no road route are dropped.
+ *
+ * Usage: StationGraphImporter &lt;stations.bin&gt; &lt;road-graph.bin&gt; &lt;station-graph.bin&gt; [minKw] [maxLegKm]
+ */
+public final class StationGraphImporter {
+
+    static final double DEFAULT_MIN_KW = 50.0;
+    static final double DEFAULT_MAX_LEG_KM = 400.0;
+    static final double DEFAULT_CELL_DEGREES = 0.25;
+
+    // Inner edges of the distance bands; the last band runs out to the maximum leg
+    private static final double[] BAND_KM = {0, 30, 80, 160, 260};
+    private static final int SECTORS = 8;
+    private static final double SNAP_RADIUS_KM = 5.0;
+
+    private StationGraphImporter() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: StationGraphImporter <stations.bin> <road-graph.bin> <station-graph.bin> [minKw] [maxLegKm]");
+            System.exit(2);
+        }
+        Path stationsPath = Path.of(args[0]);
+        Path roadGraphPath = Path.of(args[1]);
+        Path output = Path.of(args[2]);
+        double minKw = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_MIN_KW;
+        double maxLegKm = args.length > 4 ? Double.parseDouble(args[4]) : DEFAULT_MAX_LEG_KM;
+
+        long started = System.nanoTime();
+        ChargingStation[] stations = StationSnapshot.open(stationsPath).findInBbox(-90, -180, 90, 180).stream()
+                .filter(s -> s.isOperational() && s.getMaxKw() >= minKw)
+                .sorted(Comparator.comparingLong((ChargingStation s) -> StationGraphWriter.cellKey(s, DEFAULT_CELL_DEGREES))
+                        .thenComparing(ChargingStation::getId))
+                .toArray(ChargingStation[]::new);
+        long[] pairs = neighbourPairs(stations, maxLegKm);
+        long selected = System.nanoTime();
+        System.out.printf("Selected %d legs between %d chargers of at least %.0f kW in %d ms%n",
+                pairs.length, stations.length, minKw, (selected - started) / 1_000_000);
+
+        RoadGraph roads = RoadGraph.open(roadGraphPath, SNAP_RADIUS_KM);
+        int[] meters = new int[pairs.length];
+        int[] seconds = new int[pairs.length];
+        AtomicInteger unroutable = new AtomicInteger();
+        IntStream.range(0, pairs.length).parallel().forEach(p -> {
+            ChargingStation from = stations[(int) (pairs[p] >>> 32)];
+            ChargingStation to = stations[(int) pairs[p]];
+            RoadGraph.Route route = roads.routeCost(from.getLat(), from.getLng(), to.getLat(), to.getLng());
+            if (route == null) {
+                meters[p] = -1;
+                unroutable.incrementAndGet();
+            } else {
+                meters[p] = (int) Math.round(route.getDistanceKm() * 1000.0);
+                seconds[p] = (int) Math.round(route.getDurationMinutes() * 60.0);
+            }
+        });
+        long measured = System.nanoTime();
+        System.out.printf("Measured legs on the road graph in %d ms (%d unroutable)%n",
+                (measured - selected) / 1_000_000, unroutable.get());
+
+        // Pairs are sorted by origin station, so the routable ones are already in CSR order
+        int n = stations.length;
+        int legCount = pairs.length - unroutable.get();
+        int[] legStart = new int[n + 1];
+        int[] legTo = new int[legCount];
+        int[] legMeters = new int[legCount];
+        int[] legSeconds = new int[legCount];
+        for (int p = 0, e = 0; p < pairs.length; p++) {
+            if (meters[p] >= 0) {
+                legStart[(int) (pairs[p] >>> 32) + 1]++;
+                legTo[e] = (int) pairs[p];
+                legMeters[e] = meters[p];
+                legSeconds[e] = seconds[p];
+                e++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            legStart[i + 1] += legStart[i];
+        }
+        StationGraphWriter.write(stations, DEFAULT_CELL_DEGREES, legStart, legTo, legMeters, legSeconds, output);
+        System.out.printf("Wrote %s in %d ms%n", output, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /** Directed station pairs {@code from << 32 | to}, symmetric, sorted and without duplicates. */
+    static long[] neighbourPairs(ChargingStation[] stations, double maxLegKm) {
+        int n = stations.length;
+        // Stations by latitude, so each search only scans the band of rows within reach
+        Integer[] byLat = new Integer[n];
+        double[] lats = new double[n];
+        for (int i = 0; i < n; i++) {
+            byLat[i] = i;
+        }
+        Arrays.sort(byLat, Comparator.comparingDouble(i -> stations[i].getLat()));
+        for (int k = 0; k < n; k++) {
+            lats[k] = stations[byLat[k]].getLat();
+        }
+        double latPad = GeoUtils.kmToLatDegrees(maxLegKm);
+
+        long[][] chosen = new long[n][];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            ChargingStation from = stations[i];
+            int slots = SECTORS * BAND_KM.length;
+            int[] nearest = new int[slots];
+            double[] nearestKm = new double[slots];
+            Arrays.fill(nearest, -1);
+            double cosLat = Math.cos(Math.toRadians(from.getLat()));
+            for (int k = lowerBound(lats, from.getLat() - latPad); k < n && lats[k] <= from.getLat() + latPad; k++) {
+                int j = byLat[k];
+                if (j == i) {
+                    continue;
+                }
+                ChargingStation to = stations[j];
+                double km = GeoUtils.haversineKm(from.getLat(), from.getLng(), to.getLat(), to.getLng());
+                if (km > maxLegKm) {
+                    continue;
+                }
+                double angle = Math.atan2(to.getLat() - from.getLat(), (to.getLng() - from.getLng()) * cosLat);
+                int sector = (int) Math.floor((angle + Math.PI) / (2 * Math.PI) * SECTORS) % SECTORS;
+                int band = BAND_KM.length - 1;
+                while (km < BAND_KM[band]) {
+                    band--;
+                }
+                int slot = sector * BAND_KM.length + band;
+                if (nearest[slot] < 0 || km < nearestKm[slot]) {
+                    nearest[slot] = j;
+                    nearestKm[slot] = km;
+                }
+            }
+            chosen[i] = Arrays.stream(nearest).filter(j -> j >= 0).asLongStream().toArray();
+        });
+
+        int total = 0;
+        for (long[] c : chosen) {
+            total += 2 * c.length;
+        }
+        long[] pairs = new long[total];
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            for (long j : chosen[i]) {
+                pairs[size++] = ((long) i << 32) | j;
+                pairs[size++] = (j << 32) | i;
+            }
+        }
+        Arrays.sort(pairs);
+        int unique = 0;
+        for (int p = 0; p < size; p++) {
+            if (unique == 0 || pairs[p] != pairs[unique - 1]) {
+                pairs[unique++] = pairs[p];
+            }
+        }
+        return Arrays.copyOf(pairs, unique);
+    }
+
+    private static int lowerBound(double[] sorted, double value) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
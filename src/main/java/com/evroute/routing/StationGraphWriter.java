@@ -0,0 +1,130 @@
+package com.evroute.routing;
+
+import com.evroute.model.ChargingStation;
+import com.evroute.snapshot.ConnectorMask;
+import com.evroute.snapshot.StationSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a {@link StationGraph} file. The file is written next to the target
+ * and moved into place, so a server that has the old graph mapped never sees
+ * a partial file.
+ */
+final class StationGraphWriter {
+
+    private StationGraphWriter() {}
+
+    /**
+     * @param stations stations in grid-cell order (see {@link #cellKey})
+     * @param legStart legs leaving each station, CSR offsets into the leg arrays
+     */
+    static void write(ChargingStation[] stations, double cellDegrees,
+                      int[] legStart, int[] legTo, int[] legMeters, int[] legSeconds, Path path) throws IOException {
+        int n = stations.length;
+        int legCount = legStart[n];
+        long[] keys = new long[n];
+        byte[][] names = new byte[n][];
+        int cellCount = 0;
+        long nameBytes = 0;
+        for (int i = 0; i < n; i++) {
+            keys[i] = cellKey(stations[i], cellDegrees);
+            if (i > 0 && keys[i] < keys[i - 1]) {
+                throw new IllegalArgumentException("Stations are not in grid-cell order");
+            }
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                cellCount++;
+            }
+            String name = stations[i].getName();
+            names[i] = (name != null ? name : "").getBytes(StandardCharsets.UTF_8);
+            nameBytes += names[i].length;
+        }
+
+        long size = StationGraph.HEADER_BYTES
+                + (long) cellCount * Long.BYTES + (cellCount + 1L) * Integer.BYTES
+                + (long) n * (4 * Integer.BYTES + Float.BYTES) + (n + 1L) * Integer.BYTES
+                + (long) legCount * 3 * Integer.BYTES
+                + (n + 1L) * Integer.BYTES + nameBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Station graph would exceed 2 GB (" + n + " stations, " + legCount + " legs)");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(StationGraph.MAGIC)
+                .putInt(StationGraph.VERSION)
+                .putInt(n)
+                .putInt(cellCount)
+                .putDouble(cellDegrees)
+                .putInt(legCount)
+                .putInt((int) nameBytes);
+
+        // Cell directory
+        int[] cellStart = new int[cellCount + 1];
+        for (int i = 0, c = 0; i < n; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                out.putLong(keys[i]);
+                cellStart[c++] = i;
+            }
+        }
+        cellStart[cellCount] = n;
+        for (int start : cellStart) {
+            out.putInt(start);
+        }
+
+        // Stations
+        for (ChargingStation s : stations) out.putInt(Integer.parseInt(s.getId().substring(StationSnapshot.ID_PREFIX.length())));
+        for (ChargingStation s : stations) out.putInt((int) Math.round(s.getLat() * StationGraph.FIXED_POINT));
+        for (ChargingStation s : stations) out.putInt((int) Math.round(s.getLng() * StationGraph.FIXED_POINT));
+        for (ChargingStation s : stations) out.putFloat((float) s.getMaxKw());
+        for (ChargingStation s : stations) out.putInt(ConnectorMask.encode(s.getConnectors()));
+
+        // Legs
+        for (int i = 0; i <= n; i++) out.putInt(legStart[i]);
+        for (int e = 0; e < legCount; e++) out.putInt(legTo[e]);
+        for (int e = 0; e < legCount; e++) out.putInt(legMeters[e]);
+        for (int e = 0; e < legCount; e++) out.putInt(legSeconds[e]);
+
+        int nameStart = 0;
+        for (int i = 0; i < n; i++) {
+            out.putInt(nameStart);
+            nameStart += names[i].length;
+        }
+        out.putInt(nameStart);
+        for (byte[] name : names) out.put(name);
+        out.flip();
+
+        Path target = path.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static long cellKey(ChargingStation station, double cellDegrees) {
+        return StationGraph.key(StationGraph.row(station.getLat(), cellDegrees),
+                StationGraph.col(station.getLng(), cellDegrees));
+    }
+}
@@ -0,0 +1,239 @@
+package com.evroute.service;
+
+import com.evroute.geo.CorridorTiles;
+import com.evroute.geo.PolylinePyramid;
+import com.evroute.geo.RouteCorridor;
+import com.evroute.geo.RouteProfile;
+import com.evroute.metrics.MetricRegistry;
+import com.evroute.metrics.Timer;
+import com.evroute.model.BatchRouteResult;
+import com.evroute.model.ChargingStation;
+import com.evroute.model.RoutePlan;
+import com.evroute.model.RouteRequest;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Plans many routes in one call. Each distinct place (after query
+ * normalization) is geocoded once, each distinct origin/destination pair is
+ * routed once, each corridor tile is fetched once, and each route's corridor
+ * and station detours are prepared once. A request is planned, on a dedicated
+ * ForkJoinPool, as soon as its own route and tiles are in, so results stream
+ * back without waiting for the rest of the batch. Requests are quantized and
+ * go through the same plan cache as single plans (see {@link PlanCache}). A
+ * failing request yields an error result without affecting the others.
+ */
+@Service
+public class BatchPlanningService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchPlanningService.class);
+
+    private final PlanningService planningService;
+    private final GeocodeService geocodeService;
+    private final DirectionsService directionsService;
+    private final StationsService stationsService;
+    private final DetourService detourService;
+    private final Duration geocodeTimeout;
+    private final Duration directionsTimeout;
+    private final Duration stationsTimeout;
+    private final Duration planTimeout;
+    private final int upstreamConcurrency;
+    private final ForkJoinPool plannerPool;
+    private final Scheduler plannerScheduler;
+    private final Timer batchTimer;
+
+    public BatchPlanningService(PlanningService planningService,
+                                GeocodeService geocodeService,
+                                DirectionsService directionsService,
+                                StationsService stationsService,
+                                DetourService detourService,
+                                MetricRegistry metrics,
+                                @Value("${app.planning.timeout.geocode:5s}") Duration geocodeTimeout,
+                                @Value("${app.planning.timeout.directions:10s}") Duration directionsTimeout,
+                                @Value("${app.batch.timeout.stations:60s}") Duration stationsTimeout,
+                                @Value("${app.planning.timeout.plan:2s}") Duration planTimeout,
+                                @Value("${app.batch.upstream-concurrency:8}") int upstreamConcurrency,
+                                @Value("${app.batch.parallelism:0}") int parallelism) {
+        this.planningService = planningService;
+        this.geocodeService = geocodeService;
+        this.directionsService = directionsService;
+        this.stationsService = stationsService;
+        this.detourService = detourService;
+        this.geocodeTimeout = geocodeTimeout;
+        this.directionsTimeout = directionsTimeout;
+        this.stationsTimeout = stationsTimeout;
+        this.planTimeout = planTimeout;
+        this.upstreamConcurrency = upstreamConcurrency;
+        this.plannerPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.plannerScheduler = Schedulers.fromExecutorService(plannerPool, "batch-planner");
+        this.batchTimer = PlanningService.planTimer(metrics, "batch");
+    }
+
+    /** Results are emitted as they complete; {@link BatchRouteResult#getIndex()} ties each to its request. */
+    public Flux<BatchRouteResult> planBatch(List<RouteRequest> requests) {
+        return batchTimer.time(Flux.defer(() -> new Batch(requests).plan()));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        plannerScheduler.dispose();
+        plannerPool.shutdown();
+    }
+
+    private static BatchRouteResult failure(int index, Throwable e) {
+        return BatchRouteResult.failure(index, "Failed to plan route: " + e.getMessage());
+    }
+
+    // Endpoints rounded to ~0.1 m so that equal geocodes share a route
+    private record OdPair(long startLat, long startLng, long endLat, long endLng) {
+        static OdPair of(GeocodeService.GeocodeResult start, GeocodeService.GeocodeResult end) {
+            return new OdPair(Math.round(start.getLat() * 1e6), Math.round(start.getLng() * 1e6),
+                    Math.round(end.getLat() * 1e6), Math.round(end.getLng() * 1e6));
+        }
+    }
+
+    // State of one batch call; every map is filled from concurrent request pipelines
+    private final class Batch {
+        private final List<RouteRequest> requests;
+        private final PlanCache planCache = planningService.planCache();
+        private final Map<String, Mono<GeocodeService.GeocodeResult>> places = new ConcurrentHashMap<>();
+        private final Map<OdPair, Mono<DirectionsService.DirectionsResult>> routes = new ConcurrentHashMap<>();
+        private final Map<OdPair, Mono<PolylinePyramid>> pyramids = new ConcurrentHashMap<>();
+        private final Map<OdPair, Mono<RouteCorridor>> corridors = new ConcurrentHashMap<>();
+        private final Map<CorridorTiles.Tile, Mono<List<ChargingStation>>> tiles = new ConcurrentHashMap<>();
+
+        Batch(List<RouteRequest> requests) {
+            this.requests = requests;
+        }
+
+        // Requests wait on shared inputs, not on each other, so in-flight requests also cover the planner threads
+        Flux<BatchRouteResult> plan() {
+            return Flux.range(0, requests.size())
+                    .flatMap(i -> planOne(i).onErrorResume(e -> Mono.just(failure(i, e))),
+                            Math.max(upstreamConcurrency, plannerPool.getParallelism() * 2))
+                    .doOnComplete(() -> log.debug("Batch of {} requests: {} places, {} routes, {} corridor tiles",
+                            requests.size(), places.size(), routes.size(), tiles.size()));
+        }
+
+        private Mono<BatchRouteResult> planOne(int index) {
+            RouteRequest quantized = PlanCache.quantize(requests.get(index));
+            return Mono.zip(place(quantized.getOrigin()), place(quantized.getDestination()))
+                    .flatMap(ends -> planCache.get(quantized, ends.getT1(), ends.getT2(),
+                            () -> planFresh(quantized, ends.getT1(), ends.getT2())))
+                    .map(plan -> BatchRouteResult.success(index, plan));
+        }
+
+        // The station graph first, as for single plans, since both share the plan cache
+        private Mono<PlanCache.Entry> planFresh(RouteRequest request, GeocodeService.GeocodeResult origin,
+                                                GeocodeService.GeocodeResult destination) {
+            return planningService.planOverGraph(request, origin, destination)
+                    .switchIfEmpty(Mono.defer(() -> planAlongRoute(request, origin, destination)));
+        }
+
+        private Mono<PlanCache.Entry> planAlongRoute(RouteRequest request, GeocodeService.GeocodeResult origin,
+                                                     GeocodeService.GeocodeResult destination) {
+            OdPair pair = OdPair.of(origin, destination);
+            return route(pair, origin, destination).flatMap(directions -> {
+                if (!planningService.needsCharging(request, directions)) {
+                    return plan(request, directions, Mono.just(Optional.empty()), pair, planCache.begin(List.of()));
+                }
+                List<CorridorTiles.Tile> corridor = stationsService.corridorTiles(
+                        directions.getOverall().getPolyline(), PlanningService.SEARCH_RADIUS_KM);
+                // Tile versions are taken before the stations are fetched
+                PlanCache.Pending pending = planCache.begin(corridor);
+                return plan(request, directions, corridor(pair, directions, corridor).map(Optional::of), pair, pending);
+            });
+        }
+
+        private Mono<PlanCache.Entry> plan(RouteRequest request, DirectionsService.DirectionsResult directions,
+                                           Mono<Optional<RouteCorridor>> corridor, OdPair pair,
+                                           PlanCache.Pending pending) {
+            return Mono.zip(corridor, pyramid(pair, directions))
+                    .flatMap(inputs -> planningService.stage("plan",
+                            Mono.fromCallable(() -> {
+                                RoutePlan plan = inputs.getT1().isPresent()
+                                        ? planningService.planRouteWithAlgorithm(request, directions, inputs.getT1().get())
+                                        : planningService.planRouteWithAlgorithm(request, directions, List.of());
+                                plan.setPyramid(inputs.getT2());
+                                return pending.complete(plan);
+                            }).subscribeOn(plannerScheduler),
+                            planTimeout));
+        }
+
+        // Errors are cached too, so a bad place fails its requests without being retried for each
+        private Mono<GeocodeService.GeocodeResult> place(String query) {
+            return places.computeIfAbsent(GeocodeQueryNormalizer.normalize(query),
+                    key -> planningService.stage("geocode", geocodeService.geocode(query), geocodeTimeout).cache());
+        }
+
+        private Mono<DirectionsService.DirectionsResult> route(OdPair pair, GeocodeService.GeocodeResult origin,
+                                                               GeocodeService.GeocodeResult destination) {
+            return routes.computeIfAbsent(pair, p -> planningService.stage("directions",
+                            directionsService.getDirections(origin.getLat(), origin.getLng(),
+                                    destination.getLat(), destination.getLng()),
+                            directionsTimeout)
+                    .cache());
+        }
+
+        private Mono<PolylinePyramid> pyramid(OdPair pair, DirectionsService.DirectionsResult directions) {
+            return pyramids.computeIfAbsent(pair, p -> Mono.fromCallable(
+                            () -> PolylinePyramid.of(directions.getOverall().getPolyline()))
+                    .subscribeOn(plannerScheduler)
+                    .cache());
+        }
+
+        // The route's stations, filtered and detour-costed once for every request on the pair
+        private Mono<RouteCorridor> corridor(OdPair pair, DirectionsService.DirectionsResult directions,
+                                             List<CorridorTiles.Tile> corridor) {
+            return corridors.computeIfAbsent(pair, p -> planningService.stage("stations",
+                                    StationsService.fetchTiles(corridor, this::tile, upstreamConcurrency)
+                                            .collectList()
+                                            .map(BatchPlanningService::distinct),
+                                    stationsTimeout)
+                    .publishOn(plannerScheduler)
+                    .map(stations -> RouteCorridor.build(new RouteProfile(directions.getOverall().getPolyline()),
+                            stations, PlanningService.SEARCH_RADIUS_KM))
+                    .flatMap(detourService::withDetours)
+                    .cache());
+        }
+
+        // A tile shared by several routes is fetched once. A failed fetch is dropped, so the next route
+        // fetches the tile again and a plan made without its stations sees the failure
+        private Mono<List<ChargingStation>> tile(CorridorTiles.Tile tile) {
+            return tiles.computeIfAbsent(tile, t -> stationsService.findStationsInTile(t)
+                    .doOnError(e -> tiles.remove(t))
+                    .cache());
+        }
+    }
+
+    // Adjacent tiles can return the same station
+    private static List<ChargingStation> distinct(List<List<ChargingStation>> tiles) {
+        List<ChargingStation> stations = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (List<ChargingStation> tile : tiles) {
+            for (ChargingStation station : tile) {
+                if (seen.add(station.getId())) {
+                    stations.add(station);
+                }
+            }
+        }
+        return stations;
+    }
+}
@@ -0,0 +1,340 @@
+package com.evroute.service;
+
+import com.evroute.cache.ReactiveCache;
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.client.OrsClient;
+import com.evroute.geo.RouteCorridor;
+import com.evroute.geo.RouteProfile;
+import com.evroute.model.ChargingStation;
+import com.evroute.planning.ChargingStopOptimizer;
+import com.evroute.planning.StationDetours;
+import com.evroute.routing.RoadGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Costs the detour to every station of a corridor in one batch: the drive
+ * from the station's nearest point on the route to the station, and back.
+ *
+ * With the LOCAL directions provider each leg is a road-graph query. With
+ * ORS, matrix calls are rate limited, so only the stations the planner is
+ * likely to use are costed: at most {@code maxStations}, the most powerful
+ * one per equal stretch of route. Measured detours are cached per station
+ * and snapped route point. The rest go out in matrix calls of up to
+ * {@code chunk} stations. Each call asks for just the route points to
+ * their stations. The way back is asked for only where the detour is
+ * long enough for one-way ramps to matter; shorter ones are taken as
+ * symmetric.
+ *
+ * Stations that are not costed, or that the provider cannot route, keep the
+ * corridor's straight-line estimate. So does the whole corridor when costing
+ * fails or outlasts its timeout, so a slow provider only costs accuracy,
+ * never the plan.
+ */
+@Service
+public class DetourService {
+
+    private static final Logger log = LoggerFactory.getLogger(DetourService.class);
+
+    private final OrsClient orsClient;
+    private final RoadGraph roadGraph;
+    private final String provider;
+    private final ReactiveCache<Key, Measured> cache;
+    private final int maxStations;
+    private final int chunk;
+    private final int concurrency;
+    private final double snapDegrees;
+    private final double symmetricKm;
+    private final Duration timeout;
+
+    public DetourService(OrsClient orsClient,
+                         ObjectProvider<RoadGraph> roadGraph,
+                         ReactiveCacheManager cacheManager,
+                         @Value("${app.directions.provider}") String provider,
+                         @Value("${app.detours.max-stations:48}") int maxStations,
+                         @Value("${app.detours.matrix-chunk:48}") int chunk,
+                         @Value("${app.detours.concurrency:4}") int concurrency,
+                         @Value("${app.detours.snap-degrees:0.005}") double snapDegrees,
+                         @Value("${app.detours.symmetric-below-km:2.0}") double symmetricKm,
+                         @Value("${app.planning.timeout.detours:3s}") Duration timeout) {
+        this.orsClient = orsClient;
+        this.roadGraph = roadGraph.getIfAvailable();
+        this.cache = cacheManager.getCache("detours");
+        this.provider = provider;
+        this.maxStations = maxStations;
+        this.chunk = chunk;
+        this.concurrency = concurrency;
+        this.snapDegrees = snapDegrees;
+        this.symmetricKm = symmetricKm;
+        this.timeout = timeout;
+    }
+
+    /** The corridor with measured detours, or unchanged if they cannot be measured in time. */
+    public Mono<RouteCorridor> withDetours(RouteCorridor corridor) {
+        if (corridor.getStations().isEmpty()) {
+            return Mono.just(corridor);
+        }
+        Mono<StationDetours> measured;
+        if ("LOCAL".equals(provider) && roadGraph != null) {
+            measured = Mono.fromCallable(() -> measureLocally(corridor)).subscribeOn(Schedulers.parallel());
+        } else if ("ORS".equals(provider)) {
+            measured = measureWithMatrix(corridor);
+        } else {
+            return Mono.just(corridor);
+        }
+        long start = System.nanoTime();
+        return measured
+                .timeout(timeout)
+                .map(corridor::withDetours)
+                .doOnNext(c -> log.debug("Costed detours to {} stations in {} ms",
+                        c.getStations().size(), (System.nanoTime() - start) / 1_000_000))
+                .onErrorResume(e -> {
+                    log.warn("Detour costing failed, using straight-line estimates: {}", e.getMessage());
+                    return Mono.just(corridor);
+                });
+    }
+
+    private StationDetours measureLocally(RouteCorridor corridor) {
+        Legs legs = new Legs(corridor);
+        for (int i = 0; i < legs.size(); i++) {
+            ChargingStation station = corridor.getStations().get(i).getStation();
+            RoadGraph.Route access = roadGraph.routeCost(legs.lat[i], legs.lng[i], station.getLat(), station.getLng());
+            RoadGraph.Route egress = roadGraph.routeCost(station.getLat(), station.getLng(), legs.lat[i], legs.lng[i]);
+            if (access != null && egress != null) {
+                legs.set(i, access.getDistanceKm(), access.getDurationMinutes(),
+                        egress.getDistanceKm(), egress.getDurationMinutes());
+            }
+        }
+        return legs.toDetours();
+    }
+
+    private Mono<StationDetours> measureWithMatrix(RouteCorridor corridor) {
+        Legs legs = new Legs(corridor);
+        List<Integer> pending = new ArrayList<>();
+        for (int i : candidates(corridor)) {
+            Measured measured = cache.getIfPresent(key(corridor, legs, i));
+            if (measured != null) {
+                legs.set(i, measured.accessKm, measured.accessMinutes, measured.egressKm, measured.egressMinutes);
+            } else {
+                pending.add(i);
+            }
+        }
+        int chunks = (pending.size() + chunk - 1) / chunk;
+        return Flux.range(0, chunks)
+                .flatMap(c -> measureChunk(corridor, legs,
+                        pending.subList(c * chunk, Math.min(pending.size(), (c + 1) * chunk))), concurrency)
+                .then(Mono.fromCallable(legs::toDetours));
+    }
+
+    // The stations worth costing, ascending: every one on a short corridor, else the best per stretch
+    private int[] candidates(RouteCorridor corridor) {
+        int n = corridor.getStations().size();
+        if (n <= maxStations) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        return ChargingStopOptimizer.thin(corridor.getChainageKm(), corridor.getStationKw(), corridor.getDetours(),
+                corridor.getProfile().getTotalKm(), maxStations);
+    }
+
+    private Mono<Void> measureChunk(RouteCorridor corridor, Legs legs, List<Integer> stations) {
+        Matrix access = new Matrix();
+        for (int i : stations) {
+            access.pair(access.point(legs, i), access.station(corridor, i));
+        }
+        return access.fetch()
+                .flatMap(matrix -> {
+                    Matrix egress = new Matrix();
+                    for (int j = 0; j < stations.size(); j++) {
+                        int i = stations.get(j);
+                        Double km = cell(matrix.distances, access.sourceRow(j), access.destinationColumn(j));
+                        Double seconds = cell(matrix.durations, access.sourceRow(j), access.destinationColumn(j));
+                        if (km == null || seconds == null) {
+                            continue;
+                        }
+                        legs.setAccess(i, km / 1000.0, seconds / 60.0);
+                        if (km / 1000.0 <= symmetricKm) {
+                            legs.setEgress(i, km / 1000.0, seconds / 60.0);
+                            remember(corridor, legs, i);
+                        } else {
+                            egress.pair(egress.station(corridor, i), egress.point(legs, i));
+                            egress.stations.add(i);
+                        }
+                    }
+                    if (egress.stations.isEmpty()) {
+                        return Mono.<Void>empty();
+                    }
+                    return egress.fetch().doOnNext(back -> {
+                        for (int j = 0; j < egress.stations.size(); j++) {
+                            int i = egress.stations.get(j);
+                            Double km = cell(back.distances, egress.sourceRow(j), egress.destinationColumn(j));
+                            Double seconds = cell(back.durations, egress.sourceRow(j), egress.destinationColumn(j));
+                            if (km != null && seconds != null) {
+                                legs.setEgress(i, km / 1000.0, seconds / 60.0);
+                                remember(corridor, legs, i);
+                            }
+                        }
+                    }).then();
+                })
+                .doOnError(e -> log.debug("Detour matrix for {} stations failed: {}", stations.size(), e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private void remember(RouteCorridor corridor, Legs legs, int i) {
+        cache.put(key(corridor, legs, i), new Measured(legs.accessKm[i], legs.accessMinutes[i],
+                legs.egressKm[i], legs.egressMinutes[i]));
+    }
+
+    private Key key(RouteCorridor corridor, Legs legs, int i) {
+        return new Key(corridor.getStations().get(i).getStation().getId(),
+                Math.round(legs.lat[i] / snapDegrees), Math.round(legs.lng[i] / snapDegrees));
+    }
+
+    /**
+     * One asymmetric matrix request: each wanted (source, destination) pair,
+     * with locations shared between pairs listed once, so stations beside
+     * the same stretch of road share its route point.
+     */
+    private final class Matrix {
+        final List<List<Double>> locations = new ArrayList<>();
+        final List<Integer> sources = new ArrayList<>();
+        final List<Integer> destinations = new ArrayList<>();
+        final List<Integer> stations = new ArrayList<>();
+        private final Map<List<Double>, Integer> locationIndex = new HashMap<>();
+        private final Map<Integer, Integer> sourceRows = new HashMap<>();
+        private final Map<Integer, Integer> destinationColumns = new HashMap<>();
+        private final List<int[]> pairs = new ArrayList<>();
+
+        int point(Legs legs, int i) {
+            // Snapped, so nearby route points share a location
+            return location(Math.round(legs.lng[i] / snapDegrees) * snapDegrees,
+                    Math.round(legs.lat[i] / snapDegrees) * snapDegrees);
+        }
+
+        int station(RouteCorridor corridor, int i) {
+            ChargingStation station = corridor.getStations().get(i).getStation();
+            return location(station.getLng(), station.getLat());
+        }
+
+        void pair(int source, int destination) {
+            int row = sourceRows.computeIfAbsent(source, l -> {
+                sources.add(l);
+                return sources.size() - 1;
+            });
+            int column = destinationColumns.computeIfAbsent(destination, l -> {
+                destinations.add(l);
+                return destinations.size() - 1;
+            });
+            pairs.add(new int[] {row, column});
+        }
+
+        int sourceRow(int pair) {
+            return pairs.get(pair)[0];
+        }
+
+        int destinationColumn(int pair) {
+            return pairs.get(pair)[1];
+        }
+
+        Mono<OrsClient.MatrixResponse> fetch() {
+            return orsClient.getMatrix(locations, sources, destinations);
+        }
+
+        private int location(double lng, double lat) {
+            return locationIndex.computeIfAbsent(List.of(lng, lat), l -> {
+                locations.add(l);
+                return locations.size() - 1;
+            });
+        }
+    }
+
+    private static Double cell(List<List<Double>> matrix, int row, int col) {
+        if (matrix == null || row >= matrix.size() || matrix.get(row) == null || col >= matrix.get(row).size()) {
+            return null;
+        }
+        return matrix.get(row).get(col);
+    }
+
+    // Route points and detour legs being filled in, starting from the corridor's estimate
+    private static final class Legs {
+        final double[] lat;
+        final double[] lng;
+        final double[] accessKm;
+        final double[] accessMinutes;
+        final double[] egressKm;
+        final double[] egressMinutes;
+
+        Legs(RouteCorridor corridor) {
+            int n = corridor.getStations().size();
+            RouteProfile profile = corridor.getProfile();
+            lat = new double[n];
+            lng = new double[n];
+            for (int i = 0; i < n; i++) {
+                double[] point = profile.pointAt(corridor.getChainageKm()[i]);
+                lat[i] = point[0];
+                lng[i] = point[1];
+            }
+            StationDetours estimate = corridor.getDetours();
+            accessKm = estimate.getAccessKm().clone();
+            accessMinutes = estimate.getAccessMinutes().clone();
+            egressKm = estimate.getEgressKm().clone();
+            egressMinutes = estimate.getEgressMinutes().clone();
+        }
+
+        int size() {
+            return lat.length;
+        }
+
+        void set(int i, double inKm, double inMinutes, double outKm, double outMinutes) {
+            setAccess(i, inKm, inMinutes);
+            setEgress(i, outKm, outMinutes);
+        }
+
+        void setAccess(int i, double km, double minutes) {
+            accessKm[i] = km;
+            accessMinutes[i] = minutes;
+        }
+
+        void setEgress(int i, double km, double minutes) {
+            egressKm[i] = km;
+            egressMinutes[i] = minutes;
+        }
+
+        StationDetours toDetours() {
+            return new StationDetours(accessKm, accessMinutes, egressKm, egressMinutes);
+        }
+    }
+
+    // A station's detour legs, measured from one snapped route point
+    public record Key(String stationId, long lat, long lng) {}
+
+    private static final class Measured {
+        final double accessKm;
+        final double accessMinutes;
+        final double egressKm;
+        final double egressMinutes;
+
+        Measured(double accessKm, double accessMinutes, double egressKm, double egressMinutes) {
+            this.accessKm = accessKm;
+            this.accessMinutes = accessMinutes;
+            this.egressKm = egressKm;
+            this.egressMinutes = egressMinutes;
+        }
+    }
+}
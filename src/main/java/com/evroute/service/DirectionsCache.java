@@ -0,0 +1,240 @@
+package com.evroute.service;
+
+import com.evroute.cache.ReactiveCache;
+import com.evroute.geo.GeoUtils;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.RouteProfile;
+import com.evroute.geo.StationIndex;
+import com.evroute.model.LegSummary;
+import reactor.core.publisher.Mono;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Directions cache keyed by endpoints snapped to a grid, so a few metres of
+ * geocode jitter still hit.
+ *
+ * On a miss, routes previously fetched from the provider are checked for one
+ * that passes within the tolerance of both endpoints, start before end. Its
+ * stretch between them is served as the route, with distance and time
+ * pro-rated by length, and no upstream call is made. Fetched routes are
+ * indexed by the grid cells their padded segments touch, so a miss only
+ * measures routes that pass through both endpoints' cells. Routes leave this
+ * index once the underlying cache has evicted them.
+ */
+public class DirectionsCache {
+
+    private static final double CELL_DEGREES = StationIndex.DEFAULT_CELL_DEGREES;
+    private static final long CELL_COLUMNS = (long) Math.ceil(360.0 / CELL_DEGREES) + 1;
+
+    private final ReactiveCache<Key, DirectionsService.DirectionsResult> cache;
+    private final double snapDegrees;
+    private final double toleranceKm;
+    private final Map<Key, FetchedRoute> fetched = new ConcurrentHashMap<>();
+    // Grid cell key to the fetched routes passing within tolerance of it
+    private final Map<Long, Set<Key>> cells = new ConcurrentHashMap<>();
+    private final AtomicLong subRouteHits = new AtomicLong();
+    private final AtomicLong upstreamLoads = new AtomicLong();
+
+    public DirectionsCache(ReactiveCache<Key, DirectionsService.DirectionsResult> cache,
+                           double snapDegrees, double toleranceMeters) {
+        this.cache = cache;
+        this.snapDegrees = snapDegrees;
+        this.toleranceKm = toleranceMeters / 1000.0;
+    }
+
+    public Mono<DirectionsService.DirectionsResult> get(double startLat, double startLng,
+                                                        double endLat, double endLng,
+                                                        Supplier<Mono<DirectionsService.DirectionsResult>> upstream) {
+        Key key = new Key(snap(startLat), snap(startLng), snap(endLat), snap(endLng));
+        return cache.get(key, k -> Mono.defer(() -> {
+            DirectionsService.DirectionsResult subRoute = toleranceKm > 0
+                    ? findSubRoute(startLat, startLng, endLat, endLng) : null;
+            if (subRoute != null) {
+                subRouteHits.incrementAndGet();
+                return Mono.just(subRoute);
+            }
+            upstreamLoads.incrementAndGet();
+            return upstream.get().doOnNext(result -> {
+                if (toleranceKm > 0) {
+                    index(k, new FetchedRoute(result, toleranceKm));
+                }
+            });
+        }));
+    }
+
+    public Statistics stats() {
+        ReactiveCache.Statistics base = cache.stats();
+        return new Statistics(base.getHitCount(), subRouteHits.get(), upstreamLoads.get(), fetched.size());
+    }
+
+    private long snap(double degrees) {
+        return Math.round(degrees / snapDegrees);
+    }
+
+    private void index(Key key, FetchedRoute route) {
+        // Drop routes the cache has evicted since, even in cells no miss has looked at
+        Map<Key, DirectionsService.DirectionsResult> live = cache.getNativeCache().synchronous().asMap();
+        fetched.keySet().removeIf(fetchedKey -> !live.containsKey(fetchedKey) && unindexCells(fetchedKey));
+        fetched.put(key, route);
+        for (long cell : route.cells) {
+            cells.computeIfAbsent(cell, c -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    private void unindex(Key key) {
+        if (unindexCells(key)) {
+            fetched.remove(key);
+        }
+    }
+
+    private boolean unindexCells(Key key) {
+        FetchedRoute route = fetched.get(key);
+        if (route == null) {
+            return false;
+        }
+        for (long cell : route.cells) {
+            cells.computeIfPresent(cell, (c, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+        return true;
+    }
+
+    private DirectionsService.DirectionsResult findSubRoute(double startLat, double startLng,
+                                                            double endLat, double endLng) {
+        Set<Key> candidates = cells.get(cellKey(startLat, startLng));
+        if (candidates == null) {
+            return null;
+        }
+        long endCell = cellKey(endLat, endLng);
+        Map<Key, DirectionsService.DirectionsResult> live = cache.getNativeCache().synchronous().asMap();
+        for (Key key : candidates) {
+            FetchedRoute route = fetched.get(key);
+            if (route == null || !route.cells.contains(endCell)) {
+                continue;
+            }
+            if (!live.containsKey(key)) {
+                unindex(key);
+                continue;
+            }
+            DirectionsService.DirectionsResult subRoute = route.between(startLat, startLng, endLat, endLng);
+            if (subRoute != null) {
+                return subRoute;
+            }
+        }
+        return null;
+    }
+
+    // Same grid as StationIndex: rows from the south pole, columns from the antimeridian
+    private static long cellKey(long row, long col) {
+        return row * CELL_COLUMNS + col;
+    }
+
+    private static long cellKey(double lat, double lng) {
+        return cellKey(row(lat), col(lng));
+    }
+
+    private static long row(double lat) {
+        double clamped = Math.max(-90.0, Math.min(90.0, lat));
+        return (long) Math.floor((clamped + 90.0) / CELL_DEGREES);
+    }
+
+    private static long col(double lng) {
+        double clamped = Math.max(-180.0, Math.min(180.0, lng));
+        return (long) Math.floor((clamped + 180.0) / CELL_DEGREES);
+    }
+
+    // Snapped endpoints, in grid cells
+    public record Key(long startLat, long startLng, long endLat, long endLng) {}
+
+    private static final class FetchedRoute {
+        private final DirectionsService.DirectionsResult result;
+        private final RouteProfile profile;
+        private final double toleranceKm;
+        // Cells touched by any segment, padded by the tolerance
+        private final Set<Long> cells = new HashSet<>();
+        private double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        private double minLng = Double.POSITIVE_INFINITY, maxLng = Double.NEGATIVE_INFINITY;
+
+        FetchedRoute(DirectionsService.DirectionsResult result, double toleranceKm) {
+            this.result = result;
+            this.profile = new RouteProfile(result.getOverall().getPolyline());
+            this.toleranceKm = toleranceKm;
+            for (int i = 0; i < profile.size(); i++) {
+                double lat = profile.getPolyline().lat(i), lng = profile.getPolyline().lng(i);
+                minLat = Math.min(minLat, lat);
+                maxLat = Math.max(maxLat, lat);
+                minLng = Math.min(minLng, lng);
+                maxLng = Math.max(maxLng, lng);
+            }
+            PackedPolyline polyline = profile.getPolyline();
+            for (int i = 0; i < polyline.size(); i++) {
+                int j = Math.min(i + 1, polyline.size() - 1);
+                double aLat = polyline.lat(i), aLng = polyline.lng(i);
+                double bLat = polyline.lat(j), bLng = polyline.lng(j);
+                double latPad = GeoUtils.kmToLatDegrees(toleranceKm);
+                double lngPad = GeoUtils.kmToLngDegrees(toleranceKm, Math.max(Math.abs(aLat), Math.abs(bLat)));
+                long rowHi = row(Math.max(aLat, bLat) + latPad);
+                long colHi = col(Math.max(aLng, bLng) + lngPad);
+                for (long r = row(Math.min(aLat, bLat) - latPad); r <= rowHi; r++) {
+                    for (long c = col(Math.min(aLng, bLng) - lngPad); c <= colHi; c++) {
+                        cells.add(cellKey(r, c));
+                    }
+                }
+            }
+        }
+
+        DirectionsService.DirectionsResult between(double startLat, double startLng, double endLat, double endLng) {
+            if (!inBounds(startLat, startLng) || !inBounds(endLat, endLng)) {
+                return null;
+            }
+            double from = profile.project(startLat, startLng, toleranceKm);
+            if (Double.isNaN(from)) {
+                return null;
+            }
+            double to = profile.project(endLat, endLng, toleranceKm);
+            if (Double.isNaN(to) || to <= from) {
+                return null;
+            }
+            double share = (to - from) / profile.getTotalKm();
+            double distanceKm = result.getTotalDistanceKm() * share;
+            int minutes = (int) Math.round(result.getTotalMinutes() * share);
+            return new DirectionsService.DirectionsResult(
+                    new LegSummary(profile.slice(from, to), distanceKm, minutes), distanceKm, minutes);
+        }
+
+        private boolean inBounds(double lat, double lng) {
+            double latPad = GeoUtils.kmToLatDegrees(toleranceKm);
+            double lngPad = GeoUtils.kmToLngDegrees(toleranceKm, lat);
+            return lat >= minLat - latPad && lat <= maxLat + latPad
+                    && lng >= minLng - lngPad && lng <= maxLng + lngPad;
+        }
+    }
+
+    public static class Statistics {
+        private final long exactHits;
+        private final long subRouteHits;
+        private final long upstreamLoads;
+        private final int indexedRoutes;
+
+        public Statistics(long exactHits, long subRouteHits, long upstreamLoads, int indexedRoutes) {
+            this.exactHits = exactHits;
+            this.subRouteHits = subRouteHits;
+            this.upstreamLoads = upstreamLoads;
+            this.indexedRoutes = indexedRoutes;
+        }
+
+        // Getters
+        public long getExactHits() { return exactHits; }
+        public long getSubRouteHits() { return subRouteHits; }
+        public long getUpstreamLoads() { return upstreamLoads; }
+        public int getIndexedRoutes() { return indexedRoutes; }
+    }
+}
@@ -1,10 +1,21 @@
 package com.evroute.service;
 
+import com.evroute.cache.ReactiveCacheManager;
 import com.evroute.client.OrsClient;
+import com.evroute.client.UpstreamUnavailableException;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.metrics.Histogram;
+import com.evroute.metrics.MetricRegistry;
 import com.evroute.model.LegSummary;
+import com.evroute.routing.RoadGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -12,26 +23,129 @@ import java.util.List;
 @Service
 public class DirectionsService {
 
+    private static final Logger log = LoggerFactory.getLogger(DirectionsService.class);
+
     private final OrsClient orsClient;
+    private final RoadGraph roadGraph;
     private final String provider;
+    private final DirectionsCache cache;
+    private final Histogram polylineVertices;
 
     public DirectionsService(OrsClient orsClient, 
-                           @Value("${app.directions.provider}") String provider) {
+                           ObjectProvider<RoadGraph> roadGraph,
+                           @Value("${app.directions.provider}") String provider,
+                           ReactiveCacheManager cacheManager,
+                           MetricRegistry metrics,
+                           @Value("${app.directions.cache.snap-degrees:0.001}") double snapDegrees,
+                           @Value("${app.directions.cache.subroute-tolerance-m:150}") double subRouteToleranceM) {
         this.orsClient = orsClient;
+        this.roadGraph = roadGraph.getIfAvailable();
         this.provider = provider;
+        this.cache = new DirectionsCache(cacheManager.getCache("directions"), snapDegrees, subRouteToleranceM);
+        this.polylineVertices = metrics.histogram("evroute_route_polyline_vertices",
+                "Vertices in each route polyline returned by directions",
+                new long[]{100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000});
     }
 
     public Mono<DirectionsResult> getDirections(double startLat, double startLng, 
                                                double endLat, double endLng) {
+        return cache.get(startLat, startLng, endLat, endLng,
+                        () -> fetchDirections(startLat, startLng, endLat, endLng))
+                .doOnNext(result -> polylineVertices.record(result.getOverall().getPolyline().size()));
+    }
+
+    /**
+     * Directions through the waypoints ([lat, lng] each) in order, one result
+     * per leg, with the legs' polylines views over one route. ORS answers in a
+     * single request per {@link OrsClient#MAX_WAYPOINTS} waypoints; legs are
+     * not cached, since a stop sequence rarely repeats outside the plan cache.
+     */
+    public Mono<List<DirectionsResult>> getDirections(List<double[]> waypoints) {
+        if (waypoints.size() < 2) {
+            return Mono.error(new IllegalArgumentException("Need at least two waypoints, got " + waypoints.size()));
+        }
+        // Consecutive requests share their boundary waypoint
+        int step = OrsClient.MAX_WAYPOINTS - 1;
+        return Flux.range(0, (waypoints.size() - 2) / step + 1)
+                .concatMap(r -> fetchLegs(waypoints.subList(r * step, Math.min(waypoints.size(), r * step + step + 1))))
+                .concatMapIterable(legs -> legs)
+                .doOnNext(leg -> polylineVertices.record(leg.getOverall().getPolyline().size()))
+                .collectList();
+    }
+
+    public DirectionsCache.Statistics cacheStats() {
+        return cache.stats();
+    }
+
+    private Mono<DirectionsResult> fetchDirections(double startLat, double startLng,
+                                                   double endLat, double endLng) {
         if ("ORS".equals(provider)) {
-            return orsClient.getDirections(startLat, startLng, endLat, endLng)
-                    .map(this::mapOrsResponse);
+            Mono<DirectionsResult> fetched = orsClient.getDirections(startLat, startLng, endLat, endLng)
+                    .map(DirectionsService::mapOrsResponse);
+            if (roadGraph == null) {
+                return fetched;
+            }
+            // Road graph loaded as the fallback: route locally while ORS is shedding, failing or open
+            return fetched.onErrorResume(UpstreamUnavailableException.class, e -> {
+                log.warn("Routing locally: {}", e.getMessage());
+                return Mono.fromCallable(() -> routeLocally(startLat, startLng, endLat, endLng))
+                        .subscribeOn(Schedulers.parallel());
+            });
+        } else if ("LOCAL".equals(provider)) {
+            // CPU-bound but sub-millisecond, so no need for boundedElastic
+            return Mono.fromCallable(() -> routeLocally(startLat, startLng, endLat, endLng))
+                    .subscribeOn(Schedulers.parallel());
         } else {
             return Mono.error(new UnsupportedOperationException("Provider " + provider + " not supported"));
         }
     }
 
-    private DirectionsResult mapOrsResponse(OrsClient.DirectionsResponse response) {
+    private Mono<List<DirectionsResult>> fetchLegs(List<double[]> waypoints) {
+        Mono<List<DirectionsResult>> local = Mono.fromCallable(() -> routeLegsLocally(waypoints))
+                .subscribeOn(Schedulers.parallel());
+        if ("ORS".equals(provider)) {
+            List<List<Double>> coordinates = new ArrayList<>(waypoints.size());
+            for (double[] waypoint : waypoints) {
+                coordinates.add(List.of(waypoint[1], waypoint[0]));
+            }
+            Mono<List<DirectionsResult>> fetched = orsClient.getDirections(coordinates)
+                    .map(response -> mapOrsLegs(response, waypoints.size() - 1));
+            if (roadGraph == null) {
+                return fetched;
+            }
+            return fetched.onErrorResume(UpstreamUnavailableException.class, e -> {
+                log.warn("Routing locally: {}", e.getMessage());
+                return local;
+            });
+        } else if ("LOCAL".equals(provider)) {
+            return local;
+        } else {
+            return Mono.error(new UnsupportedOperationException("Provider " + provider + " not supported"));
+        }
+    }
+
+    // The route split at its waypoints, with each leg's totals from its segment
+    static List<DirectionsResult> mapOrsLegs(OrsClient.DirectionsResponse response, int legCount) {
+        DirectionsResult route = mapOrsResponse(response);
+        OrsClient.DirectionsResponse.Properties props = response.features.get(0).properties;
+        if (props.segments == null || props.segments.size() != legCount
+                || props.wayPoints == null || props.wayPoints.size() != legCount + 1) {
+            throw new RuntimeException("Expected " + legCount + " legs in the route");
+        }
+        PackedPolyline polyline = route.getOverall().getPolyline();
+        List<DirectionsResult> legs = new ArrayList<>(legCount);
+        for (int i = 0; i < legCount; i++) {
+            int from = props.wayPoints.get(i);
+            int to = Math.min(polyline.size(), props.wayPoints.get(i + 1) + 1);
+            double km = props.segments.get(i).distance / 1000.0;
+            int minutes = (int) (props.segments.get(i).duration / 60.0);
+            legs.add(new DirectionsResult(new LegSummary(polyline.subPolyline(from, to), km, minutes), km, minutes));
+        }
+        return legs;
+    }
+
+    // Public for the benchmarks
+    public static DirectionsResult mapOrsResponse(OrsClient.DirectionsResponse response) {
         if (response.features == null || response.features.isEmpty()) {
             throw new RuntimeException("No route found");
         }
@@ -40,11 +154,8 @@ public class DirectionsService {
         OrsClient.DirectionsResponse.Properties props = feature.properties;
         OrsClient.DirectionsResponse.Geometry geometry = feature.geometry;
 
-        // Convert coordinates from [lng, lat] to [lat, lng] for our model
-        List<double[]> polyline = new ArrayList<>();
-        for (List<Double> coord : geometry.coordinates) {
-            polyline.add(new double[]{coord.get(1), coord.get(0)}); // lat, lng
-        }
+        // Already swapped to lat,lng and packed while the response was parsed
+        PackedPolyline polyline = geometry.coordinates != null ? geometry.coordinates : PackedPolyline.EMPTY;
 
         double totalDistanceKm = props.summary.distance / 1000.0;
         int totalMinutes = (int) (props.summary.duration / 60.0);
@@ -56,6 +167,28 @@ public class DirectionsService {
         );
     }
 
+    private DirectionsResult routeLocally(double startLat, double startLng, double endLat, double endLng) {
+        RoadGraph.Route route = roadGraph.route(startLat, startLng, endLat, endLng);
+        if (route == null) {
+            throw new RuntimeException("No route found");
+        }
+        int totalMinutes = (int) route.getDurationMinutes();
+        return new DirectionsResult(
+                new LegSummary(route.getPolyline(), route.getDistanceKm(), totalMinutes),
+                route.getDistanceKm(),
+                totalMinutes
+        );
+    }
+
+    private List<DirectionsResult> routeLegsLocally(List<double[]> waypoints) {
+        List<DirectionsResult> legs = new ArrayList<>(waypoints.size() - 1);
+        for (int i = 0; i + 1 < waypoints.size(); i++) {
+            legs.add(routeLocally(waypoints.get(i)[0], waypoints.get(i)[1],
+                    waypoints.get(i + 1)[0], waypoints.get(i + 1)[1]));
+        }
+        return legs;
+    }
+
     public static class DirectionsResult {
         private final LegSummary overall;
         private final double totalDistanceKm;
@@ -0,0 +1,138 @@
+package com.evroute.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Canonical form of a free-text place query, used as the geocode cache key so
+ * "Seattle, WA", "seattle wa" and "Seattle,WA " resolve to one entry. The
+ * query itself is what goes upstream.
+ *
+ * Case and accents are folded, punctuation and whitespace collapse to single
+ * spaces, a trailing US country name is dropped, and common street-type and
+ * place-name abbreviations are expanded ("St" is "saint" as a leading word,
+ * "street" elsewhere). A trailing US state code is spelled out only when it
+ * cannot be a country code ("WA") or the query names the US ("Denver, CO,
+ * USA"); "Toronto, CA" and "Munich, DE" keep their codes.
+ */
+public final class GeocodeQueryNormalizer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Set<String> COUNTRY_SUFFIXES = Set.of("usa", "us", "united states", "united states of america");
+    private static final Set<String> COUNTRY_CODES = Arrays.stream(Locale.getISOCountries())
+            .map(code -> code.toLowerCase(Locale.ROOT))
+            .collect(Collectors.toUnmodifiableSet());
+
+    private static final Map<String, String> LEADING = Map.of(
+            "st", "saint",
+            "ste", "sainte",
+            "mt", "mount",
+            "ft", "fort",
+            "pt", "point");
+
+    private static final Map<String, String> ABBREVIATIONS = Map.ofEntries(
+            Map.entry("st", "street"),
+            Map.entry("ave", "avenue"),
+            Map.entry("av", "avenue"),
+            Map.entry("blvd", "boulevard"),
+            Map.entry("rd", "road"),
+            Map.entry("dr", "drive"),
+            Map.entry("ln", "lane"),
+            Map.entry("hwy", "highway"),
+            Map.entry("pkwy", "parkway"),
+            Map.entry("ct", "court"),
+            Map.entry("pl", "place"),
+            Map.entry("sq", "square"),
+            Map.entry("ctr", "center"),
+            Map.entry("n", "north"),
+            Map.entry("s", "south"),
+            Map.entry("e", "east"),
+            Map.entry("w", "west"),
+            Map.entry("ne", "northeast"),
+            Map.entry("nw", "northwest"),
+            Map.entry("se", "southeast"),
+            Map.entry("sw", "southwest"));
+
+    private static final Map<String, String> STATES = Map.ofEntries(
+            Map.entry("al", "alabama"), Map.entry("ak", "alaska"), Map.entry("az", "arizona"),
+            Map.entry("ar", "arkansas"), Map.entry("ca", "california"), Map.entry("co", "colorado"),
+            Map.entry("ct", "connecticut"), Map.entry("de", "delaware"), Map.entry("dc", "district of columbia"),
+            Map.entry("fl", "florida"), Map.entry("ga", "georgia"), Map.entry("hi", "hawaii"),
+            Map.entry("id", "idaho"), Map.entry("il", "illinois"), Map.entry("in", "indiana"),
+            Map.entry("ia", "iowa"), Map.entry("ks", "kansas"), Map.entry("ky", "kentucky"),
+            Map.entry("la", "louisiana"), Map.entry("me", "maine"), Map.entry("md", "maryland"),
+            Map.entry("ma", "massachusetts"), Map.entry("mi", "michigan"), Map.entry("mn", "minnesota"),
+            Map.entry("ms", "mississippi"), Map.entry("mo", "missouri"), Map.entry("mt", "montana"),
+            Map.entry("ne", "nebraska"), Map.entry("nv", "nevada"), Map.entry("nh", "new hampshire"),
+            Map.entry("nj", "new jersey"), Map.entry("nm", "new mexico"), Map.entry("ny", "new york"),
+            Map.entry("nc", "north carolina"), Map.entry("nd", "north dakota"), Map.entry("oh", "ohio"),
+            Map.entry("ok", "oklahoma"), Map.entry("or", "oregon"), Map.entry("pa", "pennsylvania"),
+            Map.entry("ri", "rhode island"), Map.entry("sc", "south carolina"), Map.entry("sd", "south dakota"),
+            Map.entry("tn", "tennessee"), Map.entry("tx", "texas"), Map.entry("ut", "utah"),
+            Map.entry("vt", "vermont"), Map.entry("va", "virginia"), Map.entry("wa", "washington"),
+            Map.entry("wv", "west virginia"), Map.entry("wi", "wisconsin"), Map.entry("wy", "wyoming"));
+
+    private GeocodeQueryNormalizer() {}
+
+    public static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(query, Normalizer.Form.NFKD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>(Arrays.asList(SEPARATORS.split(folded)));
+        tokens.removeIf(String::isEmpty);
+        if (tokens.isEmpty()) {
+            return "";
+        }
+
+        boolean inUs = dropCountrySuffix(tokens);
+        int last = tokens.size() - 1;
+        StringBuilder key = new StringBuilder(folded.length() + 16);
+        for (int i = 0; i <= last; i++) {
+            String token = tokens.get(i);
+            String expanded;
+            if (i == 0 && last > 0) {
+                expanded = LEADING.getOrDefault(token, token);
+            } else if (i == last && last > 0 && STATES.containsKey(token)
+                    && (inUs || !COUNTRY_CODES.contains(token))) {
+                expanded = STATES.get(token);
+            } else if (i == last && last > 0 && STATES.containsKey(token)) {
+                // A state or a country; either way not a street type
+                expanded = token;
+            } else {
+                expanded = ABBREVIATIONS.getOrDefault(token, token);
+            }
+            if (key.length() > 0) {
+                key.append(' ');
+            }
+            key.append(expanded);
+        }
+        return key.toString();
+    }
+
+    // True if a US suffix was dropped
+    private static boolean dropCountrySuffix(List<String> tokens) {
+        // Longest suffix first so "united states of america" is not left as "united states of"
+        for (int words = 4; words >= 1; words--) {
+            if (tokens.size() <= words) {
+                continue;
+            }
+            String suffix = String.join(" ", tokens.subList(tokens.size() - words, tokens.size()));
+            if (COUNTRY_SUFFIXES.contains(suffix)) {
+                tokens.subList(tokens.size() - words, tokens.size()).clear();
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,33 +1,81 @@
 package com.evroute.service;
 
+import com.evroute.cache.ReactiveCache;
+import com.evroute.cache.ReactiveCacheManager;
 import com.evroute.client.OrsClient;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.file.Path;
 import java.util.List;
 
+/**
+ * Resolves place queries to coordinates. Queries are normalized first (see
+ * {@link GeocodeQueryNormalizer}) and looked up in two tiers: the in-memory
+ * "geocode" cache, then a file that survives restarts
+ * ({@code app.geocode.store.path}, blank to disable). Only a miss in both
+ * reaches the provider.
+ */
 @Service
 public class GeocodeService {
 
     private final OrsClient orsClient;
     private final String provider;
+    private final ReactiveCache<String, GeocodeResult> cache;
+    private final GeocodeStore store;
 
     public GeocodeService(OrsClient orsClient, 
-                         @Value("${app.geocode.provider}") String provider) {
+                         @Value("${app.geocode.provider}") String provider,
+                         ReactiveCacheManager cacheManager,
+                         @Value("${app.geocode.store.path:}") String storePath) {
         this.orsClient = orsClient;
         this.provider = provider;
+        this.cache = cacheManager.getCache("geocode");
+        this.store = storePath.isBlank() ? null : GeocodeStore.open(Path.of(storePath));
     }
 
     public Mono<GeocodeResult> geocode(String query) {
+        String key = GeocodeQueryNormalizer.normalize(query);
+        if (key.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Empty geocoding query"));
+        }
+        return cache.get(key, k -> load(k, query));
+    }
+
+    private Mono<GeocodeResult> load(String key, String query) {
+        GeocodeResult stored = store != null ? store.get(key) : null;
+        if (stored != null) {
+            return Mono.just(stored);
+        }
+        Mono<GeocodeResult> fetched = fetch(query);
+        if (store == null) {
+            return fetched;
+        }
+        return fetched.flatMap(result -> Mono.fromRunnable(() -> store.put(key, result))
+                .subscribeOn(Schedulers.boundedElastic())
+                .thenReturn(result));
+    }
+
+    private Mono<GeocodeResult> fetch(String query) {
         if ("ORS".equals(provider)) {
-            return orsClient.geocode(query)
+            // The user's text goes upstream; the normalized form only keys the cache
+            return orsClient.geocode(query.strip())
                     .map(this::mapOrsResponse);
         } else {
             return Mono.error(new UnsupportedOperationException("Provider " + provider + " not supported"));
         }
     }
 
+    @PreDestroy
+    void close() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
     private GeocodeResult mapOrsResponse(OrsClient.GeocodeResponse response) {
         if (response.features == null || response.features.isEmpty()) {
             throw new RuntimeException("No geocoding results found for query");
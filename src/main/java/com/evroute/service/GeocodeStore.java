@@ -0,0 +1,122 @@
+package com.evroute.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent tier of the geocode cache: an append-only UTF-8 TSV file of
+ * {@code key, lat, lng, name, state, country}, read back in full on startup.
+ * Geocodes do not go stale the way routes and stations do, so entries never
+ * expire; delete the file to start over. A torn last line from a crash is
+ * skipped on load.
+ */
+class GeocodeStore {
+
+    private static final Logger log = LoggerFactory.getLogger(GeocodeStore.class);
+
+    private final Path path;
+    private final Map<String, GeocodeService.GeocodeResult> entries = new ConcurrentHashMap<>();
+    private BufferedWriter writer;
+
+    private GeocodeStore(Path path) {
+        this.path = path;
+    }
+
+    static GeocodeStore open(Path path) {
+        GeocodeStore store = new GeocodeStore(path);
+        try {
+            if (Files.exists(path)) {
+                List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+                for (String line : lines) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length != 6) {
+                        continue;
+                    }
+                    try {
+                        store.entries.put(fields[0], new GeocodeService.GeocodeResult(
+                                Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                                emptyToNull(fields[3]), emptyToNull(fields[4]), emptyToNull(fields[5])));
+                    } catch (NumberFormatException e) {
+                        // torn or hand-edited line
+                    }
+                }
+                log.info("Loaded {} geocodes from {}", store.entries.size(), path);
+            } else if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            store.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            if (endsTorn(path)) {
+                // Start on a fresh line so the next entry is not glued to the torn one
+                store.writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open geocode store " + path, e);
+        }
+        return store;
+    }
+
+    GeocodeService.GeocodeResult get(String key) {
+        return entries.get(key);
+    }
+
+    /** Records a new entry; blocking file I/O, so callers keep it off event-loop threads. */
+    void put(String key, GeocodeService.GeocodeResult result) {
+        if (entries.putIfAbsent(key, result) != null) {
+            return;
+        }
+        String line = String.join("\t", key,
+                Double.toString(result.getLat()), Double.toString(result.getLng()),
+                field(result.getName()), field(result.getState()), field(result.getCountry()));
+        synchronized (this) {
+            try {
+                writer.write(line);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                // The entry stays in memory; it is just not persisted
+                log.warn("Failed to persist geocode for '{}' to {}: {}", key, path, e.getMessage());
+            }
+        }
+    }
+
+    synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Failed to close geocode store {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static boolean endsTorn(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return false;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            return last.get(0) != '\n';
+        }
+    }
+
+    private static String field(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
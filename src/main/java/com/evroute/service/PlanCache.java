@@ -0,0 +1,230 @@
+package com.evroute.service;
+
+import com.evroute.cache.ReactiveCache;
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.geo.CorridorTiles;
+import com.evroute.model.EVSpec;
+import com.evroute.model.RoutePlan;
+import com.evroute.model.RoutePrefs;
+import com.evroute.model.RouteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cache of finished route plans keyed by resolved endpoints, vehicle and
+ * preferences.
+ *
+ * Requests are quantized before they are planned (see {@link #quantize}), so
+ * near-identical requests share a key and the cached plan is exactly the plan
+ * for that key. Each entry remembers the station fingerprint of every
+ * corridor tile it was planned over; a hit on tiles that have since been
+ * fetched with different stations is dropped and planned again. A plan whose
+ * tiles changed, or failed to fetch, while it was being made is returned but
+ * not kept.
+ *
+ * Entries are weighed by roughly the memory they retain, so the cache can be
+ * bounded by {@code maximumWeight} in bytes; a floor per entry keeps that
+ * bound on the entry count too. An entry keeps the full-precision route and
+ * its {@link com.evroute.geo.PolylinePyramid}, weighed at the pyramid's
+ * bound since its zoom levels fill in after insertion. Simplification is
+ * left to each hit: per-zoom levels are memoized in the pyramid, legs and
+ * tolerances are a filter over the route's own vertices, and keeping only
+ * simplified copies would lose the precision later hits may ask for.
+ */
+public class PlanCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PlanCache.class);
+
+    static final int MIN_ENTRY_WEIGHT = 4096;
+
+    private final ReactiveCache<Key, Entry> cache;
+    private final ToLongFunction<CorridorTiles.Tile> tileVersion;
+    private final ToLongFunction<CorridorTiles.Tile> tileFailures;
+    private final double snapDegrees;
+
+    public PlanCache(ReactiveCacheManager cacheManager, ToLongFunction<CorridorTiles.Tile> tileVersion,
+                     ToLongFunction<CorridorTiles.Tile> tileFailures, double snapDegrees) {
+        this.cache = cacheManager.getCache("plans", (Key key, Entry entry) -> entry.weight());
+        this.tileVersion = tileVersion;
+        this.tileFailures = tileFailures;
+        this.snapDegrees = snapDegrees;
+    }
+
+    /**
+     * Copy of the request with the vehicle and preferences rounded the safe
+     * way: start charge and usable capacity down, reserve and arrival target
+     * up to the next 1% of SoC, consumption up to the next 5 Wh/km.
+     */
+    public static RouteRequest quantize(RouteRequest request) {
+        EVSpec ev = request.getEv();
+        EVSpec q = new EVSpec(
+                Math.floor(ev.getBatteryKwh() * 10 + 1e-9) / 10,
+                Math.floor(ev.getUsableSoCFraction() * 100 + 1e-9) / 100,
+                Math.ceil(ev.getConsumptionWhPerKm() / 5 - 1e-9) * 5,
+                Math.floor(ev.getMaxChargeKw() + 1e-9),
+                Math.floor(ev.getStartSoC() * 100 + 1e-9) / 100,
+                Math.ceil(ev.getReserveSoC() * 100 - 1e-9) / 100);
+        if (ev.getChargingCurve() != null) {
+            List<double[]> curve = new ArrayList<>(ev.getChargingCurve().size());
+            for (double[] point : ev.getChargingCurve()) {
+                curve.add(new double[]{Math.round(point[0] * 100) / 100.0, Math.floor(point[1] + 1e-9)});
+            }
+            q.setChargingCurve(curve);
+        }
+        RoutePrefs prefs = request.getPrefs() != null ? request.getPrefs() : new RoutePrefs();
+        RoutePrefs qPrefs = new RoutePrefs(
+                Math.ceil(prefs.getTargetArrivalSoC() * 100 - 1e-9) / 100,
+                Math.round(prefs.getPlanningSpeedKph()));
+        return new RouteRequest(request.getOrigin(), request.getDestination(), q, qPrefs);
+    }
+
+    /**
+     * The cached plan for a quantized request between resolved endpoints, or
+     * the one {@code planner} makes.
+     */
+    public Mono<RoutePlan> get(RouteRequest quantized, GeocodeService.GeocodeResult origin,
+                               GeocodeService.GeocodeResult destination, Supplier<Mono<Entry>> planner) {
+        Key key = key(quantized, origin, destination);
+        Entry cached = cache.getIfPresent(key);
+        if (cached != null && !isCurrent(cached)) {
+            log.debug("Dropping cached plan {} -> {}: corridor stations changed",
+                    quantized.getOrigin(), quantized.getDestination());
+            cache.invalidate(key);
+        }
+        return cache.get(key, k -> planner.get())
+                .doOnNext(entry -> {
+                    if (!entry.stable) {
+                        cache.invalidate(key);
+                    }
+                })
+                .map(Entry::getPlan);
+    }
+
+    /**
+     * The cached plan for a quantized request between resolved endpoints, or
+     * empty when there is none or its corridor stations have changed.
+     */
+    public Mono<RoutePlan> getIfPresent(RouteRequest quantized, GeocodeService.GeocodeResult origin,
+                                        GeocodeService.GeocodeResult destination) {
+        Key key = key(quantized, origin, destination);
+        Entry cached = cache.getIfPresent(key);
+        if (cached == null) {
+            return Mono.empty();
+        }
+        if (!isCurrent(cached)) {
+            cache.invalidate(key);
+            return Mono.empty();
+        }
+        return Mono.just(cached.getPlan());
+    }
+
+    /** Starts an entry over the given corridor tiles; call before fetching their stations. */
+    public Pending begin(List<CorridorTiles.Tile> tiles) {
+        return new Pending(tiles);
+    }
+
+    private boolean isCurrent(Entry entry) {
+        for (int i = 0; i < entry.tiles.length; i++) {
+            if (tileVersion.applyAsLong(entry.tiles[i]) != entry.versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Key key(RouteRequest request, GeocodeService.GeocodeResult origin, GeocodeService.GeocodeResult destination) {
+        EVSpec ev = request.getEv();
+        List<Integer> curve = new ArrayList<>();
+        if (ev.getChargingCurve() != null) {
+            for (double[] point : ev.getChargingCurve()) {
+                curve.add((int) Math.round(point[0] * 100));
+                curve.add((int) Math.round(point[1]));
+            }
+        }
+        return new Key(snap(origin.getLat()), snap(origin.getLng()), snap(destination.getLat()), snap(destination.getLng()),
+                (int) Math.round(ev.getBatteryKwh() * 10), (int) Math.round(ev.getUsableSoCFraction() * 100),
+                (int) Math.round(ev.getConsumptionWhPerKm()), (int) Math.round(ev.getMaxChargeKw()),
+                (int) Math.round(ev.getStartSoC() * 100), (int) Math.round(ev.getReserveSoC() * 100), curve,
+                (int) Math.round(request.getPrefs().getTargetArrivalSoC() * 100),
+                (int) Math.round(request.getPrefs().getPlanningSpeedKph()));
+    }
+
+    private long snap(double degrees) {
+        return Math.round(degrees / snapDegrees);
+    }
+
+    // Snapped endpoints in grid cells, then the quantized vehicle and preferences as integers
+    record Key(long originLat, long originLng, long destinationLat, long destinationLng,
+               int batteryDeciKwh, int usablePercent, int consumptionWhPerKm, int maxChargeKw,
+               int startPercent, int reservePercent, List<Integer> curve,
+               int arrivalPercent, int speedKph) {}
+
+    /** Tile versions captured before planning, completed into an entry once the plan is made. */
+    public final class Pending {
+        private final CorridorTiles.Tile[] tiles;
+        private final long[] versions;
+        private final long[] failures;
+
+        private Pending(List<CorridorTiles.Tile> tiles) {
+            this.tiles = tiles.toArray(new CorridorTiles.Tile[0]);
+            this.versions = new long[this.tiles.length];
+            this.failures = new long[this.tiles.length];
+            for (int i = 0; i < this.tiles.length; i++) {
+                versions[i] = tileVersion.applyAsLong(this.tiles[i]);
+                failures[i] = tileFailures.applyAsLong(this.tiles[i]);
+            }
+        }
+
+        public Entry complete(RoutePlan plan) {
+            // A tile first fetched by this plan is fine; one refetched with other stations meanwhile is not,
+            // nor one whose fetch failed, as its stations may be missing from the plan
+            boolean stable = true;
+            long[] now = new long[tiles.length];
+            for (int i = 0; i < tiles.length; i++) {
+                now[i] = tileVersion.applyAsLong(tiles[i]);
+                stable &= (versions[i] == 0 || versions[i] == now[i])
+                        && failures[i] == tileFailures.applyAsLong(tiles[i]);
+            }
+            return new Entry(plan, tiles, now, stable);
+        }
+
+        // Planned over only some of the corridor's stations: returned, never kept
+        public Entry incomplete(RoutePlan plan) {
+            return new Entry(plan, tiles, versions, false);
+        }
+    }
+
+    public static final class Entry {
+        private final RoutePlan plan;
+        private final CorridorTiles.Tile[] tiles;
+        private final long[] versions;
+        private final boolean stable;
+
+        private Entry(RoutePlan plan, CorridorTiles.Tile[] tiles, long[] versions, boolean stable) {
+            this.plan = plan;
+            this.tiles = tiles;
+            this.versions = versions;
+            this.stable = stable;
+        }
+
+        public RoutePlan getPlan() {
+            return plan;
+        }
+
+        // Coordinates (legs are views over them), the pyramid's bound, and a flat allowance for the rest
+        int weight() {
+            long vertices = plan.getOverall() != null && plan.getOverall().getPolyline() != null
+                    ? plan.getOverall().getPolyline().size() : 0;
+            long pyramid = plan.getPyramid() != null ? plan.getPyramid().retainedBytes() : 0;
+            long bytes = 1024 + vertices * 16 + pyramid + plan.getStops().size() * 256L + plan.getLegs().size() * 64L
+                    + tiles.length * 32L;
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_ENTRY_WEIGHT, bytes));
+        }
+    }
+}
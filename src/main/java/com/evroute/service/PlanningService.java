@@ -1,84 +1,438 @@
 package com.evroute.service;
 
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.client.UpstreamUnavailableException;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.PolylinePyramid;
+import com.evroute.geo.RouteCorridor;
+import com.evroute.geo.RouteProfile;
+import com.evroute.geo.RouteStation;
+import com.evroute.metrics.Histogram;
+import com.evroute.metrics.MetricRegistry;
+import com.evroute.metrics.Timer;
 import com.evroute.model.*;
+import com.evroute.planning.ChargingStopOptimizer;
+import com.evroute.planning.StationDetours;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 @Service
 public class PlanningService {
 
-    private static final double CHARGE_EFFICIENCY = 0.9;
-    private static final double SEARCH_RADIUS_KM = 15.0;
-    private static final double DETOUR_PENALTY_FACTOR = 5.0;
+    static final double SEARCH_RADIUS_KM = 15.0;
 
+    private static final Logger log = LoggerFactory.getLogger(PlanningService.class);
+
+    private final ChargingStopOptimizer optimizer = new ChargingStopOptimizer();
+    private final GeocodeService geocodeService;
+    private final DirectionsService directionsService;
+    private final StationsService stationsService;
+    private final DetourService detourService;
+    private final StationGraphPlanner stationGraphPlanner;
+    private final PlanCache planCache;
+    private final Duration geocodeTimeout;
+    private final Duration directionsTimeout;
+    private final Duration stationsTimeout;
+    private final Duration planTimeout;
+    private final MetricRegistry metrics;
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Timer planTimer;
+    private final Timer streamTimer;
+    private final Timer compareTimer;
+    // Recorded inline on the planner threads; recording never allocates
+    private final Timer corridorTimer;
+    private final Timer optimizeTimer;
+    private final Timer legsTimer;
+    private final Histogram corridorCandidates;
+
+    public PlanningService(GeocodeService geocodeService,
+                           DirectionsService directionsService,
+                           StationsService stationsService,
+                           DetourService detourService,
+                           StationGraphPlanner stationGraphPlanner,
+                           ReactiveCacheManager cacheManager,
+                           MetricRegistry metrics,
+                           @Value("${app.planning.timeout.geocode:5s}") Duration geocodeTimeout,
+                           @Value("${app.planning.timeout.directions:10s}") Duration directionsTimeout,
+                           @Value("${app.planning.timeout.stations:10s}") Duration stationsTimeout,
+                           @Value("${app.planning.timeout.plan:2s}") Duration planTimeout,
+                           @Value("${app.directions.cache.snap-degrees:0.001}") double snapDegrees) {
+        this.geocodeService = geocodeService;
+        this.directionsService = directionsService;
+        this.stationsService = stationsService;
+        this.detourService = detourService;
+        this.stationGraphPlanner = stationGraphPlanner;
+        this.planCache = new PlanCache(cacheManager,
+                tile -> stationsService != null ? stationsService.tileVersion(tile) : 0L,
+                tile -> stationsService != null ? stationsService.tileFailures(tile) : 0L, snapDegrees);
+        this.geocodeTimeout = geocodeTimeout;
+        this.directionsTimeout = directionsTimeout;
+        this.stationsTimeout = stationsTimeout;
+        this.planTimeout = planTimeout;
+        this.metrics = metrics;
+        this.planTimer = planTimer(metrics, "plan");
+        this.streamTimer = planTimer(metrics, "stream");
+        this.compareTimer = planTimer(metrics, "compare");
+        this.corridorTimer = metrics.stage("corridor");
+        this.optimizeTimer = metrics.stage("optimize");
+        this.legsTimer = metrics.stage("legs");
+        this.corridorCandidates = metrics.histogram("evroute_corridor_candidates",
+                "Stations left as charging candidates after the corridor filter",
+                new long[]{0, 5, 10, 25, 50, 100, 250, 500, 1000, 2500});
+    }
+
+    // Shared with batch planning, so batched and single plans hit the same entries
+    PlanCache planCache() {
+        return planCache;
+    }
+
+    /** End-to-end time to answer one planning call, by endpoint. */
+    static Timer planTimer(MetricRegistry metrics, String endpoint) {
+        return metrics.timer("evroute_plan_seconds", "End-to-end time to answer a planning call", "endpoint", endpoint);
+    }
+
+    /**
+     * Plans a route. Long trips inside the station graph's region are planned
+     * over the graph; everything else, and any trip the graph cannot plan,
+     * along the route between the endpoints. The vehicle and preferences are
+     * quantized first and finished plans are cached (see {@link PlanCache});
+     * streamed, compared and batched plans try the graph first too, so a key's
+     * plan does not depend on which endpoint made it.
+     */
     public Mono<RoutePlan> planRoute(RouteRequest request) {
-        return Mono.fromCallable(() -> {
-            // For MVP, we'll use mock data and implement the planning algorithm
-            // In production, this would integrate with the actual services
-            
-            // Mock route for Seattle to Boise
-            List<double[]> mockPolyline = List.of(
-                new double[]{47.61, -122.33}, // Seattle
-                new double[]{46.99, -120.55}, // Ellensburg
-                new double[]{46.60, -120.51}, // Yakima
-                new double[]{46.21, -119.14}, // Kennewick
-                new double[]{43.62, -116.20}  // Boise
-            );
+        RouteRequest quantized = PlanCache.quantize(request);
+        return planTimer.time(resolveEndpoints(quantized)
+                .flatMap(endpoints -> planCache.get(quantized, endpoints.getT1(), endpoints.getT2(),
+                        () -> planResolved(quantized, endpoints))));
+    }
 
-            // Mock charging stops
-            List<PlannedStop> stops = List.of(
-                new PlannedStop(
-                    new ChargingStation("OCM-001", "Shell Recharge Ellensburg", 46.99, -120.55, 
-                                       List.of("CCS"), 350.0, true),
-                    0.22, 0.70, 18, 32.4
-                ),
-                new PlannedStop(
-                    new ChargingStation("OCM-002", "Tesla Supercharger - Yakima", 46.60, -120.51, 
-                                       List.of("Tesla"), 250.0, true),
-                    0.15, 0.65, 22, 37.0
-                )
-            );
+    private Mono<PlanCache.Entry> planResolved(RouteRequest request,
+                                               Tuple2<GeocodeService.GeocodeResult, GeocodeService.GeocodeResult> endpoints) {
+        return planOverGraph(request, endpoints.getT1(), endpoints.getT2())
+                .switchIfEmpty(Mono.defer(() -> resolveDirections(endpoints)
+                        .flatMap(directions -> {
+                            PackedPolyline polyline = directions.getOverall().getPolyline();
+                            if (!needsCharging(request, directions)) {
+                                return planAlongRoute(request, directions, Mono.just(List.of()), buildPyramid(polyline))
+                                        .map(plan -> planCache.begin(List.of()).complete(plan));
+                            }
+                            // Tile versions are taken before the stations are fetched
+                            PlanCache.Pending pending = planCache.begin(
+                                    stationsService.corridorTiles(polyline, SEARCH_RADIUS_KM));
+                            Mono<List<ChargingStation>> stations = stage("stations",
+                                    stationsService.findStationsAlongRoute(polyline, SEARCH_RADIUS_KM), stationsTimeout);
+                            return planAlongRoute(request, directions, stations, buildPyramid(polyline))
+                                    .map(pending::complete);
+                        })));
+    }
 
-            // Mock legs
-            List<LegSummary> legs = List.of(
-                new LegSummary(List.of(mockPolyline.get(0), mockPolyline.get(1)), 280.5, 162),
-                new LegSummary(List.of(mockPolyline.get(1), mockPolyline.get(2)), 310.2, 186),
-                new LegSummary(List.of(mockPolyline.get(2), mockPolyline.get(3)), 221.6, 120)
-            );
+    /**
+     * A plan over the station graph, or empty when the trip is planned along
+     * its route. The entry carries the corridor tiles along the planned route,
+     * so stations changing there drop it like a corridor plan.
+     */
+    Mono<PlanCache.Entry> planOverGraph(RouteRequest request, GeocodeService.GeocodeResult origin,
+                                        GeocodeService.GeocodeResult destination) {
+        return stationGraphPlanner.plan(request, origin, destination)
+                .map(plan -> planCache.begin(stationsService.corridorTiles(plan.getOverall().getPolyline(),
+                        SEARCH_RADIUS_KM)).complete(plan));
+    }
 
-            return new RoutePlan(
-                new LegSummary(mockPolyline, 812.3, 468),
-                stops,
-                legs,
-                120.7,
-                468,
-                40
-            );
+    /**
+     * Plans a route as a stream of events, in order: the route geometry as
+     * soon as directions resolve, each batch of newly found corridor stations
+     * as its tiles load, every planned stop, then the complete plan. A slow
+     * station fetch is cut off at the stations timeout and planned with what
+     * has arrived; such a plan is not cached. A cached plan, or one made over
+     * the station graph, is replayed as its route, stops and summary.
+     */
+    public Flux<PlanEvent> planRouteStream(RouteRequest request) {
+        RouteRequest quantized = PlanCache.quantize(request);
+        return streamTimer.time(resolveEndpoints(quantized)
+                .flatMapMany(endpoints -> planCache.getIfPresent(quantized, endpoints.getT1(), endpoints.getT2())
+                        .switchIfEmpty(Mono.defer(() -> planCache.get(quantized, endpoints.getT1(), endpoints.getT2(),
+                                () -> planOverGraph(quantized, endpoints.getT1(), endpoints.getT2()))))
+                        .map(plan -> replay(quantized, plan))
+                        .defaultIfEmpty(Flux.defer(() -> streamResolved(quantized, endpoints)))
+                        .flatMapMany(events -> events)));
+    }
+
+    private Flux<PlanEvent> streamResolved(RouteRequest request,
+                                           Tuple2<GeocodeService.GeocodeResult, GeocodeService.GeocodeResult> endpoints) {
+        return resolveDirections(endpoints)
+                .flatMapMany(directions -> {
+                    PackedPolyline polyline = directions.getOverall().getPolyline();
+                    Mono<PolylinePyramid> pyramid = buildPyramid(polyline).cache();
+                    Flux<PlanEvent> route = pyramid
+                            .map(levels -> PlanEvent.route(routePreview(request, directions, levels)))
+                            .flux();
+
+                    boolean charging = needsCharging(request, directions);
+                    // Tile versions are taken before the stations are fetched
+                    PlanCache.Pending pending = planCache.begin(charging
+                            ? stationsService.corridorTiles(polyline, SEARCH_RADIUS_KM) : List.of());
+                    AtomicBoolean cutOff = new AtomicBoolean();
+                    Flux<List<ChargingStation>> batches = charging
+                            ? stationsService.streamStationsAlongRoute(polyline, SEARCH_RADIUS_KM)
+                                    .takeUntilOther(Mono.delay(stationsTimeout).doOnNext(tick -> cutOff.set(true)))
+                            : Flux.empty();
+                    Flux<PlanEvent> planned = batches.publish(shared -> Flux.merge(
+                            shared.map(PlanEvent::stations),
+                            planCache.get(request, endpoints.getT1(), endpoints.getT2(),
+                                    () -> planAlongRoute(request, directions,
+                                            shared.collectList().map(PlanningService::flatten), pyramid)
+                                            .map(plan -> cutOff.get() ? pending.incomplete(plan) : pending.complete(plan)))
+                                    .flatMapMany(plan -> Flux.concat(
+                                            Flux.fromIterable(plan.getStops()).map(PlanEvent::stop),
+                                            Flux.just(PlanEvent.summary(plan))))));
+
+                    // Stations start loading at once; their events queue behind the route event
+                    return Flux.mergeSequential(route, planned);
+                });
+    }
+
+    private Flux<PlanEvent> replay(RouteRequest request, RoutePlan plan) {
+        LegSummary overall = plan.getOverall();
+        RoutePlan preview = new RoutePlan(overall, List.of(), List.of(),
+                overall.getDistanceKm() * request.getEv().getConsumptionWhPerKm() / 1000.0,
+                overall.getDriveMinutes(), 0);
+        preview.setPyramid(plan.getPyramid());
+        return Flux.concat(
+                Flux.just(PlanEvent.route(preview)),
+                Flux.fromIterable(plan.getStops()).map(PlanEvent::stop),
+                Flux.just(PlanEvent.summary(plan)));
+    }
+
+    /**
+     * Plans one origin/destination for several vehicles. Each vehicle is
+     * quantized and looked up in the plan cache. A vehicle that misses is
+     * planned over the station graph where it applies; for the rest, stations
+     * and the station corridor are resolved once and shared read-only by their
+     * plans, which run in parallel. A vehicle whose plan
+     * fails gets an error row; the others are unaffected.
+     */
+    public Mono<RouteComparison> compareVehicles(CompareRequest request) {
+        int count = request.getVehicles().size();
+        List<RouteRequest> vehicles = IntStream.range(0, count)
+                .mapToObj(i -> PlanCache.quantize(request.forVehicle(i)))
+                .toList();
+        return compareTimer.time(resolveEndpoints(vehicles.get(0))
+                .flatMap(endpoints -> resolveDirections(endpoints).flatMap(directions -> {
+                    PackedPolyline polyline = directions.getOverall().getPolyline();
+
+                    // Only subscribed, and then once, when a vehicle that needs charging misses the cache.
+                    // Station fetch (I/O) and route preprocessing (CPU) overlap, as in planAlongRoute
+                    Mono<Tuple2<RouteCorridor, PlanCache.Pending>> corridor = Mono.defer(() -> {
+                        PlanCache.Pending pending = planCache.begin(
+                                stationsService.corridorTiles(polyline, SEARCH_RADIUS_KM));
+                        return Mono.zip(
+                                        stage("stations", stationsService.findStationsAlongRoute(polyline, SEARCH_RADIUS_KM), stationsTimeout),
+                                        Mono.fromCallable(() -> new RouteProfile(polyline)).subscribeOn(Schedulers.parallel()))
+                                .publishOn(Schedulers.parallel())
+                                .map(inputs -> buildCorridor(inputs.getT2(), inputs.getT1()))
+                                .flatMap(detourService::withDetours)
+                                .map(built -> Tuples.of(built, pending));
+                    }).cache();
+
+                    return buildPyramid(polyline)
+                            .flatMap(pyramid -> Flux.range(0, count)
+                                    .flatMap(i -> planCache.get(vehicles.get(i), endpoints.getT1(), endpoints.getT2(),
+                                                    () -> planOverGraph(vehicles.get(i), endpoints.getT1(), endpoints.getT2())
+                                                            .switchIfEmpty(Mono.defer(() -> compareVehicle(
+                                                                    vehicles.get(i), directions, corridor, pyramid))))
+                                            .map(plan -> RouteComparison.VehicleResult.of(i, plan))
+                                            // An upstream outage fails the comparison as a whole, as it would a single plan
+                                            .onErrorResume(e -> e instanceof RuntimeException
+                                                            && !(e instanceof UpstreamUnavailableException),
+                                                    e -> Mono.just(RouteComparison.VehicleResult
+                                                            .failure(i, "Failed to plan route: " + e.getMessage()))))
+                                    .collectSortedList(Comparator.comparingInt(RouteComparison.VehicleResult::getIndex))
+                                    .map(rows -> new RouteComparison(directions.getOverall(), rows, pyramid)));
+                })));
+    }
+
+    private Mono<PlanCache.Entry> compareVehicle(RouteRequest request, DirectionsService.DirectionsResult directions,
+                                                 Mono<Tuple2<RouteCorridor, PlanCache.Pending>> corridor,
+                                                 PolylinePyramid pyramid) {
+        if (!needsCharging(request, directions)) {
+            return stage("plan", Mono.fromCallable(() -> planCache.begin(List.of())
+                    .complete(withPyramid(planRouteWithAlgorithm(request, directions, (RouteCorridor) null), pyramid))),
+                    planTimeout);
+        }
+        return corridor.flatMap(inputs -> stage("plan",
+                Mono.fromCallable(() -> inputs.getT2()
+                                .complete(withPyramid(planRouteWithAlgorithm(request, directions, inputs.getT1()), pyramid)))
+                        .subscribeOn(Schedulers.parallel()),
+                planTimeout));
+    }
+
+    // Cached plans are served to single plans too, which carry the pyramid
+    private static RoutePlan withPyramid(RoutePlan plan, PolylinePyramid pyramid) {
+        plan.setPyramid(pyramid);
+        return plan;
+    }
+
+    private Mono<DirectionsService.DirectionsResult> resolveDirections(RouteRequest request) {
+        return resolveEndpoints(request).flatMap(this::resolveDirections);
+    }
+
+    private Mono<Tuple2<GeocodeService.GeocodeResult, GeocodeService.GeocodeResult>> resolveEndpoints(RouteRequest request) {
+        // Both endpoints resolve concurrently
+        Mono<GeocodeService.GeocodeResult> origin =
+                stage("geocode-origin", geocodeService.geocode(request.getOrigin()), geocodeTimeout);
+        Mono<GeocodeService.GeocodeResult> destination =
+                stage("geocode-destination", geocodeService.geocode(request.getDestination()), geocodeTimeout);
+        return Mono.zip(origin, destination);
+    }
+
+    private Mono<DirectionsService.DirectionsResult> resolveDirections(
+            Tuple2<GeocodeService.GeocodeResult, GeocodeService.GeocodeResult> endpoints) {
+        return stage("directions",
+                directionsService.getDirections(
+                        endpoints.getT1().getLat(), endpoints.getT1().getLng(),
+                        endpoints.getT2().getLat(), endpoints.getT2().getLng()),
+                directionsTimeout);
+    }
+
+    private Mono<RoutePlan> planAlongRoute(RouteRequest request, DirectionsService.DirectionsResult directions,
+                                           Mono<List<ChargingStation>> stations, Mono<PolylinePyramid> pyramid) {
+        if (!needsCharging(request, directions)) {
+            return stage("plan", pyramid.map(levels -> {
+                RoutePlan plan = planRouteWithAlgorithm(request, directions, List.of());
+                plan.setPyramid(levels);
+                return plan;
+            }), planTimeout);
+        }
+
+        // Station fetch (I/O) and route preprocessing (CPU) overlap; detours are costed once both are in
+        PackedPolyline polyline = directions.getOverall().getPolyline();
+        Mono<RouteProfile> profile = Mono.fromCallable(() -> new RouteProfile(polyline))
+                .subscribeOn(Schedulers.parallel());
+        Mono<RouteCorridor> corridor = Mono.zip(stations, profile)
+                .publishOn(Schedulers.parallel())
+                .map(inputs -> buildCorridor(inputs.getT2(), inputs.getT1()))
+                .flatMap(detourService::withDetours);
+
+        return Mono.zip(corridor, pyramid)
+                .flatMap(inputs -> stage("plan",
+                        Mono.fromCallable(() -> {
+                            RoutePlan plan = planRouteWithAlgorithm(request, directions, inputs.getT1());
+                            plan.setPyramid(inputs.getT2());
+                            return plan;
+                        }).subscribeOn(Schedulers.parallel()),
+                        planTimeout));
+    }
+
+    private static Mono<PolylinePyramid> buildPyramid(PackedPolyline polyline) {
+        return Mono.fromCallable(() -> PolylinePyramid.of(polyline))
+                .subscribeOn(Schedulers.parallel());
+    }
+
+    // Route and totals known before any charging decision: no stops, one leg
+    private RoutePlan routePreview(RouteRequest request, DirectionsService.DirectionsResult directions,
+                                   PolylinePyramid pyramid) {
+        RoutePlan preview = new RoutePlan(
+                directions.getOverall(),
+                List.of(),
+                List.of(),
+                directions.getTotalDistanceKm() * request.getEv().getConsumptionWhPerKm() / 1000.0,
+                directions.getTotalMinutes(),
+                0);
+        preview.setPyramid(pyramid);
+        return preview;
+    }
+
+    private static List<ChargingStation> flatten(List<List<ChargingStation>> batches) {
+        List<ChargingStation> all = new ArrayList<>();
+        batches.forEach(all::addAll);
+        return all;
+    }
+
+    // Applies the stage timeout and records how long the stage took, however it ended
+    <T> Mono<T> stage(String name, Mono<T> mono, Duration timeout) {
+        Timer timer = stageTimers.computeIfAbsent(name, metrics::stage);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.timeout(timeout)
+                    .onErrorMap(TimeoutException.class, e -> new RuntimeException(
+                            "Planning stage '" + name + "' timed out after " + timeout.toMillis() + " ms", e))
+                    .doFinally(signal -> {
+                        long nanos = System.nanoTime() - start;
+                        timer.record(nanos);
+                        log.debug("Stage {} finished ({}) in {} ms", name, signal, nanos / 1_000_000);
+                    });
         });
     }
 
+    boolean needsCharging(RouteRequest request, DirectionsService.DirectionsResult directions) {
+        EVSpec ev = request.getEv();
+        RoutePrefs prefs = request.getPrefs() != null ? request.getPrefs() : new RoutePrefs();
+        double arrivalFloor = Math.max(ev.getReserveSoC(), prefs.getTargetArrivalSoC());
+        return directions.getTotalDistanceKm() > ev.getUsableKmPerFull() * (ev.getStartSoC() - arrivalFloor);
+    }
+
     public RoutePlan planRouteWithAlgorithm(RouteRequest request, 
                                           DirectionsService.DirectionsResult directions,
                                           List<ChargingStation> stations) {
+        return planRouteWithAlgorithm(request, directions, null, stations);
+    }
+
+    public RoutePlan planRouteWithAlgorithm(RouteRequest request, 
+                                          DirectionsService.DirectionsResult directions,
+                                          RouteProfile profile,
+                                          List<ChargingStation> stations) {
+        if (!needsCharging(request, directions)) {
+            return planRouteWithAlgorithm(request, directions, (RouteCorridor) null);
+        }
+        if (profile == null) {
+            profile = new RouteProfile(directions.getOverall().getPolyline());
+        }
+        return planRouteWithAlgorithm(request, directions, buildCorridor(profile, stations));
+    }
+
+    private RouteCorridor buildCorridor(RouteProfile profile, List<ChargingStation> stations) {
+        long start = System.nanoTime();
+        RouteCorridor corridor = RouteCorridor.build(profile, stations, SEARCH_RADIUS_KM);
+        corridorTimer.recordSince(start);
+        corridorCandidates.record(corridor.getStations().size());
+        return corridor;
+    }
+
+    /**
+     * Plans against a prebuilt corridor, which may be shared by concurrent
+     * plans. The corridor is only read when the trip needs charging.
+     */
+    public RoutePlan planRouteWithAlgorithm(RouteRequest request,
+                                          DirectionsService.DirectionsResult directions,
+                                          RouteCorridor corridor) {
         
-        List<PlannedStop> stops = new ArrayList<>();
-        List<LegSummary> legs = new ArrayList<>();
-        
-        double currentSoC = request.getEv().getStartSoC();
-        double usableKwh = request.getEv().getUsableKwh();
-        double consumptionWhPerKm = request.getEv().getConsumptionWhPerKm();
+        EVSpec ev = request.getEv();
+        RoutePrefs prefs = request.getPrefs() != null ? request.getPrefs() : new RoutePrefs();
+        double consumptionWhPerKm = ev.getConsumptionWhPerKm();
         
         // Calculate total energy needed
         double totalDistanceKm = directions.getTotalDistanceKm();
         double totalEnergyKwh = (totalDistanceKm * consumptionWhPerKm) / 1000.0;
         
         // Check if we can make it without charging
-        double maxRangeKm = request.getEv().getPlanningRangeKm(currentSoC);
-        if (totalDistanceKm <= maxRangeKm) {
+        if (!needsCharging(request, directions)) {
             // No charging needed
             return new RoutePlan(
                 directions.getOverall(),
@@ -90,134 +444,79 @@ public class PlanningService {
             );
         }
 
-        // Find charging stops along the route
-        List<double[]> routePolyline = directions.getOverall().getPolyline();
-        List<ChargingStation> routeStations = findStationsAlongRoute(routePolyline, stations, SEARCH_RADIUS_KM);
-        
-        // Simple greedy algorithm: find farthest reachable station
+        // Charging stops come from the stations along the route, projected to their chainage
+        RouteProfile profile = corridor.getProfile();
+        List<RouteStation> routeStations = corridor.getStations();
+        StationDetours detours = corridor.getDetours();
+        double minutesPerKm = directions.getTotalMinutes() / Math.max(totalDistanceKm, 1e-9);
+        // Chainage is measured along the decoded polyline; scaled to the route's road distance so both agree
+        double roadKmPerChainageKm = profile.getTotalKm() > 0 ? totalDistanceKm / profile.getTotalKm() : 1.0;
+        double[] stationRoadKm = corridor.getChainageKm().clone();
+        for (int i = 0; i < stationRoadKm.length; i++) {
+            stationRoadKm[i] *= roadKmPerChainageKm;
+        }
+
+        // Minimum total time (drive + charge) over all feasible stop sequences
+        long start = System.nanoTime();
+        List<ChargingStopOptimizer.Stop> plan = optimizer.optimize(
+                stationRoadKm, corridor.getStationKw(), detours, totalDistanceKm, ev, prefs, minutesPerKm);
+        optimizeTimer.recordSince(start);
+        start = System.nanoTime();
+
+        // Legs run route point to route point; each stop's detour is split between the legs either side of it
+        List<PlannedStop> stops = new ArrayList<>();
+        List<LegSummary> legs = new ArrayList<>();
         double currentKm = 0;
-        double remainingDistance = totalDistanceKm;
-        
-        while (remainingDistance > maxRangeKm) {
-            // Find candidates within range
-            List<ChargingStation> candidates = findStationsInRange(routeStations, currentKm, maxRangeKm);
-            
-            if (candidates.isEmpty()) {
-                // No stations in range - this route is not possible
-                throw new RuntimeException("No charging stations available within range. Consider increasing start SOC or choosing a different route.");
-            }
-            
-            // Pick the station that maximizes progress along the route
-            ChargingStation bestStation = findBestStation(candidates, currentKm, routePolyline);
-            
-            // Calculate arrival SOC
-            double distanceToStation = calculateDistanceAlongRoute(currentKm, bestStation, routePolyline);
-            double energyToStation = (distanceToStation * consumptionWhPerKm) / 1000.0;
-            double arriveSoC = currentSoC - (energyToStation / usableKwh);
-            
-            // Calculate departure SOC needed
-            double nextLegDistance = Math.min(remainingDistance - distanceToStation, maxRangeKm * 0.8);
-            double energyNeeded = (nextLegDistance * consumptionWhPerKm) / 1000.0;
-            double departSoC = Math.min(1.0, arriveSoC + (energyNeeded / usableKwh));
-            
-            // Calculate charge time
-            double energyAddedKwh = (departSoC - arriveSoC) * usableKwh;
-            double avgKw = Math.min(bestStation.getMaxKw(), request.getEv().getMaxChargeKw()) * CHARGE_EFFICIENCY;
-            int chargeMinutes = (int) ((energyAddedKwh / avgKw) * 60);
-            
-            // Create planned stop
-            PlannedStop stop = new PlannedStop(bestStation, arriveSoC, departSoC, chargeMinutes, energyAddedKwh);
-            stops.add(stop);
-            
-            // Update state
-            currentSoC = departSoC;
-            currentKm += distanceToStation;
-            remainingDistance -= distanceToStation;
-            
-            // Create leg summary
+        double egressKm = 0;
+        double egressMinutes = 0;
+        double detourKm = 0;
+        double detourMinutes = 0;
+        for (ChargingStopOptimizer.Stop planned : plan) {
+            int index = planned.getStationIndex();
+            RouteStation station = routeStations.get(index);
+            double energyAddedKwh = (planned.getDepartSoC() - planned.getArriveSoC()) * ev.getUsableKwh();
+            stops.add(new PlannedStop(station.getStation(), planned.getArriveSoC(), planned.getDepartSoC(),
+                    (int) Math.ceil(planned.getChargeMinutes()), energyAddedKwh));
+
+            double distanceToStation = calculateDistanceAlongRoute(currentKm, station) * roadKmPerChainageKm;
+            double accessKm = detours.getAccessKm()[index];
+            double accessMinutes = detours.getAccessMinutes()[index];
             legs.add(new LegSummary(
-                extractRouteSegment(routePolyline, currentKm - distanceToStation, currentKm),
-                distanceToStation,
-                (int) (distanceToStation / 100.0 * 60) // Rough estimate: 100 km/h
+                extractRouteSegment(profile, currentKm, station.getChainageKm()),
+                egressKm + distanceToStation + accessKm,
+                (int) Math.round(egressMinutes + distanceToStation * minutesPerKm + accessMinutes)
             ));
+            currentKm = station.getChainageKm();
+            egressKm = detours.getEgressKm()[index];
+            egressMinutes = detours.getEgressMinutes()[index];
+            detourKm += detours.totalKm(index);
+            detourMinutes += detours.totalMinutes(index);
         }
         
         // Final leg to destination
+        double remainingDistance = Math.max(0, totalDistanceKm - currentKm * roadKmPerChainageKm);
         legs.add(new LegSummary(
-            extractRouteSegment(routePolyline, currentKm, totalDistanceKm),
-            remainingDistance,
-            (int) (remainingDistance / 100.0 * 60)
+            extractRouteSegment(profile, currentKm, profile.getTotalKm()),
+            egressKm + remainingDistance,
+            (int) Math.round(egressMinutes + remainingDistance * minutesPerKm)
         ));
+        legsTimer.recordSince(start);
         
         return new RoutePlan(
             directions.getOverall(),
             stops,
             legs,
-            totalEnergyKwh,
-            directions.getTotalMinutes(),
+            totalEnergyKwh + detourKm * consumptionWhPerKm / 1000.0,
+            directions.getTotalMinutes() + (int) Math.round(detourMinutes),
             stops.stream().mapToInt(PlannedStop::getChargeMinutes).sum()
         );
     }
 
-    private List<ChargingStation> findStationsAlongRoute(List<double[]> routePolyline, 
-                                                        List<ChargingStation> allStations, 
-                                                        double radiusKm) {
-        List<ChargingStation> routeStations = new ArrayList<>();
-        
-        for (ChargingStation station : allStations) {
-            if (isStationNearRoute(station, routePolyline, radiusKm)) {
-                routeStations.add(station);
-            }
-        }
-        
-        return routeStations;
-    }
-
-    private boolean isStationNearRoute(ChargingStation station, List<double[]> routePolyline, double radiusKm) {
-        for (double[] coord : routePolyline) {
-            double distance = calculateDistance(station.getLat(), station.getLng(), coord[0], coord[1]);
-            if (distance <= radiusKm) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private double calculateDistance(double lat1, double lng1, double lat2, double lng2) {
-        // Haversine formula for great circle distance
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLng = Math.toRadians(lng2 - lng1);
-        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLng/2) * Math.sin(dLng/2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-        return 6371 * c; // Earth radius in km
-    }
-
-    private List<ChargingStation> findStationsInRange(List<ChargingStation> stations, 
-                                                     double currentKm, double rangeKm) {
-        // This is a simplified version - in production you'd calculate actual distances along the route
-        return stations.stream()
-                .filter(station -> true) // Simplified for MVP
-                .toList();
-    }
-
-    private ChargingStation findBestStation(List<ChargingStation> candidates, 
-                                          double currentKm, List<double[]> routePolyline) {
-        // For MVP, just return the first candidate
-        // In production, you'd score by progress along route vs detour
-        return candidates.get(0);
+    private double calculateDistanceAlongRoute(double currentKm, RouteStation station) {
+        return station.getChainageKm() - currentKm;
     }
 
-    private double calculateDistanceAlongRoute(double currentKm, ChargingStation station, 
-                                            List<double[]> routePolyline) {
-        // Simplified for MVP - in production you'd calculate actual route distance
-        return 50.0; // Mock 50km
-    }
-
-    private List<double[]> extractRouteSegment(List<double[]> polyline, double startKm, double endKm) {
-        // Simplified for MVP - in production you'd extract the actual segment
-        return polyline;
+    private PackedPolyline extractRouteSegment(RouteProfile profile, double startKm, double endKm) {
+        return profile.slice(startKm, endKm);
     }
 }
-
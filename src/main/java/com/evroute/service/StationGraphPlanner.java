@@ -0,0 +1,232 @@
+package com.evroute.service;
+
+import com.evroute.client.OrsClient;
+import com.evroute.geo.GeoUtils;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.PolylinePyramid;
+import com.evroute.model.EVSpec;
+import com.evroute.model.LegSummary;
+import com.evroute.model.PlannedStop;
+import com.evroute.model.RoutePlan;
+import com.evroute.model.RoutePrefs;
+import com.evroute.model.RouteRequest;
+import com.evroute.planning.ChargingStopOptimizer;
+import com.evroute.planning.StationDetours;
+import com.evroute.planning.StationGraphSearch;
+import com.evroute.routing.RoadGraph;
+import com.evroute.routing.StationGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Plans long trips over the precomputed {@link StationGraph} instead of a
+ * single route's corridor.
+ *
+ * Only the first and last miles are measured per request: from the origin to
+ * the graph stations around it, and from the stations around the destination
+ * to it, on the local road graph or in one ORS matrix call per end, falling
+ * back to straight-line estimates. The charging stops then come from a search
+ * over the graph alone; directions through all the stops are fetched
+ * afterwards in one request, for the geometry and the leg totals.
+ *
+ * A plan is empty, and the caller should plan along the route instead, when
+ * there is no graph, the trip is shorter than {@code minTripKm}, an endpoint
+ * is outside the graph's region, or the graph has no feasible stop sequence.
+ */
+@Service
+public class StationGraphPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(StationGraphPlanner.class);
+
+    private final StationGraphSearch search = new StationGraphSearch();
+    private final StationGraph graph;
+    private final RoadGraph roadGraph;
+    private final OrsClient orsClient;
+    private final DirectionsService directionsService;
+    private final String provider;
+    private final double minTripKm;
+    private final double accessRadiusKm;
+    private final int accessStations;
+    private final Duration timeout;
+
+    public StationGraphPlanner(ObjectProvider<StationGraph> graph,
+                               ObjectProvider<RoadGraph> roadGraph,
+                               OrsClient orsClient,
+                               DirectionsService directionsService,
+                               @Value("${app.directions.provider}") String provider,
+                               @Value("${app.planning.station-graph.min-trip-km:250}") double minTripKm,
+                               @Value("${app.planning.station-graph.access-radius-km:50}") double accessRadiusKm,
+                               @Value("${app.planning.station-graph.access-stations:16}") int accessStations,
+                               @Value("${app.planning.timeout.station-graph:10s}") Duration timeout) {
+        this.graph = graph.getIfAvailable();
+        this.roadGraph = roadGraph.getIfAvailable();
+        this.orsClient = orsClient;
+        this.directionsService = directionsService;
+        this.provider = provider;
+        this.minTripKm = minTripKm;
+        this.accessRadiusKm = accessRadiusKm;
+        this.accessStations = accessStations;
+        this.timeout = timeout;
+    }
+
+    /** A plan over the station graph, or empty when the trip should be planned along its route. */
+    public Mono<RoutePlan> plan(RouteRequest request, GeocodeService.GeocodeResult origin,
+                                GeocodeService.GeocodeResult destination) {
+        if (graph == null
+                || GeoUtils.haversineKm(origin.getLat(), origin.getLng(), destination.getLat(), destination.getLng()) < minTripKm) {
+            return Mono.empty();
+        }
+        int[] firstNodes = graph.nearest(origin.getLat(), origin.getLng(), accessRadiusKm, accessStations);
+        int[] lastNodes = graph.nearest(destination.getLat(), destination.getLng(), accessRadiusKm, accessStations);
+        if (firstNodes.length == 0 || lastNodes.length == 0) {
+            return Mono.empty();
+        }
+
+        EVSpec ev = request.getEv();
+        RoutePrefs prefs = request.getPrefs() != null ? request.getPrefs() : new RoutePrefs();
+        long start = System.nanoTime();
+        return Mono.zip(
+                        access(origin.getLat(), origin.getLng(), firstNodes, true),
+                        access(destination.getLat(), destination.getLng(), lastNodes, false))
+                .publishOn(Schedulers.parallel())
+                .map(ends -> search.search(graph, ends.getT1(), ends.getT2(),
+                        destination.getLat(), destination.getLng(), ev, prefs))
+                .flatMap(stops -> assemble(origin, destination, stops, ev))
+                .timeout(timeout)
+                .doOnNext(plan -> log.debug("Planned {} stops over the station graph in {} ms",
+                        plan.getStops().size(), (System.nanoTime() - start) / 1_000_000))
+                .onErrorResume(e -> {
+                    log.debug("Station graph planning failed, planning along the route: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // First or last miles: the drive from the endpoint to each station, or from each station to it
+    private Mono<StationGraphSearch.Access> access(double lat, double lng, int[] nodes, boolean outbound) {
+        double[] offsetKm = new double[nodes.length];
+        for (int k = 0; k < nodes.length; k++) {
+            offsetKm[k] = GeoUtils.haversineKm(lat, lng, graph.lat(nodes[k]), graph.lng(nodes[k]));
+        }
+        StationDetours estimate = StationDetours.straightLine(offsetKm);
+        double[] km = estimate.getAccessKm().clone();
+        double[] minutes = estimate.getAccessMinutes().clone();
+
+        if ("LOCAL".equals(provider) && roadGraph != null) {
+            return Mono.fromCallable(() -> {
+                for (int k = 0; k < nodes.length; k++) {
+                    double stationLat = graph.lat(nodes[k]);
+                    double stationLng = graph.lng(nodes[k]);
+                    RoadGraph.Route route = outbound
+                            ? roadGraph.routeCost(lat, lng, stationLat, stationLng)
+                            : roadGraph.routeCost(stationLat, stationLng, lat, lng);
+                    if (route != null) {
+                        km[k] = route.getDistanceKm();
+                        minutes[k] = route.getDurationMinutes();
+                    }
+                }
+                return new StationGraphSearch.Access(nodes, km, minutes);
+            }).subscribeOn(Schedulers.parallel());
+        }
+        if ("ORS".equals(provider)) {
+            // Location 0 is the endpoint, the stations follow
+            List<List<Double>> locations = new ArrayList<>(nodes.length + 1);
+            locations.add(List.of(lng, lat));
+            for (int node : nodes) {
+                locations.add(List.of(graph.lng(node), graph.lat(node)));
+            }
+            List<Integer> endpoint = List.of(0);
+            List<Integer> stations = IntStream.rangeClosed(1, nodes.length).boxed().toList();
+            return orsClient.getMatrix(locations, outbound ? endpoint : stations, outbound ? stations : endpoint)
+                    .map(matrix -> {
+                        for (int k = 0; k < nodes.length; k++) {
+                            Double m = outbound ? cell(matrix.distances, 0, k) : cell(matrix.distances, k, 0);
+                            Double s = outbound ? cell(matrix.durations, 0, k) : cell(matrix.durations, k, 0);
+                            if (m != null && s != null) {
+                                km[k] = m / 1000.0;
+                                minutes[k] = s / 60.0;
+                            }
+                        }
+                        return new StationGraphSearch.Access(nodes, km, minutes);
+                    })
+                    .onErrorResume(e -> {
+                        log.debug("Access matrix failed, using straight-line estimates: {}", e.getMessage());
+                        return Mono.just(new StationGraphSearch.Access(nodes, km, minutes));
+                    });
+        }
+        return Mono.just(new StationGraphSearch.Access(nodes, km, minutes));
+    }
+
+    private static Double cell(List<List<Double>> matrix, int row, int col) {
+        if (matrix == null || row >= matrix.size() || matrix.get(row) == null || col >= matrix.get(row).size()) {
+            return null;
+        }
+        return matrix.get(row).get(col);
+    }
+
+    // Directions through every stop in one request, concatenated into one route whose legs are views over it
+    private Mono<RoutePlan> assemble(GeocodeService.GeocodeResult origin, GeocodeService.GeocodeResult destination,
+                                     List<ChargingStopOptimizer.Stop> planned, EVSpec ev) {
+        List<double[]> waypoints = new ArrayList<>(planned.size() + 2);
+        waypoints.add(new double[]{origin.getLat(), origin.getLng()});
+        for (ChargingStopOptimizer.Stop stop : planned) {
+            waypoints.add(new double[]{graph.lat(stop.getStationIndex()), graph.lng(stop.getStationIndex())});
+        }
+        waypoints.add(new double[]{destination.getLat(), destination.getLng()});
+
+        return directionsService.getDirections(waypoints)
+                .publishOn(Schedulers.parallel())
+                .map(directions -> {
+                    PackedPolyline.Builder route = new PackedPolyline.Builder();
+                    int[] legFrom = new int[directions.size()];
+                    int[] legTo = new int[directions.size()];
+                    double totalKm = 0;
+                    int totalMinutes = 0;
+                    for (int i = 0; i < directions.size(); i++) {
+                        PackedPolyline leg = directions.get(i).getOverall().getPolyline();
+                        // Consecutive legs share the stop's vertex
+                        int shared = route.size() > 0 && !leg.isEmpty() ? 1 : 0;
+                        legFrom[i] = route.size() - shared;
+                        for (int p = shared; p < leg.size(); p++) {
+                            route.add(leg.lat(p), leg.lng(p));
+                        }
+                        legTo[i] = route.size();
+                        totalKm += directions.get(i).getTotalDistanceKm();
+                        totalMinutes += directions.get(i).getTotalMinutes();
+                    }
+                    PackedPolyline overall = route.build();
+
+                    List<LegSummary> legs = new ArrayList<>(directions.size());
+                    for (int i = 0; i < directions.size(); i++) {
+                        legs.add(new LegSummary(overall.subPolyline(legFrom[i], legTo[i]),
+                                directions.get(i).getTotalDistanceKm(), directions.get(i).getTotalMinutes()));
+                    }
+
+                    List<PlannedStop> stops = new ArrayList<>(planned.size());
+                    for (ChargingStopOptimizer.Stop stop : planned) {
+                        stops.add(new PlannedStop(graph.station(stop.getStationIndex()), stop.getArriveSoC(),
+                                stop.getDepartSoC(), (int) Math.ceil(stop.getChargeMinutes()),
+                                (stop.getDepartSoC() - stop.getArriveSoC()) * ev.getUsableKwh()));
+                    }
+
+                    RoutePlan plan = new RoutePlan(
+                            new LegSummary(overall, totalKm, totalMinutes),
+                            stops,
+                            legs,
+                            totalKm * ev.getConsumptionWhPerKm() / 1000.0,
+                            totalMinutes,
+                            stops.stream().mapToInt(PlannedStop::getChargeMinutes).sum());
+                    plan.setPyramid(PolylinePyramid.of(overall));
+                    return plan;
+                });
+    }
+}
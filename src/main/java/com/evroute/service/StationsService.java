@@ -1,28 +1,70 @@
 package com.evroute.service;
 
 import com.evroute.client.OpenChargeMapClient;
+import com.evroute.client.UpstreamUnavailableException;
+import com.evroute.geo.CorridorTiles;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.metrics.Histogram;
+import com.evroute.metrics.MetricRegistry;
 import com.evroute.model.ChargingStation;
+import com.evroute.snapshot.StationSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 @Service
 public class StationsService {
 
+    private static final Logger log = LoggerFactory.getLogger(StationsService.class);
+
     private final OpenChargeMapClient ocmClient;
+    private final StationSnapshot snapshot;
     private final String provider;
+    private final double tileDegrees;
+    private final int tileConcurrency;
+    // Fingerprint of each tile's stations as last fetched, so cached plans can tell when their corridor changed
+    private final Map<CorridorTiles.Tile, Long> tileVersions = new ConcurrentHashMap<>();
+    // Failed fetches per tile, so a plan made without a tile's stations is not cached
+    private final Map<CorridorTiles.Tile, Long> tileFailures = new ConcurrentHashMap<>();
+    private final Histogram corridorStations;
 
-    public StationsService(OpenChargeMapClient ocmClient, 
-                          @Value("${app.stations.provider}") String provider) {
+    public StationsService(OpenChargeMapClient ocmClient,
+                          ObjectProvider<StationSnapshot> snapshot,
+                          MetricRegistry metrics,
+                          @Value("${app.stations.provider}") String provider,
+                          @Value("${app.stations.tile-degrees:0.5}") double tileDegrees,
+                          @Value("${app.stations.tile-concurrency:6}") int tileConcurrency) {
         this.ocmClient = ocmClient;
+        this.snapshot = snapshot.getIfAvailable();
         this.provider = provider;
+        this.tileDegrees = tileDegrees;
+        this.tileConcurrency = tileConcurrency;
+        this.corridorStations = metrics.histogram("evroute_corridor_stations",
+                "Stations fetched along each route corridor, before filtering",
+                new long[]{0, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000});
     }
 
     public Mono<List<ChargingStation>> findStationsNear(double lat, double lng, double radiusKm) {
         if ("OCM".equals(provider)) {
-            return ocmClient.findStationsNear(lat, lng, radiusKm);
+            return withFallback(ocmClient.findStationsNear(lat, lng, radiusKm),
+                    () -> snapshot.findNear(lat, lng, radiusKm));
+        } else if ("LOCAL".equals(provider)) {
+            return Mono.fromCallable(() -> snapshot.findNear(lat, lng, radiusKm));
         } else {
             return Mono.error(new UnsupportedOperationException("Provider " + provider + " not supported"));
         }
@@ -31,41 +73,132 @@ public class StationsService {
     public Mono<List<ChargingStation>> findStationsInBbox(double minLat, double minLng, 
                                                           double maxLat, double maxLng) {
         if ("OCM".equals(provider)) {
-            return ocmClient.findStationsInBbox(minLat, minLng, maxLat, maxLng);
+            return withFallback(ocmClient.findStationsInBbox(minLat, minLng, maxLat, maxLng),
+                    () -> snapshot.findInBbox(minLat, minLng, maxLat, maxLng));
+        } else if ("LOCAL".equals(provider)) {
+            // Memory-mapped lookups are sub-millisecond, so they run inline
+            return Mono.fromCallable(() -> snapshot.findInBbox(minLat, minLng, maxLat, maxLng));
         } else {
             return Mono.error(new UnsupportedOperationException("Provider " + provider + " not supported"));
         }
     }
 
-    public Mono<List<ChargingStation>> findStationsAlongRoute(List<double[]> routePolyline, 
+    // Snapshot loaded as the fallback: answer from it while OCM is shedding, failing or open
+    private Mono<List<ChargingStation>> withFallback(Mono<List<ChargingStation>> fetched,
+                                                     Callable<List<ChargingStation>> local) {
+        if (snapshot == null) {
+            return fetched;
+        }
+        return fetched.onErrorResume(UpstreamUnavailableException.class, e -> {
+            log.warn("Reading stations from the snapshot: {}", e.getMessage());
+            return Mono.fromCallable(local);
+        });
+    }
+
+    public Mono<List<ChargingStation>> findStationsAlongRoute(PackedPolyline routePolyline,
                                                               double searchRadiusKm) {
+        return streamStationsAlongRoute(routePolyline, searchRadiusKm)
+                .collect(ArrayList<ChargingStation>::new, List::addAll)
+                .map(List::copyOf)
+                .doOnNext(stations -> corridorStations.record(stations.size()));
+    }
+
+    /**
+     * Corridor stations tile by tile as each fetch completes; every batch
+     * holds only stations not already emitted for this route.
+     */
+    public Flux<List<ChargingStation>> streamStationsAlongRoute(PackedPolyline routePolyline,
+                                                                double searchRadiusKm) {
         if (routePolyline == null || routePolyline.isEmpty()) {
-            return Mono.just(List.of());
+            return Flux.empty();
         }
 
-        // Calculate bounding box around the route
-        double minLat = Double.MAX_VALUE, maxLat = Double.MIN_VALUE;
-        double minLng = Double.MAX_VALUE, maxLng = Double.MIN_VALUE;
-
-        for (double[] coord : routePolyline) {
-            double lat = coord[0];
-            double lng = coord[1];
-            minLat = Math.min(minLat, lat);
-            maxLat = Math.max(maxLat, lat);
-            minLng = Math.min(minLng, lng);
-            maxLng = Math.max(maxLng, lng);
+        // Fixed-grid tiles along the corridor; each tile is fetched (and cached) on its own
+        List<CorridorTiles.Tile> tiles = corridorTiles(routePolyline, searchRadiusKm);
+
+        return Flux.defer(() -> {
+            // flatMap emits serially, so a plain set is enough
+            Set<String> seen = new HashSet<>();
+            return fetchTiles(tiles, this::findStationsInTile, tileConcurrency)
+                    .map(batch -> batch.stream().filter(station -> seen.add(station.getId())).toList())
+                    .filter(batch -> !batch.isEmpty());
+        });
+    }
+
+    /**
+     * Each tile's stations as its fetch completes. A tile that fails is
+     * skipped, so an isolated failure degrades the corridor rather than the
+     * plan; when the upstream's breaker is open, or every tile fails, the
+     * corridor fails with {@link UpstreamUnavailableException}.
+     */
+    public static Flux<List<ChargingStation>> fetchTiles(List<CorridorTiles.Tile> tiles,
+                                                         Function<CorridorTiles.Tile, Mono<List<ChargingStation>>> fetch,
+                                                         int concurrency) {
+        return Flux.defer(() -> {
+            AtomicInteger fetched = new AtomicInteger();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            return Flux.fromIterable(tiles)
+                    .flatMap(tile -> fetch.apply(tile)
+                                    .doOnNext(stations -> fetched.incrementAndGet())
+                                    .onErrorResume(e -> !(e instanceof UpstreamUnavailableException u && u.isCircuitOpen()),
+                                            e -> {
+                                                failure.set(e);
+                                                return Mono.empty();
+                                            }),
+                            concurrency)
+                    .concatWith(Mono.defer(() -> fetched.get() == 0 && failure.get() != null
+                            ? Mono.error(unavailable(tiles.size(), failure.get()))
+                            : Mono.empty()));
+        });
+    }
+
+    private static UpstreamUnavailableException unavailable(int tiles, Throwable failure) {
+        return failure instanceof UpstreamUnavailableException upstream ? upstream
+                : new UpstreamUnavailableException("Station fetch failed for all " + tiles + " corridor tiles: "
+                        + failure.getMessage(), failure);
+    }
+
+    /** Corridor tiles for a route at the configured tile size. */
+    public List<CorridorTiles.Tile> corridorTiles(PackedPolyline routePolyline, double searchRadiusKm) {
+        if (routePolyline == null || routePolyline.isEmpty()) {
+            return List.of();
         }
+        return CorridorTiles.cover(routePolyline, searchRadiusKm, tileDegrees);
+    }
+
+    /**
+     * Fingerprint of the tile's stations as last fetched: it changes when a
+     * station is added, removed, re-rated or goes out of service. Zero for a
+     * tile not fetched yet or whose fetches have all failed.
+     */
+    public long tileVersion(CorridorTiles.Tile tile) {
+        return tileVersions.getOrDefault(tile, 0L);
+    }
 
-        // Expand bounding box by search radius
-        double latExpansion = searchRadiusKm / 111.0; // Rough conversion: 1 degree lat ≈ 111 km
-        double lngExpansion = searchRadiusKm / (111.0 * Math.cos(Math.toRadians((minLat + maxLat) / 2)));
+    /** Number of failed fetches of the tile so far; it only ever grows. */
+    public long tileFailures(CorridorTiles.Tile tile) {
+        return tileFailures.getOrDefault(tile, 0L);
+    }
 
-        minLat -= latExpansion;
-        maxLat += latExpansion;
-        minLng -= lngExpansion;
-        maxLng += lngExpansion;
+    /** Stations in one corridor tile; a failed fetch is counted and passed on (see {@link #fetchTiles}). */
+    public Mono<List<ChargingStation>> findStationsInTile(CorridorTiles.Tile tile) {
+        return findStationsInBbox(tile.getMinLat(), tile.getMinLng(), tile.getMaxLat(), tile.getMaxLng())
+                .doOnNext(stations -> tileVersions.put(tile, fingerprint(stations)))
+                .doOnError(e -> {
+                    log.warn("Station fetch failed for {}: {}", tile, e.getMessage());
+                    tileFailures.merge(tile, 1L, Long::sum);
+                });
+    }
 
-        return findStationsInBbox(minLat, minLng, maxLat, maxLng);
+    // Order-independent, and never zero
+    private static long fingerprint(List<ChargingStation> stations) {
+        long sum = 0;
+        for (ChargingStation station : stations) {
+            long h = station.getId().hashCode() * 0x9E3779B97F4A7C15L
+                    + Double.doubleToLongBits(station.getMaxKw()) * 31 + (station.isOperational() ? 1 : 0);
+            h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+            sum += h ^ (h >>> 33);
+        }
+        return sum == 0 ? 1 : sum;
     }
 }
-
@@ -0,0 +1,55 @@
+package com.evroute.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connector sets packed into a bitmask for the snapshot file.
+ *
+ * Decoding returns shared immutable lists, one per distinct mask, so reading
+ * a station's connectors never allocates.
+ */
+public final class ConnectorMask {
+
+    public static final List<String> NAMES = List.of("CCS", "CHAdeMO", "Type 2", "J1772", "Tesla");
+    public static final String OTHER = "Other";
+
+    private static final int OTHER_BIT = 1 << NAMES.size();
+    private static final List<List<String>> DECODED = new ArrayList<>();
+
+    static {
+        for (int mask = 0; mask < OTHER_BIT << 1; mask++) {
+            List<String> names = new ArrayList<>();
+            for (int bit = 0; bit < NAMES.size(); bit++) {
+                if ((mask & (1 << bit)) != 0) {
+                    names.add(NAMES.get(bit));
+                }
+            }
+            if ((mask & OTHER_BIT) != 0) {
+                names.add(OTHER);
+            }
+            DECODED.add(List.copyOf(names));
+        }
+    }
+
+    private ConnectorMask() {}
+
+    public static int encode(List<String> connectors) {
+        int mask = 0;
+        if (connectors != null) {
+            for (String connector : connectors) {
+                mask |= bit(connector);
+            }
+        }
+        return mask;
+    }
+
+    public static int bit(String connector) {
+        int index = NAMES.indexOf(connector);
+        return index >= 0 ? 1 << index : OTHER_BIT;
+    }
+
+    public static List<String> decode(int mask) {
+        return DECODED.get(mask & (DECODED.size() - 1));
+    }
+}
@@ -0,0 +1,205 @@
+package com.evroute.snapshot;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.model.ChargingStation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only view of a station snapshot file written by
+ * {@link StationSnapshotWriter}.
+ *
+ * The file is memory-mapped, so opening it costs one header read whatever the
+ * station count, and queries read columns straight from the page cache. Rows
+ * are sorted by grid cell and a cell directory gives each cell's row range, so
+ * a bounding-box query touches only the cells it overlaps.
+ *
+ * Layout (little-endian):
+ * <pre>
+ *   header      magic, version, station count, cell count, cell degrees, name bytes
+ *   cellKeys    long[cells]     row &lt;&lt; 32 | col, ascending
+ *   cellStart   int[cells + 1]  first row of each cell
+ *   id          int[n]          OCM POI id
+ *   lat, lng    int[n] each     degrees * 1e6
+ *   maxKw       float[n]
+ *   connectors  int[n]          {@link ConnectorMask} bits
+ *   nameStart   int[n + 1]      offsets into the name blob
+ *   flags       byte[n]         bit 0: operational
+ *   names       UTF-8
+ * </pre>
+ */
+public final class StationSnapshot {
+
+    static final int MAGIC = 0x53535645; // "EVSS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final double FIXED_POINT = 1_000_000.0;
+    static final byte FLAG_OPERATIONAL = 1;
+
+    public static final String ID_PREFIX = "OCM-";
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int cellCount;
+    private final double cellDegrees;
+
+    private final int cellKeysAt;
+    private final int cellStartAt;
+    private final int idAt;
+    private final int latAt;
+    private final int lngAt;
+    private final int maxKwAt;
+    private final int connectorsAt;
+    private final int nameStartAt;
+    private final int flagsAt;
+    private final int namesAt;
+
+    private StationSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.cellCount = buffer.getInt(12);
+        this.cellDegrees = buffer.getDouble(16);
+
+        this.cellKeysAt = HEADER_BYTES;
+        this.cellStartAt = cellKeysAt + cellCount * Long.BYTES;
+        this.idAt = cellStartAt + (cellCount + 1) * Integer.BYTES;
+        this.latAt = idAt + count * Integer.BYTES;
+        this.lngAt = latAt + count * Integer.BYTES;
+        this.maxKwAt = lngAt + count * Integer.BYTES;
+        this.connectorsAt = maxKwAt + count * Float.BYTES;
+        this.nameStartAt = connectorsAt + count * Integer.BYTES;
+        this.flagsAt = nameStartAt + (count + 1) * Integer.BYTES;
+        this.namesAt = flagsAt + count;
+    }
+
+    public static StationSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a station snapshot: " + path);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported station snapshot version " + buffer.getInt(4) + ": " + path);
+            }
+            StationSnapshot snapshot = new StationSnapshot(buffer);
+            if (snapshot.namesAt + buffer.getInt(24) != buffer.limit()) {
+                throw new IOException("Truncated station snapshot: " + path);
+            }
+            return snapshot;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public double getCellDegrees() {
+        return cellDegrees;
+    }
+
+    public List<ChargingStation> findInBbox(double minLat, double minLng, double maxLat, double maxLng) {
+        List<ChargingStation> result = new ArrayList<>();
+        int colLo = col(minLng);
+        int colHi = col(maxLng);
+        for (int r = row(minLat), rowHi = row(maxLat); r <= rowHi; r++) {
+            long lastKey = key(r, colHi);
+            for (int c = firstCellAtOrAfter(key(r, colLo)); c < cellCount && cellKey(c) <= lastKey; c++) {
+                for (int i = cellStart(c), end = cellStart(c + 1); i < end; i++) {
+                    double lat = lat(i);
+                    double lng = lng(i);
+                    if (lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng) {
+                        result.add(station(i));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public List<ChargingStation> findNear(double lat, double lng, double radiusKm) {
+        double latPad = GeoUtils.kmToLatDegrees(radiusKm);
+        double lngPad = GeoUtils.kmToLngDegrees(radiusKm, lat);
+        List<ChargingStation> result = new ArrayList<>();
+        for (ChargingStation station : findInBbox(lat - latPad, lng - lngPad, lat + latPad, lng + lngPad)) {
+            if (GeoUtils.haversineKm(lat, lng, station.getLat(), station.getLng()) <= radiusKm) {
+                result.add(station);
+            }
+        }
+        return result;
+    }
+
+    private ChargingStation station(int i) {
+        int nameStart = buffer.getInt(nameStartAt + i * Integer.BYTES);
+        int nameEnd = buffer.getInt(nameStartAt + (i + 1) * Integer.BYTES);
+        byte[] name = new byte[nameEnd - nameStart];
+        buffer.get(namesAt + nameStart, name);
+
+        return new ChargingStation(
+                ID_PREFIX + buffer.getInt(idAt + i * Integer.BYTES),
+                new String(name, StandardCharsets.UTF_8),
+                lat(i),
+                lng(i),
+                ConnectorMask.decode(buffer.getInt(connectorsAt + i * Integer.BYTES)),
+                buffer.getFloat(maxKwAt + i * Float.BYTES),
+                (buffer.get(flagsAt + i) & FLAG_OPERATIONAL) != 0);
+    }
+
+    private double lat(int i) {
+        return buffer.getInt(latAt + i * Integer.BYTES) / FIXED_POINT;
+    }
+
+    private double lng(int i) {
+        return buffer.getInt(lngAt + i * Integer.BYTES) / FIXED_POINT;
+    }
+
+    private long cellKey(int c) {
+        return buffer.getLong(cellKeysAt + c * Long.BYTES);
+    }
+
+    private int cellStart(int c) {
+        return buffer.getInt(cellStartAt + c * Integer.BYTES);
+    }
+
+    private int firstCellAtOrAfter(long key) {
+        int lo = 0, hi = cellCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cellKey(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int row(double lat) {
+        return row(lat, cellDegrees);
+    }
+
+    private int col(double lng) {
+        return col(lng, cellDegrees);
+    }
+
+    static int row(double lat, double cellDegrees) {
+        return (int) Math.floor((Math.max(-90.0, Math.min(90.0, lat)) + 90.0) / cellDegrees);
+    }
+
+    static int col(double lng, double cellDegrees) {
+        return (int) Math.floor((Math.max(-180.0, Math.min(180.0, lng)) + 180.0) / cellDegrees);
+    }
+
+    static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+}
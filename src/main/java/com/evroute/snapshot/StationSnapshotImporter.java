@@ -0,0 +1,59 @@
+package com.evroute.snapshot;
+
+import com.evroute.client.OcmPoiParser;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds a station snapshot from an OpenChargeMap dump.
+ *
+ * The input is either a JSON file holding an array of POIs (the output of the
+ * OCM /poi endpoint) or a directory of such files, one POI or array per file
+ * as in the OCM data export. POIs without a location are skipped.
+ *
+ * Usage: StationSnapshotImporter &lt;ocm-dump.json|dir&gt; &lt;snapshot.bin&gt; [cellDegrees]
+ */
+public final class StationSnapshotImporter {
+
+    private StationSnapshotImporter() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: StationSnapshotImporter <ocm-dump.json|dir> <snapshot.bin> [cellDegrees]");
+            System.exit(2);
+        }
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        double cellDegrees = args.length > 2 ? Double.parseDouble(args[2]) : StationSnapshotWriter.DEFAULT_CELL_DEGREES;
+
+        long started = System.nanoTime();
+        StationSnapshotWriter writer = new StationSnapshotWriter(cellDegrees);
+        for (Path file : inputFiles(input)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                OcmPoiParser.parse(channel, (station, id) -> writer.add(id, station));
+            }
+        }
+        writer.write(output);
+
+        System.out.printf("Wrote %d stations to %s in %d ms%n",
+                writer.size(), output, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static List<Path> inputFiles(Path input) throws IOException {
+        if (!Files.isDirectory(input)) {
+            return List.of(input);
+        }
+        try (Stream<Path> files = Files.walk(input)) {
+            return files.filter(file -> file.toString().endsWith(".json"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.evroute.snapshot;
+
+import com.evroute.model.ChargingStation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects stations and writes them as a {@link StationSnapshot} file.
+ *
+ * Stations are keyed by their OCM id; adding the same id again replaces the
+ * earlier row. The file is written next to the target and moved into place,
+ * so a server that has the old snapshot mapped never sees a partial file.
+ */
+public class StationSnapshotWriter {
+
+    public static final double DEFAULT_CELL_DEGREES = 0.25;
+
+    private final double cellDegrees;
+    private final Map<Integer, Integer> rowById = new HashMap<>();
+
+    private int count;
+    private int[] ids = new int[1024];
+    private int[] latE6 = new int[1024];
+    private int[] lngE6 = new int[1024];
+    private float[] maxKw = new float[1024];
+    private int[] connectors = new int[1024];
+    private byte[] flags = new byte[1024];
+    private byte[][] names = new byte[1024][];
+
+    public StationSnapshotWriter() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    public StationSnapshotWriter(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    public void add(int id, ChargingStation station) {
+        Integer existing = rowById.get(id);
+        int i = existing != null ? existing : count;
+        if (existing == null) {
+            ensureCapacity(count + 1);
+            rowById.put(id, count++);
+        }
+        ids[i] = id;
+        latE6[i] = (int) Math.round(station.getLat() * StationSnapshot.FIXED_POINT);
+        lngE6[i] = (int) Math.round(station.getLng() * StationSnapshot.FIXED_POINT);
+        maxKw[i] = (float) station.getMaxKw();
+        connectors[i] = ConnectorMask.encode(station.getConnectors());
+        flags[i] = station.isOperational() ? StationSnapshot.FLAG_OPERATIONAL : 0;
+        names[i] = (station.getName() != null ? station.getName() : "").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void write(Path path) throws IOException {
+        // Order rows by grid cell
+        long[] keys = new long[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = StationSnapshot.key(
+                    StationSnapshot.row(latE6[i] / StationSnapshot.FIXED_POINT, cellDegrees),
+                    StationSnapshot.col(lngE6[i] / StationSnapshot.FIXED_POINT, cellDegrees));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys[a] != keys[b] ? Long.compare(keys[a], keys[b]) : Integer.compare(ids[a], ids[b]));
+
+        int cellCount = 0;
+        long nameBytes = 0;
+        for (int r = 0; r < count; r++) {
+            if (r == 0 || keys[order[r]] != keys[order[r - 1]]) {
+                cellCount++;
+            }
+            nameBytes += names[order[r]].length;
+        }
+
+        long size = StationSnapshot.HEADER_BYTES
+                + (long) cellCount * Long.BYTES + (cellCount + 1L) * Integer.BYTES
+                + (long) count * (4 * Integer.BYTES + Float.BYTES + 1) + (count + 1L) * Integer.BYTES
+                + nameBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Station snapshot would exceed 2 GB (" + count + " stations)");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(StationSnapshot.MAGIC)
+                .putInt(StationSnapshot.VERSION)
+                .putInt(count)
+                .putInt(cellCount)
+                .putDouble(cellDegrees)
+                .putInt((int) nameBytes)
+                .putInt(0);
+
+        // Cell directory
+        int[] cellStart = new int[cellCount + 1];
+        for (int r = 0, c = 0; r < count; r++) {
+            if (r == 0 || keys[order[r]] != keys[order[r - 1]]) {
+                out.putLong(keys[order[r]]);
+                cellStart[c++] = r;
+            }
+        }
+        cellStart[cellCount] = count;
+        for (int start : cellStart) {
+            out.putInt(start);
+        }
+
+        // Columns
+        for (int r = 0; r < count; r++) out.putInt(ids[order[r]]);
+        for (int r = 0; r < count; r++) out.putInt(latE6[order[r]]);
+        for (int r = 0; r < count; r++) out.putInt(lngE6[order[r]]);
+        for (int r = 0; r < count; r++) out.putFloat(maxKw[order[r]]);
+        for (int r = 0; r < count; r++) out.putInt(connectors[order[r]]);
+        int nameStart = 0;
+        for (int r = 0; r < count; r++) {
+            out.putInt(nameStart);
+            nameStart += names[order[r]].length;
+        }
+        out.putInt(nameStart);
+        for (int r = 0; r < count; r++) out.put(flags[order[r]]);
+        for (int r = 0; r < count; r++) out.put(names[order[r]]);
+        out.flip();
+
+        Path target = path.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(needed, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        latE6 = Arrays.copyOf(latE6, capacity);
+        lngE6 = Arrays.copyOf(lngE6, capacity);
+        maxKw = Arrays.copyOf(maxKw, capacity);
+        connectors = Arrays.copyOf(connectors, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        names = Arrays.copyOf(names, capacity);
+    }
+}
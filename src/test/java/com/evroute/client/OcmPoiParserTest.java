@@ -0,0 +1,154 @@
+package com.evroute.client;
+
+import com.evroute.model.ChargingStation;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcmPoiParserTest {
+
+    // Two POIs as /poi returns them; the first title is multi-byte in UTF-8
+    private static final String RESPONSE = "[{\"ID\":12345,\"StatusTypeID\":50,"
+            + "\"AddressInfo\":{\"Title\":\"Café Snøhetta Supercharger\",\"Latitude\":47.60621,\"Longitude\":-122.33207},"
+            + "\"Connections\":[{\"ConnectionTypeID\":33,\"PowerKW\":250.0},{\"ConnectionTypeID\":25,\"PowerKW\":22}]},"
+            + "{\"ID\":678,\"StatusType\":{\"IsOperational\":false},"
+            + "\"AddressInfo\":{\"Title\":\"Depot \\\"North\\\"\",\"Latitude\":-33.8688,\"Longitude\":151.2093},"
+            + "\"Connections\":[{\"ConnectionTypeID\":2,\"PowerKW\":50}]}]";
+
+    private static List<ChargingStation> parse(byte[] json, int... splits) throws IOException {
+        List<ChargingStation> stations = new ArrayList<>();
+        OcmPoiParser parser = new OcmPoiParser((station, id) -> stations.add(station));
+        int from = 0;
+        for (int split : splits) {
+            parser.feed(ByteBuffer.wrap(json, from, split - from));
+            from = split;
+        }
+        parser.feed(ByteBuffer.wrap(json, from, json.length - from));
+        parser.endOfInput();
+        return stations;
+    }
+
+    private static List<ChargingStation> parse(String json) throws IOException {
+        return parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertSameStations(List<ChargingStation> expected, List<ChargingStation> actual, String context) {
+        assertEquals(expected.size(), actual.size(), context);
+        for (int i = 0; i < expected.size(); i++) {
+            ChargingStation e = expected.get(i);
+            ChargingStation a = actual.get(i);
+            assertEquals(e.getId(), a.getId(), context);
+            assertEquals(e.getName(), a.getName(), context);
+            assertEquals(e.getLat(), a.getLat(), 0.0, context);
+            assertEquals(e.getLng(), a.getLng(), 0.0, context);
+            assertEquals(e.getMaxKw(), a.getMaxKw(), 0.0, context);
+            assertEquals(e.getConnectors(), a.getConnectors(), context);
+            assertEquals(e.isOperational(), a.isOperational(), context);
+        }
+    }
+
+    @Test
+    void parsesPoisFedInOneChunk() throws IOException {
+        List<ChargingStation> stations = parse(RESPONSE);
+
+        assertEquals(2, stations.size());
+        ChargingStation first = stations.get(0);
+        assertEquals("OCM-12345", first.getId());
+        assertEquals("Café Snøhetta Supercharger", first.getName());
+        assertEquals(47.60621, first.getLat(), 0.0);
+        assertEquals(-122.33207, first.getLng(), 0.0);
+        assertEquals(250.0, first.getMaxKw(), 0.0);
+        assertTrue(first.getConnectors().containsAll(List.of("CCS", "Type 2")), first.getConnectors().toString());
+        assertTrue(first.isOperational());
+
+        ChargingStation second = stations.get(1);
+        assertEquals("Depot \"North\"", second.getName());
+        assertEquals(List.of("CHAdeMO"), second.getConnectors());
+        assertFalse(second.isOperational(), "IsOperational overrides the status id");
+    }
+
+    @Test
+    void everySplitPointGivesTheSameStations() throws IOException {
+        byte[] json = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        List<ChargingStation> whole = parse(json);
+        // Every boundary: inside field names, strings, escapes, multi-byte characters and numbers
+        for (int split = 1; split < json.length; split++) {
+            assertSameStations(whole, parse(json, split), "split at " + split);
+        }
+        for (int a = 1; a < json.length; a += 7) {
+            for (int b = a + 1; b < json.length; b += 13) {
+                assertSameStations(whole, parse(json, a, b), "split at " + a + " and " + b);
+            }
+        }
+    }
+
+    @Test
+    void byteAtATimeGivesTheSameStations() throws IOException {
+        byte[] json = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        int[] splits = new int[json.length - 1];
+        for (int i = 0; i < splits.length; i++) {
+            splits[i] = i + 1;
+        }
+        assertSameStations(parse(json), parse(json, splits), "one byte per chunk");
+    }
+
+    @Test
+    void missingOrNullConnectionsLeaveNoPowerOrConnectors() throws IOException {
+        List<ChargingStation> stations = parse("[{\"ID\":1,\"AddressInfo\":{\"Title\":\"A\",\"Latitude\":10,\"Longitude\":20}},"
+                + "{\"ID\":2,\"AddressInfo\":{\"Title\":\"B\",\"Latitude\":11,\"Longitude\":21},\"Connections\":null},"
+                + "{\"ID\":3,\"AddressInfo\":{\"Title\":\"C\",\"Latitude\":12,\"Longitude\":22},\"Connections\":[]},"
+                + "{\"ID\":4,\"AddressInfo\":{\"Title\":\"D\",\"Latitude\":13,\"Longitude\":23},"
+                + "\"Connections\":[{\"ConnectionTypeID\":null,\"PowerKW\":null}]}]");
+
+        assertEquals(4, stations.size());
+        for (ChargingStation station : stations) {
+            assertEquals(0.0, station.getMaxKw(), 0.0, station.getName());
+            assertTrue(station.getConnectors().isEmpty(), station.getName());
+            assertTrue(station.isOperational(), station.getName());
+        }
+        assertEquals(12.0, stations.get(2).getLat(), 0.0);
+        assertEquals(23.0, stations.get(3).getLng(), 0.0);
+    }
+
+    @Test
+    void poisWithoutAnAddressAreSkipped() throws IOException {
+        List<ChargingStation> stations = parse("[{\"ID\":1,\"Connections\":[{\"PowerKW\":50}]},"
+                + "{\"ID\":2,\"AddressInfo\":null,\"Connections\":[{\"PowerKW\":50}]},"
+                + "{\"ID\":3,\"AddressInfo\":{\"Title\":\"No position\"}},"
+                + "{\"ID\":4,\"AddressInfo\":{\"Title\":\"Kept\",\"Latitude\":1.5,\"Longitude\":2.5}}]");
+
+        assertEquals(1, stations.size());
+        assertEquals("OCM-4", stations.get(0).getId());
+        assertEquals(0.0, stations.get(0).getMaxKw(), 0.0, "power is not carried over from skipped POIs");
+    }
+
+    @Test
+    void emptyArrayGivesNoStations() throws IOException {
+        assertTrue(parse("[]").isEmpty());
+        assertTrue(parse(" [ ] ".getBytes(StandardCharsets.UTF_8), 1, 3).isEmpty());
+    }
+
+    @Test
+    void singlePoiObjectAtTheRoot() throws IOException {
+        List<ChargingStation> stations = parse("{\"ID\":9,\"StatusTypeID\":150,"
+                + "\"AddressInfo\":{\"Title\":\"Planned\",\"Latitude\":50.1,\"Longitude\":8.6},"
+                + "\"Connections\":[{\"ConnectionTypeID\":1036,\"PowerKW\":11}]}");
+
+        assertEquals(1, stations.size());
+        assertEquals("OCM-9", stations.get(0).getId());
+        assertEquals(List.of("Type 2"), stations.get(0).getConnectors());
+        assertFalse(stations.get(0).isOperational());
+    }
+
+    @Test
+    void truncatedResponseThrows() {
+        byte[] json = RESPONSE.substring(0, RESPONSE.length() / 2).getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> parse(json));
+    }
+}
@@ -0,0 +1,48 @@
+package com.evroute.model;
+
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EVSpecTest {
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private static EVSpec withCurve(double[]... points) {
+        EVSpec ev = new EVSpec(75.0, 0.9, 170.0, 150.0, 0.9, 0.1);
+        ev.setChargingCurve(Arrays.asList(points));
+        return ev;
+    }
+
+    @Test
+    void curveIsSortedBySoC() {
+        EVSpec ev = withCurve(new double[]{0.8, 50}, new double[]{0.1, 150}, new double[]{0.5, 120});
+        assertEquals(List.of(0.1, 0.5, 0.8), ev.getChargingCurve().stream().map(point -> point[0]).toList());
+        assertTrue(validator.validate(ev).isEmpty());
+    }
+
+    @Test
+    void percentCurveIsRejected() {
+        assertFalse(validator.validate(withCurve(new double[]{10, 150}, new double[]{80, 50})).isEmpty());
+    }
+
+    @Test
+    void malformedPointsAreRejected() {
+        assertFalse(validator.validate(withCurve(new double[]{0.5})).isEmpty());
+        assertFalse(validator.validate(withCurve(new double[]{0.1, 150}, null)).isEmpty());
+        assertFalse(validator.validate(withCurve(new double[]{0.1, 0})).isEmpty());
+        assertFalse(validator.validate(withCurve(new double[]{Double.NaN, 100})).isEmpty());
+    }
+
+    @Test
+    void routeRequestValidatesItsVehicle() {
+        RouteRequest request = new RouteRequest("Seattle, WA", "Portland, OR",
+                withCurve(new double[]{10, 150}, new double[]{80, 50}));
+        assertFalse(validator.validate(request).isEmpty());
+    }
+}
@@ -0,0 +1,222 @@
+package com.evroute.planning;
+
+import com.evroute.model.EVSpec;
+import com.evroute.model.RoutePrefs;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChargingStopOptimizerTest {
+
+    private static final double MINUTES_PER_KM = 0.6;
+    private static final double EPSILON = 1e-9;
+
+    // 67.5 kWh usable at 170 Wh/km: about 397 km from full to empty
+    private static EVSpec ev(double startSoC, double reserveSoC) {
+        return new EVSpec(75.0, 0.9, 170.0, 150.0, startSoC, reserveSoC);
+    }
+
+    private static double socPerKm(EVSpec ev) {
+        return ev.getConsumptionWhPerKm() / 1000.0 / ev.getUsableKwh();
+    }
+
+    private static double[] evenly(double firstKm, double everyKm, int count) {
+        double[] chainage = new double[count];
+        for (int i = 0; i < count; i++) {
+            chainage[i] = firstKm + i * everyKm;
+        }
+        return chainage;
+    }
+
+    private static double[] power(int count, double kw) {
+        double[] stationKw = new double[count];
+        Arrays.fill(stationKw, kw);
+        return stationKw;
+    }
+
+    /** Replays the stops and checks every reported SoC and charge time against the drive between them. */
+    private static double replay(List<ChargingStopOptimizer.Stop> stops, double[] chainageKm, double[] stationKw,
+                                 StationDetours detours, double totalKm, EVSpec ev) {
+        double socPerKm = socPerKm(ev);
+        ChargeCurve curve = ChargeCurve.of(ev);
+        double soc = ev.getStartSoC();
+        double km = 0;
+        double egressKm = 0;
+        int previous = -1;
+        for (ChargingStopOptimizer.Stop stop : stops) {
+            int i = stop.getStationIndex();
+            assertTrue(i > previous, "stops out of route order");
+            double arrive = soc - (egressKm + chainageKm[i] - km + detours.getAccessKm()[i]) * socPerKm;
+            assertEquals(arrive, stop.getArriveSoC(), 1e-6, "arrival SoC at station " + i);
+            assertTrue(stop.getArriveSoC() >= ev.getReserveSoC() - 1e-6, "arrived below reserve at station " + i);
+            assertTrue(stop.getDepartSoC() >= stop.getArriveSoC(), "discharged while charging at station " + i);
+            assertTrue(stop.getDepartSoC() <= 1.0 + EPSILON);
+            assertEquals(curve.table(stationKw[i]).minutes(stop.getArriveSoC(), stop.getDepartSoC()),
+                    stop.getChargeMinutes(), 1e-6, "charge minutes at station " + i);
+            soc = stop.getDepartSoC();
+            km = chainageKm[i];
+            egressKm = detours.getEgressKm()[i];
+            previous = i;
+        }
+        return soc - (egressKm + totalKm - km) * socPerKm;
+    }
+
+    @Test
+    void noStopsWhenStartChargeSuffices() {
+        EVSpec ev = ev(0.9, 0.1);
+        double[] chainage = evenly(50, 50, 5);
+        List<ChargingStopOptimizer.Stop> stops = new ChargingStopOptimizer()
+                .optimize(chainage, power(5, 150), 250, ev, new RoutePrefs(0.15, 100), MINUTES_PER_KM);
+        assertTrue(stops.isEmpty());
+    }
+
+    @Test
+    void targetArrivalFloorForcesAStop() {
+        EVSpec ev = ev(0.9, 0.1);
+        double[] chainage = evenly(50, 50, 5);
+        double[] kw = power(5, 150);
+        // 270 km leaves about 0.22: enough for a 0.15 target, not for 0.3
+        assertTrue(new ChargingStopOptimizer()
+                .optimize(chainage, kw, 270, ev, new RoutePrefs(0.15, 100), MINUTES_PER_KM).isEmpty());
+
+        List<ChargingStopOptimizer.Stop> stops = new ChargingStopOptimizer()
+                .optimize(chainage, kw, 270, ev, new RoutePrefs(0.3, 100), MINUTES_PER_KM);
+        assertEquals(1, stops.size());
+        double arrival = replay(stops, chainage, kw, StationDetours.none(5), 270, ev);
+        assertTrue(arrival >= 0.3 - 1e-6, "arrived with " + arrival);
+    }
+
+    @Test
+    void reserveFloorHoldsAtEveryStop() {
+        EVSpec ev = ev(0.8, 0.2);
+        double[] chainage = evenly(40, 40, 24);
+        double[] kw = power(24, 150);
+        List<ChargingStopOptimizer.Stop> stops = new ChargingStopOptimizer()
+                .optimize(chainage, kw, 1000, ev, new RoutePrefs(0.2, 100), MINUTES_PER_KM);
+        assertFalse(stops.isEmpty());
+        double arrival = replay(stops, chainage, kw, StationDetours.none(24), 1000, ev);
+        assertTrue(arrival >= 0.2 - 1e-6, "arrived with " + arrival);
+    }
+
+    @Test
+    void infeasibleGapThrows() {
+        EVSpec ev = ev(0.9, 0.1);
+        // Full to reserve covers about 357 km; the stations are 400 km apart
+        double[] chainage = {100, 500};
+        assertThrows(IllegalStateException.class, () -> new ChargingStopOptimizer()
+                .optimize(chainage, power(2, 150), 600, ev, new RoutePrefs(0.15, 100), MINUTES_PER_KM));
+    }
+
+    @Test
+    void steepTaperPrefersTwoShortStopsToOneLong() {
+        EVSpec ev = ev(0.9, 0.1);
+        // Fast to 50%, then a trickle
+        ev.setChargingCurve(List.of(new double[]{0.0, 150}, new double[]{0.5, 150},
+                new double[]{0.55, 10}, new double[]{1.0, 10}));
+        double[] chainage = evenly(50, 50, 10);
+        double[] kw = power(10, 150);
+        List<ChargingStopOptimizer.Stop> stops = new ChargingStopOptimizer()
+                .optimize(chainage, kw, 550, ev, new RoutePrefs(0.15, 100), MINUTES_PER_KM);
+
+        assertTrue(stops.size() >= 2, "expected two or more stops, got " + stops.size());
+        for (ChargingStopOptimizer.Stop stop : stops) {
+            assertTrue(stop.getDepartSoC() <= 0.56, "charged into the taper: " + stop.getDepartSoC());
+        }
+        replay(stops, chainage, kw, StationDetours.none(10), 550, ev);
+
+        // A single stop must charge into the taper, which takes longer than both short stops together
+        double oneStop = Double.POSITIVE_INFINITY;
+        ChargeCurve.Table table = ChargeCurve.of(ev).table(150);
+        double socPerKm = socPerKm(ev);
+        for (double at : chainage) {
+            double arrive = 0.9 - at * socPerKm;
+            double depart = 0.15 + (550 - at) * socPerKm;
+            if (arrive >= 0.1 && depart <= 1.0) {
+                oneStop = Math.min(oneStop, table.minutes(arrive, depart));
+            }
+        }
+        double twoStops = stops.stream().mapToDouble(ChargingStopOptimizer.Stop::getChargeMinutes).sum();
+        assertTrue(twoStops < oneStop, twoStops + " min charging vs " + oneStop + " for one stop");
+    }
+
+    @Test
+    void reconstructedSoCMatchesDrivesWithDetours() {
+        EVSpec ev = ev(0.7, 0.1);
+        double[] chainage = evenly(30, 60, 20);
+        double[] kw = {50, 150, 350, 62.5, 150, 250, 50, 150, 350, 100, 150, 250, 50, 150, 350, 62.5, 150, 250, 50, 150};
+        double[] offsetKm = new double[20];
+        for (int i = 0; i < 20; i++) {
+            offsetKm[i] = (i * 7 % 11) * 0.8;
+        }
+        StationDetours detours = StationDetours.straightLine(offsetKm);
+        List<ChargingStopOptimizer.Stop> stops = new ChargingStopOptimizer()
+                .optimize(chainage, kw, detours, 1200, ev, new RoutePrefs(0.15, 100), MINUTES_PER_KM);
+        assertFalse(stops.isEmpty());
+        double arrival = replay(stops, chainage, kw, detours, 1200, ev);
+        assertTrue(arrival >= 0.15 - 1e-6, "arrived with " + arrival);
+    }
+
+    @Test
+    void denseCorridorIsThinnedInsteadOfFailing() {
+        EVSpec ev = ev(0.9, 0.1);
+        int n = 30_000;
+        double[] chainage = evenly(0.05, 2000.0 / n, n);
+        double[] kw = new double[n];
+        for (int i = 0; i < n; i++) {
+            kw[i] = i % 3 == 0 ? 250 : 50;
+        }
+        List<ChargingStopOptimizer.Stop> stops = new ChargingStopOptimizer()
+                .optimize(chainage, kw, 2000, ev, new RoutePrefs(0.15, 100), MINUTES_PER_KM);
+        assertFalse(stops.isEmpty());
+        for (ChargingStopOptimizer.Stop stop : stops) {
+            assertEquals(250, kw[stop.getStationIndex()], "kept a slow station over a fast neighbour");
+        }
+        double arrival = replay(stops, chainage, kw, StationDetours.none(n), 2000, ev);
+        assertTrue(arrival >= 0.15 - 1e-6, "arrived with " + arrival);
+    }
+
+    @Test
+    void relaxationsStayWithinBudgetOnADenseCorridor() {
+        EVSpec ev = ev(0.9, 0.1);
+        // Under the state budget, but every station has about a thousand others in range
+        int n = 5_000;
+        double[] chainage = evenly(0.2, 2000.0 / n, n);
+        double[] kw = power(n, 150);
+        long budget = 2_000_000;
+        ChargingStopOptimizer optimizer = new ChargingStopOptimizer(ChargingStopOptimizer.DEFAULT_STATE_BUDGET, budget);
+        List<ChargingStopOptimizer.Stop> stops = optimizer
+                .optimize(chainage, kw, 2000, ev, new RoutePrefs(0.15, 100), MINUTES_PER_KM);
+
+        assertFalse(stops.isEmpty());
+        assertTrue(optimizer.relaxations() > 0);
+        assertTrue(optimizer.relaxations() <= budget, optimizer.relaxations() + " relaxations");
+        double arrival = replay(stops, chainage, kw, StationDetours.none(n), 2000, ev);
+        assertTrue(arrival >= 0.15 - 1e-6, "arrived with " + arrival);
+    }
+
+    @Test
+    void sparseCorridorIsSearchedWhole() {
+        EVSpec ev = ev(0.8, 0.2);
+        double[] chainage = evenly(40, 40, 24);
+        ChargingStopOptimizer optimizer = new ChargingStopOptimizer();
+        List<ChargingStopOptimizer.Stop> stops = optimizer
+                .optimize(chainage, power(24, 150), 1000, ev, new RoutePrefs(0.2, 100), MINUTES_PER_KM);
+
+        assertFalse(stops.isEmpty());
+        // Each departure level reaches at most the 8 stations within 357 km
+        assertTrue(optimizer.relaxations() <= 24L * 8 * 100, optimizer.relaxations() + " relaxations");
+    }
+
+    @Test
+    void thinKeepsOneStationPerStretch() {
+        double[] chainage = {1, 2, 3, 11, 12, 25};
+        double[] kw = {50, 150, 150, 50, 50, 100};
+        StationDetours detours = new StationDetours(new double[]{0, 2, 1, 0, 0, 0}, new double[6],
+                new double[]{0, 2, 1, 0, 0, 0}, new double[6]);
+        int[] kept = ChargingStopOptimizer.thin(chainage, kw, detours, 30, 3);
+        assertArrayEquals(new int[]{2, 3, 5}, kept);
+    }
+}
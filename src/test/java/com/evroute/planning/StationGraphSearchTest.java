@@ -0,0 +1,106 @@
+package com.evroute.planning;
+
+import com.evroute.model.EVSpec;
+import com.evroute.model.RoutePrefs;
+import com.evroute.routing.StationGraph;
+import com.evroute.routing.StationGraphFixture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StationGraphSearchTest {
+
+    private static final double SPACING_KM = 60;
+    // From the origin to station 0, and from the last station to the destination
+    private static final double END_KM = 20;
+
+    @TempDir
+    Path dir;
+
+    // 67.5 kWh usable at 170 Wh/km: about 397 km from full to empty
+    private static EVSpec ev() {
+        return new EVSpec(75.0, 0.9, 170.0, 150.0, 0.9, 0.1);
+    }
+
+    private static StationGraphSearch.Access ends(int... nodes) {
+        double[] km = new double[nodes.length];
+        double[] minutes = new double[nodes.length];
+        for (int k = 0; k < nodes.length; k++) {
+            km[k] = END_KM + k * SPACING_KM;
+            minutes[k] = km[k] * 0.6;
+        }
+        return new StationGraphSearch.Access(nodes, km, minutes);
+    }
+
+    private static List<ChargingStopOptimizer.Stop> search(StationGraphSearch search, StationGraph graph, int n,
+                                                           EVSpec ev, RoutePrefs prefs) {
+        return search.search(graph, ends(0, 1), ends(n - 1, n - 2), graph.lat(n - 1),
+                graph.lng(n - 1) + 0.25, ev, prefs);
+    }
+
+    @Test
+    void stopsReachTheDestinationAboveTheFloors() throws IOException {
+        int n = 12;
+        StationGraph graph = StationGraphFixture.line(dir, 40.0, -100.0, n, SPACING_KM, 250, 150);
+        EVSpec ev = ev();
+        RoutePrefs prefs = new RoutePrefs(0.15, 100);
+        List<ChargingStopOptimizer.Stop> stops = search(new StationGraphSearch(), graph, n, ev, prefs);
+        assertFalse(stops.isEmpty());
+
+        // Replay along the line: passing through stations costs exactly the direct drive
+        double socPerKm = ev.getConsumptionWhPerKm() / 1000.0 / ev.getUsableKwh();
+        ChargeCurve curve = ChargeCurve.of(ev);
+        double soc = ev.getStartSoC();
+        double km = -END_KM;
+        int previous = -1;
+        for (ChargingStopOptimizer.Stop stop : stops) {
+            int i = stop.getStationIndex();
+            assertTrue(i > previous, "stops out of trip order");
+            double arrive = soc - (i * SPACING_KM - km) * socPerKm;
+            assertEquals(arrive, stop.getArriveSoC(), 1e-6, "arrival SoC at station " + i);
+            assertTrue(arrive >= ev.getReserveSoC() - 1e-6, "arrived below reserve at station " + i);
+            assertEquals(curve.table(150).minutes(stop.getArriveSoC(), stop.getDepartSoC()),
+                    stop.getChargeMinutes(), 1e-6);
+            soc = stop.getDepartSoC();
+            km = i * SPACING_KM;
+            previous = i;
+        }
+        double arrival = soc - ((n - 1) * SPACING_KM + END_KM - km) * socPerKm;
+        assertTrue(arrival >= 0.15 - 1e-6, "arrived with " + arrival);
+    }
+
+    @Test
+    void largeGraphsOnlyStoreWhatTheSearchReaches() throws IOException {
+        // Far more stations than the default budget could hold as dense label arrays
+        int n = 120_000;
+        StationGraph graph = StationGraphFixture.line(dir, 40.0, -100.0, n, 0.2, 1.0, 150);
+        EVSpec ev = ev();
+        // The trip uses the first stations only
+        List<ChargingStopOptimizer.Stop> stops = new StationGraphSearch().search(graph, ends(0), ends(50),
+                graph.lat(50), graph.lng(50), ev, new RoutePrefs(0.15, 100));
+        assertTrue(stops.isEmpty(), "a 30 km trip needs no stop");
+    }
+
+    @Test
+    void noFeasibleSequenceThrows() throws IOException {
+        int n = 6;
+        // Legs reach only the neighbouring station, 450 km away
+        StationGraph graph = StationGraphFixture.line(dir, 40.0, -100.0, n, 450, 450, 150);
+        assertThrows(IllegalStateException.class,
+                () -> search(new StationGraphSearch(), graph, n, ev(), new RoutePrefs(0.15, 100)));
+    }
+
+    @Test
+    void searchStopsAtItsStateBudget() throws IOException {
+        int n = 12;
+        StationGraph graph = StationGraphFixture.line(dir, 40.0, -100.0, n, SPACING_KM, 250, 150);
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> search(new StationGraphSearch(20), graph, n, ev(), new RoutePrefs(0.15, 100)));
+        assertTrue(e.getMessage().contains("state budget"), e.getMessage());
+    }
+}
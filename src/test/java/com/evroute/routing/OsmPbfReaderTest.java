@@ -0,0 +1,102 @@
+package com.evroute.routing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OsmPbfReaderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsDenseNodesAndWaysWithTags() throws IOException {
+        Path pbf = dir.resolve("grid.osm.pbf");
+        PbfFixture.grid(3, 7).write(pbf);
+
+        Map<Long, double[]> nodes = new HashMap<>();
+        Map<Long, long[]> refs = new HashMap<>();
+        Map<Long, Map<String, String>> tags = new HashMap<>();
+        OsmPbfReader.read(pbf, new OsmPbfReader.Handler() {
+            @Override
+            public void node(long id, double lat, double lng) {
+                nodes.put(id, new double[] {lat, lng});
+            }
+
+            @Override
+            public void way(long id, long[] wayRefs, Map<String, String> wayTags) {
+                refs.put(id, wayRefs);
+                tags.put(id, wayTags);
+            }
+        }, true, true);
+
+        // 9 junctions, 12 block midpoints and the two far-off nodes
+        assertEquals(23, nodes.size());
+        double[] corner = nodes.get(PbfFixture.junction(2, 1));
+        assertEquals(PbfFixture.lat(2), corner[0], 1e-7);
+        assertEquals(PbfFixture.lng(1), corner[1], 1e-7);
+
+        assertEquals(8, refs.size());
+        assertArrayEquals(new long[] {PbfFixture.junction(0, 0), 100_001, PbfFixture.junction(0, 1), 100_002,
+                PbfFixture.junction(0, 2)}, refs.get(1L));
+        assertEquals("yes", tags.get(1L).get("oneway"));
+        assertEquals("motorway", tags.get(3L).get("highway"));
+        assertEquals("-1", tags.get(1001L).get("oneway"));
+        assertEquals(Map.of("highway", "service", "access", "private"), tags.get(5001L));
+    }
+
+    @Test
+    void skippedKindsAreNotDelivered() throws IOException {
+        Path pbf = dir.resolve("grid.osm.pbf");
+        PbfFixture.grid(3, 7).write(pbf);
+        int[] counts = new int[2];
+        OsmPbfReader.Handler handler = new OsmPbfReader.Handler() {
+            @Override
+            public void node(long id, double lat, double lng) {
+                counts[0]++;
+            }
+
+            @Override
+            public void way(long id, long[] wayRefs, Map<String, String> wayTags) {
+                counts[1]++;
+            }
+        };
+        OsmPbfReader.read(pbf, handler, false, true);
+        assertArrayEquals(new int[] {0, 8}, counts);
+        OsmPbfReader.read(pbf, handler, true, false);
+        assertArrayEquals(new int[] {23, 8}, counts);
+    }
+
+    @Test
+    void rejectsUnsupportedFeaturesAndTruncatedFiles() throws IOException {
+        Path pbf = dir.resolve("grid.osm.pbf");
+        PbfFixture.grid(3, 7).write(pbf);
+        byte[] bytes = Files.readAllBytes(pbf);
+
+        Path truncated = dir.resolve("truncated.osm.pbf");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 10));
+        assertThrows(IOException.class, () -> OsmPbfReader.read(truncated, new OsmPbfReader.Handler() {}, true, true));
+
+        Path historical = dir.resolve("history.osm.pbf");
+        byte[] header = new PbfFixture.ProtoWriter().string(4, "HistoricalInformation").toByteArray();
+        byte[] blob = new PbfFixture.ProtoWriter().bytes(1, header).toByteArray();
+        byte[] blobHeader = new PbfFixture.ProtoWriter().string(1, "OSMHeader").varint(3, blob.length).toByteArray();
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(historical))) {
+            out.writeInt(blobHeader.length);
+            out.write(blobHeader);
+            out.write(blob);
+        }
+        IOException e = assertThrows(IOException.class,
+                () -> OsmPbfReader.read(historical, new OsmPbfReader.Handler() {}, true, true));
+        assertTrue(e.getMessage().contains("HistoricalInformation"), e.getMessage());
+    }
+}
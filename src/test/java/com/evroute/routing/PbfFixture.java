@@ -0,0 +1,281 @@
+package com.evroute.routing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Writes small OSM PBF extracts for the routing tests: the fileformat and
+ * osmformat messages encoded by hand, nodes and ways in separate blocks as
+ * real extracts have them.
+ */
+final class PbfFixture {
+
+    static final double SPACING_DEGREES = 0.01;
+    static final double ORIGIN_LAT = 47.0;
+    static final double ORIGIN_LNG = -122.0;
+
+    private final Map<Long, double[]> nodes = new LinkedHashMap<>();
+    private final List<Way> ways = new ArrayList<>();
+
+    record Way(long id, long[] refs, Map<String, String> tags) {}
+
+    PbfFixture node(long id, double lat, double lng) {
+        nodes.put(id, new double[] {lat, lng});
+        return this;
+    }
+
+    PbfFixture way(long id, long[] refs, Map<String, String> tags) {
+        ways.add(new Way(id, refs, tags));
+        return this;
+    }
+
+    static long junction(int row, int col) {
+        return 1000L + row * 100L + col;
+    }
+
+    static double lat(int row) {
+        return ORIGIN_LAT + row * SPACING_DEGREES;
+    }
+
+    static double lng(int col) {
+        return ORIGIN_LNG + col * SPACING_DEGREES;
+    }
+
+    /**
+     * A size x size street grid with a jittered shape point halfway along
+     * every block. Row 0 is one-way eastbound, column 1 one-way southbound
+     * (tagged against its node order) and row 2 a motorway, one-way by
+     * default. A private road and a far-off two-node road are not routable
+     * from the grid.
+     */
+    static PbfFixture grid(int size, long seed) {
+        Random random = new Random(seed);
+        String[] classes = {"residential", "tertiary", "secondary", "primary", "unclassified"};
+        PbfFixture fixture = new PbfFixture();
+        long shapeId = 100_000;
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                fixture.node(junction(r, c), lat(r), lng(c));
+            }
+        }
+        for (int r = 0; r < size; r++) {
+            List<Long> refs = new ArrayList<>();
+            for (int c = 0; c < size; c++) {
+                refs.add(junction(r, c));
+                if (c + 1 < size) {
+                    fixture.node(++shapeId, lat(r) + jitter(random), (lng(c) + lng(c + 1)) / 2);
+                    refs.add(shapeId);
+                }
+            }
+            Map<String, String> tags = new LinkedHashMap<>();
+            tags.put("highway", r == 2 ? "motorway" : classes[random.nextInt(classes.length)]);
+            if (r == 0) {
+                tags.put("oneway", "yes");
+            }
+            if (random.nextInt(3) == 0) {
+                tags.put("maxspeed", random.nextBoolean() ? "30 mph" : "50");
+            }
+            fixture.way(r + 1, toArray(refs), tags);
+        }
+        for (int c = 0; c < size; c++) {
+            List<Long> refs = new ArrayList<>();
+            for (int r = 0; r < size; r++) {
+                refs.add(junction(r, c));
+                if (r + 1 < size) {
+                    fixture.node(++shapeId, (lat(r) + lat(r + 1)) / 2, lng(c) + jitter(random));
+                    refs.add(shapeId);
+                }
+            }
+            Map<String, String> tags = new LinkedHashMap<>();
+            tags.put("highway", classes[random.nextInt(classes.length)]);
+            if (c == 1) {
+                tags.put("oneway", "-1");
+            }
+            fixture.way(1000 + c, toArray(refs), tags);
+        }
+        fixture.node(900_001, lat(size + 5), lng(0)).node(900_002, lat(size + 5), lng(1));
+        fixture.way(5000, new long[] {900_001, 900_002}, Map.of("highway", "residential"));
+        fixture.way(5001, new long[] {junction(0, 0), junction(size - 1, size - 1)},
+                Map.of("highway", "service", "access", "private"));
+        return fixture;
+    }
+
+    private static double jitter(Random random) {
+        return (random.nextDouble() - 0.5) * 0.001;
+    }
+
+    private static long[] toArray(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /** Writes the header, then the nodes zlib-compressed and the ways raw. */
+    void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            ProtoWriter header = new ProtoWriter()
+                    .string(4, "OsmSchema-V0.6")
+                    .string(4, "DenseNodes");
+            blob(out, "OSMHeader", header.toByteArray(), true);
+            blob(out, "OSMData", nodeBlock(), true);
+            blob(out, "OSMData", wayBlock(), false);
+        }
+    }
+
+    private byte[] nodeBlock() {
+        // A non-default granularity and offset, as the reader must apply them
+        long granularity = 50;
+        long latOffset = 1_000_000;
+        long lngOffset = -2_000_000;
+        ProtoWriter ids = new ProtoWriter(), lats = new ProtoWriter(), lngs = new ProtoWriter();
+        long lastId = 0, lastLat = 0, lastLng = 0;
+        for (Map.Entry<Long, double[]> node : nodes.entrySet()) {
+            long lat = Math.round((node.getValue()[0] * 1e9 - latOffset) / granularity);
+            long lng = Math.round((node.getValue()[1] * 1e9 - lngOffset) / granularity);
+            ids.rawSInt64(node.getKey() - lastId);
+            lats.rawSInt64(lat - lastLat);
+            lngs.rawSInt64(lng - lastLng);
+            lastId = node.getKey();
+            lastLat = lat;
+            lastLng = lng;
+        }
+        ProtoWriter dense = new ProtoWriter().bytes(1, ids.toByteArray()).bytes(8, lats.toByteArray())
+                .bytes(9, lngs.toByteArray());
+        ProtoWriter group = new ProtoWriter().bytes(2, dense.toByteArray());
+        return new ProtoWriter()
+                .bytes(1, new ProtoWriter().string(1, "").toByteArray())
+                .bytes(2, group.toByteArray())
+                .varint(17, granularity)
+                .varint(19, latOffset)
+                .varint(20, lngOffset)
+                .toByteArray();
+    }
+
+    private byte[] wayBlock() {
+        List<String> strings = new ArrayList<>(List.of(""));
+        ProtoWriter group = new ProtoWriter();
+        for (Way way : ways) {
+            ProtoWriter keys = new ProtoWriter(), values = new ProtoWriter(), refs = new ProtoWriter();
+            for (Map.Entry<String, String> tag : way.tags().entrySet()) {
+                keys.rawVarint(index(strings, tag.getKey()));
+                values.rawVarint(index(strings, tag.getValue()));
+            }
+            long last = 0;
+            for (long ref : way.refs()) {
+                refs.rawSInt64(ref - last);
+                last = ref;
+            }
+            group.bytes(3, new ProtoWriter().varint(1, way.id()).bytes(2, keys.toByteArray())
+                    .bytes(3, values.toByteArray()).bytes(8, refs.toByteArray()).toByteArray());
+        }
+        ProtoWriter table = new ProtoWriter();
+        for (String s : strings) {
+            table.string(1, s);
+        }
+        return new ProtoWriter().bytes(1, table.toByteArray()).bytes(2, group.toByteArray()).toByteArray();
+    }
+
+    private static int index(List<String> strings, String s) {
+        int i = strings.indexOf(s);
+        if (i < 0) {
+            strings.add(s);
+            i = strings.size() - 1;
+        }
+        return i;
+    }
+
+    private static void blob(DataOutputStream out, String type, byte[] data, boolean compress) throws IOException {
+        ProtoWriter blob = new ProtoWriter();
+        if (compress) {
+            Deflater deflater = new Deflater();
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            while (!deflater.finished()) {
+                zlib.write(chunk, 0, deflater.deflate(chunk));
+            }
+            deflater.end();
+            blob.varint(2, data.length).bytes(3, zlib.toByteArray());
+        } else {
+            blob.bytes(1, data);
+        }
+        byte[] blobBytes = blob.toByteArray();
+        byte[] header = new ProtoWriter().string(1, type).varint(3, blobBytes.length).toByteArray();
+        out.writeInt(header.length);
+        out.write(header);
+        out.write(blobBytes);
+    }
+
+    /** Protobuf wire-format writer, the counterpart of {@link ProtoReader}. */
+    static final class ProtoWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ProtoWriter varint(int field, long value) {
+            tag(field, ProtoReader.VARINT);
+            return rawVarint(value);
+        }
+
+        ProtoWriter sint64(int field, long value) {
+            tag(field, ProtoReader.VARINT);
+            return rawSInt64(value);
+        }
+
+        ProtoWriter fixed64(int field, long value) {
+            tag(field, ProtoReader.FIXED64);
+            for (int i = 0; i < 8; i++) {
+                out.write((int) (value >>> (8 * i)));
+            }
+            return this;
+        }
+
+        ProtoWriter fixed32(int field, int value) {
+            tag(field, ProtoReader.FIXED32);
+            for (int i = 0; i < 4; i++) {
+                out.write(value >>> (8 * i));
+            }
+            return this;
+        }
+
+        ProtoWriter bytes(int field, byte[] value) {
+            tag(field, ProtoReader.LENGTH_DELIMITED);
+            rawVarint(value.length);
+            out.write(value, 0, value.length);
+            return this;
+        }
+
+        ProtoWriter string(int field, String value) {
+            return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Packed-field elements, without a tag
+        ProtoWriter rawVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+            return this;
+        }
+
+        ProtoWriter rawSInt64(long value) {
+            return rawVarint((value << 1) ^ (value >> 63));
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private void tag(int field, int wireType) {
+            rawVarint((long) field << 3 | wireType);
+        }
+    }
+}
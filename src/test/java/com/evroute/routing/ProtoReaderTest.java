@@ -0,0 +1,92 @@
+package com.evroute.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProtoReaderTest {
+
+    private static ProtoReader reader(byte[] bytes) {
+        return new ProtoReader(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void readsVarintsZigzagAndNestedMessages() throws IOException {
+        byte[] nested = new PbfFixture.ProtoWriter().string(1, "highway").toByteArray();
+        byte[] bytes = new PbfFixture.ProtoWriter()
+                .varint(1, 300)
+                .varint(2, Long.MAX_VALUE)
+                .sint64(3, -1234567890123L)
+                .bytes(4, nested)
+                .toByteArray();
+        ProtoReader reader = reader(bytes);
+
+        assertTrue(reader.next());
+        assertEquals(1, reader.field());
+        assertEquals(ProtoReader.VARINT, reader.wireType());
+        assertEquals(300, reader.readVarint());
+        assertTrue(reader.next());
+        assertEquals(Long.MAX_VALUE, reader.readVarint());
+        assertTrue(reader.next());
+        assertEquals(-1234567890123L, reader.readSInt64());
+        assertTrue(reader.next());
+        assertEquals(4, reader.field());
+        ProtoReader message = reader.readMessage();
+        assertTrue(message.next());
+        assertEquals("highway", message.readString());
+        assertFalse(message.next());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    void readsPackedDeltas() throws IOException {
+        PbfFixture.ProtoWriter packed = new PbfFixture.ProtoWriter();
+        long[] values = {5, -3, 1L << 40, 0, -(1L << 40)};
+        for (long value : values) {
+            packed.rawSInt64(value);
+        }
+        ProtoReader reader = reader(new PbfFixture.ProtoWriter().bytes(8, packed.toByteArray()).toByteArray());
+        assertTrue(reader.next());
+        ProtoReader column = reader.readMessage();
+        long[] read = new long[values.length];
+        int count = 0;
+        while (column.hasRemaining()) {
+            read[count++] = column.readSInt64();
+        }
+        assertArrayEquals(values, Arrays.copyOf(read, count));
+    }
+
+    @Test
+    void skipsEveryWireType() throws IOException {
+        byte[] bytes = new PbfFixture.ProtoWriter()
+                .varint(1, 99)
+                .fixed64(2, -1L)
+                .bytes(3, new byte[200])
+                .fixed32(4, 7)
+                .varint(5, 42)
+                .toByteArray();
+        ProtoReader reader = reader(bytes);
+        for (int field = 1; field <= 4; field++) {
+            assertTrue(reader.next());
+            assertEquals(field, reader.field());
+            reader.skip();
+        }
+        assertTrue(reader.next());
+        assertEquals(42, reader.readVarint());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        byte[] bytes = new PbfFixture.ProtoWriter().bytes(1, new byte[10]).toByteArray();
+        ProtoReader truncated = new ProtoReader(bytes, 0, bytes.length - 1);
+        assertThrows(IOException.class, () -> {
+            truncated.next();
+            truncated.readBytes();
+        });
+        assertThrows(IOException.class, () -> reader(new byte[] {(byte) 0x80, (byte) 0x80}).readVarint());
+    }
+}
@@ -0,0 +1,199 @@
+package com.evroute.routing;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.geo.PackedPolyline;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoadGraphTest {
+
+    private static final int SIZE = 12;
+    private static final double SNAP_RADIUS_KM = 1.0;
+
+    @TempDir
+    static Path dir;
+
+    private static RoadNetwork network;
+    private static ContractionHierarchy ch;
+    private static Path graphFile;
+    private static RoadGraph graph;
+
+    @BeforeAll
+    static void importGrid() throws IOException {
+        Path pbf = dir.resolve("grid.osm.pbf");
+        PbfFixture.grid(SIZE, 42).write(pbf);
+        network = RoadNetwork.fromPbf(pbf, 0.02);
+        ch = ContractionHierarchy.build(network);
+        graphFile = dir.resolve("graph.bin");
+        RoadGraphWriter.write(network, ch, graphFile);
+        graph = RoadGraph.open(graphFile, SNAP_RADIUS_KM);
+    }
+
+    private static double lat(int v) {
+        return network.latE6[v] / RoadNetwork.FIXED_POINT;
+    }
+
+    private static double lng(int v) {
+        return network.lngE6[v] / RoadNetwork.FIXED_POINT;
+    }
+
+    private static int node(int row, int col) {
+        return graph.nearestNode(PbfFixture.lat(row), PbfFixture.lng(col));
+    }
+
+    /** Plain Dijkstra over the road edges, in deciseconds; -1 when unreachable. */
+    private static long dijkstra(int source, int target) {
+        long[] dist = new long[network.nodeCount];
+        Arrays.fill(dist, Long.MAX_VALUE);
+        dist[source] = 0;
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        queue.add(new long[] {0, source});
+        while (!queue.isEmpty()) {
+            long[] top = queue.poll();
+            int v = (int) top[1];
+            if (top[0] > dist[v]) {
+                continue;
+            }
+            if (v == target) {
+                return top[0];
+            }
+            for (int e = 0; e < network.edgeCount; e++) {
+                if (network.edgeFrom[e] == v && top[0] + network.edgeWeight[e] < dist[network.edgeTo[e]]) {
+                    dist[network.edgeTo[e]] = top[0] + network.edgeWeight[e];
+                    queue.add(new long[] {dist[network.edgeTo[e]], network.edgeTo[e]});
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static long deciseconds(RoadGraph.Route route) {
+        return Math.round(route.getDurationMinutes() * 600);
+    }
+
+    @Test
+    void importKeepsOnlyTheRoutableGrid() {
+        // Junctions only: shape points are not nodes, and the far-off road and private road are dropped
+        assertEquals(SIZE * SIZE, network.nodeCount);
+        assertEquals(-1, graph.nearestNode(PbfFixture.lat(SIZE + 5), PbfFixture.lng(0)));
+        for (int e = 0; e < network.edgeCount; e++) {
+            assertEquals(1, network.shapeStart[(network.edgeShape[e] >>> 1) + 1]
+                    - network.shapeStart[network.edgeShape[e] >>> 1], "one shape point per block");
+        }
+    }
+
+    @Test
+    void hierarchyDistancesEqualDijkstra() {
+        assertTrue(ch.edgeCount > network.edgeCount, "no shortcuts: the hierarchy is not being exercised");
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            int source = random.nextInt(network.nodeCount);
+            int target = random.nextInt(network.nodeCount);
+            RoadGraph.Route route = graph.routeCost(lat(source), lng(source), lat(target), lng(target));
+            assertNotNull(route, source + " -> " + target);
+            assertEquals(dijkstra(source, target), deciseconds(route), source + " -> " + target);
+        }
+    }
+
+    @Test
+    void unpackedPolylinesAreContinuous() {
+        // Consecutive points are a junction and a block midpoint, about half a block apart at most
+        double maxStepKm = GeoUtils.KM_PER_DEGREE_LAT * PbfFixture.SPACING_DEGREES * 0.55;
+        Random random = new Random(11);
+        for (int i = 0; i < 100; i++) {
+            int source = random.nextInt(network.nodeCount);
+            int target = random.nextInt(network.nodeCount);
+            RoadGraph.Route route = graph.route(lat(source), lng(source), lat(target), lng(target));
+            PackedPolyline polyline = route.getPolyline();
+            assertEquals(lat(source), polyline.lat(0), 1e-6);
+            assertEquals(lng(source), polyline.lng(0), 1e-6);
+            assertEquals(lat(target), polyline.lat(polyline.size() - 1), 1e-6);
+            assertEquals(lng(target), polyline.lng(polyline.size() - 1), 1e-6);
+
+            double km = 0;
+            for (int k = 1; k < polyline.size(); k++) {
+                double step = GeoUtils.haversineKm(polyline.lat(k - 1), polyline.lng(k - 1),
+                        polyline.lat(k), polyline.lng(k));
+                assertTrue(step > 0 && step <= maxStepKm, "gap of " + step + " km at point " + k);
+                km += step;
+            }
+            assertEquals(route.getDistanceKm(), km, 1e-3 * Math.max(1, km));
+            assertEquals(deciseconds(graph.routeCost(lat(source), lng(source), lat(target), lng(target))),
+                    deciseconds(route));
+        }
+    }
+
+    @Test
+    void oneWayRoadsAreRespected() {
+        // Row 0 is one-way eastbound: along it east is direct, west has to leave it
+        RoadGraph.Route east = graph.route(PbfFixture.lat(0), PbfFixture.lng(0), PbfFixture.lat(0), PbfFixture.lng(4));
+        RoadGraph.Route west = graph.route(PbfFixture.lat(0), PbfFixture.lng(4), PbfFixture.lat(0), PbfFixture.lng(0));
+        assertEquals(dijkstra(node(0, 0), node(0, 4)), deciseconds(east));
+        assertEquals(dijkstra(node(0, 4), node(0, 0)), deciseconds(west));
+        assertTrue(west.getDistanceKm() > east.getDistanceKm() + 1.0,
+                west.getDistanceKm() + " km west vs " + east.getDistanceKm() + " km east");
+        for (int k = 0; k < east.getPolyline().size(); k++) {
+            assertEquals(PbfFixture.lat(0), east.getPolyline().lat(k), 0.001, "left row 0 going east");
+        }
+        boolean leftRow = false;
+        for (int k = 0; k < west.getPolyline().size(); k++) {
+            leftRow |= west.getPolyline().lat(k) > PbfFixture.lat(0) + 0.005;
+        }
+        assertTrue(leftRow, "drove row 0 against its direction");
+
+        // Column 1 is tagged oneway=-1: traffic runs against its node order, north to south
+        assertEquals(dijkstra(node(5, 1), node(0, 1)), deciseconds(
+                graph.routeCost(PbfFixture.lat(5), PbfFixture.lng(1), PbfFixture.lat(0), PbfFixture.lng(1))));
+        assertEquals(dijkstra(node(0, 1), node(5, 1)), deciseconds(
+                graph.routeCost(PbfFixture.lat(0), PbfFixture.lng(1), PbfFixture.lat(5), PbfFixture.lng(1))));
+        for (int e = 0; e < network.edgeCount; e++) {
+            boolean inColumn = Math.abs(lng(network.edgeFrom[e]) - PbfFixture.lng(1)) < 1e-6
+                    && Math.abs(lng(network.edgeTo[e]) - PbfFixture.lng(1)) < 1e-6;
+            if (inColumn) {
+                assertTrue(lat(network.edgeTo[e]) < lat(network.edgeFrom[e]), "northbound edge in column 1");
+            }
+        }
+    }
+
+    @Test
+    void writtenGraphReadsBackAsBuilt() throws IOException {
+        assertEquals(network.nodeCount, graph.nodeCount());
+        assertEquals(ch.edgeCount, graph.edgeCount());
+        for (int v = 0; v < network.nodeCount; v++) {
+            assertEquals(v, graph.nearestNode(lat(v), lng(v)), "node " + v + " moved");
+        }
+        // Each road edge, looked up by its ends, costs no more than the edge itself
+        for (int e = 0; e < network.edgeCount; e++) {
+            int a = network.edgeFrom[e], b = network.edgeTo[e];
+            RoadGraph.Route route = graph.route(lat(a), lng(a), lat(b), lng(b));
+            assertTrue(deciseconds(route) <= network.edgeWeight[e], "edge " + e);
+        }
+
+        // Writing the same hierarchy again gives the same bytes
+        Path again = dir.resolve("again.bin");
+        RoadGraphWriter.write(network, ch, again);
+        assertArrayEquals(Files.readAllBytes(graphFile), Files.readAllBytes(again));
+    }
+
+    @Test
+    void truncatedOrForeignFilesAreRejected() throws IOException {
+        byte[] bytes = Files.readAllBytes(graphFile);
+        Path truncated = dir.resolve("truncated.bin");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 4));
+        assertThrows(IOException.class, () -> RoadGraph.open(truncated, SNAP_RADIUS_KM));
+
+        Path foreign = dir.resolve("foreign.bin");
+        Files.write(foreign, new byte[RoadGraph.HEADER_BYTES]);
+        assertThrows(IOException.class, () -> RoadGraph.open(foreign, SNAP_RADIUS_KM));
+    }
+}
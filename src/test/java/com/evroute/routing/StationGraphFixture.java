@@ -0,0 +1,52 @@
+package com.evroute.routing;
+
+import com.evroute.geo.GeoUtils;
+import com.evroute.model.ChargingStation;
+import com.evroute.snapshot.StationSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/** Writes station graphs for tests outside this package, which cannot use the writer directly. */
+public final class StationGraphFixture {
+
+    private StationGraphFixture() {}
+
+    /**
+     * Stations due east along a parallel, {@code spacingKm} apart, each with
+     * legs both ways to every station within {@code maxLegKm}, driven at
+     * 100 km/h.
+     */
+    public static StationGraph line(Path dir, double lat, double lng, int count, double spacingKm,
+                                    double maxLegKm, double kw) throws IOException {
+        ChargingStation[] stations = new ChargingStation[count];
+        for (int i = 0; i < count; i++) {
+            stations[i] = new ChargingStation(StationSnapshot.ID_PREFIX + i, "Station " + i, lat,
+                    lng + GeoUtils.kmToLngDegrees(i * spacingKm, lat), List.of("CCS"), kw, true);
+        }
+        int reach = (int) Math.floor(maxLegKm / spacingKm + 1e-9);
+        int[] legStart = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            legStart[i + 1] = legStart[i] + Math.min(count - 1, i + reach) - Math.max(0, i - reach);
+        }
+        int[] legTo = new int[legStart[count]];
+        int[] legMeters = new int[legTo.length];
+        int[] legSeconds = new int[legTo.length];
+        int leg = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = Math.max(0, i - reach); j <= Math.min(count - 1, i + reach); j++) {
+                if (j != i) {
+                    double km = Math.abs(i - j) * spacingKm;
+                    legTo[leg] = j;
+                    legMeters[leg] = (int) Math.round(km * 1000);
+                    legSeconds[leg] = (int) Math.round(km / 100.0 * 3600);
+                    leg++;
+                }
+            }
+        }
+        Path file = dir.resolve("stations-" + count + ".bin");
+        StationGraphWriter.write(stations, 0.25, legStart, legTo, legMeters, legSeconds, file);
+        return StationGraph.open(file);
+    }
+}
@@ -0,0 +1,136 @@
+package com.evroute.service;
+
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.geo.CorridorTiles;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.RouteCorridor;
+import com.evroute.metrics.MetricRegistry;
+import com.evroute.model.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BatchPlanningServiceTest {
+
+    private final GeocodeService geocodeService = mock(GeocodeService.class);
+    private final DirectionsService directionsService = mock(DirectionsService.class);
+    private final StationsService stationsService = mock(StationsService.class);
+    private final DetourService detourService = mock(DetourService.class);
+    private final StationGraphPlanner stationGraphPlanner = mock(StationGraphPlanner.class);
+    private final MetricRegistry metrics = new MetricRegistry();
+    private BatchPlanningService batchService;
+
+    @BeforeEach
+    void setUp() {
+        when(geocodeService.geocode(anyString())).thenAnswer(call -> {
+            String query = call.getArgument(0);
+            Mono<GeocodeService.GeocodeResult> place = Mono.just(new GeocodeService.GeocodeResult(
+                    47.0 + query.length() * 0.01, -122.0, query, "WA", "US"));
+            return query.startsWith("Slow") ? place.delayElement(Duration.ofMillis(500)) : place;
+        });
+        when(directionsService.getDirections(anyDouble(), anyDouble(), anyDouble(), anyDouble()))
+                .thenAnswer(call -> Mono.just(directions(call.getArgument(0), call.getArgument(1),
+                        call.getArgument(2), call.getArgument(3), 50)));
+        when(detourService.withDetours(any())).thenAnswer(call -> Mono.just(call.getArgument(0, RouteCorridor.class)));
+        when(stationGraphPlanner.plan(any(), any(), any())).thenReturn(Mono.empty());
+
+        PlanningService planningService = new PlanningService(geocodeService, directionsService, stationsService,
+                detourService, stationGraphPlanner, new ReactiveCacheManager(new StandardEnvironment(), "maximumSize=100"), metrics,
+                Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(5), 0.001);
+        batchService = new BatchPlanningService(planningService, geocodeService, directionsService, stationsService,
+                detourService, metrics, Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(5),
+                Duration.ofSeconds(5), 8, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+    }
+
+    // A straight route north from the start, at 100 km/h
+    private static DirectionsService.DirectionsResult directions(double lat, double lng, double endLat, double endLng,
+                                                                 double km) {
+        PackedPolyline.Builder builder = new PackedPolyline.Builder();
+        for (int i = 0; i <= 100; i++) {
+            builder.add(lat + i * km / 100 / 111.0, lng);
+        }
+        int minutes = (int) Math.round(km / 100.0 * 60);
+        return new DirectionsService.DirectionsResult(new LegSummary(builder.build(), km, minutes), km, minutes);
+    }
+
+    private static RouteRequest request(String origin, String destination) {
+        return new RouteRequest(origin, destination, new EVSpec(75.0, 0.9, 170.0, 150.0, 0.9, 0.1), new RoutePrefs());
+    }
+
+    @Test
+    void resultsStreamWithoutWaitingForSlowRequests() {
+        List<BatchRouteResult> results = batchService.planBatch(List.of(
+                        request("Slow town", "Portland, OR"), request("Seattle, WA", "Portland, OR")))
+                .collectList().block(Duration.ofSeconds(10));
+
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(0).getIndex(), "the fast request should not wait for the slow geocode");
+        assertTrue(results.stream().allMatch(result -> result.getPlan() != null));
+        // The stage is recorded once its plan has been passed on, so it may lag the last result briefly
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (metrics.stage("plan").count() < 2 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(2, metrics.stage("plan").count(), "batch plans should be timed as the plan stage");
+    }
+
+    @Test
+    void repeatedRequestsAreServedFromThePlanCache() {
+        List<RouteRequest> requests = List.of(request("Seattle, WA", "Portland, OR"));
+        batchService.planBatch(requests).blockLast(Duration.ofSeconds(10));
+        BatchRouteResult again = batchService.planBatch(requests).blockLast(Duration.ofSeconds(10));
+
+        assertNotNull(again.getPlan());
+        verify(directionsService, times(1)).getDirections(anyDouble(), anyDouble(), anyDouble(), anyDouble());
+    }
+
+    @Test
+    void sharedTilesAreFetchedOnceAcrossChargingRoutes() {
+        when(directionsService.getDirections(anyDouble(), anyDouble(), anyDouble(), anyDouble()))
+                .thenAnswer(call -> Mono.just(directions(call.getArgument(0), call.getArgument(1),
+                        call.getArgument(2), call.getArgument(3), 600)));
+        CorridorTiles.Tile shared = new CorridorTiles.Tile(0, 0, 0.5);
+        when(stationsService.corridorTiles(any(), anyDouble())).thenAnswer(call -> {
+            PackedPolyline route = call.getArgument(0);
+            return List.of(shared, new CorridorTiles.Tile((int) Math.round(route.lat(0) * 100), 1, 0.5));
+        });
+        when(stationsService.findStationsInTile(any())).thenAnswer(call -> Mono.just(stationsAlong(47.0, -122.0)));
+
+        List<BatchRouteResult> results = batchService.planBatch(List.of(
+                        request("Seattle, WA", "Spokane, WA"), request("Tacoma", "Spokane, WA")))
+                .collectList().block(Duration.ofSeconds(10));
+
+        assertEquals(2, results.size());
+        for (BatchRouteResult result : results) {
+            assertNotNull(result.getPlan(), result.getError());
+            assertFalse(result.getPlan().getStops().isEmpty());
+        }
+        verify(stationsService, times(1)).findStationsInTile(shared);
+        verify(stationsService, times(3)).findStationsInTile(any());
+    }
+
+    // Stations every 50 km north of the start, on the test routes
+    private static List<ChargingStation> stationsAlong(double lat, double lng) {
+        List<ChargingStation> stations = new ArrayList<>();
+        for (int i = 1; i < 12; i++) {
+            stations.add(new ChargingStation("S-" + i, "Station " + i, lat + i * 50 / 111.0, lng,
+                    List.of("CCS"), 150.0, true));
+        }
+        return stations;
+    }
+}
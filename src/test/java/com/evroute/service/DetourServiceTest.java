@@ -0,0 +1,139 @@
+package com.evroute.service;
+
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.client.OrsClient;
+import com.evroute.client.UpstreamUnavailableException;
+import com.evroute.geo.GeoUtils;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.RouteCorridor;
+import com.evroute.geo.RouteProfile;
+import com.evroute.model.ChargingStation;
+import com.evroute.routing.RoadGraph;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.env.StandardEnvironment;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DetourServiceTest {
+
+    // Road distance as a multiple of the straight line
+    private static final double ROAD_FACTOR = 1.3;
+
+    private final OrsClient orsClient = mock(OrsClient.class);
+    private final List<int[]> matrixShapes = new ArrayList<>();
+    private DetourService detourService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(orsClient.getMatrix(anyList(), anyList(), anyList())).thenAnswer(call -> {
+            List<List<Double>> locations = call.getArgument(0);
+            List<Integer> sources = call.getArgument(1);
+            List<Integer> destinations = call.getArgument(2);
+            matrixShapes.add(new int[] {sources.size(), destinations.size()});
+            OrsClient.MatrixResponse response = new OrsClient.MatrixResponse();
+            response.distances = new ArrayList<>();
+            response.durations = new ArrayList<>();
+            for (int source : sources) {
+                List<Double> metres = new ArrayList<>();
+                List<Double> seconds = new ArrayList<>();
+                for (int destination : destinations) {
+                    double km = ROAD_FACTOR * GeoUtils.haversineKm(locations.get(source).get(1),
+                            locations.get(source).get(0), locations.get(destination).get(1),
+                            locations.get(destination).get(0));
+                    metres.add(km * 1000);
+                    seconds.add(km / 50.0 * 3600);
+                }
+                response.distances.add(metres);
+                response.durations.add(seconds);
+            }
+            return Mono.just(response);
+        });
+        ObjectProvider<RoadGraph> noGraph = mock(ObjectProvider.class);
+        detourService = new DetourService(orsClient, noGraph,
+                new ReactiveCacheManager(new StandardEnvironment(), "maximumSize=1000"),
+                "ORS", 48, 48, 4, 0.005, 2.0, Duration.ofSeconds(5));
+    }
+
+    // A route due north, with a station every 5 km: fast ones 4 km off it, slower ones 0.5 km off
+    private static RouteCorridor corridor(double km) {
+        PackedPolyline.Builder route = new PackedPolyline.Builder();
+        for (int i = 0; i <= km; i++) {
+            route.add(47.0 + GeoUtils.kmToLatDegrees(i), -122.0);
+        }
+        List<ChargingStation> stations = new ArrayList<>();
+        for (int i = 0; i * 5 <= km; i++) {
+            boolean fast = i % 3 == 0;
+            double lat = 47.0 + GeoUtils.kmToLatDegrees(i * 5);
+            stations.add(new ChargingStation("S-" + i, "Station " + i, lat,
+                    -122.0 + GeoUtils.kmToLngDegrees(fast ? 4.0 : 0.5, lat), List.of("CCS"), fast ? 250 : 150, true));
+        }
+        return RouteCorridor.build(new RouteProfile(route.build()), stations, 10.0);
+    }
+
+    @Test
+    void costsOnlyTheBestStationPerStretchInOneRequestEachWay() {
+        RouteCorridor corridor = corridor(600);
+        assertEquals(121, corridor.getStations().size());
+        RouteCorridor costed = detourService.withDetours(corridor).block(Duration.ofSeconds(5));
+
+        assertEquals(2, matrixShapes.size(), "expected the way there, then the way back for long detours");
+        int[] access = matrixShapes.get(0);
+        int[] egress = matrixShapes.get(1);
+        assertTrue(access[1] <= 48, access[1] + " stations costed");
+        assertTrue(access[0] <= access[1], "only route points should be sources, not every location");
+        assertTrue(egress[0] < access[1], "the way back should only be asked for long detours");
+
+        int measured = 0;
+        for (int i = 0; i < corridor.getStations().size(); i++) {
+            double straight = corridor.getDetours().getAccessKm()[i];
+            double km = costed.getDetours().getAccessKm()[i];
+            if (km != straight) {
+                measured++;
+                assertEquals(ROAD_FACTOR * corridor.getStations().get(i).getOffsetKm(), km, 0.35, "station " + i);
+                assertEquals(km, costed.getDetours().getEgressKm()[i], 0.35, "station " + i);
+            }
+        }
+        assertEquals(access[1], measured);
+    }
+
+    @Test
+    void measuredDetoursAreCached() {
+        RouteCorridor corridor = corridor(600);
+        RouteCorridor first = detourService.withDetours(corridor).block(Duration.ofSeconds(5));
+        int calls = matrixShapes.size();
+        RouteCorridor again = detourService.withDetours(corridor).block(Duration.ofSeconds(5));
+
+        assertEquals(calls, matrixShapes.size(), "the second plan along the route should not call ORS");
+        assertArrayEquals(first.getDetours().getAccessKm(), again.getDetours().getAccessKm());
+        assertArrayEquals(first.getDetours().getEgressMinutes(), again.getDetours().getEgressMinutes());
+    }
+
+    @Test
+    void shortCorridorsCostEveryStation() {
+        RouteCorridor corridor = corridor(100);
+        RouteCorridor costed = detourService.withDetours(corridor).block(Duration.ofSeconds(5));
+        assertEquals(corridor.getStations().size(), matrixShapes.get(0)[1]);
+        for (int i = 0; i < corridor.getStations().size(); i++) {
+            assertNotEquals(corridor.getDetours().getAccessKm()[i], costed.getDetours().getAccessKm()[i]);
+        }
+    }
+
+    @Test
+    void failedMatrixKeepsStraightLineEstimates() {
+        when(orsClient.getMatrix(anyList(), anyList(), anyList()))
+                .thenReturn(Mono.error(new UpstreamUnavailableException("ors-matrix rate limited")));
+        RouteCorridor corridor = corridor(600);
+        RouteCorridor costed = detourService.withDetours(corridor).block(Duration.ofSeconds(5));
+        assertArrayEquals(corridor.getDetours().getAccessKm(), costed.getDetours().getAccessKm());
+    }
+}
@@ -0,0 +1,86 @@
+package com.evroute.service;
+
+import com.evroute.cache.ReactiveCache;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.model.LegSummary;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectionsCacheTest {
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    private static DirectionsCache cache(int maximumSize) {
+        // Evict on the calling thread, so the index sees evictions as they happen
+        return new DirectionsCache(new ReactiveCache<>("directions",
+                Caffeine.newBuilder().maximumSize(maximumSize).executor(Runnable::run)), 0.001, 200);
+    }
+
+    // A straight route from the start, 1 km per vertex, at 100 km/h
+    private Supplier<Mono<DirectionsService.DirectionsResult>> straight(double lat, double lng,
+                                                                        double dLat, double dLng, int km) {
+        return () -> {
+            upstreamCalls.incrementAndGet();
+            PackedPolyline.Builder builder = new PackedPolyline.Builder();
+            for (int i = 0; i <= km; i++) {
+                builder.add(lat + i * dLat, lng + i * dLng);
+            }
+            int minutes = (int) Math.round(km * 0.6);
+            return Mono.just(new DirectionsService.DirectionsResult(
+                    new LegSummary(builder.build(), km, minutes), km, minutes));
+        };
+    }
+
+    private static DirectionsService.DirectionsResult get(DirectionsCache cache, double startLat, double startLng,
+                                                          double endLat, double endLng,
+                                                          Supplier<Mono<DirectionsService.DirectionsResult>> upstream) {
+        return cache.get(startLat, startLng, endLat, endLng, upstream).block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void stretchOfAFetchedRouteIsServedWithoutUpstream() {
+        DirectionsCache cache = cache(100);
+        double step = 1 / 111.0;
+        get(cache, 47.0, -122.0, 47.0 + 300 * step, -122.0, straight(47.0, -122.0, step, 0, 300));
+
+        // Spans several grid cells, well inside the fetched route
+        DirectionsService.DirectionsResult stretch = get(cache, 47.0 + 20 * step, -122.0, 47.0 + 170 * step, -122.0,
+                straight(47.0, -122.0, step, 0, 1));
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(150, stretch.getTotalDistanceKm(), 1.0);
+        assertEquals(1, cache.stats().getSubRouteHits());
+    }
+
+    @Test
+    void routesElsewhereAreNotMatched() {
+        DirectionsCache cache = cache(100);
+        double step = 1 / 111.0;
+        get(cache, 47.0, -122.0, 47.0 + 300 * step, -122.0, straight(47.0, -122.0, step, 0, 300));
+
+        // Parallel to the fetched route, two cells east, and then against its direction
+        get(cache, 47.1, -121.4, 47.9, -121.4, straight(47.1, -121.4, step, 0, 90));
+        get(cache, 47.0 + 170 * step, -122.0, 47.0 + 20 * step, -122.0, straight(47.0, -122.0, -step, 0, 150));
+
+        assertEquals(3, upstreamCalls.get());
+        assertEquals(0, cache.stats().getSubRouteHits());
+    }
+
+    @Test
+    void evictedRoutesLeaveTheIndex() {
+        DirectionsCache cache = cache(1);
+        double step = 1 / 111.0;
+        get(cache, 47.0, -122.0, 47.0 + 300 * step, -122.0, straight(47.0, -122.0, step, 0, 300));
+        get(cache, 40.0, -105.0, 40.0 + 100 * step, -105.0, straight(40.0, -105.0, step, 0, 100));
+        get(cache, 35.0, -90.0, 35.0 + 100 * step, -90.0, straight(35.0, -90.0, step, 0, 100));
+
+        assertTrue(cache.stats().getIndexedRoutes() <= 2, cache.stats().getIndexedRoutes() + " routes indexed");
+    }
+}
@@ -0,0 +1,116 @@
+package com.evroute.service;
+
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.client.OrsClient;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.metrics.MetricRegistry;
+import com.evroute.routing.RoadGraph;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.env.StandardEnvironment;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DirectionsServiceTest {
+
+    // Vertices ORS returns per leg, each leg's last shared with the next
+    private static final int LEG_VERTICES = 10;
+
+    private final OrsClient orsClient = mock(OrsClient.class);
+    private DirectionsService directionsService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(orsClient.getDirections(anyList())).thenAnswer(call -> Mono.just(response(call.getArgument(0))));
+        ObjectProvider<RoadGraph> noGraph = mock(ObjectProvider.class);
+        directionsService = new DirectionsService(orsClient, noGraph, "ORS",
+                new ReactiveCacheManager(new StandardEnvironment(), "maximumSize=100"), new MetricRegistry(), 0.001, 150);
+    }
+
+    // Straight legs between the waypoints, 10 km and 6 minutes each
+    private static OrsClient.DirectionsResponse response(List<List<Double>> coordinates) {
+        PackedPolyline.Builder geometry = new PackedPolyline.Builder();
+        OrsClient.DirectionsResponse.Properties props = new OrsClient.DirectionsResponse.Properties();
+        props.segments = new ArrayList<>();
+        props.wayPoints = new ArrayList<>(List.of(0));
+        for (int i = 0; i + 1 < coordinates.size(); i++) {
+            List<Double> a = coordinates.get(i), b = coordinates.get(i + 1);
+            for (int p = geometry.size() == 0 ? 0 : 1; p < LEG_VERTICES; p++) {
+                double t = p / (LEG_VERTICES - 1.0);
+                geometry.add(a.get(1) + (b.get(1) - a.get(1)) * t, a.get(0) + (b.get(0) - a.get(0)) * t);
+            }
+            props.wayPoints.add(geometry.size() - 1);
+            OrsClient.DirectionsResponse.Segment segment = new OrsClient.DirectionsResponse.Segment();
+            segment.distance = 10_000;
+            segment.duration = 360;
+            props.segments.add(segment);
+        }
+        props.summary = new OrsClient.DirectionsResponse.Summary();
+        props.summary.distance = 10_000.0 * props.segments.size();
+        props.summary.duration = 360.0 * props.segments.size();
+        OrsClient.DirectionsResponse.Feature feature = new OrsClient.DirectionsResponse.Feature();
+        feature.properties = props;
+        feature.geometry = new OrsClient.DirectionsResponse.Geometry();
+        feature.geometry.coordinates = geometry.build();
+        OrsClient.DirectionsResponse response = new OrsClient.DirectionsResponse();
+        response.features = List.of(feature);
+        return response;
+    }
+
+    private static List<double[]> waypoints(int count) {
+        List<double[]> waypoints = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            waypoints.add(new double[] {47.0 + i * 0.1, -122.0 + (i % 2) * 0.05});
+        }
+        return waypoints;
+    }
+
+    @Test
+    void allStopsGoInOneRequestAndSplitIntoLegs() {
+        List<double[]> waypoints = waypoints(5);
+        List<DirectionsService.DirectionsResult> legs = directionsService.getDirections(waypoints)
+                .block(Duration.ofSeconds(5));
+
+        verify(orsClient, times(1)).getDirections(anyList());
+        assertEquals(4, legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            PackedPolyline leg = legs.get(i).getOverall().getPolyline();
+            assertEquals(LEG_VERTICES, leg.size());
+            assertEquals(waypoints.get(i)[0], leg.lat(0), 1e-9);
+            assertEquals(waypoints.get(i + 1)[0], leg.lat(leg.size() - 1), 1e-9);
+            assertEquals(10.0, legs.get(i).getTotalDistanceKm(), 1e-9);
+            assertEquals(6, legs.get(i).getTotalMinutes());
+        }
+    }
+
+    @Test
+    void longStopListsAreSplitAtTheWaypointLimit() {
+        int count = OrsClient.MAX_WAYPOINTS + 10;
+        List<DirectionsService.DirectionsResult> legs = directionsService.getDirections(waypoints(count))
+                .block(Duration.ofSeconds(5));
+
+        verify(orsClient, times(2)).getDirections(anyList());
+        verify(orsClient, never()).getDirections(anyDouble(), anyDouble(), anyDouble(), anyDouble());
+        assertEquals(count - 1, legs.size());
+    }
+
+    @Test
+    void routeWithoutWaypointIndexesFails() {
+        when(orsClient.getDirections(anyList())).thenAnswer(call -> {
+            OrsClient.DirectionsResponse response = response(call.getArgument(0));
+            response.features.get(0).properties.wayPoints = null;
+            return Mono.just(response);
+        });
+        assertThrows(RuntimeException.class, () -> directionsService.getDirections(waypoints(3))
+                .block(Duration.ofSeconds(5)));
+    }
+}
@@ -0,0 +1,37 @@
+package com.evroute.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeocodeQueryNormalizerTest {
+
+    @Test
+    void spellingsOfOnePlaceShareAKey() {
+        String key = GeocodeQueryNormalizer.normalize("Seattle, WA");
+        assertEquals("seattle washington", key);
+        assertEquals(key, GeocodeQueryNormalizer.normalize("seattle wa"));
+        assertEquals(key, GeocodeQueryNormalizer.normalize(" Seattle,WA, USA "));
+        assertEquals(key, GeocodeQueryNormalizer.normalize("Seattle, Washington"));
+    }
+
+    @Test
+    void countryCodesAreNotReadAsStates() {
+        assertEquals("toronto ca", GeocodeQueryNormalizer.normalize("Toronto, CA"));
+        assertEquals("munich de", GeocodeQueryNormalizer.normalize("Munich, DE"));
+        assertNotEquals(GeocodeQueryNormalizer.normalize("Toronto, CA"),
+                GeocodeQueryNormalizer.normalize("Toronto, California"));
+    }
+
+    @Test
+    void ambiguousCodesAreStatesWhenTheQueryNamesTheUs() {
+        assertEquals("san jose california", GeocodeQueryNormalizer.normalize("San Jose, CA, USA"));
+        assertEquals("denver colorado", GeocodeQueryNormalizer.normalize("Denver, CO, United States"));
+    }
+
+    @Test
+    void abbreviationsAreExpanded() {
+        assertEquals("saint louis missouri", GeocodeQueryNormalizer.normalize("St. Louis, MO, US"));
+        assertEquals("100 main street portland oregon", GeocodeQueryNormalizer.normalize("100 Main St, Portland, OR"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.evroute.service;
+
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.geo.CorridorTiles;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.PolylinePyramid;
+import com.evroute.model.EVSpec;
+import com.evroute.model.LegSummary;
+import com.evroute.model.RoutePlan;
+import com.evroute.model.RoutePrefs;
+import com.evroute.model.RouteRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanCacheTest {
+
+    private static final CorridorTiles.Tile WEST = new CorridorTiles.Tile(0, 0, 0.5);
+    private static final CorridorTiles.Tile EAST = new CorridorTiles.Tile(0, 1, 0.5);
+    private static final GeocodeService.GeocodeResult ORIGIN =
+            new GeocodeService.GeocodeResult(47.0, -122.0, "Seattle", "WA", "US");
+    private static final GeocodeService.GeocodeResult DESTINATION =
+            new GeocodeService.GeocodeResult(47.6, -117.4, "Spokane", "WA", "US");
+
+    private final Map<CorridorTiles.Tile, Long> versions = new ConcurrentHashMap<>();
+    private final Map<CorridorTiles.Tile, Long> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger planned = new AtomicInteger();
+    private final PlanCache planCache = new PlanCache(
+            new ReactiveCacheManager(new StandardEnvironment(), "maximumSize=100"),
+            tile -> versions.getOrDefault(tile, 0L), tile -> failures.getOrDefault(tile, 0L), 0.001);
+    private final RouteRequest request = PlanCache.quantize(new RouteRequest("Seattle", "Spokane",
+            new EVSpec(75.0, 0.9, 170.0, 150.0, 0.9, 0.1), new RoutePrefs()));
+
+    // Plans over both tiles: the east tile's fetch fails when eastFails is set
+    private RoutePlan plan(boolean eastFails) {
+        return planCache.get(request, ORIGIN, DESTINATION, () -> {
+            PlanCache.Pending pending = planCache.begin(List.of(WEST, EAST));
+            versions.put(WEST, 11L);
+            if (eastFails) {
+                failures.merge(EAST, 1L, Long::sum);
+            } else {
+                versions.put(EAST, 22L);
+            }
+            planned.incrementAndGet();
+            return Mono.just(pending.complete(route()));
+        }).block(Duration.ofSeconds(5));
+    }
+
+    private static RoutePlan route() {
+        PackedPolyline polyline = new PackedPolyline.Builder().add(47.0, -122.0).add(47.6, -117.4).build();
+        return new RoutePlan(new LegSummary(polyline, 400, 240), List.of(), List.of(), 68, 240, 0);
+    }
+
+    @Test
+    void planOverFetchedTilesIsKept() {
+        RoutePlan first = plan(false);
+        RoutePlan again = plan(false);
+
+        assertEquals(1, planned.get());
+        assertSame(first, again);
+    }
+
+    @Test
+    void planMadeWhileATileFailedIsNotKept() {
+        plan(true);
+        assertNull(planCache.getIfPresent(request, ORIGIN, DESTINATION).block());
+
+        // Once the tile fetches again the plan is made with its stations, and kept
+        plan(false);
+        plan(false);
+        assertEquals(2, planned.get());
+    }
+
+    @Test
+    void tileFailingAfterAnEarlierFetchStillMarksThePlan() {
+        // The east tile's last good version is unchanged, but this plan's fetch of it failed
+        versions.put(EAST, 22L);
+        plan(true);
+        plan(false);
+        assertEquals(2, planned.get());
+    }
+
+    @Test
+    void entryIsWeighedWithItsPyramidsBound() {
+        PackedPolyline.Builder builder = new PackedPolyline.Builder();
+        for (int i = 0; i < 10_000; i++) {
+            builder.add(47.0 + i * 1e-4, -122.0 + Math.sin(i * 0.01) * 0.01);
+        }
+        PackedPolyline polyline = builder.build();
+        RoutePlan bare = new RoutePlan(new LegSummary(polyline, 111, 70), List.of(), List.of(), 20, 70, 0);
+        RoutePlan withPyramid = new RoutePlan(new LegSummary(polyline, 111, 70), List.of(), List.of(), 20, 70, 0);
+        PolylinePyramid pyramid = PolylinePyramid.of(polyline);
+        withPyramid.setPyramid(pyramid);
+
+        int bareWeight = planCache.begin(List.of(WEST)).complete(bare).weight();
+        int weight = planCache.begin(List.of(WEST)).complete(withPyramid).weight();
+        assertEquals(10_000 * 16, bareWeight - 1024 - 32);
+        assertEquals(pyramid.retainedBytes(), weight - bareWeight);
+
+        // Every zoom level is still served once the memo is full
+        for (int z = 0; z <= PolylinePyramid.MAX_ZOOM; z++) {
+            assertEquals(pyramid.simplify(pyramid.toleranceForZoom(z)).size(), pyramid.atZoom(z).size(), "zoom " + z);
+        }
+    }
+
+    @Test
+    void changedStationsDropTheCachedPlan() {
+        plan(false);
+        versions.put(WEST, 12L);
+        assertNull(planCache.getIfPresent(request, ORIGIN, DESTINATION).block());
+        plan(false);
+        assertEquals(2, planned.get());
+    }
+}
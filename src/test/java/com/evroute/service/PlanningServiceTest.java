@@ -0,0 +1,186 @@
+package com.evroute.service;
+
+import com.evroute.cache.ReactiveCacheManager;
+import com.evroute.geo.CorridorTiles;
+import com.evroute.geo.GeoUtils;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.geo.RouteCorridor;
+import com.evroute.geo.RouteProfile;
+import com.evroute.metrics.MetricRegistry;
+import com.evroute.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PlanningServiceTest {
+
+    private final GeocodeService geocodeService = mock(GeocodeService.class);
+    private final DirectionsService directionsService = mock(DirectionsService.class);
+    private final StationsService stationsService = mock(StationsService.class);
+    private final DetourService detourService = mock(DetourService.class);
+    private final StationGraphPlanner stationGraphPlanner = mock(StationGraphPlanner.class);
+
+    @BeforeEach
+    void setUp() {
+        when(geocodeService.geocode(anyString())).thenAnswer(call -> {
+            String query = call.getArgument(0);
+            return Mono.just(new GeocodeService.GeocodeResult(47.0 + query.length() * 0.01, -122.0, query, "WA", "US"));
+        });
+        when(directionsService.getDirections(anyDouble(), anyDouble(), anyDouble(), anyDouble()))
+                .thenAnswer(call -> Mono.just(directions(call.getArgument(0), call.getArgument(1), 600)));
+        when(stationGraphPlanner.plan(any(), any(), any())).thenReturn(Mono.empty());
+        when(stationsService.corridorTiles(any(), anyDouble())).thenReturn(List.of(new CorridorTiles.Tile(0, 0, 0.5)));
+        when(stationsService.findStationsAlongRoute(any(), anyDouble()))
+                .thenAnswer(call -> Mono.just(stationsAlong(47.0, -122.0)));
+        when(stationsService.streamStationsAlongRoute(any(), anyDouble()))
+                .thenAnswer(call -> Flux.just(stationsAlong(47.0, -122.0)));
+        when(detourService.withDetours(any())).thenAnswer(call -> Mono.just(call.getArgument(0, RouteCorridor.class)));
+    }
+
+    private PlanningService planningService(Duration stationsTimeout) {
+        return new PlanningService(geocodeService, directionsService, stationsService, detourService,
+                stationGraphPlanner, new ReactiveCacheManager(new StandardEnvironment(), "maximumSize=100"),
+                new MetricRegistry(), Duration.ofSeconds(5), Duration.ofSeconds(5), stationsTimeout,
+                Duration.ofSeconds(5), 0.001);
+    }
+
+    // A straight route north from the start, at 100 km/h
+    private static DirectionsService.DirectionsResult directions(double lat, double lng, double km) {
+        PackedPolyline.Builder builder = new PackedPolyline.Builder();
+        for (int i = 0; i <= 100; i++) {
+            builder.add(lat + i * km / 100 / 111.0, lng);
+        }
+        int minutes = (int) Math.round(km / 100.0 * 60);
+        return new DirectionsService.DirectionsResult(new LegSummary(builder.build(), km, minutes), km, minutes);
+    }
+
+    // Stations every 50 km north of the start, on the test routes
+    private static List<ChargingStation> stationsAlong(double lat, double lng) {
+        List<ChargingStation> stations = new ArrayList<>();
+        for (int i = 1; i < 12; i++) {
+            stations.add(new ChargingStation("S-" + i, "Station " + i, lat + i * 50 / 111.0, lng,
+                    List.of("CCS"), 150.0, true));
+        }
+        return stations;
+    }
+
+    private static EVSpec ev(double consumptionWhPerKm) {
+        return new EVSpec(75.0, 0.9, consumptionWhPerKm, 150.0, 0.9, 0.1);
+    }
+
+    @Test
+    void comparedVehiclesShareThePlanCacheWithSinglePlans() {
+        PlanningService planningService = planningService(Duration.ofSeconds(5));
+        CompareRequest compare = new CompareRequest("Seattle, WA", "Spokane, WA",
+                List.of(ev(170.0), ev(201.0)), new RoutePrefs());
+        RouteComparison first = planningService.compareVehicles(compare).block(Duration.ofSeconds(10));
+        assertTrue(first.getVehicles().stream().allMatch(row -> row.getError() == null));
+        verify(stationsService, times(1)).findStationsAlongRoute(any(), anyDouble());
+
+        // 168 Wh/km quantizes up to 170, as the first compared vehicle did
+        RoutePlan single = planningService.planRoute(new RouteRequest("Seattle, WA", "Spokane, WA", ev(168.0),
+                new RoutePrefs())).block(Duration.ofSeconds(10));
+        RouteComparison again = planningService.compareVehicles(compare).block(Duration.ofSeconds(10));
+
+        verify(stationsService, times(1)).findStationsAlongRoute(any(), anyDouble());
+        verify(stationGraphPlanner, times(2)).plan(any(), any(), any());
+        assertEquals(first.getVehicles().get(0).getTotalMinutes(), single.getTotalMinutes());
+        assertNotNull(single.getPyramid());
+        assertEquals(first.getVehicles().get(1).getTotalMinutes(), again.getVehicles().get(1).getTotalMinutes());
+    }
+
+    @Test
+    void comparedVehiclesAreOfferedToTheStationGraphFirst() {
+        RoutePlan graphPlan = new RoutePlan(directions(47.0, -122.0, 600).getOverall(), List.of(), List.of(), 100, 360, 40);
+        when(stationGraphPlanner.plan(any(), any(), any())).thenReturn(Mono.just(graphPlan));
+        PlanningService planningService = planningService(Duration.ofSeconds(5));
+        CompareRequest compare = new CompareRequest("Seattle, WA", "Spokane, WA", List.of(ev(170.0)), new RoutePrefs());
+        RouteComparison comparison = planningService.compareVehicles(compare).block(Duration.ofSeconds(10));
+        RoutePlan single = planningService.planRoute(new RouteRequest("Seattle, WA", "Spokane, WA", ev(170.0),
+                new RoutePrefs())).block(Duration.ofSeconds(10));
+
+        assertEquals(400, comparison.getVehicles().get(0).getTotalMinutes());
+        assertSame(graphPlan, single);
+        verify(stationGraphPlanner, times(1)).plan(any(), any(), any());
+        verify(stationsService, never()).findStationsAlongRoute(any(), anyDouble());
+    }
+
+    @Test
+    void graphPlansAreDroppedWhenStationsAlongThemChange() {
+        RoutePlan graphPlan = new RoutePlan(directions(47.0, -122.0, 600).getOverall(), List.of(), List.of(), 100, 360, 40);
+        when(stationGraphPlanner.plan(any(), any(), any())).thenReturn(Mono.just(graphPlan));
+        when(stationsService.tileVersion(any())).thenReturn(7L);
+        PlanningService planningService = planningService(Duration.ofSeconds(5));
+        RouteRequest request = new RouteRequest("Seattle, WA", "Spokane, WA", ev(170.0), new RoutePrefs());
+        planningService.planRoute(request).block(Duration.ofSeconds(10));
+        planningService.planRoute(request).block(Duration.ofSeconds(10));
+        verify(stationGraphPlanner, times(1)).plan(any(), any(), any());
+
+        when(stationsService.tileVersion(any())).thenReturn(8L);
+        planningService.planRoute(request).block(Duration.ofSeconds(10));
+        verify(stationGraphPlanner, times(2)).plan(any(), any(), any());
+    }
+
+    @Test
+    void legsAreMeasuredInRoadDistance() {
+        // Road distance a quarter longer than the decoded polyline, as winding roads are
+        DirectionsService.DirectionsResult straight = directions(47.0, -122.0, 480);
+        DirectionsService.DirectionsResult directions = new DirectionsService.DirectionsResult(
+                new LegSummary(straight.getOverall().getPolyline(), 600, 360), 600, 360);
+        RoutePlan plan = planningService(Duration.ofSeconds(5)).planRouteWithAlgorithm(
+                new RouteRequest("Seattle, WA", "Spokane, WA", ev(170.0), new RoutePrefs()),
+                directions, stationsAlong(47.0, -122.0));
+
+        assertFalse(plan.getStops().isEmpty());
+        double legKm = plan.getLegs().stream().mapToDouble(LegSummary::getDistanceKm).sum();
+        assertEquals(600, legKm, 0.5);
+        // Each stop is reached at its chainage scaled to road distance, so the last leg gets only its share
+        double scale = 600 / new RouteProfile(straight.getOverall().getPolyline()).getTotalKm();
+        double reachedKm = 0;
+        for (int i = 0; i < plan.getStops().size(); i++) {
+            ChargingStation station = plan.getStops().get(i).getStation();
+            reachedKm += plan.getLegs().get(i).getDistanceKm();
+            assertEquals(GeoUtils.haversineKm(47.0, -122.0, station.getLat(), station.getLng()) * scale, reachedKm, 0.01);
+        }
+        PackedPolyline lastRoute = plan.getLegs().get(plan.getLegs().size() - 1).getPolyline();
+        assertEquals(straight.getOverall().getPolyline().lat(100), lastRoute.lat(lastRoute.size() - 1), 1e-6);
+    }
+
+    @Test
+    void streamReplaysACachedPlan() {
+        PlanningService planningService = planningService(Duration.ofSeconds(5));
+        RouteRequest request = new RouteRequest("Seattle, WA", "Spokane, WA", ev(170.0), new RoutePrefs());
+        List<PlanEvent> streamed = planningService.planRouteStream(request).collectList().block(Duration.ofSeconds(10));
+        List<PlanEvent> replayed = planningService.planRouteStream(request).collectList().block(Duration.ofSeconds(10));
+
+        verify(stationsService, times(1)).streamStationsAlongRoute(any(), anyDouble());
+        verify(directionsService, times(1)).getDirections(anyDouble(), anyDouble(), anyDouble(), anyDouble());
+        assertEquals(PlanEvent.STATIONS, streamed.get(1).getType());
+        assertEquals(streamed.size() - 1, replayed.size(), "everything but the stations batch");
+        assertEquals(PlanEvent.ROUTE, replayed.get(0).getType());
+        assertEquals(PlanEvent.SUMMARY, replayed.get(replayed.size() - 1).getType());
+        assertSame(streamed.get(streamed.size() - 1).getData(), replayed.get(replayed.size() - 1).getData());
+    }
+
+    @Test
+    void streamCutOffByTheStationsTimeoutIsNotCached() {
+        when(stationsService.streamStationsAlongRoute(any(), anyDouble()))
+                .thenAnswer(call -> Flux.concat(Flux.just(stationsAlong(47.0, -122.0).subList(0, 8)), Flux.never()));
+        PlanningService planningService = planningService(Duration.ofMillis(200));
+        RouteRequest request = new RouteRequest("Seattle, WA", "Spokane, WA", ev(170.0), new RoutePrefs());
+        planningService.planRouteStream(request).blockLast(Duration.ofSeconds(10));
+        planningService.planRouteStream(request).blockLast(Duration.ofSeconds(10));
+
+        verify(stationsService, times(2)).streamStationsAlongRoute(any(), anyDouble());
+    }
+}
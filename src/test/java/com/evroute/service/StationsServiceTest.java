@@ -0,0 +1,81 @@
+package com.evroute.service;
+
+import com.evroute.client.OpenChargeMapClient;
+import com.evroute.client.UpstreamUnavailableException;
+import com.evroute.geo.CorridorTiles;
+import com.evroute.geo.PackedPolyline;
+import com.evroute.metrics.MetricRegistry;
+import com.evroute.model.ChargingStation;
+import com.evroute.snapshot.StationSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StationsServiceTest {
+
+    private final OpenChargeMapClient ocmClient = mock(OpenChargeMapClient.class);
+    private StationsService stationsService;
+    private PackedPolyline route;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // One station at the centre of each tile asked for
+        when(ocmClient.findStationsInBbox(anyDouble(), anyDouble(), anyDouble(), anyDouble())).thenAnswer(call -> {
+            double lat = (call.getArgument(0, Double.class) + call.getArgument(2, Double.class)) / 2;
+            double lng = (call.getArgument(1, Double.class) + call.getArgument(3, Double.class)) / 2;
+            return Mono.just(List.of(new ChargingStation("S-" + lat + "," + lng, "Station", lat, lng,
+                    List.of("CCS"), 150.0, true)));
+        });
+        ObjectProvider<StationSnapshot> noSnapshot = mock(ObjectProvider.class);
+        stationsService = new StationsService(ocmClient, noSnapshot, new MetricRegistry(), "OCM", 0.5, 6);
+        route = new PackedPolyline.Builder().add(47.1, -121.9).add(48.1, -121.9).add(49.1, -121.9).build();
+    }
+
+    private void failTile(CorridorTiles.Tile tile, RuntimeException error) {
+        when(ocmClient.findStationsInBbox(tile.getMinLat(), tile.getMinLng(), tile.getMaxLat(), tile.getMaxLng()))
+                .thenReturn(Mono.error(error));
+    }
+
+    @Test
+    void isolatedTileFailureDegradesTheCorridor() {
+        List<CorridorTiles.Tile> tiles = stationsService.corridorTiles(route, 15.0);
+        assertTrue(tiles.size() > 2, tiles.size() + " tiles");
+        CorridorTiles.Tile failed = tiles.get(1);
+        failTile(failed, new UpstreamUnavailableException("ocm-bbox failed: 502 Bad Gateway"));
+
+        List<ChargingStation> stations = stationsService.findStationsAlongRoute(route, 15.0)
+                .block(Duration.ofSeconds(5));
+        assertEquals(tiles.size() - 1, stations.size());
+        assertEquals(1, stationsService.tileFailures(failed));
+        assertEquals(0, stationsService.tileVersion(failed));
+        assertNotEquals(0, stationsService.tileVersion(tiles.get(0)));
+    }
+
+    @Test
+    void everyTileFailingFailsTheCorridor() {
+        when(ocmClient.findStationsInBbox(anyDouble(), anyDouble(), anyDouble(), anyDouble()))
+                .thenReturn(Mono.error(new UpstreamUnavailableException("ocm-bbox rate limit")));
+
+        UpstreamUnavailableException e = assertThrows(UpstreamUnavailableException.class,
+                () -> stationsService.findStationsAlongRoute(route, 15.0).block(Duration.ofSeconds(5)));
+        assertEquals("ocm-bbox rate limit", e.getMessage());
+    }
+
+    @Test
+    void openCircuitFailsTheCorridor() {
+        failTile(stationsService.corridorTiles(route, 15.0).get(0), UpstreamUnavailableException.circuitOpen("ocm-bbox"));
+
+        UpstreamUnavailableException e = assertThrows(UpstreamUnavailableException.class,
+                () -> stationsService.findStationsAlongRoute(route, 15.0).block(Duration.ofSeconds(5)));
+        assertTrue(e.isCircuitOpen());
+    }
+}